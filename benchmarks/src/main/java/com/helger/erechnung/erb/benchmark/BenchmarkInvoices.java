@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.benchmark;
+
+import java.nio.charset.StandardCharsets;
+
+import org.jspecify.annotations.NonNull;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.io.resource.ClassPathResource;
+
+/**
+ * Creates example invoices of arbitrary size for the benchmarks. The ebInterface 6.0 example
+ * invoice is padded with an XML comment directly after the root element, so that the result is
+ * still a valid invoice.
+ *
+ * @author Philip Helger
+ */
+public final class BenchmarkInvoices
+{
+  private static final String BASE_INVOICE = new String (StreamHelper.getAllBytes (new ClassPathResource ("test-invoices/ebi60.xml")),
+                                                         StandardCharsets.UTF_8);
+
+  private BenchmarkInvoices ()
+  {}
+
+  /**
+   * Create an invoice with the provided minimum size.
+   *
+   * @param nMinSize
+   *        The minimum size in bytes. If it is smaller than the example invoice, the example
+   *        invoice is returned unchanged.
+   * @return The UTF-8 encoded invoice. Never <code>null</code>.
+   */
+  @NonNull
+  public static byte [] createInvoice (@Nonnegative final int nMinSize)
+  {
+    final int nPadding = nMinSize - BASE_INVOICE.length ();
+    if (nPadding <= 0)
+      return BASE_INVOICE.getBytes (StandardCharsets.UTF_8);
+
+    // Insert after the end of the start tag of the root element
+    final int nRootStart = BASE_INVOICE.indexOf ("<Invoice ");
+    final int nInsertPos = BASE_INVOICE.indexOf ('>', nRootStart) + 1;
+    final StringBuilder aSB = new StringBuilder (nMinSize + 16);
+    aSB.append (BASE_INVOICE, 0, nInsertPos).append ("<!--");
+    for (int i = 0; i < nPadding; ++i)
+      aSB.append ((char) ('a' + i % 26));
+    aSB.append ("-->").append (BASE_INVOICE, nInsertPos, BASE_INVOICE.length ());
+    return aSB.toString ().getBytes (StandardCharsets.UTF_8);
+  }
+}
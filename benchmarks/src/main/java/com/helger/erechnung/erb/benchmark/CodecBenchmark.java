@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.erechnung.erb.ws.SOAPAddWSSEHeaderHandler;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws200.WS200SOAPCodec;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryInvoiceType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.ObjectFactory;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.soap.MessageFactory;
+import jakarta.xml.soap.SOAPMessage;
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+
+/**
+ * Micro benchmarks of the single steps of a delivery: envelope building, WSSE header insertion and
+ * response unmarshalling.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 3, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class CodecBenchmark
+{
+  /**
+   * Minimal outbound message context, so that the JAX-WS handler can be invoked without a JAX-WS
+   * runtime.
+   */
+  private static final class OutboundContext extends HashMap <String, Object> implements SOAPMessageContext
+  {
+    private SOAPMessage m_aMsg;
+
+    OutboundContext (final SOAPMessage aMsg)
+    {
+      m_aMsg = aMsg;
+      put (MessageContext.MESSAGE_OUTBOUND_PROPERTY, Boolean.TRUE);
+    }
+
+    public SOAPMessage getMessage ()
+    {
+      return m_aMsg;
+    }
+
+    public void setMessage (final SOAPMessage aMsg)
+    {
+      m_aMsg = aMsg;
+    }
+
+    public Object [] getHeaders (final QName aHeader, final JAXBContext aContext, final boolean bAllRoles)
+    {
+      return new Object [0];
+    }
+
+    public Set <String> getRoles ()
+    {
+      return Set.of ();
+    }
+
+    public void setScope (final String sName, final MessageContext.Scope eScope)
+    {}
+
+    public MessageContext.Scope getScope (final String sName)
+    {
+      return MessageContext.Scope.APPLICATION;
+    }
+  }
+
+  /** The minimum invoice size in bytes. 0 means the unmodified example invoice. */
+  @Param ({ "0", "1048576", "16777216", "33554432" })
+  public int invoiceSize;
+
+  private byte [] m_aInvoiceBytes;
+  private DeliverySettingsType m_aSettings;
+  private SOAPAddWSSEHeaderHandler m_aHandler;
+  private SOAPAddWSSEHeaderHandler m_aHandlerPerMessage;
+  private MessageFactory m_aMessageFactory;
+  private byte [] m_aResponseBytes;
+  private JAXBContext m_aJAXBContext;
+
+  @Setup (Level.Trial)
+  public void setup () throws Exception
+  {
+    m_aInvoiceBytes = BenchmarkInvoices.createInvoice (invoiceSize);
+    m_aSettings = new DeliverySettingsType ();
+    m_aSettings.setTest (Boolean.TRUE);
+    m_aHandler = new SOAPAddWSSEHeaderHandler ("benchmark", "secret", true);
+    m_aHandlerPerMessage = new SOAPAddWSSEHeaderHandler ("benchmark", "secret", false);
+    m_aMessageFactory = MessageFactory.newInstance ();
+    m_aJAXBContext = JAXBContext.newInstance (ObjectFactory.class);
+    m_aResponseBytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                        "<S:Envelope xmlns:S=\"" +
+                        SOAPStreamHelper.SOAP11_NS_URI +
+                        "\"><S:Body>" +
+                        "<ns:deliverInvoiceInvoiceOutput xmlns:ns=\"" +
+                        WS200SOAPCodec.NAMESPACE_URI +
+                        "\"><ns:Success><ns:DocumentID>stub-document</ns:DocumentID>" +
+                        "<ns:SupplierInvoiceNumber>stub-invoice</ns:SupplierInvoiceNumber></ns:Success>" +
+                        "</ns:deliverInvoiceInvoiceOutput></S:Body></S:Envelope>").getBytes (StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public void buildEnvelopeStreaming () throws Exception
+  {
+    WS200SOAPCodec.writeDeliveryRequest (OutputStream.nullOutputStream (),
+                                         SOAPStreamHelper.getWSSEUsernameTokenHeader ("benchmark", "secret"),
+                                         new ByteArrayInputStream (m_aInvoiceBytes),
+                                         "UTF-8",
+                                         null,
+                                         m_aSettings);
+  }
+
+  @Benchmark
+  public void buildBodyJAXB () throws Exception
+  {
+    // Approximates what JAX-WS does for the SOAP body
+    final DeliveryInvoiceType aInvoice = new DeliveryInvoiceType ();
+    aInvoice.setValue (m_aInvoiceBytes);
+    aInvoice.setEncoding ("UTF-8");
+    final DeliveryType aDelivery = new DeliveryType ();
+    aDelivery.setInvoice (aInvoice);
+    aDelivery.setSettings (m_aSettings);
+    m_aJAXBContext.createMarshaller ()
+                  .marshal (new ObjectFactory ().createDeliverInvoiceInvoiceInput (aDelivery), OutputStream.nullOutputStream ());
+  }
+
+  @Benchmark
+  public boolean insertWSSEHeaderSAAJ () throws Exception
+  {
+    // Includes the creation of an empty message
+    return m_aHandler.handleMessage (new OutboundContext (m_aMessageFactory.createMessage ()));
+  }
+
+  @Benchmark
+  public boolean insertWSSEHeaderSAAJPerMessage () throws Exception
+  {
+    // Builds the header element by element
+    return m_aHandlerPerMessage.handleMessage (new OutboundContext (m_aMessageFactory.createMessage ()));
+  }
+
+  @Benchmark
+  public SOAPMessage createEmptySAAJMessage () throws Exception
+  {
+    // Baseline for insertWSSEHeaderSAAJ
+    return m_aMessageFactory.createMessage ();
+  }
+
+  @Benchmark
+  public byte [] createWSSEHeaderStreaming ()
+  {
+    return SOAPStreamHelper.getWSSEUsernameTokenHeader ("benchmark", "secret");
+  }
+
+  @Benchmark
+  public DeliveryResponseType unmarshalResponse () throws Exception
+  {
+    return WS200SOAPCodec.readDeliveryResponse (new ByteArrayInputStream (m_aResponseBytes));
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import com.helger.erechnung.erb.simulator.ERBSimulator;
+import com.helger.erechnung.erb.ws.EWSSenderEngine;
+import com.helger.erechnung.erb.ws120.WS120Sender;
+import com.helger.erechnung.erb.ws200.WS200Sender;
+import com.helger.xml.serialize.read.DOMReader;
+
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.SettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeUploadStatus;
+
+/**
+ * End-to-end benchmark of the different sending modes against the in-process ER&gt;B simulator.
+ *
+ * @author Philip Helger
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class DeliveryBenchmark
+{
+  private static final String USERNAME = "benchmark";
+  private static final String PASSWORD = "secret";
+
+  /** The minimum invoice size in bytes. 0 means the unmodified example invoice. */
+  @Param ({ "0", "1048576", "16777216", "33554432" })
+  public int invoiceSize;
+
+  private ERBSimulator m_aServer;
+  private byte [] m_aInvoiceBytes;
+  private Document m_aInvoiceDoc;
+  private DeliverySettingsType m_aSettingsV2;
+  private SettingsType m_aSettingsV1;
+  private WS200Sender m_aSenderV2;
+  private WS200Sender m_aSenderV2Pooled;
+  private WS200Sender m_aSenderV2Direct;
+  private WS120Sender m_aSenderV1;
+
+  @Setup (Level.Trial)
+  public void setup () throws IOException
+  {
+    m_aServer = new ERBSimulator ();
+    m_aInvoiceBytes = BenchmarkInvoices.createInvoice (invoiceSize);
+    m_aInvoiceDoc = DOMReader.readXMLDOM (m_aInvoiceBytes);
+    m_aSettingsV2 = new DeliverySettingsType ();
+    m_aSettingsV2.setTest (Boolean.TRUE);
+    m_aSettingsV1 = new SettingsType ();
+    m_aSettingsV1.setTest (Boolean.TRUE);
+
+    m_aSenderV2 = new WS200Sender (USERNAME, PASSWORD).setURL (m_aServer.getURLV2 ());
+    m_aSenderV2Pooled = new WS200Sender (USERNAME, PASSWORD).setURL (m_aServer.getURLV2 ())
+                                                            .setPortPoolingEnabled (true);
+    m_aSenderV2Direct = new WS200Sender (USERNAME, PASSWORD).setURL (m_aServer.getURLV2 ())
+                                                            .setEngine (EWSSenderEngine.DIRECT);
+    m_aSenderV1 = new WS120Sender (USERNAME, PASSWORD).setURL (m_aServer.getURLV1 ());
+  }
+
+  @TearDown (Level.Trial)
+  public void tearDown ()
+  {
+    m_aSenderV2Pooled.closePortPool ();
+    m_aServer.close ();
+  }
+
+  @Benchmark
+  public DeliveryResponseType deliverNodeJAXWS ()
+  {
+    return m_aSenderV2.deliverInvoice (m_aInvoiceDoc, null, m_aSettingsV2);
+  }
+
+  @Benchmark
+  public DeliveryResponseType deliverBytesJAXWS ()
+  {
+    return m_aSenderV2.deliverInvoice (m_aInvoiceBytes, null, m_aSettingsV2);
+  }
+
+  @Benchmark
+  public DeliveryResponseType deliverBytesJAXWSPooled ()
+  {
+    return m_aSenderV2Pooled.deliverInvoice (m_aInvoiceBytes, null, m_aSettingsV2);
+  }
+
+  @Benchmark
+  public DeliveryResponseType deliverNodeDirect ()
+  {
+    return m_aSenderV2Direct.deliverInvoice (m_aInvoiceDoc, null, m_aSettingsV2);
+  }
+
+  @Benchmark
+  public DeliveryResponseType deliverBytesDirect ()
+  {
+    return m_aSenderV2Direct.deliverInvoice (m_aInvoiceBytes, null, m_aSettingsV2);
+  }
+
+  @Benchmark
+  public DeliveryResponseType deliverStreamDirect ()
+  {
+    return m_aSenderV2.deliverInvoice (new ByteArrayInputStream (m_aInvoiceBytes), null, m_aSettingsV2);
+  }
+
+  @Benchmark
+  public TypeUploadStatus uploadBytesV1JAXWS ()
+  {
+    return m_aSenderV1.deliverInvoice (m_aInvoiceBytes, null, m_aSettingsV1);
+  }
+}
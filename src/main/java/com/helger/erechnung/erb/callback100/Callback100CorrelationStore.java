@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.callback100;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySuccessType;
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.CallbackType;
+
+/**
+ * Correlates the asynchronous callbacks of ER&gt;B with the original deliveries. After a successful
+ * delivery with a callback URL, the document ID and supplier invoice number of the
+ * {@link DeliverySuccessType} are registered, and the returned future is completed as soon as the
+ * matching callback arrives. If no callback arrives within the provided timeout, the future is
+ * completed with a {@link TimeoutException} and the entry is evicted. This class is an
+ * {@link ICallback100Listener} and can be passed directly to a {@link Callback100Receiver}.<br>
+ * Because callbacks may arrive days later, millions of entries may be outstanding. The index is
+ * therefore an open addressing hash table over primitive arrays: per entry only 64-bit hashes of
+ * the two keys, the deadline and the future are retained - no map nodes, key strings or timer
+ * tasks. Timeouts are enforced by a single background thread that sweeps the table in a
+ * configurable interval.<br>
+ * The index is held in memory only. Callbacks for deliveries registered before a restart are
+ * passed to the optional listener for unmatched callbacks.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public class Callback100CorrelationStore implements ICallback100Listener, AutoCloseable
+{
+  public static final Duration DEFAULT_SWEEP_INTERVAL = Duration.ofMinutes (1);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (Callback100CorrelationStore.class);
+  private static final int INITIAL_CAPACITY = 1024;
+  // Hash 0 marks an empty slot
+  private static final long EMPTY = 0;
+
+  private final ICallback100Listener m_aUnmatchedListener;
+  private final ScheduledExecutorService m_aSweeper;
+  private final SimpleLock m_aLock = new SimpleLock ();
+  @GuardedBy ("m_aLock")
+  private long [] m_aDocumentIDHashes = new long [INITIAL_CAPACITY];
+  @GuardedBy ("m_aLock")
+  private long [] m_aInvoiceNumberHashes = new long [INITIAL_CAPACITY];
+  @GuardedBy ("m_aLock")
+  private long [] m_aDeadlines = new long [INITIAL_CAPACITY];
+  @GuardedBy ("m_aLock")
+  private Object [] m_aFutures = new Object [INITIAL_CAPACITY];
+  @GuardedBy ("m_aLock")
+  private int m_nSize;
+  private final AtomicLong m_aMatched = new AtomicLong ();
+  private final AtomicLong m_aUnmatched = new AtomicLong ();
+  private final AtomicLong m_aExpired = new AtomicLong ();
+
+  /**
+   * Constructor with {@link #DEFAULT_SWEEP_INTERVAL} and without a listener for unmatched
+   * callbacks.
+   */
+  public Callback100CorrelationStore ()
+  {
+    this (DEFAULT_SWEEP_INTERVAL, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aSweepInterval
+   *        The interval in which overdue entries are evicted. May not be <code>null</code> and must
+   *        be positive. Timeouts are enforced with at most this delay.
+   * @param aUnmatchedListener
+   *        The listener to be invoked for callbacks without a registered delivery (e.g. after a
+   *        restart or if the timeout already elapsed). May be <code>null</code>.
+   */
+  public Callback100CorrelationStore (@NonNull final Duration aSweepInterval,
+                                      @Nullable final ICallback100Listener aUnmatchedListener)
+  {
+    ValueEnforcer.notNull (aSweepInterval, "SweepInterval");
+    ValueEnforcer.isFalse (aSweepInterval.isNegative () || aSweepInterval.isZero (), "SweepInterval must be positive");
+    m_aUnmatchedListener = aUnmatchedListener;
+    m_aSweeper = Executors.newSingleThreadScheduledExecutor (r -> {
+      final Thread t = new Thread (r, "erb-callback-correlation-sweeper");
+      t.setDaemon (true);
+      return t;
+    });
+    final long nSweepMillis = aSweepInterval.toMillis ();
+    m_aSweeper.scheduleWithFixedDelay (this::expireOverdue, nSweepMillis, nSweepMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Create a 64-bit hash of the provided key. FNV-1a over the characters, followed by the MurmurHash3
+   * finalizer for a better distribution of the lower bits.
+   *
+   * @param sKey
+   *        The key to hash. May not be <code>null</code>.
+   * @return A non-zero hash value.
+   */
+  static long hash (@NonNull final String sKey)
+  {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < sKey.length (); ++i)
+    {
+      h ^= sKey.charAt (i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h == EMPTY ? 1 : h;
+  }
+
+  @GuardedBy ("m_aLock")
+  private int _findSlot (final long nDocumentIDHash)
+  {
+    final int nMask = m_aDocumentIDHashes.length - 1;
+    int nSlot = (int) nDocumentIDHash & nMask;
+    while (m_aDocumentIDHashes[nSlot] != EMPTY && m_aDocumentIDHashes[nSlot] != nDocumentIDHash)
+      nSlot = (nSlot + 1) & nMask;
+    return nSlot;
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _resize ()
+  {
+    final long [] aOldDocumentIDHashes = m_aDocumentIDHashes;
+    final long [] aOldInvoiceNumberHashes = m_aInvoiceNumberHashes;
+    final long [] aOldDeadlines = m_aDeadlines;
+    final Object [] aOldFutures = m_aFutures;
+    final int nNewCapacity = aOldDocumentIDHashes.length * 2;
+    m_aDocumentIDHashes = new long [nNewCapacity];
+    m_aInvoiceNumberHashes = new long [nNewCapacity];
+    m_aDeadlines = new long [nNewCapacity];
+    m_aFutures = new Object [nNewCapacity];
+    for (int i = 0; i < aOldDocumentIDHashes.length; ++i)
+      if (aOldDocumentIDHashes[i] != EMPTY)
+      {
+        final int nSlot = _findSlot (aOldDocumentIDHashes[i]);
+        m_aDocumentIDHashes[nSlot] = aOldDocumentIDHashes[i];
+        m_aInvoiceNumberHashes[nSlot] = aOldInvoiceNumberHashes[i];
+        m_aDeadlines[nSlot] = aOldDeadlines[i];
+        m_aFutures[nSlot] = aOldFutures[i];
+      }
+  }
+
+  /**
+   * Remove the entry at the provided slot. The following entries of the same cluster are shifted
+   * back, so that no tombstones are needed.
+   */
+  @GuardedBy ("m_aLock")
+  private void _removeSlot (final int nSlot)
+  {
+    final int nMask = m_aDocumentIDHashes.length - 1;
+    int nGap = nSlot;
+    int nCur = nSlot;
+    while (true)
+    {
+      nCur = (nCur + 1) & nMask;
+      final long nHash = m_aDocumentIDHashes[nCur];
+      if (nHash == EMPTY)
+        break;
+      final int nHome = (int) nHash & nMask;
+      // Move the entry into the gap, if the gap lies between its home slot and its current slot
+      if (((nCur - nHome) & nMask) >= ((nCur - nGap) & nMask))
+      {
+        m_aDocumentIDHashes[nGap] = nHash;
+        m_aInvoiceNumberHashes[nGap] = m_aInvoiceNumberHashes[nCur];
+        m_aDeadlines[nGap] = m_aDeadlines[nCur];
+        m_aFutures[nGap] = m_aFutures[nCur];
+        nGap = nCur;
+      }
+    }
+    m_aDocumentIDHashes[nGap] = EMPTY;
+    m_aInvoiceNumberHashes[nGap] = EMPTY;
+    m_aDeadlines[nGap] = 0;
+    m_aFutures[nGap] = null;
+    m_nSize--;
+  }
+
+  /**
+   * Register a successful delivery for which a callback is expected.
+   *
+   * @param aSuccess
+   *        The success element of the delivery response. May not be <code>null</code>.
+   * @param aTimeout
+   *        The maximum duration to wait for the callback. May not be <code>null</code> and must be
+   *        positive.
+   * @return The future that is completed with the matching callback, or with a
+   *         {@link TimeoutException} if the timeout elapsed. Never <code>null</code>.
+   * @see #register(String, String, Duration)
+   */
+  @NonNull
+  public CompletableFuture <CallbackType> register (@NonNull final DeliverySuccessType aSuccess,
+                                                    @NonNull final Duration aTimeout)
+  {
+    ValueEnforcer.notNull (aSuccess, "Success");
+    return register (aSuccess.getDocumentID (), aSuccess.getSupplierInvoiceNumber (), aTimeout);
+  }
+
+  /**
+   * Register a delivery for which a callback is expected. If a delivery with the same document ID
+   * is already registered, its future is returned and the later of both deadlines is used.
+   *
+   * @param sDocumentID
+   *        The document ID assigned by ER&gt;B. May not be <code>null</code>.
+   * @param sSupplierInvoiceNumber
+   *        The supplier invoice number returned by ER&gt;B. May not be <code>null</code>.
+   * @param aTimeout
+   *        The maximum duration to wait for the callback. May not be <code>null</code> and must be
+   *        positive.
+   * @return The future that is completed with the matching callback, or with a
+   *         {@link TimeoutException} if the timeout elapsed. Never <code>null</code>.
+   */
+  @NonNull
+  @SuppressWarnings ("unchecked")
+  public CompletableFuture <CallbackType> register (@NonNull final String sDocumentID,
+                                                    @NonNull final String sSupplierInvoiceNumber,
+                                                    @NonNull final Duration aTimeout)
+  {
+    ValueEnforcer.notNull (sDocumentID, "DocumentID");
+    ValueEnforcer.notNull (sSupplierInvoiceNumber, "SupplierInvoiceNumber");
+    ValueEnforcer.notNull (aTimeout, "Timeout");
+    ValueEnforcer.isFalse (aTimeout.isNegative () || aTimeout.isZero (), "Timeout must be positive");
+
+    final long nDocumentIDHash = hash (sDocumentID);
+    final long nInvoiceNumberHash = hash (sSupplierInvoiceNumber);
+    final long nDeadline = System.nanoTime () + aTimeout.toNanos ();
+    return m_aLock.lockedGet ( () -> {
+      int nSlot = _findSlot (nDocumentIDHash);
+      if (m_aDocumentIDHashes[nSlot] != EMPTY)
+      {
+        // Already registered
+        if (nDeadline - m_aDeadlines[nSlot] > 0)
+          m_aDeadlines[nSlot] = nDeadline;
+        return (CompletableFuture <CallbackType>) m_aFutures[nSlot];
+      }
+
+      // Keep the load factor at or below 0.5
+      if ((m_nSize + 1) * 2 > m_aDocumentIDHashes.length)
+      {
+        _resize ();
+        nSlot = _findSlot (nDocumentIDHash);
+      }
+      final CompletableFuture <CallbackType> ret = new CompletableFuture <> ();
+      m_aDocumentIDHashes[nSlot] = nDocumentIDHash;
+      m_aInvoiceNumberHashes[nSlot] = nInvoiceNumberHash;
+      m_aDeadlines[nSlot] = nDeadline;
+      m_aFutures[nSlot] = ret;
+      m_nSize++;
+      return ret;
+    });
+  }
+
+  /**
+   * Complete the future of the delivery matching the provided callback. A callback matches, if both
+   * the document ID and the supplier invoice number are equal. Callbacks without a match are passed
+   * to the listener for unmatched callbacks.
+   *
+   * @param aCallback
+   *        The received callback. May not be <code>null</code>.
+   */
+  @Override
+  @SuppressWarnings ("unchecked")
+  public void onCallback (@NonNull final CallbackType aCallback)
+  {
+    ValueEnforcer.notNull (aCallback, "Callback");
+
+    final String sDocumentID = aCallback.getDocumentID ();
+    final String sSupplierInvoiceNumber = aCallback.getSupplierInvoiceNumber ();
+    final CompletableFuture <CallbackType> aFuture;
+    if (sDocumentID == null || sSupplierInvoiceNumber == null)
+      aFuture = null;
+    else
+    {
+      final long nDocumentIDHash = hash (sDocumentID);
+      final long nInvoiceNumberHash = hash (sSupplierInvoiceNumber);
+      aFuture = m_aLock.lockedGet ( () -> {
+        final int nSlot = _findSlot (nDocumentIDHash);
+        if (m_aDocumentIDHashes[nSlot] == EMPTY || m_aInvoiceNumberHashes[nSlot] != nInvoiceNumberHash)
+          return null;
+        final CompletableFuture <CallbackType> ret = (CompletableFuture <CallbackType>) m_aFutures[nSlot];
+        _removeSlot (nSlot);
+        return ret;
+      });
+    }
+
+    if (aFuture != null)
+    {
+      m_aMatched.incrementAndGet ();
+      // Outside of the lock, because dependent stages run synchronously
+      aFuture.complete (aCallback);
+    }
+    else
+    {
+      m_aUnmatched.incrementAndGet ();
+      if (m_aUnmatchedListener != null)
+        m_aUnmatchedListener.onCallback (aCallback);
+      else
+        LOGGER.warn ("Received a callback for the unknown document ID '" + sDocumentID + "'");
+    }
+  }
+
+  /**
+   * Evict all entries whose timeout elapsed, and complete their futures with a
+   * {@link TimeoutException}. This is called regularly by a background thread, but may also be
+   * called manually.
+   *
+   * @return The number of evicted entries.
+   */
+  @Nonnegative
+  @SuppressWarnings ("unchecked")
+  public int expireOverdue ()
+  {
+    final long nNow = System.nanoTime ();
+    final List <CompletableFuture <CallbackType>> aExpired = new ArrayList <> ();
+    m_aLock.locked ( () -> {
+      int i = 0;
+      while (i < m_aDocumentIDHashes.length)
+      {
+        if (m_aDocumentIDHashes[i] != EMPTY && nNow - m_aDeadlines[i] >= 0)
+        {
+          aExpired.add ((CompletableFuture <CallbackType>) m_aFutures[i]);
+          // Another entry may have been shifted into this slot, so check it again
+          _removeSlot (i);
+        }
+        else
+          i++;
+      }
+    });
+
+    if (!aExpired.isEmpty ())
+    {
+      m_aExpired.addAndGet (aExpired.size ());
+      final TimeoutException ex = new TimeoutException ("No callback was received within the timeout");
+      for (final CompletableFuture <CallbackType> aFuture : aExpired)
+        aFuture.completeExceptionally (ex);
+    }
+    return aExpired.size ();
+  }
+
+  /**
+   * @return The number of deliveries currently waiting for a callback.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    return m_aLock.lockedGet ( () -> Integer.valueOf (m_nSize)).intValue ();
+  }
+
+  /**
+   * @return The number of callbacks that completed a registered delivery.
+   */
+  @Nonnegative
+  public long getMatchedCount ()
+  {
+    return m_aMatched.get ();
+  }
+
+  /**
+   * @return The number of callbacks without a registered delivery.
+   */
+  @Nonnegative
+  public long getUnmatchedCount ()
+  {
+    return m_aUnmatched.get ();
+  }
+
+  /**
+   * @return The number of registered deliveries that timed out.
+   */
+  @Nonnegative
+  public long getExpiredCount ()
+  {
+    return m_aExpired.get ();
+  }
+
+  /**
+   * Stop the background sweeping and cancel the futures of all remaining entries.
+   */
+  @SuppressWarnings ("unchecked")
+  public void close ()
+  {
+    m_aSweeper.shutdownNow ();
+    final List <CompletableFuture <CallbackType>> aRemaining = new ArrayList <> ();
+    m_aLock.locked ( () -> {
+      for (final Object aFuture : m_aFutures)
+        if (aFuture != null)
+          aRemaining.add ((CompletableFuture <CallbackType>) aFuture);
+      m_aDocumentIDHashes = new long [INITIAL_CAPACITY];
+      m_aInvoiceNumberHashes = new long [INITIAL_CAPACITY];
+      m_aDeadlines = new long [INITIAL_CAPACITY];
+      m_aFutures = new Object [INITIAL_CAPACITY];
+      m_nSize = 0;
+    });
+    for (final CompletableFuture <CallbackType> aFuture : aRemaining)
+      aFuture.cancel (false);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("UnmatchedListener", m_aUnmatchedListener)
+                                       .append ("Size", size ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.callback100;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.jspecify.annotations.NonNull;
+
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * An {@link ICallback100PrintableInvoiceSink} that stores each printable invoice as a file in a
+ * directory. The file name is derived from the document ID, so that a repeated callback overwrites
+ * the previous file. Use {@link #getFile(String, String)} to locate the file of a received
+ * callback.<br>
+ * Each printable invoice is first written to a separate temporary file in the same directory, that
+ * is atomically moved to its final name only after it was verified. Readers therefore never see a
+ * partial file, concurrent callbacks for the same document ID don't interfere, and a rejected
+ * callback leaves a previously received file untouched.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public class Callback100PrintableInvoiceDirectorySink implements ICallback100PrintableInvoiceSink
+{
+  /**
+   * The stream to the temporary file of a single printable invoice.
+   */
+  private static final class TempFileOutputStream extends FilterOutputStream
+  {
+    private final Path m_aTempFile;
+
+    TempFileOutputStream (@NonNull final Path aTempFile) throws IOException
+    {
+      super (Files.newOutputStream (aTempFile));
+      m_aTempFile = aTempFile;
+    }
+
+    @Override
+    public void write (final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      // Avoid the byte-wise default implementation
+      out.write (aBuf, nOfs, nLen);
+    }
+  }
+
+  private final Path m_aDirectory;
+
+  /**
+   * Constructor
+   *
+   * @param aDirectory
+   *        The directory to store the files in. May not be <code>null</code>. It is created if it
+   *        does not exist.
+   * @throws IOException
+   *         If the directory cannot be created
+   */
+  public Callback100PrintableInvoiceDirectorySink (@NonNull final Path aDirectory) throws IOException
+  {
+    ValueEnforcer.notNull (aDirectory, "Directory");
+    m_aDirectory = Files.createDirectories (aDirectory);
+  }
+
+  /**
+   * @return The directory in which the files are stored. Never <code>null</code>.
+   */
+  @NonNull
+  public final Path getDirectory ()
+  {
+    return m_aDirectory;
+  }
+
+  /**
+   * Get the file of the printable invoice of a callback.
+   *
+   * @param sDocumentID
+   *        The document ID of the callback. May not be <code>null</code>.
+   * @param sMimeType
+   *        The MIME type of the printable invoice. May not be <code>null</code>.
+   * @return The file. Never <code>null</code>. It only exists if the printable invoice was
+   *         received.
+   */
+  @NonNull
+  public Path getFile (@NonNull final String sDocumentID, @NonNull final String sMimeType)
+  {
+    ValueEnforcer.notNull (sDocumentID, "DocumentID");
+    ValueEnforcer.notNull (sMimeType, "MimeType");
+    return m_aDirectory.resolve (_getFileName (sDocumentID, sMimeType));
+  }
+
+  @NonNull
+  private static String _getFileName (@NonNull final String sDocumentID, @NonNull final String sMimeType)
+  {
+    // Don't allow path separators or other special characters from the outside
+    final String sName = sDocumentID.replaceAll ("[^A-Za-z0-9._-]", "_");
+    return sName + ("application/pdf".equals (sMimeType) ? ".pdf" : ".bin");
+  }
+
+  @NonNull
+  private static Path _getTempFile (@NonNull final OutputStream aOS)
+  {
+    ValueEnforcer.isTrue (aOS instanceof TempFileOutputStream, "The stream was not opened by this sink");
+    return ((TempFileOutputStream) aOS).m_aTempFile;
+  }
+
+  @Override
+  @NonNull
+  public OutputStream openStream (@NonNull final String sDocumentID, @NonNull final String sMimeType) throws IOException
+  {
+    // Unique name, so that concurrent callbacks for the same document ID don't collide
+    final Path aTempFile = Files.createTempFile (m_aDirectory, _getFileName (sDocumentID, sMimeType) + ".", ".tmp");
+    try
+    {
+      return new TempFileOutputStream (aTempFile);
+    }
+    catch (final IOException ex)
+    {
+      Files.deleteIfExists (aTempFile);
+      throw ex;
+    }
+  }
+
+  @Override
+  public void commit (@NonNull final String sDocumentID,
+                      @NonNull final String sMimeType,
+                      @NonNull final OutputStream aOS) throws IOException
+  {
+    Files.move (_getTempFile (aOS),
+                getFile (sDocumentID, sMimeType),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @Override
+  public void discard (@NonNull final String sDocumentID,
+                       @NonNull final String sMimeType,
+                       @NonNull final OutputStream aOS) throws IOException
+  {
+    // A previously received file stays untouched
+    Files.deleteIfExists (_getTempFile (aOS));
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Directory", m_aDirectory).getToString ();
+  }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.callback100;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+import com.helger.erechnung.erb.ws.WSSOAPFaultException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.CallbackType;
+import jakarta.xml.bind.JAXBException;
+
+/**
+ * Receiver for the asynchronous callbacks that ER&gt;B sends after processing a delivered invoice,
+ * if a callback URL was provided in the delivery settings. Incoming requests are parsed with a
+ * streaming parser and handed to an {@link ICallback100Listener} on a bounded thread pool. If all
+ * listener threads are busy and the queue is full, the request is rejected with HTTP 503, so that
+ * ER&gt;B repeats it later.<br>
+ * The receiver can either run its own embedded HTTP server (see
+ * {@link #start(InetSocketAddress, String)}) or be plugged into any other HTTP server (e.g. a
+ * servlet) via {@link #handleRequest(InputStream)}.<br>
+ * A request is acknowledged as soon as the callback was queued. A listener that needs to survive a
+ * crash must therefore persist the callback itself.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public class Callback100Receiver implements AutoCloseable
+{
+  public static final int DEFAULT_MAX_CONCURRENCY = 4;
+  public static final int DEFAULT_MAX_QUEUE_SIZE = 1000;
+
+  /** HTTP status code for an accepted callback */
+  public static final int HTTP_ACCEPTED = 202;
+  /** HTTP status code for a malformed callback */
+  public static final int HTTP_BAD_REQUEST = 400;
+  /** HTTP status code if the callback cannot be queued */
+  public static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (Callback100Receiver.class);
+
+  private final ICallback100Listener m_aListener;
+  private final int m_nMaxConcurrency;
+  private final ThreadPoolExecutor m_aListenerExecutor;
+  private final AtomicLong m_aAccepted = new AtomicLong ();
+  private final AtomicLong m_aRejected = new AtomicLong ();
+  private final AtomicLong m_aMalformed = new AtomicLong ();
+  private final AtomicLong m_aListenerFailures = new AtomicLong ();
+  private final SimpleLock m_aLock = new SimpleLock ();
+  @GuardedBy ("m_aLock")
+  private HttpServer m_aServer;
+  @GuardedBy ("m_aLock")
+  private ExecutorService m_aServerExecutor;
+  @GuardedBy ("m_aLock")
+  private String m_sPath;
+  private volatile ICallback100PrintableInvoiceSink m_aPrintableInvoiceSink;
+
+  /**
+   * Constructor with {@link #DEFAULT_MAX_CONCURRENCY} and {@link #DEFAULT_MAX_QUEUE_SIZE}.
+   *
+   * @param aListener
+   *        The listener for the received callbacks. May not be <code>null</code>.
+   */
+  public Callback100Receiver (@NonNull final ICallback100Listener aListener)
+  {
+    this (aListener, DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_QUEUE_SIZE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aListener
+   *        The listener for the received callbacks. May not be <code>null</code>.
+   * @param nMaxConcurrency
+   *        The maximum number of threads that invoke the listener concurrently. Must be &gt; 0.
+   * @param nMaxQueueSize
+   *        The maximum number of received callbacks that wait for a listener thread. Must be &gt;
+   *        0.
+   */
+  public Callback100Receiver (@NonNull final ICallback100Listener aListener,
+                              final int nMaxConcurrency,
+                              final int nMaxQueueSize)
+  {
+    ValueEnforcer.notNull (aListener, "Listener");
+    ValueEnforcer.isGT0 (nMaxConcurrency, "MaxConcurrency");
+    ValueEnforcer.isGT0 (nMaxQueueSize, "MaxQueueSize");
+    m_aListener = aListener;
+    m_nMaxConcurrency = nMaxConcurrency;
+    m_aListenerExecutor = new ThreadPoolExecutor (nMaxConcurrency,
+                                                  nMaxConcurrency,
+                                                  0,
+                                                  TimeUnit.MILLISECONDS,
+                                                  new ArrayBlockingQueue <> (nMaxQueueSize),
+                                                  _createThreadFactory ("erb-callback-listener-"),
+                                                  new ThreadPoolExecutor.AbortPolicy ());
+  }
+
+  @NonNull
+  private static ThreadFactory _createThreadFactory (@NonNull final String sPrefix)
+  {
+    final AtomicInteger aThreadIndex = new AtomicInteger ();
+    return r -> {
+      final Thread t = new Thread (r, sPrefix + aThreadIndex.incrementAndGet ());
+      t.setDaemon (true);
+      return t;
+    };
+  }
+
+  /**
+   * @return The sink for the printable invoices of the received callbacks. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final ICallback100PrintableInvoiceSink getPrintableInvoiceSink ()
+  {
+    return m_aPrintableInvoiceSink;
+  }
+
+  /**
+   * Set the sink for the printable invoices of the received callbacks. If a sink is set, the
+   * printable invoice is streamed into the sink while the request is parsed and verified against
+   * the announced size and hash value, and the listener only receives the metadata. Otherwise the
+   * printable invoice is passed to the listener as a byte array. Note: the sink is invoked before
+   * the callback is queued, so the content may also be written for a callback that is rejected
+   * afterwards and repeated by ER&gt;B.
+   *
+   * @param aPrintableInvoiceSink
+   *        The sink to use. May be <code>null</code>.
+   * @return this for chaining
+   */
+  @NonNull
+  public final Callback100Receiver setPrintableInvoiceSink (@Nullable final ICallback100PrintableInvoiceSink aPrintableInvoiceSink)
+  {
+    m_aPrintableInvoiceSink = aPrintableInvoiceSink;
+    return this;
+  }
+
+  private void _invokeListener (@NonNull final CallbackType aCallback)
+  {
+    try
+    {
+      m_aListener.onCallback (aCallback);
+    }
+    catch (final RuntimeException ex)
+    {
+      m_aListenerFailures.incrementAndGet ();
+      LOGGER.error ("Callback listener failed for document ID '" + aCallback.getDocumentID () + "'", ex);
+    }
+  }
+
+  /**
+   * Handle a single callback request. This is the integration point for other HTTP servers - the
+   * request body must be passed in, and the returned HTTP status code must be sent back without a
+   * response body.
+   *
+   * @param aIS
+   *        The HTTP request body. May not be <code>null</code>. It is not closed.
+   * @return {@link #HTTP_ACCEPTED} if the callback was queued, {@link #HTTP_BAD_REQUEST} if the
+   *         request is not a valid callback, or {@link #HTTP_SERVICE_UNAVAILABLE} if the queue is
+   *         full, the printable invoice sink failed or the receiver was closed.
+   */
+  public int handleRequest (@NonNull @WillNotClose final InputStream aIS)
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+
+    final CallbackType aCallback;
+    try
+    {
+      aCallback = Callback100SOAPCodec.readCallbackRequest (aIS, m_aPrintableInvoiceSink);
+    }
+    catch (final XMLStreamException | JAXBException | WSSOAPFaultException ex)
+    {
+      m_aMalformed.incrementAndGet ();
+      LOGGER.warn ("Received a malformed callback request: " + ex.getMessage ());
+      return HTTP_BAD_REQUEST;
+    }
+    catch (final IOException ex)
+    {
+      // Our fault - let ER>B repeat the callback
+      m_aRejected.incrementAndGet ();
+      LOGGER.error ("Failed to store the printable invoice of a callback", ex);
+      return HTTP_SERVICE_UNAVAILABLE;
+    }
+
+    try
+    {
+      m_aListenerExecutor.execute ( () -> _invokeListener (aCallback));
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      m_aRejected.incrementAndGet ();
+      LOGGER.warn ("Rejecting the callback for document ID '" + aCallback.getDocumentID () + "' - the queue is full");
+      return HTTP_SERVICE_UNAVAILABLE;
+    }
+    m_aAccepted.incrementAndGet ();
+    return HTTP_ACCEPTED;
+  }
+
+  private void _handle (@NonNull final HttpExchange aExchange) throws IOException
+  {
+    try (aExchange)
+    {
+      // Method not allowed
+      int nStatus = 405;
+      if ("POST".equals (aExchange.getRequestMethod ()))
+        try (final InputStream aIS = aExchange.getRequestBody ())
+        {
+          nStatus = handleRequest (aIS);
+        }
+      aExchange.sendResponseHeaders (nStatus, -1);
+    }
+  }
+
+  /**
+   * Start an embedded HTTP server that receives the callbacks. This may only be called once.
+   *
+   * @param aAddress
+   *        The address to listen on. May not be <code>null</code>. Use port 0 for a random free
+   *        port.
+   * @param sPath
+   *        The context path of the callback endpoint, e.g. <code>/erb-callback</code>. May
+   *        neither be <code>null</code> nor empty.
+   * @return this for chaining
+   * @throws IOException
+   *         If the server cannot be started
+   * @throws IllegalStateException
+   *         If the server was already started
+   */
+  @NonNull
+  public Callback100Receiver start (@NonNull final InetSocketAddress aAddress, @NonNull @Nonempty final String sPath) throws IOException
+  {
+    ValueEnforcer.notNull (aAddress, "Address");
+    ValueEnforcer.notEmpty (sPath, "Path");
+
+    m_aLock.lock ();
+    try
+    {
+      if (m_aServer != null)
+        throw new IllegalStateException ("The callback receiver was already started");
+
+      final HttpServer aServer = HttpServer.create (aAddress, 0);
+      aServer.createContext (sPath, this::_handle);
+      // Parsing happens on these threads, the listener is invoked on other threads
+      m_aServerExecutor = Executors.newFixedThreadPool (m_nMaxConcurrency, _createThreadFactory ("erb-callback-http-"));
+      aServer.setExecutor (m_aServerExecutor);
+      aServer.start ();
+      m_aServer = aServer;
+      m_sPath = sPath;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+    LOGGER.info ("Started ER>B callback receiver at " + getURL ());
+    return this;
+  }
+
+  /**
+   * @return The URL of the callback endpoint to be used in the delivery settings, or
+   *         <code>null</code> if the embedded server was not started. If the server listens on all
+   *         interfaces, <code>localhost</code> is used as host name.
+   */
+  @Nullable
+  public URL getURL ()
+  {
+    return m_aLock.lockedGet ( () -> {
+      if (m_aServer == null)
+        return null;
+      final InetSocketAddress aAddress = m_aServer.getAddress ();
+      final String sHost = aAddress.getAddress ().isAnyLocalAddress () ? "localhost" : aAddress.getHostString ();
+      try
+      {
+        return new URL ("http://" + sHost + ":" + aAddress.getPort () + m_sPath);
+      }
+      catch (final MalformedURLException ex)
+      {
+        throw new IllegalStateException (ex);
+      }
+    });
+  }
+
+  /**
+   * @return The number of callbacks that were accepted and handed to the listener.
+   */
+  @Nonnegative
+  public long getAcceptedCount ()
+  {
+    return m_aAccepted.get ();
+  }
+
+  /**
+   * @return The number of callbacks that were rejected, because the queue was full or the printable
+   *         invoice could not be stored.
+   */
+  @Nonnegative
+  public long getRejectedCount ()
+  {
+    return m_aRejected.get ();
+  }
+
+  /**
+   * @return The number of requests that could not be parsed.
+   */
+  @Nonnegative
+  public long getMalformedCount ()
+  {
+    return m_aMalformed.get ();
+  }
+
+  /**
+   * @return The number of callbacks for which the listener threw an exception.
+   */
+  @Nonnegative
+  public long getListenerFailureCount ()
+  {
+    return m_aListenerFailures.get ();
+  }
+
+  /**
+   * Stop the embedded HTTP server (if started) and wait until all queued callbacks were handed to
+   * the listener.
+   */
+  public void close ()
+  {
+    m_aLock.locked ( () -> {
+      if (m_aServer != null)
+      {
+        m_aServer.stop (0);
+        m_aServerExecutor.shutdown ();
+      }
+    });
+    m_aListenerExecutor.shutdown ();
+    try
+    {
+      if (!m_aListenerExecutor.awaitTermination (30, TimeUnit.SECONDS))
+        LOGGER.warn ("Not all queued callbacks were handled within 30 seconds");
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Listener", m_aListener)
+                                       .append ("MaxConcurrency", m_nMaxConcurrency)
+                                       .getToString ();
+  }
+}
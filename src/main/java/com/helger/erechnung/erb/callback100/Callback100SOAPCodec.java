@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.callback100;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.annotation.style.PresentForCodeCoverage;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws.WSJAXBContextRegistry;
+import com.helger.erechnung.erb.ws.WSSOAPFaultException;
+
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.CallbackType;
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.ObjectFactory;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+
+/**
+ * Streaming encoder and decoder for the SOAP messages of the ER&gt;B invoice delivery callback 1.0.
+ * This does not require a JAX-WS runtime.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@Immutable
+public final class Callback100SOAPCodec
+{
+  /** The XML namespace URI of the callback messages */
+  public static final String NAMESPACE_URI = "http://erb.eproc.brz.gv.at/ws/invoicedeliverycallback/201305/";
+  /** The SOAP action of the deliverInvoiceCallback operation */
+  public static final String SOAP_ACTION = "deliverInvoiceCallback";
+
+  private static final QName QNAME_CALLBACK = new QName (NAMESPACE_URI, "deliverInvoiceCallbackInvoiceInput");
+  private static final QName QNAME_DOCUMENT_ID = new QName (NAMESPACE_URI, "DocumentID");
+  private static final QName QNAME_PRINTABLE_INVOICE = new QName (NAMESPACE_URI, "PrintableInvoice");
+
+  @PresentForCodeCoverage
+  private static final Callback100SOAPCodec INSTANCE = new Callback100SOAPCodec ();
+
+  /**
+   * Decodes the content of the <code>PrintableInvoice</code> element into an
+   * {@link ICallback100PrintableInvoiceSink} and hides it from the JAXB unmarshaller, which only
+   * sees the attributes. Size and hash value are verified when the end of the element is reached.
+   * Errors are remembered, because the unmarshaller wraps all exceptions of the reader.
+   */
+  private static final class PrintableInvoiceStreamingReader extends StreamReaderDelegate
+  {
+    // Must be a multiple of 4
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final ICallback100PrintableInvoiceSink m_aSink;
+    private StringBuilder m_aDocumentIDText;
+    private String m_sDocumentID;
+    private boolean m_bInPrintableInvoice;
+    private Exception m_aFailure;
+
+    PrintableInvoiceStreamingReader (@NonNull final XMLStreamReader aReader,
+                                     @NonNull final ICallback100PrintableInvoiceSink aSink)
+    {
+      super (aReader);
+      m_aSink = aSink;
+    }
+
+    @Override
+    public int next () throws XMLStreamException
+    {
+      if (m_bInPrintableInvoice)
+      {
+        m_bInPrintableInvoice = false;
+        return _streamPrintableInvoice ();
+      }
+
+      final int nEvent = super.next ();
+      if (nEvent == XMLStreamConstants.START_ELEMENT)
+      {
+        if (QNAME_DOCUMENT_ID.equals (getName ()))
+          m_aDocumentIDText = new StringBuilder ();
+        else
+          if (QNAME_PRINTABLE_INVOICE.equals (getName ()))
+            m_bInPrintableInvoice = true;
+      }
+      else
+        if (m_aDocumentIDText != null)
+        {
+          if (nEvent == XMLStreamConstants.CHARACTERS || nEvent == XMLStreamConstants.CDATA)
+            m_aDocumentIDText.append (getText ());
+          else
+            if (nEvent == XMLStreamConstants.END_ELEMENT)
+            {
+              m_sDocumentID = m_aDocumentIDText.toString ().trim ();
+              m_aDocumentIDText = null;
+            }
+        }
+      return nEvent;
+    }
+
+    @NonNull
+    private String _getRequiredAttribute (@NonNull final String sName) throws XMLStreamException
+    {
+      final String ret = getAttributeValue (null, sName);
+      if (ret == null)
+        throw new XMLStreamException ("The PrintableInvoice element is missing the '" + sName + "' attribute");
+      return ret;
+    }
+
+    @NonNull
+    private XMLStreamException _fail (@NonNull final Exception ex)
+    {
+      m_aFailure = ex;
+      return ex instanceof XMLStreamException ? (XMLStreamException) ex : new XMLStreamException (ex.getMessage (), ex);
+    }
+
+    private int _streamPrintableInvoice () throws XMLStreamException
+    {
+      // Still positioned on the start element
+      final String sMimeType = _getRequiredAttribute ("mimetype");
+      final String sOriginalSize = _getRequiredAttribute ("originalsize");
+      final String sHashAlgo = _getRequiredAttribute ("hashalgo");
+      final String sHashValue = _getRequiredAttribute ("hashvalue");
+      if (m_sDocumentID == null)
+        throw _fail (new XMLStreamException ("The DocumentID element must precede the PrintableInvoice element"));
+
+      final MessageDigest aMD;
+      try
+      {
+        aMD = MessageDigest.getInstance (sHashAlgo);
+      }
+      catch (final NoSuchAlgorithmException ex)
+      {
+        throw _fail (new XMLStreamException ("Unsupported hash algorithm '" + sHashAlgo + "'", ex));
+      }
+
+      final Base64.Decoder aDecoder = Base64.getDecoder ();
+      final byte [] aEncoded = new byte [CHUNK_SIZE];
+      final byte [] aDecoded = new byte [CHUNK_SIZE / 4 * 3];
+      int nEncoded = 0;
+      long nSize = 0;
+      int nEvent;
+      OutputStream aOpenedOS = null;
+      boolean bValid = false;
+      try
+      {
+        try (final OutputStream aOS = m_aSink.openStream (m_sDocumentID, sMimeType))
+        {
+          aOpenedOS = aOS;
+          while ((nEvent = super.next ()) != XMLStreamConstants.END_ELEMENT)
+          {
+            if (nEvent == XMLStreamConstants.CHARACTERS ||
+                nEvent == XMLStreamConstants.CDATA ||
+                nEvent == XMLStreamConstants.SPACE)
+            {
+              final char [] aChars = getTextCharacters ();
+              final int nEnd = getTextStart () + getTextLength ();
+              for (int i = getTextStart (); i < nEnd; ++i)
+              {
+                final char c = aChars[i];
+                if (!Character.isWhitespace (c))
+                {
+                  aEncoded[nEncoded++] = (byte) c;
+                  if (nEncoded == CHUNK_SIZE)
+                  {
+                    final int nDecoded = aDecoder.decode (aEncoded, aDecoded);
+                    aMD.update (aDecoded, 0, nDecoded);
+                    aOS.write (aDecoded, 0, nDecoded);
+                    nSize += nDecoded;
+                    nEncoded = 0;
+                  }
+                }
+              }
+            }
+            else
+              if (nEvent != XMLStreamConstants.COMMENT && nEvent != XMLStreamConstants.PROCESSING_INSTRUCTION)
+                throw new XMLStreamException ("Unexpected content in the PrintableInvoice element");
+          }
+          if (nEncoded > 0)
+          {
+            final int nDecoded = aDecoder.decode (Arrays.copyOf (aEncoded, nEncoded), aDecoded);
+            aMD.update (aDecoded, 0, nDecoded);
+            aOS.write (aDecoded, 0, nDecoded);
+            nSize += nDecoded;
+          }
+        }
+
+        if (!Long.toString (nSize).equals (sOriginalSize.trim ()))
+          throw new XMLStreamException ("The PrintableInvoice has " + nSize + " bytes but " + sOriginalSize + " bytes were announced");
+        final String sActualHashValue = HexFormat.of ().formatHex (aMD.digest ());
+        if (!sActualHashValue.equalsIgnoreCase (sHashValue.trim ()))
+          throw new XMLStreamException ("The " +
+                                        sHashAlgo +
+                                        " hash value of the PrintableInvoice is " +
+                                        sActualHashValue +
+                                        " but " +
+                                        sHashValue +
+                                        " was announced");
+        m_aSink.commit (m_sDocumentID, sMimeType, aOpenedOS);
+        bValid = true;
+      }
+      catch (final IllegalArgumentException ex)
+      {
+        throw _fail (new XMLStreamException ("The PrintableInvoice is not valid Base64", ex));
+      }
+      catch (final IOException | XMLStreamException ex)
+      {
+        throw _fail (ex);
+      }
+      finally
+      {
+        if (!bValid && aOpenedOS != null)
+          try
+          {
+            m_aSink.discard (m_sDocumentID, sMimeType, aOpenedOS);
+          }
+          catch (final IOException ex)
+          {
+            // Keep the original failure
+            if (m_aFailure == null)
+              m_aFailure = ex;
+          }
+      }
+      return XMLStreamConstants.END_ELEMENT;
+    }
+
+    void rethrowFailure () throws XMLStreamException, IOException
+    {
+      if (m_aFailure instanceof IOException)
+        throw (IOException) m_aFailure;
+      if (m_aFailure instanceof XMLStreamException)
+        throw (XMLStreamException) m_aFailure;
+    }
+  }
+
+  private Callback100SOAPCodec ()
+  {}
+
+  /**
+   * Write a complete deliverInvoiceCallback SOAP request to the provided output stream. This is
+   * what ER&gt;B sends and is mainly meant for testing.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @param aCallback
+   *        The callback to write. May not be <code>null</code>.
+   * @throws IOException
+   *         In case writing the request failed
+   * @throws JAXBException
+   *         In case the callback could not be serialized
+   */
+  public static void writeCallbackRequest (@NonNull @WillNotClose final OutputStream aOS,
+                                           @NonNull final CallbackType aCallback) throws IOException, JAXBException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    ValueEnforcer.notNull (aCallback, "Callback");
+
+    SOAPStreamHelper.writeEnvelopeStart (aOS, new byte [0]);
+    WSJAXBContextRegistry.marshalFragment (ObjectFactory.class,
+                                           new JAXBElement <> (QNAME_CALLBACK, CallbackType.class, aCallback),
+                                           aOS);
+    SOAPStreamHelper.writeEnvelopeEnd (aOS);
+  }
+
+  /**
+   * Read a deliverInvoiceCallback SOAP request from the provided input stream. The request is
+   * parsed with a streaming parser, so that the SOAP envelope is never held in memory as a DOM.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>. It is not closed.
+   * @return The callback contained in the request. Never <code>null</code>.
+   * @throws XMLStreamException
+   *         In case the request is not a well-formed callback SOAP request
+   * @throws JAXBException
+   *         In case the callback content could not be parsed
+   * @throws WSSOAPFaultException
+   *         In case the request contains a SOAP fault
+   */
+  @NonNull
+  public static CallbackType readCallbackRequest (@NonNull @WillNotClose final InputStream aIS) throws XMLStreamException,
+                                                                                                 JAXBException,
+                                                                                                 WSSOAPFaultException
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+
+    final XMLStreamReader aReader = SOAPStreamHelper.createXMLStreamReader (aIS);
+    try
+    {
+      SOAPStreamHelper.moveToBodyContent (aReader);
+      if (!QNAME_CALLBACK.equals (aReader.getName ()))
+        throw new XMLStreamException ("Expected " + QNAME_CALLBACK + " but found " + aReader.getName ());
+      return WSJAXBContextRegistry.unmarshal (ObjectFactory.class, aReader, CallbackType.class);
+    }
+    finally
+    {
+      aReader.close ();
+    }
+  }
+
+  /**
+   * Read a deliverInvoiceCallback SOAP request from the provided input stream, and stream the
+   * printable invoice (if present) into the provided sink. The Base64 content is decoded and hashed
+   * chunk by chunk, so that the memory consumption does not depend on the size of the printable
+   * invoice. The <code>PrintableInvoice</code> element of the returned callback only contains the
+   * metadata and no value.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>. It is not closed.
+   * @param aSink
+   *        The sink for the printable invoice. May be <code>null</code>, in which case the printable
+   *        invoice is contained in the returned callback as a byte array.
+   * @return The callback contained in the request. Never <code>null</code>.
+   * @throws XMLStreamException
+   *         In case the request is not a well-formed callback SOAP request, or if size or hash value
+   *         of the printable invoice don't match the announced values. The sink was already asked
+   *         to discard the content in this case. Only verified content is committed to the sink.
+   * @throws JAXBException
+   *         In case the callback content could not be parsed
+   * @throws WSSOAPFaultException
+   *         In case the request contains a SOAP fault
+   * @throws IOException
+   *         In case the sink failed
+   * @since 5.0.2
+   */
+  @NonNull
+  public static CallbackType readCallbackRequest (@NonNull @WillNotClose final InputStream aIS,
+                                                  @Nullable final ICallback100PrintableInvoiceSink aSink) throws XMLStreamException,
+                                                                                                          JAXBException,
+                                                                                                          WSSOAPFaultException,
+                                                                                                          IOException
+  {
+    if (aSink == null)
+      return readCallbackRequest (aIS);
+
+    ValueEnforcer.notNull (aIS, "InputStream");
+
+    final XMLStreamReader aReader = SOAPStreamHelper.createXMLStreamReader (aIS);
+    try
+    {
+      SOAPStreamHelper.moveToBodyContent (aReader);
+      if (!QNAME_CALLBACK.equals (aReader.getName ()))
+        throw new XMLStreamException ("Expected " + QNAME_CALLBACK + " but found " + aReader.getName ());
+      final PrintableInvoiceStreamingReader aStreamingReader = new PrintableInvoiceStreamingReader (aReader, aSink);
+      try
+      {
+        return WSJAXBContextRegistry.unmarshal (ObjectFactory.class, aStreamingReader, CallbackType.class);
+      }
+      catch (final JAXBException ex)
+      {
+        // Prefer the original failure over the wrapped one
+        aStreamingReader.rethrowFailure ();
+        throw ex;
+      }
+    }
+    finally
+    {
+      aReader.close ();
+    }
+  }
+}
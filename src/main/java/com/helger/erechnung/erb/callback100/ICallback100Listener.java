@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.callback100;
+
+import org.jspecify.annotations.NonNull;
+
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.CallbackType;
+
+/**
+ * Listener interface for the callbacks received by {@link Callback100Receiver}. The listener is
+ * invoked concurrently from multiple threads, so implementations must be thread-safe.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@FunctionalInterface
+public interface ICallback100Listener
+{
+  /**
+   * Invoked once for each received callback. The callback can be correlated with the original
+   * delivery via the document ID and the supplier invoice number of the delivery response.
+   *
+   * @param aCallback
+   *        The received callback. Never <code>null</code>.
+   */
+  void onCallback (@NonNull CallbackType aCallback);
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.callback100;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jspecify.annotations.NonNull;
+
+/**
+ * Target for the printable invoice (usually a PDF) contained in a callback. If a sink is used, the
+ * Base64 encoded content is decoded while the request is parsed and written to the stream of the
+ * sink, so that the printable invoice is never held in memory. The
+ * <code>PrintableInvoice</code> element of the resulting callback then only contains the metadata.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ * @see Callback100SOAPCodec#readCallbackRequest(java.io.InputStream, ICallback100PrintableInvoiceSink)
+ */
+public interface ICallback100PrintableInvoiceSink
+{
+  /**
+   * Open the stream to write the decoded printable invoice to. The stream is closed by the caller,
+   * and afterwards exactly one of {@link #commit(String, String, OutputStream)} or
+   * {@link #discard(String, String, OutputStream)} is invoked with it. The same document ID may be
+   * received by multiple concurrent callbacks, so each call must return an independent stream.
+   *
+   * @param sDocumentID
+   *        The document ID of the callback. Never <code>null</code>.
+   * @param sMimeType
+   *        The MIME type of the printable invoice, e.g. <code>application/pdf</code>. Never
+   *        <code>null</code>.
+   * @return The stream to write to. May not be <code>null</code>.
+   * @throws IOException
+   *         If the stream cannot be opened
+   */
+  @NonNull
+  OutputStream openStream (@NonNull String sDocumentID, @NonNull String sMimeType) throws IOException;
+
+  /**
+   * Invoked after the stream was closed, if the written content matches the size and hash value
+   * announced in the callback. Only now the content may be used.
+   *
+   * @param sDocumentID
+   *        The document ID of the callback. Never <code>null</code>.
+   * @param sMimeType
+   *        The MIME type of the printable invoice. Never <code>null</code>.
+   * @param aOS
+   *        The closed stream as returned by {@link #openStream(String, String)}. Never
+   *        <code>null</code>.
+   * @throws IOException
+   *         If the content cannot be committed. The callback is rejected in this case.
+   */
+  default void commit (@NonNull final String sDocumentID,
+                       @NonNull final String sMimeType,
+                       @NonNull final OutputStream aOS) throws IOException
+  {}
+
+  /**
+   * Invoked after the stream was closed, if the written content is incomplete or does not match the
+   * size or hash value announced in the callback. The content must not be used.
+   *
+   * @param sDocumentID
+   *        The document ID of the callback. Never <code>null</code>.
+   * @param sMimeType
+   *        The MIME type of the printable invoice. Never <code>null</code>.
+   * @param aOS
+   *        The closed stream as returned by {@link #openStream(String, String)}. Never
+   *        <code>null</code>.
+   * @throws IOException
+   *         If the content cannot be discarded
+   */
+  default void discard (@NonNull final String sDocumentID,
+                        @NonNull final String sMimeType,
+                        @NonNull final OutputStream aOS) throws IOException
+  {}
+}
@@ -16,50 +16,382 @@
  */
 package com.helger.erechnung.erb.ws;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.http.HttpConnectTimeoutException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
 
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Node;
 
 import com.helger.annotation.Nonempty;
-import com.helger.annotation.concurrent.NotThreadSafe;
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.annotation.style.CodingStyleguideUnaware;
+import com.helger.annotation.style.OverrideOnDemand;
+import com.helger.base.concurrent.SimpleLock;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.tostring.ToStringGenerator;
 import com.helger.base.trait.IGenericImplTrait;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.io.resource.IReadableResource;
+import com.helger.wsclient.WSClientConfig;
+import com.helger.wsclient.WSHelper;
+import com.helger.xml.serialize.write.XMLWriter;
+import com.helger.xml.serialize.write.XMLWriterSettings;
+
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.ws.BindingProvider;
+import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPHandler;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+import jakarta.xml.ws.soap.SOAPBinding;
 
 /**
- * Abstract base class for for the e-Rechnung.gv.at Webservice wrapper.
+ * Abstract base class for the e-Rechnung.gv.at Webservice wrapper.<br>
+ * A configured sender may be shared: the delivery methods of the implementations may be invoked
+ * from any number of threads at the same time. Each delivery uses its own port or connection - if
+ * port pooling is enabled (see {@link #setPortPoolingEnabled(boolean)}) the JAX-WS service is
+ * created only once and each pre-configured port is handed out to one delivery at a time. The
+ * configuration methods are not synchronized and must be called before the sender is shared with
+ * other threads. A configuration change that affects the ports replaces the port pool; deliveries
+ * that are in progress finish with the old ports, later ones use the new pool.
  *
  * @author Philip Helger
  * @param <IMPLTYPE>
  *        The real implementation type
  */
-@NotThreadSafe
+@ThreadSafe
 public abstract class AbstractWSSender <IMPLTYPE extends AbstractWSSender <IMPLTYPE>> implements
                                        IGenericImplTrait <IMPLTYPE>
 {
+  /**
+   * Counts the outbound JAX-WS messages of a sender.
+   */
+  private static final class RequestCountHandler implements SOAPHandler <SOAPMessageContext>
+  {
+    private final AtomicLong m_aCounter;
+
+    RequestCountHandler (@NonNull final AtomicLong aCounter)
+    {
+      m_aCounter = aCounter;
+    }
+
+    @Nullable
+    @CodingStyleguideUnaware
+    public Set <QName> getHeaders ()
+    {
+      return null;
+    }
+
+    public boolean handleMessage (@NonNull final SOAPMessageContext aContext)
+    {
+      if (Boolean.TRUE.equals (aContext.get (MessageContext.MESSAGE_OUTBOUND_PROPERTY)))
+        m_aCounter.incrementAndGet ();
+      return true;
+    }
+
+    public boolean handleFault (final SOAPMessageContext aContext)
+    {
+      return true;
+    }
+
+    public void close (final MessageContext aContext)
+    {}
+  }
+
+  /**
+   * Records the execution time of the outbound invocations of another handler.
+   */
+  private static final class TimedHandler implements SOAPHandler <SOAPMessageContext>
+  {
+    private final SOAPHandler <SOAPMessageContext> m_aDelegate;
+    private final IWSSenderMetrics m_aMetrics;
+
+    TimedHandler (@NonNull final SOAPHandler <SOAPMessageContext> aDelegate, @NonNull final IWSSenderMetrics aMetrics)
+    {
+      m_aDelegate = aDelegate;
+      m_aMetrics = aMetrics;
+    }
+
+    @Nullable
+    @CodingStyleguideUnaware
+    public Set <QName> getHeaders ()
+    {
+      return m_aDelegate.getHeaders ();
+    }
+
+    public boolean handleMessage (@NonNull final SOAPMessageContext aContext)
+    {
+      if (!Boolean.TRUE.equals (aContext.get (MessageContext.MESSAGE_OUTBOUND_PROPERTY)))
+        return m_aDelegate.handleMessage (aContext);
+
+      final long nStartNanos = System.nanoTime ();
+      try
+      {
+        return m_aDelegate.handleMessage (aContext);
+      }
+      finally
+      {
+        m_aMetrics.recordDuration (EWSDeliveryPhase.HANDLER, Duration.ofNanos (System.nanoTime () - nStartNanos));
+      }
+    }
+
+    public boolean handleFault (final SOAPMessageContext aContext)
+    {
+      return m_aDelegate.handleFault (aContext);
+    }
+
+    public void close (final MessageContext aContext)
+    {
+      m_aDelegate.close (aContext);
+    }
+  }
+
+  /**
+   * Records the size of the outbound SOAP messages and the time when the response was received,
+   * so that JAX-WS requests are measured like the ones of the direct engine (see
+   * {@link AbstractWSSender#recordPortInvocation(Object, long)}). Must be the last handler, to see
+   * the complete outbound message and to see the inbound message first.
+   */
+  private static final class MetricsHandler implements SOAPHandler <SOAPMessageContext>
+  {
+    private final IWSSenderMetrics m_aMetrics;
+
+    MetricsHandler (@NonNull final IWSSenderMetrics aMetrics)
+    {
+      m_aMetrics = aMetrics;
+    }
+
+    @Nullable
+    @CodingStyleguideUnaware
+    public Set <QName> getHeaders ()
+    {
+      return null;
+    }
+
+    private static boolean _isOutbound (@NonNull final MessageContext aContext)
+    {
+      return Boolean.TRUE.equals (aContext.get (MessageContext.MESSAGE_OUTBOUND_PROPERTY));
+    }
+
+    private static void _recordResponseReceived (@NonNull final MessageContext aContext)
+    {
+      aContext.put (RESPONSE_RECEIVED_NANOS, Long.valueOf (System.nanoTime ()));
+      aContext.setScope (RESPONSE_RECEIVED_NANOS, MessageContext.Scope.APPLICATION);
+    }
+
+    public boolean handleMessage (@NonNull final SOAPMessageContext aContext)
+    {
+      if (_isOutbound (aContext))
+      {
+        // The message is created by the JAX-WS runtime, so it is serialized once more to count it
+        final CountingOutputStream aCOS = new CountingOutputStream (OutputStream.nullOutputStream ());
+        try
+        {
+          aContext.getMessage ().writeTo (aCOS);
+          m_aMetrics.recordBytesSent (aCOS.getCount ());
+        }
+        catch (final SOAPException | IOException ex)
+        {
+          // Metrics must not break the delivery
+          LOGGER.warn ("Failed to determine the size of the SOAP request", ex);
+        }
+      }
+      else
+        _recordResponseReceived (aContext);
+      return true;
+    }
+
+    public boolean handleFault (@NonNull final SOAPMessageContext aContext)
+    {
+      if (!_isOutbound (aContext))
+        _recordResponseReceived (aContext);
+      return true;
+    }
+
+    public void close (final MessageContext aContext)
+    {}
+  }
+
+  /**
+   * Counts the bytes written to the request body.
+   */
+  private static final class CountingOutputStream extends FilterOutputStream
+  {
+    private long m_nCount;
+
+    CountingOutputStream (@NonNull final OutputStream aOS)
+    {
+      super (aOS);
+    }
+
+    @Override
+    public void write (final int b) throws IOException
+    {
+      out.write (b);
+      m_nCount++;
+    }
+
+    @Override
+    public void write (final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      out.write (aBuf, nOfs, nLen);
+      m_nCount += nLen;
+    }
+
+    long getCount ()
+    {
+      return m_nCount;
+    }
+  }
+
+  /**
+   * Signals that the invoice could not be read from its source stream.
+   */
+  private static final class InvoiceReadException extends IOException
+  {
+    InvoiceReadException (@NonNull final IOException aCause)
+    {
+      super ("Failed to read the invoice: " + aCause.getMessage (), aCause);
+    }
+  }
+
   // Default encoding according to XSD
   public static final Charset DEFAULT_INVOICE_ENCODING = StandardCharsets.UTF_8;
   public static final boolean DEFAULT_DEBUG = false;
   public static final boolean DEFAULT_TRUST_ALL_CERTIFICATES = false;
   public static final boolean DEFAULT_TRUST_ALL_HOSTNAMES = false;
+  public static final boolean DEFAULT_PORT_POOLING_ENABLED = false;
+  public static final int DEFAULT_PORT_POOL_MAX_SIZE = 16;
+  public static final Duration DEFAULT_PORT_POOL_MAX_IDLE = Duration.ofMinutes (5);
+  public static final boolean DEFAULT_MTOM_ENABLED = false;
+  public static final EWSSEPasswordType DEFAULT_WSSE_PASSWORD_TYPE = EWSSEPasswordType.TEXT;
+  public static final EWSSenderEngine DEFAULT_ENGINE = EWSSenderEngine.JAXWS;
+  public static final boolean DEFAULT_USE_WSDL = true;
+  public static final WSRetryPolicy DEFAULT_RETRY_POLICY = WSRetryPolicy.NO_RETRY;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (AbstractWSSender.class);
+  // Message context property set by the MetricsHandler
+  private static final String RESPONSE_RECEIVED_NANOS = AbstractWSSender.class.getName () + ".ResponseReceivedNanos";
+
+  // Request context properties of the JAX-WS RI in milliseconds
+  private static final String JAXWS_CONNECT_TIMEOUT = "com.sun.xml.ws.connect.timeout";
+  private static final String JAXWS_REQUEST_TIMEOUT = "com.sun.xml.ws.request.timeout";
 
   private final String m_sWebserviceUsername;
   private final String m_sWebservicePassword;
+  private EWSSEPasswordType m_eWSSEPasswordType = DEFAULT_WSSE_PASSWORD_TYPE;
+  private Duration m_aWSSETimestampTTL;
+  // Both are prepared once per WSSE configuration and shared by all requests
+  private SOAPAddWSSEHeaderHandler m_aWSSEHeaderHandler;
+  private byte [] m_aWSSEHeaderBytes;
   private Charset m_aInvoiceEncoding = DEFAULT_INVOICE_ENCODING;
   private boolean m_bDebugMode = DEFAULT_DEBUG;
   private boolean m_bTrustAllCertificates = DEFAULT_TRUST_ALL_CERTIFICATES;
   private boolean m_bTrustAllHostnames = DEFAULT_TRUST_ALL_HOSTNAMES;
+  private SSLContext m_aSSLContext;
+  // One instance per configuration, so that the JDK can re-use connections and TLS sessions
+  private WSMeteredSSLSocketFactory m_aSSLSocketFactory;
+  // The counts of the previous socket factories
+  private long m_nPrevConnectionCount;
+  private long m_nPrevHandshakeCount;
+  private final AtomicLong m_aRequestCount = new AtomicLong ();
+  private final SOAPHandler <SOAPMessageContext> m_aRequestCountHandler = new RequestCountHandler (m_aRequestCount);
   private NamespaceContext m_aNSCtx;
+  private boolean m_bPortPoolingEnabled = DEFAULT_PORT_POOLING_ENABLED;
+  private int m_nPortPoolMaxSize = DEFAULT_PORT_POOL_MAX_SIZE;
+  private Duration m_aPortPoolMaxIdle = DEFAULT_PORT_POOL_MAX_IDLE;
+  private Executor m_aAsyncExecutor;
+  private boolean m_bMTOMEnabled = DEFAULT_MTOM_ENABLED;
+  private IWSTransport m_aTransport;
+  private EWSSenderEngine m_eEngine = DEFAULT_ENGINE;
+  private boolean m_bUseWSDL = DEFAULT_USE_WSDL;
+  private WSRetryPolicy m_aRetryPolicy = DEFAULT_RETRY_POLICY;
+  private WSRateLimiter m_aRateLimiter;
+  private WSConcurrencyLimiter m_aConcurrencyLimiter;
+  private WSCircuitBreaker m_aCircuitBreaker;
+  private Duration m_aConnectTimeout;
+  private Duration m_aReadTimeout;
+  private Duration m_aDeliveryTimeout;
+  private IWSSenderMetrics m_aMetrics = IWSSenderMetrics.NONE;
+  // The endpoints that rejected MTOM requests
+  private final Set <String> m_aMTOMUnsupportedURLs = ConcurrentHashMap.newKeySet ();
+
+  private final SimpleLock m_aPortPoolLock = new SimpleLock ();
+  @GuardedBy ("m_aPortPoolLock")
+  private WSPortPool <?> m_aPortPool;
 
   public AbstractWSSender (@NonNull @Nonempty final String sWebserviceUsername,
                            @NonNull @Nonempty final String sWebservicePassword)
   {
     m_sWebserviceUsername = ValueEnforcer.notEmpty (sWebserviceUsername, "Webservice Username");
     m_sWebservicePassword = ValueEnforcer.notEmpty (sWebservicePassword, "Webservice Password");
+    _initWSSEHeader ();
+    _initSSLSocketFactory ();
+  }
+
+  private void _initSSLSocketFactory ()
+  {
+    if (m_aSSLSocketFactory != null)
+    {
+      m_nPrevConnectionCount += m_aSSLSocketFactory.getConnectionCount ();
+      m_nPrevHandshakeCount += m_aSSLSocketFactory.getHandshakeCount ();
+    }
+    final SSLSocketFactory aDelegate;
+    if (m_aSSLContext != null)
+      aDelegate = m_aSSLContext.getSocketFactory ();
+    else
+      if (m_bTrustAllCertificates)
+        aDelegate = WSHttpHelper.getTrustAllSSLSocketFactory ();
+      else
+        aDelegate = HttpsURLConnection.getDefaultSSLSocketFactory ();
+    m_aSSLSocketFactory = new WSMeteredSSLSocketFactory (aDelegate);
+  }
+
+  private void _initWSSEHeader ()
+  {
+    m_aWSSEHeaderHandler = new SOAPAddWSSEHeaderHandler (m_sWebserviceUsername,
+                                                         m_sWebservicePassword,
+                                                         m_eWSSEPasswordType,
+                                                         m_aWSSETimestampTTL);
+    // Digest and Timestamp require a new header per request
+    if (m_eWSSEPasswordType == EWSSEPasswordType.TEXT && m_aWSSETimestampTTL == null)
+      m_aWSSEHeaderBytes = SOAPStreamHelper.getWSSEUsernameTokenHeader (m_sWebserviceUsername, m_sWebservicePassword);
+    else
+      m_aWSSEHeaderBytes = null;
   }
 
   /**
@@ -84,6 +416,88 @@ public abstract class AbstractWSSender <IMPLTYPE extends AbstractWSSender <IMPLT
     return m_sWebservicePassword;
   }
 
+  /**
+   * @return The password type of the WS Security UsernameToken. The default value is
+   *         {@link #DEFAULT_WSSE_PASSWORD_TYPE}. Never <code>null</code>.
+   * @since 5.0.2
+   */
+  @NonNull
+  public final EWSSEPasswordType getWSSEPasswordType ()
+  {
+    return m_eWSSEPasswordType;
+  }
+
+  /**
+   * Set the password type of the WS Security UsernameToken. For {@link EWSSEPasswordType#DIGEST} a
+   * nonce and the creation time are added to each message.
+   *
+   * @param ePasswordType
+   *        The password type to use. May not be <code>null</code>.
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setWSSEPasswordType (@NonNull final EWSSEPasswordType ePasswordType)
+  {
+    ValueEnforcer.notNull (ePasswordType, "PasswordType");
+    m_eWSSEPasswordType = ePasswordType;
+    _initWSSEHeader ();
+    // Pooled ports use the old handler
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * @return The time to live of the WS Security Timestamp. May be <code>null</code> if no
+   *         Timestamp is added, which is the default.
+   * @since 5.0.2
+   */
+  @Nullable
+  public final Duration getWSSETimestampTTL ()
+  {
+    return m_aWSSETimestampTTL;
+  }
+
+  /**
+   * Set the time to live of the WS Security Timestamp.
+   *
+   * @param aTimestampTTL
+   *        The time to live. May be <code>null</code> to not add a Timestamp.
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setWSSETimestampTTL (@Nullable final Duration aTimestampTTL)
+  {
+    if (aTimestampTTL != null)
+      ValueEnforcer.isFalse (aTimestampTTL.isNegative () || aTimestampTTL.isZero (), "TimestampTTL must be positive");
+    m_aWSSETimestampTTL = aTimestampTTL;
+    _initWSSEHeader ();
+    // Pooled ports use the old handler
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * @return The serialized WS Security header for the streaming code path. For a plain text
+   *         password without Timestamp it is created only once per sender and must not be
+   *         modified. Otherwise a new header is created for each invocation. Never
+   *         <code>null</code>.
+   * @see SOAPStreamHelper#getWSSEUsernameTokenHeader(String, String, EWSSEPasswordType, Duration)
+   * @since 5.0.2
+   */
+  @NonNull
+  protected final byte [] getWSSEHeaderBytes ()
+  {
+    final byte [] ret = m_aWSSEHeaderBytes;
+    if (ret != null)
+      return ret;
+    return SOAPStreamHelper.getWSSEUsernameTokenHeader (m_sWebserviceUsername,
+                                                        m_sWebservicePassword,
+                                                        m_eWSSEPasswordType,
+                                                        m_aWSSETimestampTTL);
+  }
+
   /**
    * @return The encoding of the XML invoice to be used. The default value is
    *         {@link #DEFAULT_INVOICE_ENCODING}.
@@ -150,8 +564,8 @@ public abstract class AbstractWSSender <IMPLTYPE extends AbstractWSSender <IMPLT
    * Change whether the the Webservice connection trusts all certificates and therefore does not
    * check for certificate revocation etc. If this is enabled, the security of transmission cannot
    * be guaranteed! The default value is {@link #DEFAULT_TRUST_ALL_CERTIFICATES}.<br>
-   * Internally a special {@link javax.net.ssl.SSLContext} with a
-   * com.helger.commons.ws.TrustManagerTrustAll is created.
+   * Internally a shared {@link javax.net.ssl.SSLContext} with a trust manager that trusts all
+   * certificates is used. This setting is ignored if an explicit SSL context is set.
    *
    * @param bTrustAllCertificates
    *        <code>true</code> to lower the security level and disable the certificate check, or
@@ -162,9 +576,126 @@ public abstract class AbstractWSSender <IMPLTYPE extends AbstractWSSender <IMPLT
   public final IMPLTYPE setTrustAllCertificates (final boolean bTrustAllCertificates)
   {
     m_bTrustAllCertificates = bTrustAllCertificates;
+    _initSSLSocketFactory ();
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * @return The explicit SSL context to use. May be <code>null</code>.
+   * @since 5.0.2
+   */
+  @Nullable
+  public final SSLContext getSSLContext ()
+  {
+    return m_aSSLContext;
+  }
+
+  /**
+   * Set an explicit SSL context to be used for all HTTPS connections of this sender. Share the same
+   * context between senders to share the TLS session cache. See
+   * {@link WSHttpHelper#createSSLContext(javax.net.ssl.KeyManager[], javax.net.ssl.TrustManager[], int, Duration)}
+   * for a context with an explicit session cache configuration.
+   *
+   * @param aSSLContext
+   *        The SSL context to use. May be <code>null</code> to use the JDK default or the trust all
+   *        context, depending on {@link #isTrustAllCertificates()}.
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setSSLContext (@Nullable final SSLContext aSSLContext)
+  {
+    m_aSSLContext = aSSLContext;
+    _initSSLSocketFactory ();
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * @return The current connection usage of this sender, including all previous SSL
+   *         configurations. Never <code>null</code>.
+   * @see WSHttpHelper#setKeepAlive(int, Duration)
+   * @since 5.0.2
+   */
+  @NonNull
+  public final WSConnectionStatistics getConnectionStatistics ()
+  {
+    return new WSConnectionStatistics (m_aRequestCount.get (),
+                                       m_nPrevConnectionCount + m_aSSLSocketFactory.getConnectionCount (),
+                                       m_nPrevHandshakeCount + m_aSSLSocketFactory.getHandshakeCount ());
+  }
+
+  /**
+   * @return The transport used for the direct SOAP code path. May be <code>null</code> to use the
+   *         built-in {@link HttpURLConnection} transport.
+   * @since 5.0.2
+   */
+  @Nullable
+  public final IWSTransport getTransport ()
+  {
+    return m_aTransport;
+  }
+
+  /**
+   * Set the transport to be used for the direct SOAP code path (e.g. the streaming delivery
+   * methods). JAX-WS invocations always use the JAX-WS transport. If a custom transport is used,
+   * the SSL settings of this class are not applied to it and only the request count of the
+   * connection statistics is maintained.
+   *
+   * @param aTransport
+   *        The transport to use. May be <code>null</code> to use the built-in
+   *        {@link HttpURLConnection} transport.
+   * @return this for chaining
+   * @see WSHttpClientTransport
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setTransport (@Nullable final IWSTransport aTransport)
+  {
+    m_aTransport = aTransport;
+    return thisAsT ();
+  }
+
+  /**
+   * @return The engine used for the byte array and DOM node based delivery methods. Never
+   *         <code>null</code>. The default is {@link #DEFAULT_ENGINE}.
+   * @since 5.0.2
+   */
+  @NonNull
+  public final EWSSenderEngine getEngine ()
+  {
+    return m_eEngine;
+  }
+
+  /**
+   * Set the engine used for the byte array and DOM node based delivery methods. With
+   * {@link EWSSenderEngine#DIRECT} the SOAP messages are written and parsed without the JAX-WS
+   * runtime, so neither port pooling, MTOM nor
+   * {@link #modifyWSClientConfig(com.helger.wsclient.WSClientConfig)} apply.
+   *
+   * @param eEngine
+   *        The engine to use. May not be <code>null</code>.
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setEngine (@NonNull final EWSSenderEngine eEngine)
+  {
+    ValueEnforcer.notNull (eEngine, "Engine");
+    m_eEngine = eEngine;
     return thisAsT ();
   }
 
+  /**
+   * @return <code>true</code> if the engine is {@link EWSSenderEngine#DIRECT}.
+   * @since 5.0.2
+   */
+  public final boolean isDirectEngine ()
+  {
+    return m_eEngine == EWSSenderEngine.DIRECT;
+  }
+
   /**
    * @return <code>true</code> if the Webservice connection does not check the hostname as specified
    *         in the certificate of the receiver. For ER&gt; using the txm.portal.at service, this
@@ -193,6 +724,7 @@ public abstract class AbstractWSSender <IMPLTYPE extends AbstractWSSender <IMPLT
   public final IMPLTYPE setTrustAllHostnames (final boolean bTrustAllHostnames)
   {
     m_bTrustAllHostnames = bTrustAllHostnames;
+    closePortPool ();
     return thisAsT ();
   }
 
@@ -221,6 +753,1887 @@ public abstract class AbstractWSSender <IMPLTYPE extends AbstractWSSender <IMPLT
     return thisAsT ();
   }
 
+  /**
+   * @return <code>true</code> if the JAX-WS service is created only once and the configured ports
+   *         are pooled, <code>false</code> if a new service and port is created for each delivery.
+   *         The default is {@link #DEFAULT_PORT_POOLING_ENABLED}.
+   */
+  public final boolean isPortPoolingEnabled ()
+  {
+    return m_bPortPoolingEnabled;
+  }
+
+  /**
+   * Enable or disable the pooling of JAX-WS ports. If enabled, the service is created only once,
+   * and up to {@link #getPortPoolMaxSize()} ports including the handler chain and all binding
+   * properties are kept for re-use. In this mode {@link #modifyWSClientConfig(WSClientConfig)} is
+   * only invoked when a new port is created.
+   *
+   * @param bPortPoolingEnabled
+   *        <code>true</code> to enable port pooling, <code>false</code> to disable it.
+   * @return this for chaining
+   */
+  @NonNull
+  public final IMPLTYPE setPortPoolingEnabled (final boolean bPortPoolingEnabled)
+  {
+    m_bPortPoolingEnabled = bPortPoolingEnabled;
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * @return The maximum number of pooled ports and hence the maximum number of concurrent
+   *         deliveries. The default is {@link #DEFAULT_PORT_POOL_MAX_SIZE}.
+   */
+  @Nonnegative
+  public final int getPortPoolMaxSize ()
+  {
+    return m_nPortPoolMaxSize;
+  }
+
+  /**
+   * Set the maximum number of pooled ports. This is also the maximum number of concurrent
+   * deliveries - additional threads wait until a port becomes available.
+   *
+   * @param nPortPoolMaxSize
+   *        The maximum number of ports. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @NonNull
+  public final IMPLTYPE setPortPoolMaxSize (@Nonnegative final int nPortPoolMaxSize)
+  {
+    ValueEnforcer.isGT0 (nPortPoolMaxSize, "PortPoolMaxSize");
+    m_nPortPoolMaxSize = nPortPoolMaxSize;
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * @return The maximum duration a port may be idle before it is evicted from the pool. The
+   *         default is {@link #DEFAULT_PORT_POOL_MAX_IDLE}.
+   */
+  @NonNull
+  public final Duration getPortPoolMaxIdle ()
+  {
+    return m_aPortPoolMaxIdle;
+  }
+
+  /**
+   * Set the maximum duration a port may be idle before it is evicted from the pool.
+   *
+   * @param aPortPoolMaxIdle
+   *        The maximum idle duration. May not be <code>null</code> and must not be negative.
+   * @return this for chaining
+   */
+  @NonNull
+  public final IMPLTYPE setPortPoolMaxIdle (@NonNull final Duration aPortPoolMaxIdle)
+  {
+    ValueEnforcer.notNull (aPortPoolMaxIdle, "PortPoolMaxIdle");
+    ValueEnforcer.isFalse (aPortPoolMaxIdle.isNegative (), "PortPoolMaxIdle may not be negative");
+    m_aPortPoolMaxIdle = aPortPoolMaxIdle;
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * Close the current port pool, if any. The next delivery in pooling mode creates a new pool with
+   * the current settings. This is called implicitly by all setters that influence the port
+   * configuration, but must be called manually if the result of
+   * {@link #modifyWSClientConfig(WSClientConfig)} changes.
+   */
+  public final void closePortPool ()
+  {
+    final WSPortPool <?> aOldPool = m_aPortPoolLock.lockedGet ( () -> {
+      final WSPortPool <?> ret = m_aPortPool;
+      m_aPortPool = null;
+      return ret;
+    });
+    if (aOldPool != null)
+      aOldPool.close ();
+  }
+
+  /**
+   * @return The executor to be used for asynchronous deliveries. If no custom executor was set,
+   *         {@link WSExecutorHelper#getDefaultAsyncExecutor()} is returned. Never
+   *         <code>null</code>.
+   */
+  @NonNull
+  public final Executor getAsyncExecutor ()
+  {
+    final Executor ret = m_aAsyncExecutor;
+    return ret != null ? ret : WSExecutorHelper.getDefaultAsyncExecutor ();
+  }
+
+  /**
+   * Set the executor to be used for asynchronous deliveries. As each delivery blocks the executing
+   * thread for the whole SOAP round trip, the executor should be able to run many tasks
+   * concurrently. Consider enabling port pooling, when using asynchronous deliveries.
+   *
+   * @param aAsyncExecutor
+   *        The executor to use. May be <code>null</code> to use the default executor as provided
+   *        by {@link WSExecutorHelper#getDefaultAsyncExecutor()}.
+   * @return this for chaining
+   */
+  @NonNull
+  public final IMPLTYPE setAsyncExecutor (@Nullable final Executor aAsyncExecutor)
+  {
+    m_aAsyncExecutor = aAsyncExecutor;
+    return thisAsT ();
+  }
+
+  /**
+   * @return <code>true</code> if MTOM/XOP should be used to transmit binary content as MIME parts
+   *         instead of inline Base64, <code>false</code> if not. The default is
+   *         {@link #DEFAULT_MTOM_ENABLED}.
+   */
+  public final boolean isMTOMEnabled ()
+  {
+    return m_bMTOMEnabled;
+  }
+
+  /**
+   * Enable or disable the usage of MTOM/XOP for the transmission of binary content. If an endpoint
+   * rejects an MTOM request with HTTP status 415 (Unsupported Media Type), the delivery is
+   * automatically repeated with inline Base64 content (if possible) and MTOM is no longer used
+   * for that endpoint.
+   *
+   * @param bMTOMEnabled
+   *        <code>true</code> to enable MTOM, <code>false</code> to disable it.
+   * @return this for chaining
+   */
+  @NonNull
+  public final IMPLTYPE setMTOMEnabled (final boolean bMTOMEnabled)
+  {
+    m_bMTOMEnabled = bMTOMEnabled;
+    m_aMTOMUnsupportedURLs.clear ();
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * @return <code>true</code> if the JAX-WS ports are created from the WSDL shipped with this
+   *         library, <code>false</code> if they are created from the annotations of the generated
+   *         port interfaces only. The default is {@link #DEFAULT_USE_WSDL}.
+   * @since 5.0.2
+   */
+  public final boolean isUseWSDL ()
+  {
+    return m_bUseWSDL;
+  }
+
+  /**
+   * Define whether the JAX-WS ports should be created from the WSDL or not. In both cases the
+   * JAX-WS service is created only once per JVM and shared by all senders. Not using the WSDL
+   * avoids parsing the WSDL and the imported XML Schemas on startup, which e.g. reduces the time
+   * of the first delivery in short-lived batch processes. The messages on the wire are identical.
+   *
+   * @param bUseWSDL
+   *        <code>true</code> to use the WSDL, <code>false</code> to not use it.
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setUseWSDL (final boolean bUseWSDL)
+  {
+    m_bUseWSDL = bUseWSDL;
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * @return The metrics callback of this sender. Never <code>null</code>. Defaults to
+   *         {@link IWSSenderMetrics#NONE}.
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IWSSenderMetrics getMetrics ()
+  {
+    return m_aMetrics;
+  }
+
+  /**
+   * Set the metrics callback that records the duration of the single phases of each delivery (see
+   * {@link EWSDeliveryPhase}), the outcome, the request sizes and the attachment counts. The
+   * callback may be shared by any number of senders.
+   *
+   * @param aMetrics
+   *        The metrics callback to use. May not be <code>null</code>. Use
+   *        {@link IWSSenderMetrics#NONE} to disable metrics.
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setMetrics (@NonNull final IWSSenderMetrics aMetrics)
+  {
+    ValueEnforcer.notNull (aMetrics, "Metrics");
+    m_aMetrics = aMetrics;
+    // Pooled ports have the handler chain set
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * Record the duration of a delivery phase that started at the provided time.
+   *
+   * @param ePhase
+   *        The phase. May not be <code>null</code>.
+   * @param nStartNanos
+   *        The start of the phase as returned by {@link System#nanoTime()}.
+   * @since 5.0.2
+   */
+  protected final void recordDuration (@NonNull final EWSDeliveryPhase ePhase, final long nStartNanos)
+  {
+    m_aMetrics.recordDuration (ePhase, Duration.ofNanos (System.nanoTime () - nStartNanos));
+  }
+
+  /**
+   * Record the durations of a single invocation of a JAX-WS port, that was configured with
+   * {@link #configurePort(Object, URL)}. As for the direct engine, the
+   * {@link EWSDeliveryPhase#ROUND_TRIP} ends when the response was received by the handler chain,
+   * and the remaining time is recorded as {@link EWSDeliveryPhase#UNMARSHALLING}. If no response was
+   * received, the whole invocation is recorded as round trip.
+   *
+   * @param aPort
+   *        The invoked port. May not be <code>null</code>.
+   * @param nStartNanos
+   *        The {@link System#nanoTime()} before the invocation.
+   * @since 5.0.2
+   */
+  protected final void recordPortInvocation (@NonNull final Object aPort, final long nStartNanos)
+  {
+    final IWSSenderMetrics aMetrics = m_aMetrics;
+    final long nEndNanos = System.nanoTime ();
+    final Map <String, Object> aResponseContext = ((BindingProvider) aPort).getResponseContext ();
+    final Object aResponseNanos = aResponseContext == null ? null : aResponseContext.get (RESPONSE_RECEIVED_NANOS);
+    if (aResponseNanos instanceof Long)
+    {
+      final long nResponseNanos = ((Long) aResponseNanos).longValue ();
+      // Ignore a value left over from a previous invocation of the same port
+      if (nResponseNanos - nStartNanos >= 0 && nEndNanos - nResponseNanos >= 0)
+      {
+        aMetrics.recordDuration (EWSDeliveryPhase.ROUND_TRIP, Duration.ofNanos (nResponseNanos - nStartNanos));
+        aMetrics.recordDuration (EWSDeliveryPhase.UNMARSHALLING, Duration.ofNanos (nEndNanos - nResponseNanos));
+        return;
+      }
+    }
+    aMetrics.recordDuration (EWSDeliveryPhase.ROUND_TRIP, Duration.ofNanos (nEndNanos - nStartNanos));
+  }
+
+  /**
+   * Record the outcome of a complete delivery.
+   *
+   * @param nStartNanos
+   *        The start of the delivery as returned by {@link System#nanoTime()}.
+   * @param nAttachments
+   *        The number of attachments of the delivery.
+   * @param sErrorField
+   *        The field of the first error detail of the response. May be <code>null</code> if the
+   *        delivery succeeded.
+   * @since 5.0.2
+   */
+  protected final void recordDeliveryOutcome (final long nStartNanos,
+                                              @Nonnegative final int nAttachments,
+                                              @Nullable final String sErrorField)
+  {
+    final IWSSenderMetrics aMetrics = m_aMetrics;
+    aMetrics.recordDuration (EWSDeliveryPhase.TOTAL, Duration.ofNanos (System.nanoTime () - nStartNanos));
+    aMetrics.recordAttachmentCount (nAttachments);
+    if (sErrorField == null)
+      aMetrics.recordSuccess ();
+    else
+    {
+      final EWSErrorField eErrorField = EWSErrorField.getFromFieldNameOrNull (sErrorField);
+      // Errors reported by ER>B itself refer to the document
+      aMetrics.recordError ((eErrorField != null ? eErrorField : EWSErrorField.DOCUMENT).getFieldName ());
+    }
+  }
+
+  /**
+   * @return The maximum duration for establishing a connection. May be <code>null</code>.
+   * @since 5.0.2
+   */
+  @Nullable
+  public final Duration getConnectTimeout ()
+  {
+    return m_aConnectTimeout;
+  }
+
+  /**
+   * Set the maximum duration for establishing a connection to ER&gt;B. It applies to JAX-WS and to
+   * the direct engine. Custom transports may ignore it (see {@link IWSTransport}).
+   *
+   * @param aConnectTimeout
+   *        The connect timeout. May be <code>null</code> to use the default of the respective
+   *        implementation. Must be positive otherwise.
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setConnectTimeout (@Nullable final Duration aConnectTimeout)
+  {
+    ValueEnforcer.isTrue (aConnectTimeout == null || _isPositive (aConnectTimeout), "ConnectTimeout must be positive");
+    m_aConnectTimeout = aConnectTimeout;
+    // Pooled ports have the timeout set
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * @return The maximum duration to wait for data of the response. May be <code>null</code>.
+   * @since 5.0.2
+   */
+  @Nullable
+  public final Duration getReadTimeout ()
+  {
+    return m_aReadTimeout;
+  }
+
+  /**
+   * Set the maximum duration to wait for data of the response from ER&gt;B. For JAX-WS and the
+   * direct engine this is the maximum duration without any data received. For
+   * {@link WSHttpClientTransport} it is the maximum duration until the response headers are
+   * received.
+   *
+   * @param aReadTimeout
+   *        The read timeout. May be <code>null</code> to use the default of the respective
+   *        implementation. Must be positive otherwise.
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setReadTimeout (@Nullable final Duration aReadTimeout)
+  {
+    ValueEnforcer.isTrue (aReadTimeout == null || _isPositive (aReadTimeout), "ReadTimeout must be positive");
+    m_aReadTimeout = aReadTimeout;
+    // Pooled ports have the timeout set
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  /**
+   * @return The maximum duration of a single delivery. May be <code>null</code>.
+   * @since 5.0.2
+   */
+  @Nullable
+  public final Duration getDeliveryTimeout ()
+  {
+    return m_aDeliveryTimeout;
+  }
+
+  /**
+   * Set the maximum duration of a single delivery. The resulting deadline covers all retries as
+   * well as the time waiting for the rate limiter, the concurrency limiter and pooled ports. The
+   * connect and read timeouts of each request are limited to the remaining time. If the deadline
+   * passes before a request could be sent, the delivery fails with an error detail with the field
+   * {@link EWSErrorField#WEBSERVICE}.
+   *
+   * @param aDeliveryTimeout
+   *        The delivery timeout. May be <code>null</code> to not limit the duration of a delivery
+   *        (the default). Must be positive otherwise.
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setDeliveryTimeout (@Nullable final Duration aDeliveryTimeout)
+  {
+    ValueEnforcer.isTrue (aDeliveryTimeout == null || _isPositive (aDeliveryTimeout), "DeliveryTimeout must be positive");
+    m_aDeliveryTimeout = aDeliveryTimeout;
+    // Pooled ports may have timeouts of the last deadline set
+    closePortPool ();
+    return thisAsT ();
+  }
+
+  private static boolean _isPositive (@NonNull final Duration aDuration)
+  {
+    return !aDuration.isNegative () && !aDuration.isZero ();
+  }
+
+  /**
+   * @return A new deadline for a delivery based on {@link #getDeliveryTimeout()}, or
+   *         <code>null</code> if no delivery timeout is set.
+   * @since 5.0.2
+   */
+  @Nullable
+  protected final WSDeadline createDeliveryDeadline ()
+  {
+    final Duration aDeliveryTimeout = m_aDeliveryTimeout;
+    return aDeliveryTimeout == null ? null : WSDeadline.after (aDeliveryTimeout);
+  }
+
+  private static int _getTimeoutMillis (@NonNull final Duration aTimeout)
+  {
+    // 0 would mean "infinite"
+    return (int) Math.max (1, Math.min (Integer.MAX_VALUE, aTimeout.toMillis ()));
+  }
+
+  /**
+   * Limit the connect and read timeouts of the provided JAX-WS port to the remaining time until the
+   * deadline. This must be called before each invocation of a port, if a deadline is present.
+   *
+   * @param aPort
+   *        The port to be used. Must implement {@link BindingProvider}. May not be
+   *        <code>null</code>.
+   * @param aDeadline
+   *        The deadline of the delivery. May be <code>null</code> in which case nothing happens.
+   * @throws WSDeadlineExceededException
+   *         If the deadline already passed
+   * @since 5.0.2
+   */
+  protected final void applyDeadlineToPort (@NonNull final Object aPort, @Nullable final WSDeadline aDeadline) throws WSDeadlineExceededException
+  {
+    if (aDeadline != null)
+    {
+      aDeadline.checkNotExpired ("sending the request");
+      final Map <String, Object> aRequestCtx = ((BindingProvider) aPort).getRequestContext ();
+      aRequestCtx.put (JAXWS_CONNECT_TIMEOUT, Integer.valueOf (_getTimeoutMillis (aDeadline.limit (m_aConnectTimeout))));
+      aRequestCtx.put (JAXWS_REQUEST_TIMEOUT, Integer.valueOf (_getTimeoutMillis (aDeadline.limit (m_aReadTimeout))));
+    }
+  }
+
+  /**
+   * @return The retry policy used for the byte array and DOM node based delivery methods. Never
+   *         <code>null</code>. The default is {@link #DEFAULT_RETRY_POLICY}.
+   * @since 5.0.2
+   */
+  @NonNull
+  public final WSRetryPolicy getRetryPolicy ()
+  {
+    return m_aRetryPolicy;
+  }
+
+  /**
+   * Set the retry policy used for the byte array and DOM node based delivery methods. Deliveries
+   * from an {@link InputStream} are never retried, because the stream can only be read once.
+   *
+   * @param aRetryPolicy
+   *        The retry policy to use. May not be <code>null</code>. Use
+   *        {@link WSRetryPolicy#NO_RETRY} to disable retries.
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setRetryPolicy (@NonNull final WSRetryPolicy aRetryPolicy)
+  {
+    ValueEnforcer.notNull (aRetryPolicy, "RetryPolicy");
+    m_aRetryPolicy = aRetryPolicy;
+    return thisAsT ();
+  }
+
+  /**
+   * @return The rate limiter applied to each request. May be <code>null</code>.
+   * @since 5.0.2
+   */
+  @Nullable
+  public final WSRateLimiter getRateLimiter ()
+  {
+    return m_aRateLimiter;
+  }
+
+  /**
+   * Set the rate limiter applied to each request, including retries. The same rate limiter may be
+   * used by multiple senders, to limit the total request rate of all of them.
+   *
+   * @param aRateLimiter
+   *        The rate limiter to use. May be <code>null</code> to not limit the rate (the default).
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setRateLimiter (@Nullable final WSRateLimiter aRateLimiter)
+  {
+    m_aRateLimiter = aRateLimiter;
+    return thisAsT ();
+  }
+
+  /**
+   * @return The adaptive concurrency limiter applied to each request. May be <code>null</code>.
+   * @since 5.0.2
+   */
+  @Nullable
+  public final WSConcurrencyLimiter getConcurrencyLimiter ()
+  {
+    return m_aConcurrencyLimiter;
+  }
+
+  /**
+   * Set the adaptive concurrency limiter applied to each request, including retries. The same
+   * limiter may be used by multiple senders, to limit the total concurrency of all of them. The
+   * failures that are considered as overload are determined by
+   * {@link WSRetryPolicy#getEndpointHealth(Throwable)} of the retry policy of this sender, so that
+   * e.g. read timeouts of a slowing endpoint lower the limit.
+   *
+   * @param aConcurrencyLimiter
+   *        The concurrency limiter to use. May be <code>null</code> to not limit the concurrency
+   *        (the default).
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setConcurrencyLimiter (@Nullable final WSConcurrencyLimiter aConcurrencyLimiter)
+  {
+    m_aConcurrencyLimiter = aConcurrencyLimiter;
+    return thisAsT ();
+  }
+
+  /**
+   * @return The circuit breaker applied to each request. May be <code>null</code>.
+   * @since 5.0.2
+   */
+  @Nullable
+  public final WSCircuitBreaker getCircuitBreaker ()
+  {
+    return m_aCircuitBreaker;
+  }
+
+  /**
+   * Set the circuit breaker applied to each request. While the circuit of the endpoint URL is open,
+   * deliveries fail immediately with an error detail with the field
+   * {@link EWSErrorField#CIRCUIT_BREAKER}, instead of waiting for the timeouts. The same circuit
+   * breaker may be used by multiple senders. The failures that count for the circuit breaker are
+   * determined by
+   * {@link WSRetryPolicy#getEndpointHealth(Throwable)} of the retry policy of this sender, so that
+   * e.g. read timeouts count as failures even though they are not retried.
+   *
+   * @param aCircuitBreaker
+   *        The circuit breaker to use. May be <code>null</code> to not use one (the default).
+   * @return this for chaining
+   * @since 5.0.2
+   */
+  @NonNull
+  public final IMPLTYPE setCircuitBreaker (@Nullable final WSCircuitBreaker aCircuitBreaker)
+  {
+    m_aCircuitBreaker = aCircuitBreaker;
+    return thisAsT ();
+  }
+
+  /**
+   * Report the outcome of a failed request to the circuit breaker or the concurrency limiter. Both
+   * classify the failure the same way via {@link WSRetryPolicy#getEndpointHealth(Throwable)}.
+   */
+  private void _onEndpointFailure (@NonNull final Exception ex,
+                                   @NonNull final Runnable aOnAvailable,
+                                   @NonNull final Runnable aOnUnavailable,
+                                   @NonNull final Runnable aOnUnknown)
+  {
+    switch (m_aRetryPolicy.getEndpointHealth (ex))
+    {
+      case AVAILABLE:
+        // E.g. SOAP faults with details
+        aOnAvailable.run ();
+        break;
+      case UNAVAILABLE:
+        aOnUnavailable.run ();
+        break;
+      default:
+        aOnUnknown.run ();
+        break;
+    }
+  }
+
+  private <T> T _invokeLimited (@Nullable final WSDeadline aDeadline, @NonNull final Callable <T> aRequest) throws Exception
+  {
+    // Wait for the rate before occupying a concurrency slot
+    final WSRateLimiter aRateLimiter = m_aRateLimiter;
+    if (aRateLimiter != null)
+    {
+      if (aDeadline == null)
+        aRateLimiter.acquire ();
+      else
+        if (!aRateLimiter.tryAcquire (aDeadline.getRemaining ()))
+          throw new WSDeadlineExceededException ("The delivery deadline was exceeded while waiting for the rate limiter");
+    }
+
+    final WSConcurrencyLimiter aConcurrencyLimiter = m_aConcurrencyLimiter;
+    if (aConcurrencyLimiter == null)
+      return aRequest.call ();
+
+    if (aDeadline == null)
+      aConcurrencyLimiter.acquire ();
+    else
+      if (!aConcurrencyLimiter.tryAcquire (aDeadline.getRemaining ()))
+        throw new WSDeadlineExceededException ("The delivery deadline was exceeded while waiting for the concurrency limiter");
+    final long nStartNanos = System.nanoTime ();
+    try
+    {
+      final T ret = aRequest.call ();
+      aConcurrencyLimiter.onSuccess (nStartNanos);
+      return ret;
+    }
+    catch (final Exception ex)
+    {
+      _onEndpointFailure (ex,
+                          () -> aConcurrencyLimiter.onSuccess (nStartNanos),
+                          () -> aConcurrencyLimiter.onOverload (nStartNanos),
+                          aConcurrencyLimiter::onIgnore);
+      throw ex;
+    }
+    catch (final Error ex)
+    {
+      aConcurrencyLimiter.onIgnore ();
+      throw ex;
+    }
+  }
+
+  /**
+   * Send a single request, if the circuit breaker permits it and after waiting for the rate
+   * limiter and the concurrency limiter, if present. The outcome is reported to the circuit breaker
+   * and the concurrency limiter.
+   *
+   * @param <T>
+   *        The result type
+   * @param aURL
+   *        The endpoint URL the request is sent to. May not be <code>null</code>.
+   * @param aDeadline
+   *        The deadline of the delivery, that limits the time waiting for permits. May be
+   *        <code>null</code>.
+   * @param aRequest
+   *        The request to send. May not be <code>null</code>.
+   * @return The result of the request.
+   * @throws WSCircuitOpenException
+   *         If the circuit of the endpoint is open
+   * @throws WSDeadlineExceededException
+   *         If no permit was available before the deadline
+   * @throws InterruptedException
+   *         If the thread was interrupted while waiting for a permit
+   * @throws Exception
+   *         The failure of the request.
+   * @since 5.0.2
+   */
+  protected final <T> T invokeLimited (@NonNull final URL aURL,
+                                       @Nullable final WSDeadline aDeadline,
+                                       @NonNull final Callable <T> aRequest) throws Exception
+  {
+    final WSCircuitBreaker aCircuitBreaker = m_aCircuitBreaker;
+    if (aCircuitBreaker == null)
+      return _invokeLimited (aDeadline, aRequest);
+
+    if (!aCircuitBreaker.tryAcquirePermission (aURL))
+      throw new WSCircuitOpenException (aURL);
+    try
+    {
+      final T ret = _invokeLimited (aDeadline, aRequest);
+      aCircuitBreaker.onSuccess (aURL);
+      return ret;
+    }
+    catch (final InterruptedException | WSDeadlineExceededException ex)
+    {
+      // Nothing was learned about the endpoint
+      aCircuitBreaker.onIgnore (aURL);
+      throw ex;
+    }
+    catch (final Exception ex)
+    {
+      _onEndpointFailure (ex,
+                          () -> aCircuitBreaker.onSuccess (aURL),
+                          () -> aCircuitBreaker.onFailure (aURL),
+                          () -> aCircuitBreaker.onIgnore (aURL));
+      throw ex;
+    }
+    catch (final Error ex)
+    {
+      aCircuitBreaker.onIgnore (aURL);
+      throw ex;
+    }
+  }
+
+  /**
+   * Invoke the provided delivery attempt and retry it according to the retry policy, as long as
+   * the failure is retryable and neither the maximum total duration of the retry policy nor the
+   * delivery deadline (see {@link #setDeliveryTimeout(Duration)}) is exceeded. The backoff between
+   * two attempts is always capped by the remaining time of both. The waiting happens on the calling
+   * thread - for asynchronous deliveries this is a thread of the {@link #getAsyncExecutor() async
+   * executor}. If the thread is interrupted while waiting, the last failure is thrown.
+   *
+   * @param <T>
+   *        The result type
+   * @param aAttempt
+   *        A single delivery attempt. Must be repeatable. May not be <code>null</code>.
+   * @return The result of the first successful attempt.
+   * @throws Exception
+   *         The failure of the last attempt.
+   * @since 5.0.2
+   */
+  protected final <T> T invokeWithRetry (@NonNull final IWSDeliveryAttempt <T> aAttempt) throws Exception
+  {
+    return invokeWithRetry (aAttempt, createDeliveryDeadline ());
+  }
+
+  /**
+   * Invoke the provided delivery attempt and retry it like
+   * {@link #invokeWithRetry(IWSDeliveryAttempt)}, but with a deadline that was created before, e.g.
+   * because the delivery had to wait for an identical delivery first.
+   *
+   * @param <T>
+   *        The result type
+   * @param aAttempt
+   *        A single delivery attempt. Must be repeatable. May not be <code>null</code>.
+   * @param aDeadline
+   *        The deadline of the whole delivery, as created by {@link #createDeliveryDeadline()}. May
+   *        be <code>null</code>.
+   * @return The result of the first successful attempt.
+   * @throws Exception
+   *         The failure of the last attempt.
+   * @since 5.0.2
+   */
+  protected final <T> T invokeWithRetry (@NonNull final IWSDeliveryAttempt <T> aAttempt,
+                                         @Nullable final WSDeadline aDeadline) throws Exception
+  {
+    final WSRetryPolicy aPolicy = m_aRetryPolicy;
+    if (!aPolicy.isRetryEnabled ())
+      return aAttempt.invoke (aDeadline);
+
+    final WSDeadline aRetryDeadline = WSDeadline.after (aPolicy.getMaxTotalDuration ());
+    int nAttempt = 1;
+    while (true)
+    {
+      try
+      {
+        return aAttempt.invoke (aDeadline);
+      }
+      catch (final Exception ex)
+      {
+        if (nAttempt >= aPolicy.getMaxAttempts () || !aPolicy.isRetryable (ex))
+          throw ex;
+
+        final Duration aBackoff = aPolicy.getBackoff (nAttempt - 1);
+        if (aBackoff.compareTo (aRetryDeadline.getRemaining ()) > 0)
+        {
+          LOGGER.warn ("Not retrying failed delivery attempt " + nAttempt + ", because the maximum total duration of " +
+                       aPolicy.getMaxTotalDuration () + " would be exceeded");
+          throw ex;
+        }
+        if (aDeadline != null && aBackoff.compareTo (aDeadline.getRemaining ()) >= 0)
+        {
+          LOGGER.warn ("Not retrying failed delivery attempt " + nAttempt + ", because the delivery deadline would be exceeded");
+          throw ex;
+        }
+
+        LOGGER.warn ("Delivery attempt " +
+                     nAttempt +
+                     " of " +
+                     aPolicy.getMaxAttempts () +
+                     " failed (" +
+                     ex.getClass ().getName () +
+                     " - " +
+                     ex.getMessage () +
+                     ") - retrying in " +
+                     aBackoff.toMillis () +
+                     " ms");
+        try
+        {
+          // Never wait beyond the maximum total duration or the delivery deadline
+          final Duration aWait = WSDeadline.getEffectiveTimeout (aRetryDeadline.limit (aBackoff), aDeadline);
+          TimeUnit.NANOSECONDS.sleep (aWait.toNanos ());
+          if (aDeadline != null && aDeadline.isExpired ())
+          {
+            LOGGER.warn ("Not retrying failed delivery attempt " + nAttempt + ", because the delivery deadline was exceeded");
+            throw ex;
+          }
+        }
+        catch (final InterruptedException ex2)
+        {
+          Thread.currentThread ().interrupt ();
+          throw ex;
+        }
+        nAttempt++;
+      }
+    }
+  }
+
+  /**
+   * Check if MTOM should be used for the provided endpoint.
+   *
+   * @param aURL
+   *        The endpoint URL. May not be <code>null</code>.
+   * @return <code>true</code> if MTOM is enabled and the endpoint did not reject MTOM before.
+   */
+  protected final boolean isMTOMActive (@NonNull final URL aURL)
+  {
+    return m_bMTOMEnabled && !m_aMTOMUnsupportedURLs.contains (aURL.toExternalForm ());
+  }
+
+  /**
+   * Remember that the provided endpoint does not support MTOM. All subsequent requests to this
+   * endpoint use inline Base64 content.
+   *
+   * @param aURL
+   *        The endpoint URL. May not be <code>null</code>.
+   */
+  protected final void markMTOMUnsupported (@NonNull final URL aURL)
+  {
+    if (m_aMTOMUnsupportedURLs.add (aURL.toExternalForm ()))
+    {
+      LOGGER.warn ("The endpoint '" + aURL.toExternalForm () + "' does not support MTOM - falling back to inline content");
+      // Pooled ports have MTOM enabled
+      closePortPool ();
+    }
+  }
+
+  /**
+   * Check if the provided exception was caused by an HTTP 415 (Unsupported Media Type) response,
+   * which indicates that the endpoint does not support MTOM.
+   *
+   * @param ex
+   *        The exception to check. May not be <code>null</code>.
+   * @return <code>true</code> if it is an "unsupported media type" error.
+   */
+  protected static final boolean isUnsupportedMediaType (@NonNull final Throwable ex)
+  {
+    Throwable aCur = ex;
+    while (aCur != null)
+    {
+      if (aCur instanceof WSHttpStatusException && ((WSHttpStatusException) aCur).isUnsupportedMediaType ())
+        return true;
+      // JAX-WS reports the HTTP status code only in the message
+      final String sMsg = aCur.getMessage ();
+      if (sMsg != null && sMsg.contains ("status code " + WSHttpStatusException.SC_UNSUPPORTED_MEDIA_TYPE))
+        return true;
+      aCur = aCur.getCause ();
+    }
+    return false;
+  }
+
+  /**
+   * Protected method to be overridden.
+   *
+   * @param aWSClientConfig
+   *        Client config to be modified. May not be <code>null</code>.
+   */
+  @OverrideOnDemand
+  protected void modifyWSClientConfig (@NonNull final WSClientConfig aWSClientConfig)
+  {}
+
+  /**
+   * Create the client configuration for a new port. This applies all the settings of this class,
+   * adds the WSSE header handler and finally invokes
+   * {@link #modifyWSClientConfig(WSClientConfig)}.
+   *
+   * @param aURL
+   *        The endpoint URL to use. May not be <code>null</code>.
+   * @return The new client configuration and never <code>null</code>.
+   */
+  @NonNull
+  protected final WSClientConfig createWSClientConfig (@NonNull final URL aURL)
+  {
+    final WSClientConfig aWSClientConfig = new WSClientConfig (aURL);
+
+    // Always the same socket factory, so that connections can be re-used. Trusting all
+    // certificates may be required for txm.portal.at depending on the installed OS root
+    // certificates.
+    aWSClientConfig.setSSLSocketFactory (m_aSSLSocketFactory);
+
+    if (m_bTrustAllHostnames)
+      aWSClientConfig.setHostnameVerifier (WSHttpHelper.getTrustAllHostnameVerifier ());
+
+    // Ensure the WSSE headers are added using our handler
+    final IWSSenderMetrics aMetrics = m_aMetrics;
+    aWSClientConfig.handlers ()
+                   .add (aMetrics == IWSSenderMetrics.NONE ? m_aWSSEHeaderHandler
+                                                           : new TimedHandler (m_aWSSEHeaderHandler, aMetrics));
+    aWSClientConfig.handlers ().add (m_aRequestCountHandler);
+    if (aMetrics != IWSSenderMetrics.NONE)
+      aWSClientConfig.handlers ().add (new MetricsHandler (aMetrics));
+
+    if (m_aConnectTimeout != null)
+      aWSClientConfig.setConnectionTimeoutMS (_getTimeoutMillis (m_aConnectTimeout));
+    if (m_aReadTimeout != null)
+      aWSClientConfig.setRequestTimeoutMS (_getTimeoutMillis (m_aReadTimeout));
+
+    // Customizing callback
+    modifyWSClientConfig (aWSClientConfig);
+    return aWSClientConfig;
+  }
+
+  /**
+   * Apply the client configuration created by {@link #createWSClientConfig(URL)} onto the provided
+   * port.
+   *
+   * @param <PORTTYPE>
+   *        The JAX-WS port type
+   * @param aPort
+   *        The port to be configured. Must implement {@link BindingProvider}. May not be
+   *        <code>null</code>.
+   * @param aURL
+   *        The endpoint URL to use. May not be <code>null</code>.
+   * @return The passed port
+   */
+  @NonNull
+  protected final <PORTTYPE> PORTTYPE configurePort (@NonNull final PORTTYPE aPort, @NonNull final URL aURL)
+  {
+    final BindingProvider aBP = (BindingProvider) aPort;
+    createWSClientConfig (aURL).applyWSSettingsToBindingProvider (aBP);
+    if (isMTOMActive (aURL))
+      ((SOAPBinding) aBP.getBinding ()).setMTOMEnabled (true);
+    return aPort;
+  }
+
+  /**
+   * Open a new HTTP connection for posting a SOAP 1.1 message without JAX-WS. The trust settings of
+   * this class are applied, but {@link #modifyWSClientConfig(WSClientConfig)} is not invoked. The
+   * request body is sent in chunked mode, so that it is never buffered completely.
+   *
+   * @param aURL
+   *        The endpoint URL to use. May not be <code>null</code>.
+   * @param sSOAPAction
+   *        The SOAP action to use. May not be <code>null</code>.
+   * @param aDeadline
+   *        The deadline of the delivery, that limits the connect and read timeouts. May be
+   *        <code>null</code>.
+   * @return The new connection that is not yet connected. Never <code>null</code>.
+   * @throws IOException
+   *         If the connection could not be opened
+   */
+  @NonNull
+  protected final HttpURLConnection openSOAPConnection (@NonNull final URL aURL,
+                                                       @NonNull final String sSOAPAction,
+                                                       @Nullable final WSDeadline aDeadline) throws IOException
+  {
+    final HttpURLConnection aConn = (HttpURLConnection) aURL.openConnection ();
+    final Duration aConnectTimeout = WSDeadline.getEffectiveTimeout (m_aConnectTimeout, aDeadline);
+    if (aConnectTimeout != null)
+      aConn.setConnectTimeout (_getTimeoutMillis (aConnectTimeout));
+    final Duration aReadTimeout = WSDeadline.getEffectiveTimeout (m_aReadTimeout, aDeadline);
+    if (aReadTimeout != null)
+      aConn.setReadTimeout (_getTimeoutMillis (aReadTimeout));
+    if (aConn instanceof HttpsURLConnection)
+    {
+      final HttpsURLConnection aHttpsConn = (HttpsURLConnection) aConn;
+      aHttpsConn.setSSLSocketFactory (m_aSSLSocketFactory);
+      if (m_bTrustAllHostnames)
+        aHttpsConn.setHostnameVerifier (WSHttpHelper.getTrustAllHostnameVerifier ());
+    }
+    aConn.setRequestMethod ("POST");
+    aConn.setDoOutput (true);
+    aConn.setUseCaches (false);
+    aConn.setChunkedStreamingMode (0);
+    aConn.setRequestProperty ("Content-Type", SOAPStreamHelper.SOAP11_CONTENT_TYPE);
+    aConn.setRequestProperty ("SOAPAction", "\"" + sSOAPAction + "\"");
+    m_aRequestCount.incrementAndGet ();
+    return aConn;
+  }
+
+  /**
+   * Post a SOAP 1.1 request without JAX-WS and read the response. The request body is streamed
+   * and the response may either be a plain SOAP envelope or an MTOM/XOP multipart message. If a
+   * transport is set, it is used, otherwise {@link #openSOAPConnection(URL, String, WSDeadline)} is
+   * used. The
+   * request is subject to the circuit breaker, the rate limiter and the concurrency limiter.
+   *
+   * @param <T>
+   *        The response type
+   * @param aURL
+   *        The endpoint URL to use. May not be <code>null</code>.
+   * @param sSOAPAction
+   *        The SOAP action to use. May not be <code>null</code>.
+   * @param sContentType
+   *        The content type of the request body. May not be <code>null</code>.
+   * @param aRequestWriter
+   *        The writer for the request body. May not be <code>null</code>.
+   * @param aResponseReader
+   *        The reader for the SOAP response envelope. May not be <code>null</code>.
+   * @param aDeadline
+   *        The deadline of the delivery. May be <code>null</code>.
+   * @return The result of the response reader.
+   * @throws WSHttpStatusException
+   *         If the response does not contain a SOAP message
+   * @throws Exception
+   *         If the request writer or the response reader failed
+   */
+  protected final <T> T postSOAPRequest (@NonNull final URL aURL,
+                                         @NonNull final String sSOAPAction,
+                                         @NonNull final String sContentType,
+                                         @NonNull final IWSRequestBodyWriter aRequestWriter,
+                                         @NonNull final IWSResponseReader <T> aResponseReader,
+                                         @Nullable final WSDeadline aDeadline) throws Exception
+  {
+    return invokeLimited (aURL,
+                          aDeadline,
+                          () -> _postSOAPRequest (aURL, sSOAPAction, sContentType, aRequestWriter, aResponseReader, aDeadline));
+  }
+
+  private <T> T _postSOAPRequest (@NonNull final URL aURL,
+                                  @NonNull final String sSOAPAction,
+                                  @NonNull final String sContentType,
+                                  @NonNull final IWSRequestBodyWriter aRequestWriter,
+                                  @NonNull final IWSResponseReader <T> aResponseReader,
+                                  @Nullable final WSDeadline aDeadline) throws Exception
+  {
+    if (aDeadline != null)
+      aDeadline.checkNotExpired ("sending the request");
+
+    final IWSSenderMetrics aMetrics = m_aMetrics;
+    final IWSRequestBodyWriter aCountingWriter = aOS -> {
+      final CountingOutputStream aCOS = new CountingOutputStream (aOS);
+      try
+      {
+        aRequestWriter.writeRequestBody (aCOS);
+      }
+      finally
+      {
+        aMetrics.recordBytesSent (aCOS.getCount ());
+      }
+    };
+    // The round trip ends when reading the response starts or when the request failed
+    final long nStartNanos = System.nanoTime ();
+    final long [] aResponseStartNanos = new long [1];
+    final boolean [] aResponseRead = new boolean [1];
+    final IWSResponseReader <T> aTimedReader = aIS -> {
+      aResponseStartNanos[0] = System.nanoTime ();
+      aResponseRead[0] = true;
+      try
+      {
+        return aResponseReader.readResponse (aIS);
+      }
+      finally
+      {
+        aMetrics.recordDuration (EWSDeliveryPhase.UNMARSHALLING,
+                                 Duration.ofNanos (System.nanoTime () - aResponseStartNanos[0]));
+      }
+    };
+
+    try
+    {
+      final IWSTransport aTransport = m_aTransport;
+      if (aTransport != null)
+      {
+        m_aRequestCount.incrementAndGet ();
+        return aTransport.postSOAPRequest (aURL,
+                                           sSOAPAction,
+                                           sContentType,
+                                           aCountingWriter,
+                                           aTimedReader,
+                                           WSDeadline.getEffectiveTimeout (m_aConnectTimeout, aDeadline),
+                                           WSDeadline.getEffectiveTimeout (m_aReadTimeout, aDeadline));
+      }
+
+      final HttpURLConnection aConn = openSOAPConnection (aURL, sSOAPAction, aDeadline);
+      aConn.setRequestProperty ("Content-Type", sContentType);
+      try
+      {
+        aConn.connect ();
+      }
+      catch (final SocketTimeoutException ex)
+      {
+        // Classify by where the timeout happened - a connect timeout may be retried
+        final HttpConnectTimeoutException ex2 = new HttpConnectTimeoutException ("Failed to connect to " + aURL);
+        ex2.initCause (ex);
+        throw ex2;
+      }
+      try (final OutputStream aOS = aConn.getOutputStream ())
+      {
+        aCountingWriter.writeRequestBody (aOS);
+      }
+
+      final int nResponseCode = aConn.getResponseCode ();
+      // SOAP faults are reported with HTTP 500
+      final InputStream aResponseIS = nResponseCode >= 400 ? aConn.getErrorStream () : aConn.getInputStream ();
+      return SOAPStreamHelper.readSOAPResponse (nResponseCode, aConn.getContentType (), aResponseIS, aTimedReader);
+    }
+    finally
+    {
+      final long nEndNanos = aResponseRead[0] ? aResponseStartNanos[0] : System.nanoTime ();
+      aMetrics.recordDuration (EWSDeliveryPhase.ROUND_TRIP, Duration.ofNanos (nEndNanos - nStartNanos));
+    }
+  }
+
+  @SuppressWarnings ("unchecked")
+  @NonNull
+  private <PORTTYPE> WSPortPool <PORTTYPE> _getOrCreatePortPool (@NonNull final Supplier <? extends Supplier <? extends PORTTYPE>> aPortFactorySupplier)
+  {
+    return m_aPortPoolLock.lockedGet ( () -> {
+      // Each implementation class always uses the same port type
+      WSPortPool <PORTTYPE> ret = (WSPortPool <PORTTYPE>) m_aPortPool;
+      if (ret == null)
+      {
+        ret = new WSPortPool <> (aPortFactorySupplier.get (), m_nPortPoolMaxSize, m_aPortPoolMaxIdle);
+        m_aPortPool = ret;
+      }
+      return ret;
+    });
+  }
+
+  /**
+   * Invoke an operation on a port borrowed from the port pool. If no pool exists yet, it is
+   * created. If the invocation fails with a checked exception (a SOAP fault declared in the WSDL)
+   * or succeeds, the port is returned to the pool. On all other errors the port is discarded.
+   *
+   * @param <PORTTYPE>
+   *        The JAX-WS port type
+   * @param <RETTYPE>
+   *        The return type of the operation
+   * @param aPortFactorySupplier
+   *        Creates the port factory of a new pool. This is the place to create the JAX-WS service
+   *        once. The created port factory must create fully configured ports. May not be
+   *        <code>null</code>.
+   * @param aDeadline
+   *        The deadline of the delivery, that limits the time waiting for a port. May be
+   *        <code>null</code>.
+   * @param aInvocation
+   *        The operation to be invoked. May not be <code>null</code>.
+   * @return The result of the invocation.
+   * @throws WSDeadlineExceededException
+   *         If no port became available before the deadline
+   * @throws Exception
+   *         In case the invocation failed or the thread was interrupted.
+   */
+  protected final <PORTTYPE, RETTYPE> RETTYPE invokeWithPooledPort (@NonNull final Supplier <? extends Supplier <? extends PORTTYPE>> aPortFactorySupplier,
+                                                                    @Nullable final WSDeadline aDeadline,
+                                                                    @NonNull final IWSPortInvocation <PORTTYPE, RETTYPE> aInvocation) throws Exception
+  {
+    final long nStartNanos = System.nanoTime ();
+    WSPortPool <PORTTYPE> aPool;
+    PORTTYPE aPort;
+    while (true)
+    {
+      aPool = _getOrCreatePortPool (aPortFactorySupplier);
+      try
+      {
+        aPort = aDeadline == null ? aPool.borrowPort () : aPool.borrowPort (aDeadline.getRemaining ());
+        break;
+      }
+      catch (final IllegalStateException ex)
+      {
+        // The pool was replaced by a concurrent configuration change - use the new one
+        if (!aPool.isClosed ())
+          throw ex;
+      }
+    }
+    recordDuration (EWSDeliveryPhase.PORT_ACQUISITION, nStartNanos);
+    if (aPort == null)
+      throw new WSDeadlineExceededException ("The delivery deadline was exceeded while waiting for a pooled port");
+    boolean bReusable = false;
+    try
+    {
+      final RETTYPE ret = aInvocation.invoke (aPort);
+      bReusable = true;
+      return ret;
+    }
+    catch (final RuntimeException ex)
+    {
+      // E.g. a WebServiceException - the port may be broken
+      throw ex;
+    }
+    catch (final Exception ex)
+    {
+      // A regular SOAP fault - the port itself is fine
+      bReusable = true;
+      throw ex;
+    }
+    finally
+    {
+      if (bReusable)
+        aPool.returnPort (aPort);
+      else
+        aPool.discardPort (aPort);
+    }
+  }
+
+  private <PORTTYPE, RETTYPE> RETTYPE _invokePort (@NonNull final PORTTYPE aPort,
+                                                   @Nullable final WSDeadline aDeadline,
+                                                   @NonNull final IWSPortInvocation <PORTTYPE, RETTYPE> aInvocation) throws Exception
+  {
+    applyDeadlineToPort (aPort, aDeadline);
+
+    // The request size is recorded by the handler chain
+    final long nStartNanos = System.nanoTime ();
+    try
+    {
+      return aInvocation.invoke (aPort);
+    }
+    finally
+    {
+      recordPortInvocation (aPort, nStartNanos);
+    }
+  }
+
+  /**
+   * Invoke an operation on a JAX-WS port. If port pooling is enabled, a pooled port is used,
+   * otherwise a new port is created. The invocation is subject to the circuit breaker, the rate
+   * limiter and the concurrency limiter and the durations are recorded.
+   *
+   * @param <PORTTYPE>
+   *        The JAX-WS port type
+   * @param <RETTYPE>
+   *        The return type of the operation
+   * @param aURL
+   *        The endpoint URL. May not be <code>null</code>.
+   * @param aPortFactory
+   *        Creates fully configured ports. May not be <code>null</code>.
+   * @param aDeadline
+   *        The deadline of the delivery. May be <code>null</code>.
+   * @param aInvocation
+   *        The operation to be invoked. May not be <code>null</code>.
+   * @return The result of the invocation.
+   * @throws Exception
+   *         In case the invocation failed or the thread was interrupted.
+   * @since 5.0.2
+   */
+  protected final <PORTTYPE, RETTYPE> RETTYPE invokePort (@NonNull final URL aURL,
+                                                          @NonNull final Supplier <? extends PORTTYPE> aPortFactory,
+                                                          @Nullable final WSDeadline aDeadline,
+                                                          @NonNull final IWSPortInvocation <PORTTYPE, RETTYPE> aInvocation) throws Exception
+  {
+    return invokeLimited (aURL, aDeadline, () -> {
+      if (isPortPoolingEnabled ())
+      {
+        // Re-use a pre-configured port
+        return invokeWithPooledPort ( () -> aPortFactory,
+                                      aDeadline,
+                                      (final PORTTYPE aPort) -> _invokePort (aPort, aDeadline, aInvocation));
+      }
+
+      final long nStartNanos = System.nanoTime ();
+      final PORTTYPE aPort = aPortFactory.get ();
+      recordDuration (EWSDeliveryPhase.PORT_ACQUISITION, nStartNanos);
+      return _invokePort (aPort, aDeadline, aInvocation);
+    });
+  }
+
+  /**
+   * Record the outcome of a complete delivery.
+   *
+   * @param <RESPONSETYPE>
+   *        The response type
+   * @param aProtocol
+   *        The version specific delivery protocol. May not be <code>null</code>.
+   * @param nStartNanos
+   *        The start of the delivery as returned by {@link System#nanoTime()}.
+   * @param aAttachments
+   *        The attachments of the delivery. May be <code>null</code>.
+   * @param aResponse
+   *        The response of the delivery. May not be <code>null</code>.
+   * @return The passed response
+   * @since 5.0.2
+   */
+  @NonNull
+  protected final <RESPONSETYPE> RESPONSETYPE recordDeliveryOutcome (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, ?, ?, ?> aProtocol,
+                                                                     final long nStartNanos,
+                                                                     @Nullable final List <?> aAttachments,
+                                                                     @NonNull final RESPONSETYPE aResponse)
+  {
+    String sErrorField = null;
+    if (aProtocol.getSuccess (aResponse) == null)
+    {
+      sErrorField = aProtocol.getFirstErrorField (aResponse);
+      if (sErrorField == null)
+        sErrorField = EWSErrorField.DOCUMENT.getFieldName ();
+    }
+    recordDeliveryOutcome (nStartNanos, aAttachments == null ? 0 : aAttachments.size (), sErrorField);
+    return aResponse;
+  }
+
+  @NonNull
+  private static <RESPONSETYPE> RESPONSETYPE _createError (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, ?, ?, ?> aProtocol,
+                                                           @NonNull final EWSErrorField eField,
+                                                           @Nullable final String sMessage)
+  {
+    return aProtocol.createError (eField, new CommonsArrayList <> (sMessage));
+  }
+
+  /**
+   * Map the failure of a delivery to an error response and log it.
+   *
+   * @param <RESPONSETYPE>
+   *        The response type
+   * @param aProtocol
+   *        The version specific delivery protocol. May not be <code>null</code>.
+   * @param t
+   *        The failure of the delivery. May not be <code>null</code>.
+   * @return The error response. Never <code>null</code>.
+   * @since 5.0.2
+   */
+  @NonNull
+  protected final <RESPONSETYPE> RESPONSETYPE createDeliveryError (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, ?, ?, ?> aProtocol,
+                                                                   @NonNull final Throwable t)
+  {
+    if (t instanceof WSCircuitOpenException)
+    {
+      LOGGER.warn (t.getMessage ());
+      return _createError (aProtocol, EWSErrorField.CIRCUIT_BREAKER, t.getMessage ());
+    }
+
+    final List <String> aFaultMessages = aProtocol.getDeclaredFaultMessages (t);
+    if (aFaultMessages != null)
+    {
+      LOGGER.error ("Error uploading the document to " + aProtocol.getDisplayName () + "!", t);
+      return aProtocol.createError (EWSErrorField.DOCUMENT, aFaultMessages);
+    }
+    if (t instanceof WSSOAPFaultException)
+    {
+      final WSSOAPFaultException aFault = (WSSOAPFaultException) t;
+      LOGGER.error ("Error uploading the document to " + aProtocol.getDisplayName () + "!", t);
+      if (aFault.hasDetailMessages ())
+        return aProtocol.createError (EWSErrorField.DOCUMENT, aFault.getAllDetailMessages ());
+      return _createError (aProtocol, EWSErrorField.WEBSERVICE, t.getMessage ());
+    }
+    if (t instanceof InterruptedException)
+    {
+      Thread.currentThread ().interrupt ();
+      LOGGER.error ("Interrupted while waiting for a pooled port or a delivery permit", t);
+      return _createError (aProtocol, EWSErrorField.GENERAL, "Interrupted while waiting for a pooled port or a delivery permit");
+    }
+    if (t instanceof InvoiceReadException)
+    {
+      LOGGER.error ("Failed to read the invoice", t);
+      return _createError (aProtocol, EWSErrorField.DOCUMENT, t.getMessage ());
+    }
+    if (t instanceof IOException || t instanceof XMLStreamException || t instanceof WebServiceException)
+    {
+      LOGGER.error ("Error transmitting the document to " + aProtocol.getDisplayName () + "!", t);
+      return _createError (aProtocol, EWSErrorField.WEBSERVICE, t.getMessage ());
+    }
+    LOGGER.error ("Generic error invoking " + aProtocol.getDisplayName (), t);
+    return _createError (aProtocol, EWSErrorField.GENERAL, t.getMessage ());
+  }
+
+  @NonNull
+  private <RESPONSETYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE _deliverDirect (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, ?, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                    @NonNull final IWSRequestBodyWriter aInvoiceWriter,
+                                                                                    @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                    @NonNull final SETTINGSTYPE aSettings,
+                                                                                    @Nullable final WSDeadline aDeadline,
+                                                                                    final boolean bRetry)
+  {
+    try
+    {
+      final byte [] aHeader = getWSSEHeaderBytes ();
+      final IWSDeliveryAttempt <RESPONSETYPE> aAttempt = aAttemptDeadline -> postSOAPRequest (aProtocol.getURL (),
+                                                                                              aProtocol.getSOAPAction (),
+                                                                                              SOAPStreamHelper.SOAP11_CONTENT_TYPE,
+                                                                                              aOS -> aProtocol.writeRequest (aOS,
+                                                                                                                             aHeader,
+                                                                                                                             aInvoiceWriter,
+                                                                                                                             getInvoiceEncoding ().name (),
+                                                                                                                             aAttachments,
+                                                                                                                             aSettings),
+                                                                                              aProtocol::readResponse,
+                                                                                              aAttemptDeadline);
+      return bRetry ? invokeWithRetry (aAttempt, aDeadline) : aAttempt.invoke (aDeadline);
+    }
+    catch (final Exception ex)
+    {
+      return createDeliveryError (aProtocol, ex);
+    }
+  }
+
+  @NonNull
+  private <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE _deliverNode (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                               @NonNull final Node aOriginalInvoice,
+                                                                                               @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                               @NonNull final SETTINGSTYPE aSettings)
+  {
+    ValueEnforcer.notNull (aOriginalInvoice, "OriginalInvoice");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    // Convert XML node to a byte array
+    final XMLWriterSettings aXWS = new XMLWriterSettings ().setCharset (getInvoiceEncoding ())
+                                                           .setNamespaceContext (getNamespaceContext ());
+    // The duplicate detection key requires the serialized invoice
+    if (isDirectEngine () && aProtocol.getDeduplicator () == null)
+    {
+      // Serialize the node directly into the request
+      return _deliverDirect (aProtocol, aOS -> {
+        final long nSerializationStartNanos = System.nanoTime ();
+        final boolean bFailure = XMLWriter.writeToStream (aOriginalInvoice, aOS, aXWS).isFailure ();
+        recordDuration (EWSDeliveryPhase.SERIALIZATION, nSerializationStartNanos);
+        if (bFailure)
+          throw new IOException ("Failed to serialize the specified XML document");
+      }, aAttachments, aSettings, createDeliveryDeadline (), true);
+    }
+
+    final long nStartNanos = System.nanoTime ();
+    final byte [] aInvoiceBytes = XMLWriter.getNodeAsBytes (aOriginalInvoice, aXWS);
+    recordDuration (EWSDeliveryPhase.SERIALIZATION, nStartNanos);
+    if (aInvoiceBytes == null)
+    {
+      LOGGER.error ("Failed to serialize the specified XML document");
+      return _createError (aProtocol, EWSErrorField.DOCUMENT, "Failed to serialize the specified XML document");
+    }
+
+    if (false)
+      LOGGER.info ("Created XML:\n" + new String (aInvoiceBytes, getInvoiceEncoding ()));
+
+    return _deliverBytesOnce (aProtocol, aInvoiceBytes, aAttachments, aSettings);
+  }
+
+  /**
+   * Deliver an invoice in an XML representation. The invoice is delivered like with
+   * {@link #deliverBytes(IWSDeliveryProtocol, byte[], List, Object)}.
+   *
+   * @param <RESPONSETYPE>
+   *        The response type
+   * @param <SUCCESSTYPE>
+   *        The success element type
+   * @param <ATTACHMENTTYPE>
+   *        The attachment type
+   * @param <SETTINGSTYPE>
+   *        The settings type
+   * @param aProtocol
+   *        The version specific delivery protocol. May not be <code>null</code>.
+   * @param aOriginalInvoice
+   *        The original invoice in an XML representation. May not be <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. May be <code>null</code>.
+   * @param aSettings
+   *        The settings of the delivery. May not be <code>null</code>.
+   * @return A non-<code>null</code> response. In case of an internal error, a corresponding error
+   *         response is created.
+   * @since 5.0.2
+   */
+  @NonNull
+  protected final <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE deliverNode (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                                      @NonNull final Node aOriginalInvoice,
+                                                                                                      @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                                      @NonNull final SETTINGSTYPE aSettings)
+  {
+    final long nStartNanos = System.nanoTime ();
+    return recordDeliveryOutcome (aProtocol,
+                                  nStartNanos,
+                                  aAttachments,
+                                  _deliverNode (aProtocol, aOriginalInvoice, aAttachments, aSettings));
+  }
+
+  @NonNull
+  private <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE _deliverBytesOnce (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                                    @NonNull final byte [] aInvoiceBytes,
+                                                                                                    @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                                    @NonNull final SETTINGSTYPE aSettings)
+  {
+    // The deadline covers waiting for an identical delivery as well
+    final WSDeadline aDeadline = createDeliveryDeadline ();
+    final WSDeliveryDeduplicator <SUCCESSTYPE> aDeduplicator = aProtocol.getDeduplicator ();
+    final String sKey = aDeduplicator == null ? null
+                                              : _getDeduplicationKey (aProtocol, aInvoiceBytes, aAttachments, aSettings);
+    if (sKey == null)
+      return _deliverBytes (aProtocol, aInvoiceBytes, aAttachments, aSettings, aDeadline);
+
+    final SUCCESSTYPE aPreviousSuccess;
+    try
+    {
+      // Waits if the same invoice is currently being delivered
+      aPreviousSuccess = aDeduplicator.beginDelivery (sKey, aDeadline);
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      LOGGER.error ("Interrupted while waiting for an identical delivery", ex);
+      return _createError (aProtocol, EWSErrorField.GENERAL, "Interrupted while waiting for an identical delivery");
+    }
+    catch (final WSDeadlineExceededException ex)
+    {
+      return createDeliveryError (aProtocol, ex);
+    }
+    if (aPreviousSuccess != null)
+    {
+      LOGGER.info ("Suppressing the duplicate delivery of the invoice with document ID '" +
+                   aProtocol.getDocumentID (aPreviousSuccess) +
+                   "'");
+      return aProtocol.createSuccess (aPreviousSuccess);
+    }
+
+    SUCCESSTYPE aSuccess = null;
+    try
+    {
+      final RESPONSETYPE ret = _deliverBytes (aProtocol, aInvoiceBytes, aAttachments, aSettings, aDeadline);
+      aSuccess = aProtocol.getSuccess (ret);
+      return ret;
+    }
+    finally
+    {
+      if (aSuccess != null)
+        aDeduplicator.onSuccess (sKey, aSuccess);
+      else
+        aDeduplicator.onFailure (sKey);
+    }
+  }
+
+  @Nullable
+  private <ATTACHMENTTYPE, SETTINGSTYPE> String _getDeduplicationKey (@NonNull final IWSDeliveryProtocol <?, ?, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                      @NonNull final byte [] aInvoiceBytes,
+                                                                      @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                      @NonNull final SETTINGSTYPE aSettings)
+  {
+    if (aInvoiceBytes == null || aSettings == null)
+      return null;
+
+    try
+    {
+      return WSDeliveryDeduplicator.createKey (aInvoiceBytes, aOS -> {
+        // The same invoice may be sent to the test and to the production system
+        SOAPStreamHelper.writeUTF8 (aOS,
+                                    aProtocol.getURL ().toExternalForm () + ' ' + getInvoiceEncoding ().name () + ' ');
+        aProtocol.writeParameters (aOS, aAttachments, aSettings);
+      });
+    }
+    catch (final Exception ex)
+    {
+      LOGGER.warn ("Failed to create the duplicate detection key - delivering without duplicate check", ex);
+      return null;
+    }
+  }
+
+  @NonNull
+  private <RESPONSETYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE _deliverBytes (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, ?, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                   @NonNull final byte [] aInvoiceBytes,
+                                                                                   @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                   @NonNull final SETTINGSTYPE aSettings,
+                                                                                   @Nullable final WSDeadline aDeadline)
+  {
+    ValueEnforcer.notNull (aInvoiceBytes, "InvoiceBytes");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    if (isDirectEngine ())
+      return _deliverDirect (aProtocol, aOS -> aOS.write (aInvoiceBytes), aAttachments, aSettings, aDeadline, true);
+
+    // Some debug output
+    WSHelper.enableSoapLogging (isDebugMode ());
+
+    final URL aURL = aProtocol.getURL ();
+    try
+    {
+      return invokeWithRetry (aAttemptDeadline -> {
+        try
+        {
+          return aProtocol.invokeJAXWS (aInvoiceBytes, aAttachments, aSettings, aAttemptDeadline);
+        }
+        catch (final WebServiceException ex)
+        {
+          if (!isMTOMActive (aURL) || !isUnsupportedMediaType (ex))
+            throw ex;
+
+          // Try again without MTOM
+          markMTOMUnsupported (aURL);
+          return aProtocol.invokeJAXWS (aInvoiceBytes, aAttachments, aSettings, aAttemptDeadline);
+        }
+      }, aDeadline);
+    }
+    catch (final Throwable t)
+    {
+      return createDeliveryError (aProtocol, t);
+    }
+  }
+
+  /**
+   * Deliver an invoice that is available as a byte array. Depending on the engine, the invoice is
+   * either delivered via JAX-WS or directly. Retryable failures are retried according to
+   * {@link #getRetryPolicy()} and if a duplicate detection is configured, a successful delivery is
+   * never repeated.
+   *
+   * @param <RESPONSETYPE>
+   *        The response type
+   * @param <SUCCESSTYPE>
+   *        The success element type
+   * @param <ATTACHMENTTYPE>
+   *        The attachment type
+   * @param <SETTINGSTYPE>
+   *        The settings type
+   * @param aProtocol
+   *        The version specific delivery protocol. May not be <code>null</code>.
+   * @param aInvoiceBytes
+   *        The byte array representation of the XML invoice. May not be <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. May be <code>null</code>.
+   * @param aSettings
+   *        The settings of the delivery. May not be <code>null</code>.
+   * @return A non-<code>null</code> response. In case of an internal error, a corresponding error
+   *         response is created.
+   * @since 5.0.2
+   */
+  @NonNull
+  protected final <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE deliverBytes (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                                       @NonNull final byte [] aInvoiceBytes,
+                                                                                                       @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                                       @NonNull final SETTINGSTYPE aSettings)
+  {
+    final long nStartNanos = System.nanoTime ();
+    return recordDeliveryOutcome (aProtocol,
+                                  nStartNanos,
+                                  aAttachments,
+                                  _deliverBytesOnce (aProtocol, aInvoiceBytes, aAttachments, aSettings));
+  }
+
+  @NonNull
+  private <RESPONSETYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE _deliverStream (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, ?, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                    @NonNull @WillNotClose final InputStream aInvoiceIS,
+                                                                                    @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                    @NonNull final SETTINGSTYPE aSettings)
+  {
+    ValueEnforcer.notNull (aInvoiceIS, "InvoiceInputStream");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    // Failures reading the invoice are not transmission errors
+    final IWSRequestBodyWriter aInvoiceWriter = aOS -> {
+      final byte [] aBuffer = new byte [8192];
+      while (true)
+      {
+        final int nRead;
+        try
+        {
+          nRead = aInvoiceIS.read (aBuffer);
+        }
+        catch (final IOException ex)
+        {
+          throw new InvoiceReadException (ex);
+        }
+        if (nRead < 0)
+          break;
+        aOS.write (aBuffer, 0, nRead);
+      }
+    };
+    // The stream can only be read once
+    return _deliverDirect (aProtocol, aInvoiceWriter, aAttachments, aSettings, createDeliveryDeadline (), false);
+  }
+
+  /**
+   * Deliver an invoice that is read from a stream, without JAX-WS. The delivery is never retried,
+   * because the stream can only be read once.
+   *
+   * @param <RESPONSETYPE>
+   *        The response type
+   * @param <SUCCESSTYPE>
+   *        The success element type
+   * @param <ATTACHMENTTYPE>
+   *        The attachment type
+   * @param <SETTINGSTYPE>
+   *        The settings type
+   * @param aProtocol
+   *        The version specific delivery protocol. May not be <code>null</code>.
+   * @param aInvoiceIS
+   *        The input stream with the XML invoice. May not be <code>null</code>. It is read until
+   *        the end but not closed.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. May be <code>null</code>.
+   * @param aSettings
+   *        The settings of the delivery. May not be <code>null</code>.
+   * @return A non-<code>null</code> response. In case of an internal error, a corresponding error
+   *         response is created.
+   * @since 5.0.2
+   */
+  @NonNull
+  protected final <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE deliverStream (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                                        @NonNull @WillNotClose final InputStream aInvoiceIS,
+                                                                                                        @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                                        @NonNull final SETTINGSTYPE aSettings)
+  {
+    final long nStartNanos = System.nanoTime ();
+    return recordDeliveryOutcome (aProtocol,
+                                  nStartNanos,
+                                  aAttachments,
+                                  _deliverStream (aProtocol, aInvoiceIS, aAttachments, aSettings));
+  }
+
+  @NonNull
+  private <RESPONSETYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE _deliverStreamAndClose (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, ?, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                            @NonNull final InputStream aInvoiceIS,
+                                                                                            @NonNull final String sSourceName,
+                                                                                            @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                            @NonNull final SETTINGSTYPE aSettings)
+  {
+    // Read errors are part of the delivery
+    final RESPONSETYPE ret;
+    try
+    {
+      ret = _deliverStream (aProtocol, aInvoiceIS, aAttachments, aSettings);
+    }
+    finally
+    {
+      // The delivery already finished - a failure to close must not hide its outcome
+      try
+      {
+        aInvoiceIS.close ();
+      }
+      catch (final IOException ex)
+      {
+        LOGGER.warn ("Failed to close the invoice " + sSourceName, ex);
+      }
+    }
+    return ret;
+  }
+
+  @NonNull
+  private <RESPONSETYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE _deliverPath (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, ?, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                  @NonNull final Path aInvoicePath,
+                                                                                  @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                  @NonNull final SETTINGSTYPE aSettings)
+  {
+    ValueEnforcer.notNull (aInvoicePath, "InvoicePath");
+
+    final InputStream aIS;
+    try
+    {
+      aIS = Files.newInputStream (aInvoicePath);
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.error ("Failed to read the invoice from '" + aInvoicePath + "'", ex);
+      return _createError (aProtocol, EWSErrorField.DOCUMENT, "Failed to read the invoice: " + ex.getMessage ());
+    }
+    return _deliverStreamAndClose (aProtocol, aIS, "'" + aInvoicePath + "'", aAttachments, aSettings);
+  }
+
+  /**
+   * Deliver an invoice that is read from a file, without JAX-WS. See
+   * {@link #deliverStream(IWSDeliveryProtocol, InputStream, List, Object)} for details.
+   *
+   * @param <RESPONSETYPE>
+   *        The response type
+   * @param <SUCCESSTYPE>
+   *        The success element type
+   * @param <ATTACHMENTTYPE>
+   *        The attachment type
+   * @param <SETTINGSTYPE>
+   *        The settings type
+   * @param aProtocol
+   *        The version specific delivery protocol. May not be <code>null</code>.
+   * @param aInvoicePath
+   *        The path of the XML invoice. May not be <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. May be <code>null</code>.
+   * @param aSettings
+   *        The settings of the delivery. May not be <code>null</code>.
+   * @return A non-<code>null</code> response. In case of an internal error, a corresponding error
+   *         response is created.
+   * @since 5.0.2
+   */
+  @NonNull
+  protected final <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE deliverPath (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                                      @NonNull final Path aInvoicePath,
+                                                                                                      @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                                      @NonNull final SETTINGSTYPE aSettings)
+  {
+    final long nStartNanos = System.nanoTime ();
+    return recordDeliveryOutcome (aProtocol,
+                                  nStartNanos,
+                                  aAttachments,
+                                  _deliverPath (aProtocol, aInvoicePath, aAttachments, aSettings));
+  }
+
+  @NonNull
+  private <RESPONSETYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE _deliverResource (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, ?, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                      @NonNull final IReadableResource aInvoiceRes,
+                                                                                      @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                      @NonNull final SETTINGSTYPE aSettings)
+  {
+    ValueEnforcer.notNull (aInvoiceRes, "InvoiceResource");
+
+    final InputStream aIS = aInvoiceRes.getInputStream ();
+    if (aIS == null)
+    {
+      LOGGER.error ("Failed to open the invoice resource " + aInvoiceRes);
+      return _createError (aProtocol, EWSErrorField.DOCUMENT, "Failed to open the invoice resource " + aInvoiceRes.getPath ());
+    }
+    return _deliverStreamAndClose (aProtocol, aIS, "resource " + aInvoiceRes, aAttachments, aSettings);
+  }
+
+  /**
+   * Deliver an invoice that is read from a resource, without JAX-WS. See
+   * {@link #deliverStream(IWSDeliveryProtocol, InputStream, List, Object)} for details.
+   *
+   * @param <RESPONSETYPE>
+   *        The response type
+   * @param <SUCCESSTYPE>
+   *        The success element type
+   * @param <ATTACHMENTTYPE>
+   *        The attachment type
+   * @param <SETTINGSTYPE>
+   *        The settings type
+   * @param aProtocol
+   *        The version specific delivery protocol. May not be <code>null</code>.
+   * @param aInvoiceRes
+   *        The resource with the XML invoice. May not be <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. May be <code>null</code>.
+   * @param aSettings
+   *        The settings of the delivery. May not be <code>null</code>.
+   * @return A non-<code>null</code> response. In case of an internal error, a corresponding error
+   *         response is created.
+   * @since 5.0.2
+   */
+  @NonNull
+  protected final <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> RESPONSETYPE deliverResource (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                                          @NonNull final IReadableResource aInvoiceRes,
+                                                                                                          @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                                          @NonNull final SETTINGSTYPE aSettings)
+  {
+    final long nStartNanos = System.nanoTime ();
+    return recordDeliveryOutcome (aProtocol,
+                                  nStartNanos,
+                                  aAttachments,
+                                  _deliverResource (aProtocol, aInvoiceRes, aAttachments, aSettings));
+  }
+
+  /**
+   * Asynchronous version of {@link #deliverNode(IWSDeliveryProtocol, Node, List, Object)}. The
+   * delivery is performed on the executor returned by {@link #getAsyncExecutor()}.
+   *
+   * @param <RESPONSETYPE>
+   *        The response type
+   * @param <SUCCESSTYPE>
+   *        The success element type
+   * @param <ATTACHMENTTYPE>
+   *        The attachment type
+   * @param <SETTINGSTYPE>
+   *        The settings type
+   * @param aProtocol
+   *        The version specific delivery protocol. May not be <code>null</code>.
+   * @param aOriginalInvoice
+   *        The original invoice in an XML representation. May not be <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. May be <code>null</code>.
+   * @param aSettings
+   *        The settings of the delivery. May not be <code>null</code>.
+   * @return A non-<code>null</code> future that is completed with the response.
+   * @since 5.0.2
+   */
+  @NonNull
+  protected final <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> CompletableFuture <RESPONSETYPE> deliverNodeAsync (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                                                               @NonNull final Node aOriginalInvoice,
+                                                                                                                               @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                                                               @NonNull final SETTINGSTYPE aSettings)
+  {
+    ValueEnforcer.notNull (aOriginalInvoice, "OriginalInvoice");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    return CompletableFuture.supplyAsync ( () -> deliverNode (aProtocol, aOriginalInvoice, aAttachments, aSettings),
+                                          getAsyncExecutor ());
+  }
+
+  /**
+   * Asynchronous version of {@link #deliverBytes(IWSDeliveryProtocol, byte[], List, Object)}. The
+   * delivery is performed on the executor returned by {@link #getAsyncExecutor()}.
+   *
+   * @param <RESPONSETYPE>
+   *        The response type
+   * @param <SUCCESSTYPE>
+   *        The success element type
+   * @param <ATTACHMENTTYPE>
+   *        The attachment type
+   * @param <SETTINGSTYPE>
+   *        The settings type
+   * @param aProtocol
+   *        The version specific delivery protocol. May not be <code>null</code>.
+   * @param aInvoiceBytes
+   *        The byte array representation of the XML invoice. May not be <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. May be <code>null</code>.
+   * @param aSettings
+   *        The settings of the delivery. May not be <code>null</code>.
+   * @return A non-<code>null</code> future that is completed with the response.
+   * @since 5.0.2
+   */
+  @NonNull
+  protected final <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> CompletableFuture <RESPONSETYPE> deliverBytesAsync (@NonNull final IWSDeliveryProtocol <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE> aProtocol,
+                                                                                                                                @NonNull final byte [] aInvoiceBytes,
+                                                                                                                                @Nullable final List <ATTACHMENTTYPE> aAttachments,
+                                                                                                                                @NonNull final SETTINGSTYPE aSettings)
+  {
+    ValueEnforcer.notNull (aInvoiceBytes, "InvoiceBytes");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    return CompletableFuture.supplyAsync ( () -> deliverBytes (aProtocol, aInvoiceBytes, aAttachments, aSettings),
+                                          getAsyncExecutor ());
+  }
+
   @Override
   public String toString ()
   {
@@ -230,7 +2643,26 @@ public abstract class AbstractWSSender <IMPLTYPE extends AbstractWSSender <IMPLT
                                        .append ("debugMode", m_bDebugMode)
                                        .append ("trustAllCertificates", m_bTrustAllCertificates)
                                        .append ("trustAllHostnames", m_bTrustAllHostnames)
+                                       .append ("SSLContext", m_aSSLContext)
                                        .append ("NSCtx", m_aNSCtx)
+                                       .append ("PortPoolingEnabled", m_bPortPoolingEnabled)
+                                       .append ("PortPoolMaxSize", m_nPortPoolMaxSize)
+                                       .append ("PortPoolMaxIdle", m_aPortPoolMaxIdle)
+                                       .append ("AsyncExecutor", m_aAsyncExecutor)
+                                       .append ("MTOMEnabled", m_bMTOMEnabled)
+                                       .append ("Transport", m_aTransport)
+                                       .append ("Engine", m_eEngine)
+                                       .append ("UseWSDL", m_bUseWSDL)
+                                       .append ("RetryPolicy", m_aRetryPolicy)
+                                       .append ("RateLimiter", m_aRateLimiter)
+                                       .append ("ConcurrencyLimiter", m_aConcurrencyLimiter)
+                                       .append ("CircuitBreaker", m_aCircuitBreaker)
+                                       .append ("ConnectTimeout", m_aConnectTimeout)
+                                       .append ("ReadTimeout", m_aReadTimeout)
+                                       .append ("DeliveryTimeout", m_aDeliveryTimeout)
+                                       .append ("Metrics", m_aMetrics)
+                                       .append ("WSSEPasswordType", m_eWSSEPasswordType)
+                                       .append ("WSSETimestampTTL", m_aWSSETimestampTTL)
                                        .getToString ();
   }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.time.Duration;
+
+import org.jspecify.annotations.NonNull;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * Immutable snapshot of the progress of a bulk delivery.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class BulkDeliveryStatistics
+{
+  private final long m_nStarted;
+  private final long m_nSuccess;
+  private final long m_nError;
+  private final Duration m_aDuration;
+  private final boolean m_bCancelled;
+
+  public BulkDeliveryStatistics (@Nonnegative final long nStarted,
+                                 @Nonnegative final long nSuccess,
+                                 @Nonnegative final long nError,
+                                 @NonNull final Duration aDuration,
+                                 final boolean bCancelled)
+  {
+    ValueEnforcer.isGE0 (nStarted, "Started");
+    ValueEnforcer.isGE0 (nSuccess, "Success");
+    ValueEnforcer.isGE0 (nError, "Error");
+    ValueEnforcer.notNull (aDuration, "Duration");
+    m_nStarted = nStarted;
+    m_nSuccess = nSuccess;
+    m_nError = nError;
+    m_aDuration = aDuration;
+    m_bCancelled = bCancelled;
+  }
+
+  /**
+   * @return The number of deliveries that were started (read from the input).
+   */
+  @Nonnegative
+  public long getStartedCount ()
+  {
+    return m_nStarted;
+  }
+
+  /**
+   * @return The number of deliveries that finished with a success response.
+   */
+  @Nonnegative
+  public long getSuccessCount ()
+  {
+    return m_nSuccess;
+  }
+
+  /**
+   * @return The number of deliveries that finished with an error response.
+   */
+  @Nonnegative
+  public long getErrorCount ()
+  {
+    return m_nError;
+  }
+
+  /**
+   * @return The number of finished deliveries, independent of the result.
+   */
+  @Nonnegative
+  public long getFinishedCount ()
+  {
+    return m_nSuccess + m_nError;
+  }
+
+  /**
+   * @return The number of deliveries that were started but are not yet finished.
+   */
+  @Nonnegative
+  public long getInFlightCount ()
+  {
+    return m_nStarted - getFinishedCount ();
+  }
+
+  /**
+   * @return The elapsed time since the start of the bulk delivery. Never <code>null</code>.
+   */
+  @NonNull
+  public Duration getDuration ()
+  {
+    return m_aDuration;
+  }
+
+  /**
+   * @return <code>true</code> if the bulk delivery was cancelled before all inputs were read.
+   */
+  public boolean isCancelled ()
+  {
+    return m_bCancelled;
+  }
+
+  /**
+   * @return The number of finished deliveries per second. Is 0 if no time elapsed.
+   */
+  public double getThroughputPerSecond ()
+  {
+    final long nNanos = m_aDuration.toNanos ();
+    if (nNanos <= 0)
+      return 0;
+    return getFinishedCount () * 1_000_000_000d / nNanos;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Started", m_nStarted)
+                                       .append ("Success", m_nSuccess)
+                                       .append ("Error", m_nError)
+                                       .append ("Duration", m_aDuration)
+                                       .append ("Cancelled", m_bCancelled)
+                                       .append ("ThroughputPerSecond", getThroughputPerSecond ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+/**
+ * The states of a {@link WSCircuitBreaker} for a single endpoint.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+public enum EWSCircuitState
+{
+  /** Requests are sent and their outcome is recorded. */
+  CLOSED,
+  /** Requests fail immediately without being sent. */
+  OPEN,
+  /** A limited number of trial requests is sent to check if the endpoint recovered. */
+  HALF_OPEN;
+}
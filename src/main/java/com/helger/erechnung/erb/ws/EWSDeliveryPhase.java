@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+/**
+ * The phases of a delivery that are timed via {@link IWSSenderMetrics}.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+public enum EWSDeliveryPhase
+{
+  /**
+   * The serialization of a DOM node invoice. Usually the node is serialized into a byte array once
+   * per delivery. With the direct engine and without duplicate detection the node is serialized
+   * directly into each request, so it is recorded per request, includes writing to the connection
+   * and is part of {@link #ROUND_TRIP} as well.
+   */
+  SERIALIZATION,
+  /**
+   * The creation of a JAX-WS port, or the time waiting for a pooled port if port pooling is
+   * enabled.
+   */
+  PORT_ACQUISITION,
+  /**
+   * The execution of the WS Security header handler of JAX-WS.
+   */
+  HANDLER,
+  /**
+   * A single request to ER&gt;B. For JAX-WS this is the time from invoking the port, including the
+   * marshalling and the handlers, until the response was received by the handler chain. For the
+   * direct engine this is the time from opening the connection until reading the response starts.
+   */
+  ROUND_TRIP,
+  /**
+   * The parsing of the response of a single request. For JAX-WS this is the remaining time of the
+   * port invocation after the response was received by the handler chain. Only recorded if a
+   * response was received.
+   */
+  UNMARSHALLING,
+  /**
+   * A complete delivery, including all retries and waiting times.
+   */
+  TOTAL;
+}
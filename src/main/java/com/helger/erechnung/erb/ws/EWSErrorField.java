@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.Nonempty;
+
+/**
+ * The fields of the error details that are created by the senders for failures of a delivery.
+ * They are also the error types recorded via {@link IWSSenderMetrics#recordError(String)}.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+public enum EWSErrorField
+{
+  /**
+   * The invoice was rejected, e.g. by a SOAP fault, or could not be read or serialized. All errors
+   * reported by ER&gt;B itself are recorded as this type.
+   */
+  DOCUMENT ("document"),
+  /** The webservice could not be reached or did not answer as expected. */
+  WEBSERVICE ("webservice"),
+  /** The delivery was not attempted, because the circuit breaker of the endpoint is open. */
+  CIRCUIT_BREAKER ("circuitbreaker"),
+  /** Any other failure, e.g. an interruption. */
+  GENERAL ("general");
+
+  private final String m_sFieldName;
+
+  EWSErrorField (@NonNull @Nonempty final String sFieldName)
+  {
+    m_sFieldName = sFieldName;
+  }
+
+  /**
+   * @return The value of the <code>Field</code> element of the error detail. Neither
+   *         <code>null</code> nor empty.
+   */
+  @NonNull
+  @Nonempty
+  public String getFieldName ()
+  {
+    return m_sFieldName;
+  }
+
+  /**
+   * Find the error field with the provided name.
+   *
+   * @param sFieldName
+   *        The field name to search. May be <code>null</code>.
+   * @return <code>null</code> if no such error field exists, e.g. because the error was reported by
+   *         ER&gt;B itself.
+   */
+  @Nullable
+  public static EWSErrorField getFromFieldNameOrNull (@Nullable final String sFieldName)
+  {
+    for (final EWSErrorField e : values ())
+      if (e.m_sFieldName.equals (sFieldName))
+        return e;
+    return null;
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import org.jspecify.annotations.NonNull;
+
+import com.helger.annotation.Nonempty;
+
+/**
+ * Defines how the password is transmitted in the WS Security UsernameToken.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+public enum EWSSEPasswordType
+{
+  /**
+   * The password is transmitted as plain text. This is what ER&gt;B requires by default.
+   */
+  TEXT ("http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-username-token-profile-1.0#PasswordText"),
+  /**
+   * The password is transmitted as Base64 (SHA-1 (nonce + created + password)), together with the
+   * nonce and the creation time.
+   */
+  DIGEST ("http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-username-token-profile-1.0#PasswordDigest");
+
+  private final String m_sTypeURI;
+
+  EWSSEPasswordType (@NonNull @Nonempty final String sTypeURI)
+  {
+    m_sTypeURI = sTypeURI;
+  }
+
+  /**
+   * @return The value of the <code>Type</code> attribute of the <code>Password</code> element.
+   *         Neither <code>null</code> nor empty.
+   */
+  @NonNull
+  @Nonempty
+  public String getTypeURI ()
+  {
+    return m_sTypeURI;
+  }
+}
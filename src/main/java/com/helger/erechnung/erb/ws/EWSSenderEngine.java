@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+/**
+ * Defines how the senders create the SOAP messages for the byte array and DOM node based delivery
+ * methods.
+ *
+ * @author Philip Helger
+ */
+public enum EWSSenderEngine
+{
+  /**
+   * Use the generated JAX-WS client including the handler chain. This requires a JAX-WS runtime
+   * (e.g. <code>com.sun.xml.ws:jaxws-rt</code>) and supports port pooling, MTOM and
+   * {@link AbstractWSSender#modifyWSClientConfig(com.helger.wsclient.WSClientConfig)}.
+   */
+  JAXWS,
+  /**
+   * Write the SOAP envelope directly to the HTTP connection and parse the response with a StAX
+   * reader into the generated types. This requires no JAX-WS runtime and uses the transport set
+   * via {@link AbstractWSSender#setTransport(IWSTransport)}. Attachments are always Base64 encoded
+   * inline.
+   */
+  DIRECT;
+}
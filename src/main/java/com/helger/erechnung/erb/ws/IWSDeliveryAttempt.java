@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Callback interface for a single delivery attempt, that may be invoked multiple times by
+ * {@link AbstractWSSender#invokeWithRetry(IWSDeliveryAttempt)}.
+ *
+ * @author Philip Helger
+ * @param <T>
+ *        The result type
+ * @since 5.0.2
+ */
+@FunctionalInterface
+public interface IWSDeliveryAttempt <T>
+{
+  /**
+   * Perform the delivery attempt.
+   *
+   * @param aDeadline
+   *        The deadline of the whole delivery. May be <code>null</code> if there is none.
+   * @return The result of the attempt.
+   * @throws Exception
+   *         In case of error
+   */
+  T invoke (@Nullable WSDeadline aDeadline) throws Exception;
+}
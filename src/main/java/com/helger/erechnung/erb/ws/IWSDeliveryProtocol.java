@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.List;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.WillNotClose;
+
+/**
+ * The version specific part of an ER&gt;B invoice delivery. The generic delivery logic of
+ * {@link AbstractWSSender} (engine selection, retries, duplicate detection, error mapping and
+ * metrics) uses an implementation of this interface to invoke the JAX-WS port, to write and read
+ * the SOAP messages of the direct engine and to create and inspect the response objects.
+ *
+ * @author Philip Helger
+ * @param <RESPONSETYPE>
+ *        The response type of the Webservice
+ * @param <SUCCESSTYPE>
+ *        The success element type of a response
+ * @param <ATTACHMENTTYPE>
+ *        The attachment type of the Webservice
+ * @param <SETTINGSTYPE>
+ *        The settings type of the Webservice
+ * @since 5.0.2
+ */
+public interface IWSDeliveryProtocol <RESPONSETYPE, SUCCESSTYPE, ATTACHMENTTYPE, SETTINGSTYPE>
+{
+  /**
+   * @return The name of the Webservice to be used in log messages. May neither be
+   *         <code>null</code> nor empty.
+   */
+  @NonNull
+  @Nonempty
+  String getDisplayName ();
+
+  /**
+   * @return The endpoint URL to deliver to. May not be <code>null</code>.
+   */
+  @NonNull
+  URL getURL ();
+
+  /**
+   * @return The duplicate detection to use. May be <code>null</code> if disabled.
+   */
+  @Nullable
+  WSDeliveryDeduplicator <SUCCESSTYPE> getDeduplicator ();
+
+  /**
+   * Perform a single delivery via JAX-WS. The invocation must be wrapped in
+   * {@link AbstractWSSender#invokePort(URL, java.util.function.Supplier, WSDeadline, IWSPortInvocation)}.
+   *
+   * @param aInvoiceBytes
+   *        The serialized invoice. Never <code>null</code>.
+   * @param aAttachments
+   *        The optional attachments. May be <code>null</code>.
+   * @param aSettings
+   *        The settings. Never <code>null</code>.
+   * @param aDeadline
+   *        The deadline of the delivery. May be <code>null</code>.
+   * @return The response of the Webservice. May not be <code>null</code>.
+   * @throws Exception
+   *         In case of error. Declared SOAP faults must be thrown unchanged.
+   */
+  @NonNull
+  RESPONSETYPE invokeJAXWS (@NonNull byte [] aInvoiceBytes,
+                            @Nullable List <ATTACHMENTTYPE> aAttachments,
+                            @NonNull SETTINGSTYPE aSettings,
+                            @Nullable WSDeadline aDeadline) throws Exception;
+
+  /**
+   * @return The SOAP action to be used by the direct engine. May not be <code>null</code>.
+   */
+  @NonNull
+  String getSOAPAction ();
+
+  /**
+   * Write a complete SOAP request for the direct engine.
+   *
+   * @param aOS
+   *        The output stream to write to. Never <code>null</code>. Must not be closed.
+   * @param aSOAPHeaderContent
+   *        The serialized WS Security header. Never <code>null</code>.
+   * @param aInvoiceWriter
+   *        The writer for the unencoded invoice. Never <code>null</code>.
+   * @param sInvoiceEncoding
+   *        The encoding of the invoice. Never <code>null</code> nor empty.
+   * @param aAttachments
+   *        The optional attachments. May be <code>null</code>.
+   * @param aSettings
+   *        The settings. Never <code>null</code>.
+   * @throws Exception
+   *         In case of error
+   */
+  void writeRequest (@NonNull @WillNotClose OutputStream aOS,
+                     @NonNull byte [] aSOAPHeaderContent,
+                     @NonNull IWSRequestBodyWriter aInvoiceWriter,
+                     @NonNull @Nonempty String sInvoiceEncoding,
+                     @Nullable List <ATTACHMENTTYPE> aAttachments,
+                     @NonNull SETTINGSTYPE aSettings) throws Exception;
+
+  /**
+   * Read the SOAP response envelope received by the direct engine.
+   *
+   * @param aIS
+   *        The input stream that starts with the SOAP envelope. Never <code>null</code>. Must not
+   *        be closed.
+   * @return The parsed response. May not be <code>null</code>.
+   * @throws Exception
+   *         In case of error. A SOAP fault must be reported as {@link WSSOAPFaultException}.
+   */
+  @NonNull
+  RESPONSETYPE readResponse (@NonNull @WillNotClose InputStream aIS) throws Exception;
+
+  /**
+   * Write the attachments and the settings of a delivery, to identify the delivery for duplicate
+   * detection. This is called for every delivery with duplicate detection, so the raw attachment
+   * content should be written and no XML serialization should be performed.
+   *
+   * @param aOS
+   *        The output stream to write to. Never <code>null</code>. Must not be closed.
+   * @param aAttachments
+   *        The optional attachments. May be <code>null</code>.
+   * @param aSettings
+   *        The settings. Never <code>null</code>.
+   * @throws Exception
+   *         In case of error
+   */
+  void writeParameters (@NonNull @WillNotClose OutputStream aOS,
+                        @Nullable List <ATTACHMENTTYPE> aAttachments,
+                        @NonNull SETTINGSTYPE aSettings) throws Exception;
+
+  /**
+   * Get the messages of a SOAP fault that is declared in the WSDL.
+   *
+   * @param t
+   *        The failure of a delivery. Never <code>null</code>.
+   * @return <code>null</code> if the failure is not a declared SOAP fault.
+   */
+  @Nullable
+  List <String> getDeclaredFaultMessages (@NonNull Throwable t);
+
+  /**
+   * Create an error response.
+   *
+   * @param eField
+   *        The field of the error details. Never <code>null</code>.
+   * @param aMessages
+   *        The messages of the error details. Never <code>null</code>.
+   * @return The new response. May not be <code>null</code>.
+   */
+  @NonNull
+  RESPONSETYPE createError (@NonNull EWSErrorField eField, @NonNull List <String> aMessages);
+
+  /**
+   * Create a success response.
+   *
+   * @param aSuccess
+   *        The success element. Never <code>null</code>.
+   * @return The new response. May not be <code>null</code>.
+   */
+  @NonNull
+  RESPONSETYPE createSuccess (@NonNull SUCCESSTYPE aSuccess);
+
+  /**
+   * @param aResponse
+   *        The response to check. Never <code>null</code>.
+   * @return The success element of the response or <code>null</code> if it is an error response.
+   */
+  @Nullable
+  SUCCESSTYPE getSuccess (@NonNull RESPONSETYPE aResponse);
+
+  /**
+   * @param aResponse
+   *        The error response to check. Never <code>null</code>.
+   * @return The field of the first error detail or <code>null</code> if there is none.
+   */
+  @Nullable
+  String getFirstErrorField (@NonNull RESPONSETYPE aResponse);
+
+  /**
+   * @param aSuccess
+   *        The success element. Never <code>null</code>.
+   * @return The document ID assigned by ER&gt;B. May be <code>null</code>.
+   */
+  @Nullable
+  String getDocumentID (@NonNull SUCCESSTYPE aSuccess);
+}
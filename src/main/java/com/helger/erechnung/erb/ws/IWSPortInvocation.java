@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import org.jspecify.annotations.NonNull;
+
+/**
+ * Callback interface for invoking a single operation on a JAX-WS port.
+ *
+ * @author Philip Helger
+ * @param <PORTTYPE>
+ *        The JAX-WS port type
+ * @param <RETTYPE>
+ *        The return type of the operation
+ */
+@FunctionalInterface
+public interface IWSPortInvocation <PORTTYPE, RETTYPE>
+{
+  /**
+   * Invoke the operation on the provided port.
+   *
+   * @param aPort
+   *        The port to use. Never <code>null</code>.
+   * @return The result of the operation.
+   * @throws Exception
+   *         In case of error. Checked exceptions are considered SOAP faults declared in the WSDL.
+   */
+  RETTYPE invoke (@NonNull PORTTYPE aPort) throws Exception;
+}
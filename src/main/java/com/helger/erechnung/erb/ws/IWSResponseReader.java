@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.InputStream;
+
+import org.jspecify.annotations.NonNull;
+
+import com.helger.annotation.WillNotClose;
+
+/**
+ * Callback interface for reading the SOAP envelope of a response that was received without JAX-WS.
+ *
+ * @author Philip Helger
+ * @param <T>
+ *        The response type
+ */
+@FunctionalInterface
+public interface IWSResponseReader <T>
+{
+  /**
+   * Read the response.
+   *
+   * @param aIS
+   *        The input stream that starts with the SOAP envelope. Never <code>null</code>. Must not
+   *        be closed.
+   * @return The parsed response.
+   * @throws Exception
+   *         In case of error. A SOAP fault should be reported as {@link WSSOAPFaultException}.
+   */
+  T readResponse (@NonNull @WillNotClose InputStream aIS) throws Exception;
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.time.Duration;
+
+import org.jspecify.annotations.NonNull;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.Nonempty;
+
+/**
+ * Callback interface for collecting metrics of the deliveries of a sender, e.g. to forward them to
+ * Micrometer timers and counters. All methods do nothing by default, so that only the relevant ones
+ * need to be implemented. Implementations must be thread-safe, because they are invoked from all
+ * delivering threads, and fast, because they are invoked synchronously.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+public interface IWSSenderMetrics
+{
+  /** Implementation that ignores everything. This is the default of the senders. */
+  IWSSenderMetrics NONE = new IWSSenderMetrics ()
+  {};
+
+  /**
+   * Record the duration of a single phase of a delivery. Phases that are executed multiple times
+   * per delivery (e.g. {@link EWSDeliveryPhase#ROUND_TRIP} in case of retries) are recorded each
+   * time.
+   *
+   * @param ePhase
+   *        The phase. Never <code>null</code>.
+   * @param aDuration
+   *        The duration of the phase. Never <code>null</code>.
+   */
+  default void recordDuration (@NonNull final EWSDeliveryPhase ePhase, @NonNull final Duration aDuration)
+  {}
+
+  /**
+   * Record a successful delivery.
+   */
+  default void recordSuccess ()
+  {}
+
+  /**
+   * Record a failed delivery.
+   *
+   * @param sErrorType
+   *        The error type. This is the field name of the created error detail (see
+   *        {@link EWSErrorField#getFieldName()}). Errors reported by ER&gt;B itself are recorded as
+   *        {@link EWSErrorField#DOCUMENT}. Neither <code>null</code> nor empty.
+   */
+  default void recordError (@NonNull @Nonempty final String sErrorType)
+  {}
+
+  /**
+   * Record the number of bytes of a single request. For the direct engine and the streaming
+   * methods this is the size of the SOAP request body. For JAX-WS this is the size of the
+   * serialized SOAP message (including MTOM attachments) as seen by the last handler. To determine
+   * it, the message is serialized once more, which only happens if metrics are enabled.
+   *
+   * @param nBytes
+   *        The number of bytes. Always &ge; 0.
+   */
+  default void recordBytesSent (@Nonnegative final long nBytes)
+  {}
+
+  /**
+   * Record the number of attachments of a delivery.
+   *
+   * @param nAttachments
+   *        The number of attachments. Always &ge; 0.
+   */
+  default void recordAttachmentCount (@Nonnegative final int nAttachments)
+  {}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.net.URL;
+import java.time.Duration;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Transport plugin interface for the direct (non JAX-WS) SOAP code path of the senders. An
+ * implementation posts a single SOAP request and hands the SOAP response envelope to the provided
+ * reader. Implementations must be thread-safe.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ * @see AbstractWSSender#setTransport(IWSTransport)
+ */
+public interface IWSTransport
+{
+  /**
+   * Post a SOAP 1.1 request and read the response. The request body should be streamed and the
+   * response may either be a plain SOAP envelope or an MTOM/XOP multipart message.
+   * {@link SOAPStreamHelper#readSOAPResponse(int, String, java.io.InputStream, IWSResponseReader)}
+   * can be used to handle the response.
+   *
+   * @param <T>
+   *        The response type
+   * @param aURL
+   *        The endpoint URL to use. Never <code>null</code>.
+   * @param sSOAPAction
+   *        The SOAP action to use. Never <code>null</code>.
+   * @param sContentType
+   *        The content type of the request body. Never <code>null</code>.
+   * @param aRequestWriter
+   *        The writer for the request body. Never <code>null</code>.
+   * @param aResponseReader
+   *        The reader for the SOAP response envelope. Never <code>null</code>.
+   * @param aConnectTimeout
+   *        The maximum duration for establishing the connection. <code>null</code> means the
+   *        default of the transport.
+   * @param aReadTimeout
+   *        The maximum duration to wait for the response. It is already limited to the remaining
+   *        time of the delivery deadline. <code>null</code> means the default of the transport.
+   * @return The result of the response reader.
+   * @throws WSHttpStatusException
+   *         If the response does not contain a SOAP message
+   * @throws Exception
+   *         If the request writer or the response reader failed
+   */
+  <T> T postSOAPRequest (@NonNull URL aURL,
+                         @NonNull String sSOAPAction,
+                         @NonNull String sContentType,
+                         @NonNull IWSRequestBodyWriter aRequestWriter,
+                         @NonNull IWSResponseReader <T> aResponseReader,
+                         @Nullable Duration aConnectTimeout,
+                         @Nullable Duration aReadTimeout) throws Exception;
+}
@@ -16,17 +16,23 @@
  */
 package com.helger.erechnung.erb.ws;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Set;
 
 import javax.xml.namespace.QName;
 
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 import com.helger.annotation.Nonempty;
+import com.helger.annotation.style.OverrideOnDemand;
 import com.helger.annotation.style.CodingStyleguideUnaware;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.tostring.ToStringGenerator;
+import com.helger.xml.XMLFactory;
 
 import jakarta.xml.soap.SOAPElement;
 import jakarta.xml.soap.SOAPHeader;
@@ -37,7 +43,11 @@ import jakarta.xml.ws.handler.soap.SOAPMessageContext;
 
 /**
  * A special SOAP handler that adds the WS Security headers for the txm.portal.at machine as
- * described on the e-Rechnung.gv.at web site.
+ * described on the e-Rechnung.gv.at web site.<br>
+ * By default the header is prepared once per instance and only imported into each outbound
+ * message, so that no per-message tree building is needed. Instances are immutable and may be
+ * shared between ports. Optionally a password digest with nonce and creation time as well as a
+ * Timestamp can be added - these parts are created for each message.
  *
  * @see "https://www.erb.gv.at/erb?p=info_channel_ws&tab=ws20"
  * @author Philip Helger
@@ -47,15 +57,90 @@ public class SOAPAddWSSEHeaderHandler implements SOAPHandler <SOAPMessageContext
   /** The required XML namespace URI */
   public static final String WSSE_NSURI = "http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-secext-1.0.xsd";
   public static final String WSSE_PREFIX = "wsse";
+  public static final boolean DEFAULT_PREBUILT_HEADER = true;
+
+  private static final QName QNAME_SECURITY = new QName (WSSE_NSURI, "Security", WSSE_PREFIX);
+  private static final QName QNAME_USERNAME_TOKEN = new QName (WSSE_NSURI, "UsernameToken", WSSE_PREFIX);
+  private static final QName QNAME_USERNAME = new QName (WSSE_NSURI, "Username", WSSE_PREFIX);
+  private static final QName QNAME_PASSWORD = new QName (WSSE_NSURI, "Password", WSSE_PREFIX);
 
   private final String m_sUSPWebserviceUsername;
   private final String m_sUSPWebservicePassword;
+  private final EWSSEPasswordType m_ePasswordType;
+  private final Duration m_aTimestampTTL;
+  // The prepared Security element. It is never modified and only read when importing it.
+  private final Element m_aSecurityTemplate;
 
   public SOAPAddWSSEHeaderHandler (@NonNull @Nonempty final String sUSPWebserviceUsername,
                                    @NonNull @Nonempty final String sUSPWebservicePassword)
+  {
+    this (sUSPWebserviceUsername, sUSPWebservicePassword, DEFAULT_PREBUILT_HEADER);
+  }
+
+  /**
+   * Constructor for a plain text password without Timestamp.
+   *
+   * @param sUSPWebserviceUsername
+   *        The web service user name. May neither be <code>null</code> nor empty.
+   * @param sUSPWebservicePassword
+   *        The web service password. May neither be <code>null</code> nor empty.
+   * @param bPrebuiltHeader
+   *        <code>true</code> to prepare the header once and import it into each message,
+   *        <code>false</code> to build it element by element for each message.
+   * @since 5.0.2
+   */
+  public SOAPAddWSSEHeaderHandler (@NonNull @Nonempty final String sUSPWebserviceUsername,
+                                   @NonNull @Nonempty final String sUSPWebservicePassword,
+                                   final boolean bPrebuiltHeader)
+  {
+    this (sUSPWebserviceUsername, sUSPWebservicePassword, EWSSEPasswordType.TEXT, null, bPrebuiltHeader);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param sUSPWebserviceUsername
+   *        The web service user name. May neither be <code>null</code> nor empty.
+   * @param sUSPWebservicePassword
+   *        The web service password. May neither be <code>null</code> nor empty.
+   * @param ePasswordType
+   *        The password type to use. May not be <code>null</code>.
+   * @param aTimestampTTL
+   *        The time to live of the <code>wsu:Timestamp</code> element. May be <code>null</code> to
+   *        not add a Timestamp.
+   * @since 5.0.2
+   */
+  public SOAPAddWSSEHeaderHandler (@NonNull @Nonempty final String sUSPWebserviceUsername,
+                                   @NonNull @Nonempty final String sUSPWebservicePassword,
+                                   @NonNull final EWSSEPasswordType ePasswordType,
+                                   @Nullable final Duration aTimestampTTL)
+  {
+    this (sUSPWebserviceUsername, sUSPWebservicePassword, ePasswordType, aTimestampTTL, DEFAULT_PREBUILT_HEADER);
+  }
+
+  private SOAPAddWSSEHeaderHandler (@NonNull @Nonempty final String sUSPWebserviceUsername,
+                                    @NonNull @Nonempty final String sUSPWebservicePassword,
+                                    @NonNull final EWSSEPasswordType ePasswordType,
+                                    @Nullable final Duration aTimestampTTL,
+                                    final boolean bPrebuiltHeader)
   {
     m_sUSPWebserviceUsername = ValueEnforcer.notEmpty (sUSPWebserviceUsername, "USP Webservice Username");
     m_sUSPWebservicePassword = ValueEnforcer.notEmpty (sUSPWebservicePassword, "USP Webservice Password");
+    m_ePasswordType = ValueEnforcer.notNull (ePasswordType, "PasswordType");
+    m_aTimestampTTL = aTimestampTTL;
+    // Nonce and creation time differ per message
+    if (bPrebuiltHeader && ePasswordType == EWSSEPasswordType.TEXT && aTimestampTTL == null)
+    {
+      final Document aDoc = XMLFactory.newDocument ();
+      m_aSecurityTemplate = WSSEHelper.createSecurityElement (aDoc,
+                                                              sUSPWebserviceUsername,
+                                                              sUSPWebservicePassword,
+                                                              ePasswordType,
+                                                              null);
+      aDoc.appendChild (m_aSecurityTemplate);
+    }
+    else
+      m_aSecurityTemplate = null;
   }
 
   /**
@@ -80,6 +165,60 @@ public class SOAPAddWSSEHeaderHandler implements SOAPHandler <SOAPMessageContext
     return m_sUSPWebservicePassword;
   }
 
+  /**
+   * @return <code>true</code> if the header is prepared once and imported into each message,
+   *         <code>false</code> if it is built for each message.
+   * @since 5.0.2
+   */
+  public boolean isPrebuiltHeader ()
+  {
+    return m_aSecurityTemplate != null;
+  }
+
+  /**
+   * @return The password type as specified in the constructor. Never <code>null</code>.
+   * @since 5.0.2
+   */
+  @NonNull
+  public EWSSEPasswordType getPasswordType ()
+  {
+    return m_ePasswordType;
+  }
+
+  /**
+   * @return The time to live of the Timestamp element. May be <code>null</code> if no Timestamp is
+   *         added.
+   * @since 5.0.2
+   */
+  @Nullable
+  public Duration getTimestampTTL ()
+  {
+    return m_aTimestampTTL;
+  }
+
+  /**
+   * @return The creation time of a header that is built for a message. Never <code>null</code>.
+   * @since 5.0.2
+   */
+  @NonNull
+  @OverrideOnDemand
+  protected Instant getCurrentInstant ()
+  {
+    return Instant.now ();
+  }
+
+  /**
+   * @return The nonce for a password digest header. Never <code>null</code>. By default it is taken
+   *         from {@link WSSENonceProducer#getDefaultInstance()}.
+   * @since 5.0.2
+   */
+  @NonNull
+  @OverrideOnDemand
+  protected byte [] getNextNonce ()
+  {
+    return WSSENonceProducer.getDefaultInstance ().getNextNonce ();
+  }
+
   @Nullable
   @CodingStyleguideUnaware
   public Set <QName> getHeaders ()
@@ -91,8 +230,7 @@ public class SOAPAddWSSEHeaderHandler implements SOAPHandler <SOAPMessageContext
   public boolean handleMessage (@NonNull final SOAPMessageContext aContext)
   {
     // Handle only outbound messages (in contrast to inbound messages)
-    final boolean bOutbound = ((Boolean) aContext.get (MessageContext.MESSAGE_OUTBOUND_PROPERTY)).booleanValue ();
-    if (bOutbound)
+    if (Boolean.TRUE.equals (aContext.get (MessageContext.MESSAGE_OUTBOUND_PROPERTY)))
     {
       try
       {
@@ -104,14 +242,31 @@ public class SOAPAddWSSEHeaderHandler implements SOAPHandler <SOAPMessageContext
           aHeader = aMsg.getSOAPPart ().getEnvelope ().addHeader ();
 
         // Add the WSSE stuff
-        final SOAPElement aSecurity = aHeader.addChildElement (new QName (WSSE_NSURI, "Security", WSSE_PREFIX));
-        final SOAPElement aUsernameToken = aSecurity.addChildElement (new QName (WSSE_NSURI,
-                                                                                 "UsernameToken",
-                                                                                 WSSE_PREFIX));
-        aUsernameToken.addChildElement (new QName (WSSE_NSURI, "Username", WSSE_PREFIX))
-                      .addTextNode (m_sUSPWebserviceUsername);
-        aUsernameToken.addChildElement (new QName (WSSE_NSURI, "Password", WSSE_PREFIX))
-                      .addTextNode (m_sUSPWebservicePassword);
+        if (m_aSecurityTemplate != null)
+        {
+          // Import the prepared element as a whole
+          aHeader.appendChild (aHeader.getOwnerDocument ().importNode (m_aSecurityTemplate, true));
+        }
+        else
+          if (m_ePasswordType != EWSSEPasswordType.TEXT || m_aTimestampTTL != null)
+          {
+            // New nonce and creation time for each message
+            final byte [] aNonce = m_ePasswordType == EWSSEPasswordType.DIGEST ? getNextNonce () : null;
+            aHeader.appendChild (WSSEHelper.createSecurityElement (aHeader.getOwnerDocument (),
+                                                                   m_sUSPWebserviceUsername,
+                                                                   m_sUSPWebservicePassword,
+                                                                   m_ePasswordType,
+                                                                   m_aTimestampTTL,
+                                                                   getCurrentInstant (),
+                                                                   aNonce));
+          }
+          else
+          {
+            final SOAPElement aSecurity = aHeader.addChildElement (QNAME_SECURITY);
+            final SOAPElement aUsernameToken = aSecurity.addChildElement (QNAME_USERNAME_TOKEN);
+            aUsernameToken.addChildElement (QNAME_USERNAME).addTextNode (m_sUSPWebserviceUsername);
+            aUsernameToken.addChildElement (QNAME_PASSWORD).addTextNode (m_sUSPWebservicePassword);
+          }
       }
       catch (final Exception ex)
       {
@@ -134,6 +289,9 @@ public class SOAPAddWSSEHeaderHandler implements SOAPHandler <SOAPMessageContext
   {
     return new ToStringGenerator (this).append ("uspWebserviceUsername", m_sUSPWebserviceUsername)
                                        .appendPassword ("uspWebservicePassword")
+                                       .append ("passwordType", m_ePasswordType)
+                                       .append ("timestampTTL", m_aTimestampTTL)
+                                       .append ("prebuiltHeader", isPrebuiltHeader ())
                                        .getToString ();
   }
 }
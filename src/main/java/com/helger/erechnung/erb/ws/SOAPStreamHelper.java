@@ -0,0 +1,657 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Locale;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.WillClose;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.annotation.style.PresentForCodeCoverage;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.io.stream.NonClosingOutputStream;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
+
+/**
+ * Helper class to write and read SOAP 1.1 messages in a streaming way, without creating an object
+ * model of the whole message.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class SOAPStreamHelper
+{
+  /** The SOAP 1.1 envelope namespace URI */
+  public static final String SOAP11_NS_URI = "http://schemas.xmlsoap.org/soap/envelope/";
+  /** The SOAP 1.1 content type */
+  public static final String SOAP11_CONTENT_TYPE = "text/xml; charset=UTF-8";
+  /** The XOP include namespace URI */
+  public static final String XOP_NS_URI = "http://www.w3.org/2004/08/xop/include";
+  /** The Content-ID of the root MIME part of XOP messages */
+  public static final String XOP_ROOT_CONTENT_ID = "root.message@erb.gv.at";
+
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private static final byte [] ENVELOPE_START = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                                                 "<S:Envelope xmlns:S=\"" +
+                                                 SOAP11_NS_URI +
+                                                 "\"><S:Header>").getBytes (StandardCharsets.UTF_8);
+  private static final byte [] BODY_START = "</S:Header><S:Body>".getBytes (StandardCharsets.UTF_8);
+  private static final byte [] ENVELOPE_END = "</S:Body></S:Envelope>".getBytes (StandardCharsets.UTF_8);
+
+  private static final XMLInputFactory XML_INPUT_FACTORY;
+
+  static
+  {
+    XML_INPUT_FACTORY = XMLInputFactory.newInstance ();
+    // Avoid XXE attacks
+    XML_INPUT_FACTORY.setProperty (XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    XML_INPUT_FACTORY.setProperty (XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+  }
+
+  @PresentForCodeCoverage
+  private static final SOAPStreamHelper INSTANCE = new SOAPStreamHelper ();
+
+  private SOAPStreamHelper ()
+  {}
+
+  /**
+   * Escape the provided text so that it can be used as XML text content or attribute value.
+   *
+   * @param sText
+   *        The text to escape. May not be <code>null</code>.
+   * @return The escaped text. Never <code>null</code>.
+   */
+  @NonNull
+  public static String getXMLEscaped (@NonNull final String sText)
+  {
+    final StringBuilder aSB = new StringBuilder (sText.length () + 16);
+    for (final char c : sText.toCharArray ())
+      switch (c)
+      {
+        case '&':
+          aSB.append ("&amp;");
+          break;
+        case '<':
+          aSB.append ("&lt;");
+          break;
+        case '>':
+          aSB.append ("&gt;");
+          break;
+        case '"':
+          aSB.append ("&quot;");
+          break;
+        case '\'':
+          aSB.append ("&apos;");
+          break;
+        default:
+          aSB.append (c);
+          break;
+      }
+    return aSB.toString ();
+  }
+
+  /**
+   * Create the serialized WS Security header containing the provided username and password as a
+   * plain text UsernameToken. This is the streaming counterpart of {@link SOAPAddWSSEHeaderHandler}.
+   *
+   * @param sUsername
+   *        The username to use. May neither be <code>null</code> nor empty.
+   * @param sPassword
+   *        The password to use. May neither be <code>null</code> nor empty.
+   * @return The UTF-8 encoded header element. Never <code>null</code>.
+   */
+  @NonNull
+  public static byte [] getWSSEUsernameTokenHeader (@NonNull @Nonempty final String sUsername,
+                                                    @NonNull @Nonempty final String sPassword)
+  {
+    ValueEnforcer.notEmpty (sUsername, "Username");
+    ValueEnforcer.notEmpty (sPassword, "Password");
+
+    final String sPrefix = SOAPAddWSSEHeaderHandler.WSSE_PREFIX;
+    final String sHeader = "<" +
+                           sPrefix +
+                           ":Security xmlns:" +
+                           sPrefix +
+                           "=\"" +
+                           SOAPAddWSSEHeaderHandler.WSSE_NSURI +
+                           "\"><" +
+                           sPrefix +
+                           ":UsernameToken><" +
+                           sPrefix +
+                           ":Username>" +
+                           getXMLEscaped (sUsername) +
+                           "</" +
+                           sPrefix +
+                           ":Username><" +
+                           sPrefix +
+                           ":Password>" +
+                           getXMLEscaped (sPassword) +
+                           "</" +
+                           sPrefix +
+                           ":Password></" +
+                           sPrefix +
+                           ":UsernameToken></" +
+                           sPrefix +
+                           ":Security>";
+    return sHeader.getBytes (StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Create the serialized WS Security header with the provided password type and an optional
+   * Timestamp. Nonce and creation time are new for each invocation, so the result must not be
+   * cached unless the password type is {@link EWSSEPasswordType#TEXT} and no Timestamp is used.
+   *
+   * @param sUsername
+   *        The username to use. May neither be <code>null</code> nor empty.
+   * @param sPassword
+   *        The password to use. May neither be <code>null</code> nor empty.
+   * @param ePasswordType
+   *        The password type to use. May not be <code>null</code>.
+   * @param aTimestampTTL
+   *        The time to live of the <code>wsu:Timestamp</code> element. May be <code>null</code> to
+   *        not create a Timestamp.
+   * @return The UTF-8 encoded header element. Never <code>null</code>.
+   * @see WSSEHelper#createSecurityElement(org.w3c.dom.Document, String, String, EWSSEPasswordType,
+   *      Duration)
+   * @since 5.0.2
+   */
+  @NonNull
+  public static byte [] getWSSEUsernameTokenHeader (@NonNull @Nonempty final String sUsername,
+                                                    @NonNull @Nonempty final String sPassword,
+                                                    @NonNull final EWSSEPasswordType ePasswordType,
+                                                    @Nullable final Duration aTimestampTTL)
+  {
+    ValueEnforcer.notNull (ePasswordType, "PasswordType");
+    if (ePasswordType == EWSSEPasswordType.TEXT && aTimestampTTL == null)
+      return getWSSEUsernameTokenHeader (sUsername, sPassword);
+
+    ValueEnforcer.notEmpty (sUsername, "Username");
+    ValueEnforcer.notEmpty (sPassword, "Password");
+
+    final String sWSSE = SOAPAddWSSEHeaderHandler.WSSE_PREFIX + ':';
+    final String sWSU = WSSEHelper.WSU_PREFIX + ':';
+    final Instant aNow = Instant.now ();
+    final String sCreated = WSSEHelper.getFormatted (aNow);
+
+    final StringBuilder aSB = new StringBuilder (1024);
+    aSB.append ('<')
+       .append (sWSSE)
+       .append ("Security xmlns:")
+       .append (SOAPAddWSSEHeaderHandler.WSSE_PREFIX)
+       .append ("=\"")
+       .append (SOAPAddWSSEHeaderHandler.WSSE_NSURI)
+       .append ("\" xmlns:")
+       .append (WSSEHelper.WSU_PREFIX)
+       .append ("=\"")
+       .append (WSSEHelper.WSU_NSURI)
+       .append ("\">");
+    if (aTimestampTTL != null)
+    {
+      aSB.append ('<').append (sWSU).append ("Timestamp>");
+      aSB.append ('<').append (sWSU).append ("Created>").append (sCreated).append ("</").append (sWSU).append ("Created>");
+      aSB.append ('<')
+         .append (sWSU)
+         .append ("Expires>")
+         .append (WSSEHelper.getFormatted (aNow.plus (aTimestampTTL)))
+         .append ("</")
+         .append (sWSU)
+         .append ("Expires>");
+      aSB.append ("</").append (sWSU).append ("Timestamp>");
+    }
+    aSB.append ('<').append (sWSSE).append ("UsernameToken>");
+    aSB.append ('<')
+       .append (sWSSE)
+       .append ("Username>")
+       .append (getXMLEscaped (sUsername))
+       .append ("</")
+       .append (sWSSE)
+       .append ("Username>");
+    if (ePasswordType == EWSSEPasswordType.DIGEST)
+    {
+      final byte [] aNonce = WSSENonceProducer.getDefaultInstance ().getNextNonce ();
+      aSB.append ('<')
+         .append (sWSSE)
+         .append ("Password Type=\"")
+         .append (ePasswordType.getTypeURI ())
+         .append ("\">")
+         .append (WSSEHelper.getPasswordDigest (aNonce, sCreated, sPassword))
+         .append ("</")
+         .append (sWSSE)
+         .append ("Password>");
+      aSB.append ('<')
+         .append (sWSSE)
+         .append ("Nonce EncodingType=\"")
+         .append (WSSEHelper.NONCE_ENCODING_TYPE)
+         .append ("\">")
+         .append (Base64.getEncoder ().encodeToString (aNonce))
+         .append ("</")
+         .append (sWSSE)
+         .append ("Nonce>");
+      aSB.append ('<').append (sWSU).append ("Created>").append (sCreated).append ("</").append (sWSU).append ("Created>");
+    }
+    else
+      aSB.append ('<')
+         .append (sWSSE)
+         .append ("Password>")
+         .append (getXMLEscaped (sPassword))
+         .append ("</")
+         .append (sWSSE)
+         .append ("Password>");
+    aSB.append ("</").append (sWSSE).append ("UsernameToken>");
+    aSB.append ("</").append (sWSSE).append ("Security>");
+    return aSB.toString ().getBytes (StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Handle the HTTP response of a SOAP request. The response may either be a plain SOAP envelope
+   * or an MTOM/XOP multipart message. Error responses are only accepted if they contain a SOAP
+   * message (e.g. a SOAP fault with HTTP 500).
+   *
+   * @param <T>
+   *        The response type
+   * @param nStatusCode
+   *        The HTTP status code of the response.
+   * @param sContentType
+   *        The content type of the response. May be <code>null</code>.
+   * @param aIS
+   *        The response body. May be <code>null</code>. It is always closed.
+   * @param aResponseReader
+   *        The reader for the SOAP response envelope. May not be <code>null</code>.
+   * @return The result of the response reader.
+   * @throws WSHttpStatusException
+   *         If the response does not contain a SOAP message
+   * @throws Exception
+   *         If the response reader failed
+   * @since 5.0.2
+   */
+  public static <T> T readSOAPResponse (final int nStatusCode,
+                                        @Nullable final String sContentType,
+                                        @Nullable @WillClose final InputStream aIS,
+                                        @NonNull final IWSResponseReader <T> aResponseReader) throws Exception
+  {
+    final boolean bMultipart = isMultipartContentType (sContentType);
+    if (aIS == null || !(bMultipart || isXMLContentType (sContentType)))
+    {
+      if (aIS != null)
+        aIS.close ();
+      throw new WSHttpStatusException (nStatusCode, "Response contains no SOAP message but '" + sContentType + "'");
+    }
+
+    try (aIS)
+    {
+      if (bMultipart)
+        skipToFirstMultipartBody (aIS);
+      return aResponseReader.readResponse (aIS);
+    }
+  }
+
+  /**
+   * Write the start of a SOAP 1.1 envelope in UTF-8 including the provided header content, up to
+   * and including the opening Body element.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>.
+   * @param aHeaderContent
+   *        The serialized content of the SOAP header in UTF-8. May not be <code>null</code>.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public static void writeEnvelopeStart (@NonNull @WillNotClose final OutputStream aOS,
+                                         @NonNull final byte [] aHeaderContent) throws IOException
+  {
+    aOS.write (ENVELOPE_START);
+    aOS.write (aHeaderContent);
+    aOS.write (BODY_START);
+  }
+
+  /**
+   * Write the end of a SOAP 1.1 envelope started with {@link #writeEnvelopeStart(OutputStream, byte[])}.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public static void writeEnvelopeEnd (@NonNull @WillNotClose final OutputStream aOS) throws IOException
+  {
+    aOS.write (ENVELOPE_END);
+  }
+
+  /**
+   * Write a string as UTF-8 bytes.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>.
+   * @param sText
+   *        The text to write. May not be <code>null</code>. It is not escaped.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public static void writeUTF8 (@NonNull @WillNotClose final OutputStream aOS, @NonNull final String sText) throws IOException
+  {
+    aOS.write (sText.getBytes (StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Copy the provided input stream Base64 encoded to the output stream, using only a fixed size
+   * buffer.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>. It is not closed.
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @return The number of unencoded bytes read from the input stream.
+   * @throws IOException
+   *         In case of a read or write error
+   */
+  @Nonnegative
+  public static long copyBase64Encoded (@NonNull @WillNotClose final InputStream aIS,
+                                        @NonNull @WillNotClose final OutputStream aOS) throws IOException
+  {
+    long nTotal = 0;
+    // Closing the wrapper writes the trailing padding, but must not close
+    // the underlying stream
+    try (final OutputStream aB64OS = Base64.getEncoder ().wrap (new NonClosingOutputStream (aOS)))
+    {
+      final byte [] aBuffer = new byte [BUFFER_SIZE];
+      int nRead;
+      while ((nRead = aIS.read (aBuffer)) >= 0)
+      {
+        aB64OS.write (aBuffer, 0, nRead);
+        nTotal += nRead;
+      }
+    }
+    return nTotal;
+  }
+
+  /**
+   * Base64 encode everything the provided writer writes, directly into the output stream. This
+   * allows e.g. to serialize a DOM node into a SOAP request without an intermediate byte array.
+   *
+   * @param aContentWriter
+   *        The writer for the unencoded content. May not be <code>null</code>. It may close the
+   *        passed stream.
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @throws Exception
+   *         In case the content writer failed
+   */
+  public static void writeBase64Encoded (@NonNull final IWSRequestBodyWriter aContentWriter,
+                                         @NonNull @WillNotClose final OutputStream aOS) throws Exception
+  {
+    // Closing the wrapper writes the trailing padding, but must not close
+    // the underlying stream
+    try (final OutputStream aB64OS = Base64.getEncoder ().wrap (new NonClosingOutputStream (aOS)))
+    {
+      aContentWriter.writeRequestBody (aB64OS);
+    }
+  }
+
+  /**
+   * Create a new StAX reader with DTD and external entity support disabled.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>.
+   * @return The new reader. Never <code>null</code>.
+   * @throws XMLStreamException
+   *         If the reader cannot be created
+   */
+  @NonNull
+  public static XMLStreamReader createXMLStreamReader (@NonNull @WillNotClose final InputStream aIS) throws XMLStreamException
+  {
+    return XML_INPUT_FACTORY.createXMLStreamReader (aIS);
+  }
+
+  @NonNull
+  private static WSSOAPFaultException _readFault (@NonNull final XMLStreamReader aReader) throws XMLStreamException
+  {
+    String sFaultCode = null;
+    String sFaultString = null;
+    final ICommonsList <String> aDetailMessages = new CommonsArrayList <> ();
+
+    // Reader is positioned on the Fault start element
+    int nDepth = 1;
+    boolean bInDetail = false;
+    while (nDepth > 0 && aReader.hasNext ())
+    {
+      final int nEvent = aReader.next ();
+      if (nEvent == XMLStreamConstants.START_ELEMENT)
+      {
+        final String sLocalName = aReader.getLocalName ();
+        if (nDepth == 1 && "faultcode".equals (sLocalName))
+          sFaultCode = aReader.getElementText ().trim ();
+        else
+          if (nDepth == 1 && "faultstring".equals (sLocalName))
+            sFaultString = aReader.getElementText ().trim ();
+          else
+            if (bInDetail && ("Message".equals (sLocalName) || "message".equals (sLocalName)))
+              aDetailMessages.add (aReader.getElementText ().trim ());
+            else
+            {
+              if (nDepth == 1 && "detail".equals (sLocalName))
+                bInDetail = true;
+              nDepth++;
+            }
+      }
+      else
+        if (nEvent == XMLStreamConstants.END_ELEMENT)
+        {
+          nDepth--;
+          if (nDepth == 1)
+            bInDetail = false;
+        }
+    }
+    return new WSSOAPFaultException (sFaultCode, sFaultString, aDetailMessages);
+  }
+
+  /**
+   * Read a SOAP 1.1 response envelope from the provided reader and position the reader on the
+   * start of the first child element of the SOAP Body. If the body contains a SOAP fault, it is
+   * parsed and thrown.
+   *
+   * @param aReader
+   *        The reader to use. May not be <code>null</code>.
+   * @throws XMLStreamException
+   *         In case of an XML error or if no Body element is present
+   * @throws WSSOAPFaultException
+   *         If the SOAP body contains a Fault
+   */
+  public static void moveToBodyContent (@NonNull final XMLStreamReader aReader) throws XMLStreamException,
+                                                                                    WSSOAPFaultException
+  {
+    // Find the Body element
+    while (true)
+    {
+      if (!aReader.hasNext ())
+        throw new XMLStreamException ("No SOAP Body element found");
+      if (aReader.next () == XMLStreamConstants.START_ELEMENT &&
+          "Body".equals (aReader.getLocalName ()) &&
+          SOAP11_NS_URI.equals (aReader.getNamespaceURI ()))
+        break;
+    }
+
+    // Go to the first child element
+    if (aReader.nextTag () != XMLStreamConstants.START_ELEMENT)
+      throw new XMLStreamException ("The SOAP Body element is empty");
+
+    if ("Fault".equals (aReader.getLocalName ()) && SOAP11_NS_URI.equals (aReader.getNamespaceURI ()))
+      throw _readFault (aReader);
+  }
+
+  /**
+   * Get the HTTP content type for an MTOM/XOP encoded SOAP 1.1 message.
+   *
+   * @param sBoundary
+   *        The MIME boundary to use. May neither be <code>null</code> nor empty.
+   * @return The content type. Never <code>null</code>.
+   */
+  @NonNull
+  public static String getXOPContentType (@NonNull @Nonempty final String sBoundary)
+  {
+    return "multipart/related; type=\"application/xop+xml\"; boundary=\"" +
+           sBoundary +
+           "\"; start=\"<" +
+           XOP_ROOT_CONTENT_ID +
+           ">\"; start-info=\"text/xml\"";
+  }
+
+  /**
+   * Write the MIME headers of the root part of an MTOM/XOP message. The SOAP envelope must follow.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>.
+   * @param sBoundary
+   *        The MIME boundary to use. May neither be <code>null</code> nor empty.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public static void writeXOPRootPartStart (@NonNull @WillNotClose final OutputStream aOS,
+                                            @NonNull @Nonempty final String sBoundary) throws IOException
+  {
+    writeUTF8 (aOS,
+               "--" +
+                    sBoundary +
+                    "\r\nContent-Type: application/xop+xml; charset=UTF-8; type=\"text/xml\"" +
+                    "\r\nContent-Transfer-Encoding: 8bit" +
+                    "\r\nContent-ID: <" +
+                    XOP_ROOT_CONTENT_ID +
+                    ">\r\n\r\n");
+  }
+
+  /**
+   * Write a binary MIME part of an MTOM/XOP message.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>.
+   * @param sBoundary
+   *        The MIME boundary to use. May neither be <code>null</code> nor empty.
+   * @param sContentID
+   *        The content ID referenced from the <code>xop:Include</code> element, without the angle
+   *        brackets. May neither be <code>null</code> nor empty.
+   * @param aIS
+   *        The binary content. May not be <code>null</code>. It is not closed.
+   * @throws IOException
+   *         In case of a read or write error
+   */
+  public static void writeXOPBinaryPart (@NonNull @WillNotClose final OutputStream aOS,
+                                         @NonNull @Nonempty final String sBoundary,
+                                         @NonNull @Nonempty final String sContentID,
+                                         @NonNull @WillNotClose final InputStream aIS) throws IOException
+  {
+    writeUTF8 (aOS,
+               "\r\n--" +
+                    sBoundary +
+                    "\r\nContent-Type: application/octet-stream" +
+                    "\r\nContent-Transfer-Encoding: binary" +
+                    "\r\nContent-ID: <" +
+                    sContentID +
+                    ">\r\n\r\n");
+    aIS.transferTo (aOS);
+  }
+
+  /**
+   * Write the closing boundary of an MTOM/XOP message.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>.
+   * @param sBoundary
+   *        The MIME boundary to use. May neither be <code>null</code> nor empty.
+   * @throws IOException
+   *         In case of a write error
+   */
+  public static void writeXOPEnd (@NonNull @WillNotClose final OutputStream aOS,
+                                  @NonNull @Nonempty final String sBoundary) throws IOException
+  {
+    writeUTF8 (aOS, "\r\n--" + sBoundary + "--\r\n");
+  }
+
+  /**
+   * Check if the provided content type denotes a MIME multipart message (e.g. an MTOM response).
+   *
+   * @param sContentType
+   *        The content type to check. May be <code>null</code>.
+   * @return <code>true</code> if it is a multipart content type.
+   */
+  public static boolean isMultipartContentType (@Nullable final String sContentType)
+  {
+    return sContentType != null && sContentType.toLowerCase (Locale.ROOT).startsWith ("multipart/");
+  }
+
+  @NonNull
+  private static String _readLine (@NonNull final InputStream aIS) throws IOException
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    int c;
+    while ((c = aIS.read ()) >= 0 && c != '\n')
+      if (c != '\r')
+        aSB.append ((char) c);
+    if (c < 0 && aSB.length () == 0)
+      throw new IOException ("Unexpected end of MIME message");
+    return aSB.toString ();
+  }
+
+  /**
+   * Skip the MIME preamble and the headers of the first part of a multipart message, so that the
+   * provided stream is positioned at the start of the SOAP envelope. Only the root part is used -
+   * ER&gt;B responses never contain binary content.
+   *
+   * @param aIS
+   *        The multipart input stream. May not be <code>null</code>.
+   * @throws IOException
+   *         In case of a read error or if the stream is not a MIME multipart message
+   */
+  public static void skipToFirstMultipartBody (@NonNull @WillNotClose final InputStream aIS) throws IOException
+  {
+    // Find the first boundary
+    while (!_readLine (aIS).startsWith ("--"))
+    {}
+    // Skip the part headers
+    while (!_readLine (aIS).isEmpty ())
+    {}
+  }
+
+  /**
+   * Check if the provided content type is an XML content type that may contain a SOAP envelope.
+   *
+   * @param sContentType
+   *        The content type to check. May be <code>null</code>.
+   * @return <code>true</code> if it is an XML content type.
+   */
+  public static boolean isXMLContentType (@Nullable final String sContentType)
+  {
+    return sContentType != null && sContentType.toLowerCase (Locale.ROOT).contains ("xml");
+  }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.net.URL;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * A circuit breaker that keeps a separate state per endpoint URL. While an endpoint is
+ * {@link EWSCircuitState#CLOSED}, the outcome of the last {@link #getWindowSize()} requests is
+ * recorded. If at least {@link #getMinimumCalls()} requests were recorded and the ratio of failed
+ * requests reaches {@link #getFailureRatio()}, the circuit opens and all requests fail immediately
+ * with a {@link WSCircuitOpenException}. After {@link #getOpenDuration()} the circuit is half-open
+ * and {@link #getTrialCalls()} trial requests are sent. If all of them succeed, the circuit closes
+ * again, otherwise it opens again.<br>
+ * One instance may be shared by any number of senders (see
+ * {@link AbstractWSSender#setCircuitBreaker(WSCircuitBreaker)}).
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public class WSCircuitBreaker
+{
+  public static final double DEFAULT_FAILURE_RATIO = 0.5;
+  public static final int DEFAULT_WINDOW_SIZE = 20;
+  public static final int DEFAULT_MINIMUM_CALLS = 10;
+  public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds (30);
+  public static final int DEFAULT_TRIAL_CALLS = 1;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (WSCircuitBreaker.class);
+
+  private final class EndpointState
+  {
+    private final String m_sURL;
+    private final SimpleLock m_aLock = new SimpleLock ();
+    @GuardedBy ("m_aLock")
+    private EWSCircuitState m_eState = EWSCircuitState.CLOSED;
+    // Ring buffer of the recorded outcomes - true means failure
+    @GuardedBy ("m_aLock")
+    private final boolean [] m_aOutcomes = new boolean [m_nWindowSize];
+    @GuardedBy ("m_aLock")
+    private int m_nNextOutcome;
+    @GuardedBy ("m_aLock")
+    private int m_nRecorded;
+    @GuardedBy ("m_aLock")
+    private int m_nFailures;
+    @GuardedBy ("m_aLock")
+    private long m_nOpenedNanos;
+    @GuardedBy ("m_aLock")
+    private int m_nTrialPermits;
+    @GuardedBy ("m_aLock")
+    private int m_nTrialSuccesses;
+
+    EndpointState (@NonNull final String sURL)
+    {
+      m_sURL = sURL;
+    }
+
+    @GuardedBy ("m_aLock")
+    private void _setState (@NonNull final EWSCircuitState eNewState)
+    {
+      if (m_eState != eNewState)
+      {
+        LOGGER.info ("Circuit breaker for '" + m_sURL + "' changes from " + m_eState + " to " + eNewState);
+        m_eState = eNewState;
+      }
+      switch (eNewState)
+      {
+        case CLOSED:
+          m_nNextOutcome = 0;
+          m_nRecorded = 0;
+          m_nFailures = 0;
+          break;
+        case OPEN:
+          m_nOpenedNanos = System.nanoTime ();
+          break;
+        case HALF_OPEN:
+          m_nTrialPermits = 0;
+          m_nTrialSuccesses = 0;
+          break;
+      }
+    }
+
+    @GuardedBy ("m_aLock")
+    private void _record (final boolean bFailure)
+    {
+      if (m_nRecorded == m_aOutcomes.length)
+      {
+        // Overwrite the oldest outcome
+        if (m_aOutcomes[m_nNextOutcome])
+          m_nFailures--;
+      }
+      else
+        m_nRecorded++;
+      m_aOutcomes[m_nNextOutcome] = bFailure;
+      if (bFailure)
+        m_nFailures++;
+      m_nNextOutcome = (m_nNextOutcome + 1) % m_aOutcomes.length;
+
+      if (m_nRecorded >= m_nMinimumCalls && m_nFailures >= m_dFailureRatio * m_nRecorded)
+        _setState (EWSCircuitState.OPEN);
+    }
+
+    boolean tryAcquirePermission ()
+    {
+      return m_aLock.lockedGet ( () -> {
+        if (m_eState == EWSCircuitState.OPEN)
+        {
+          if (System.nanoTime () - m_nOpenedNanos < m_aOpenDuration.toNanos ())
+            return Boolean.FALSE;
+          _setState (EWSCircuitState.HALF_OPEN);
+        }
+        if (m_eState == EWSCircuitState.HALF_OPEN)
+        {
+          if (m_nTrialPermits >= m_nTrialCalls)
+            return Boolean.FALSE;
+          m_nTrialPermits++;
+        }
+        return Boolean.TRUE;
+      }).booleanValue ();
+    }
+
+    void onSuccess ()
+    {
+      m_aLock.locked ( () -> {
+        switch (m_eState)
+        {
+          case CLOSED:
+            _record (false);
+            break;
+          case HALF_OPEN:
+            m_nTrialSuccesses++;
+            if (m_nTrialSuccesses >= m_nTrialCalls)
+              _setState (EWSCircuitState.CLOSED);
+            break;
+          case OPEN:
+            // Result of a request sent before the circuit opened
+            break;
+        }
+      });
+    }
+
+    void onFailure ()
+    {
+      m_aLock.locked ( () -> {
+        switch (m_eState)
+        {
+          case CLOSED:
+            _record (true);
+            break;
+          case HALF_OPEN:
+            _setState (EWSCircuitState.OPEN);
+            break;
+          case OPEN:
+            // Result of a request sent before the circuit opened
+            break;
+        }
+      });
+    }
+
+    void onIgnore ()
+    {
+      m_aLock.locked ( () -> {
+        // Give the trial permit back
+        if (m_eState == EWSCircuitState.HALF_OPEN && m_nTrialPermits > m_nTrialSuccesses)
+          m_nTrialPermits--;
+      });
+    }
+
+    @NonNull
+    EWSCircuitState getState ()
+    {
+      return m_aLock.lockedGet ( () -> m_eState);
+    }
+  }
+
+  private final double m_dFailureRatio;
+  private final int m_nWindowSize;
+  private final int m_nMinimumCalls;
+  private final Duration m_aOpenDuration;
+  private final int m_nTrialCalls;
+  private final Map <String, EndpointState> m_aStates = new ConcurrentHashMap <> ();
+
+  /**
+   * Constructor with the default settings.
+   */
+  public WSCircuitBreaker ()
+  {
+    this (DEFAULT_FAILURE_RATIO, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_OPEN_DURATION, DEFAULT_TRIAL_CALLS);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param dFailureRatio
+   *        The ratio of failed requests that opens the circuit. Must be &gt; 0 and &le; 1.
+   * @param nWindowSize
+   *        The number of most recent requests considered. Must be &gt; 0.
+   * @param nMinimumCalls
+   *        The minimum number of recorded requests before the circuit may open. Must be &gt; 0 and
+   *        &le; the window size.
+   * @param aOpenDuration
+   *        The duration the circuit stays open before trial requests are sent. May not be
+   *        <code>null</code> or negative.
+   * @param nTrialCalls
+   *        The number of successful trial requests needed to close the circuit. Must be &gt; 0.
+   */
+  public WSCircuitBreaker (final double dFailureRatio,
+                           @Nonnegative final int nWindowSize,
+                           @Nonnegative final int nMinimumCalls,
+                           @NonNull final Duration aOpenDuration,
+                           @Nonnegative final int nTrialCalls)
+  {
+    ValueEnforcer.isTrue (dFailureRatio > 0 && dFailureRatio <= 1, "FailureRatio must be > 0 and <= 1");
+    ValueEnforcer.isGT0 (nWindowSize, "WindowSize");
+    ValueEnforcer.isBetweenInclusive (nMinimumCalls, "MinimumCalls", 1, nWindowSize);
+    ValueEnforcer.notNull (aOpenDuration, "OpenDuration");
+    ValueEnforcer.isFalse (aOpenDuration.isNegative (), "OpenDuration may not be negative");
+    ValueEnforcer.isGT0 (nTrialCalls, "TrialCalls");
+    m_dFailureRatio = dFailureRatio;
+    m_nWindowSize = nWindowSize;
+    m_nMinimumCalls = nMinimumCalls;
+    m_aOpenDuration = aOpenDuration;
+    m_nTrialCalls = nTrialCalls;
+  }
+
+  /**
+   * @return The ratio of failed requests that opens the circuit.
+   */
+  public final double getFailureRatio ()
+  {
+    return m_dFailureRatio;
+  }
+
+  /**
+   * @return The number of most recent requests considered.
+   */
+  @Nonnegative
+  public final int getWindowSize ()
+  {
+    return m_nWindowSize;
+  }
+
+  /**
+   * @return The minimum number of recorded requests before the circuit may open.
+   */
+  @Nonnegative
+  public final int getMinimumCalls ()
+  {
+    return m_nMinimumCalls;
+  }
+
+  /**
+   * @return The duration the circuit stays open before trial requests are sent. Never
+   *         <code>null</code>.
+   */
+  @NonNull
+  public final Duration getOpenDuration ()
+  {
+    return m_aOpenDuration;
+  }
+
+  /**
+   * @return The number of successful trial requests needed to close the circuit.
+   */
+  @Nonnegative
+  public final int getTrialCalls ()
+  {
+    return m_nTrialCalls;
+  }
+
+  @NonNull
+  private EndpointState _getState (@NonNull final URL aURL)
+  {
+    return m_aStates.computeIfAbsent (aURL.toExternalForm (), EndpointState::new);
+  }
+
+  /**
+   * Check if a request to the provided endpoint may be sent. Each <code>true</code> result must be
+   * followed by exactly one call to {@link #onSuccess(URL)}, {@link #onFailure(URL)} or
+   * {@link #onIgnore(URL)}.
+   *
+   * @param aURL
+   *        The endpoint URL. May not be <code>null</code>.
+   * @return <code>true</code> if the request may be sent, <code>false</code> if the circuit is open
+   *         or all trial requests are already in flight.
+   */
+  public boolean tryAcquirePermission (@NonNull final URL aURL)
+  {
+    return _getState (aURL).tryAcquirePermission ();
+  }
+
+  /**
+   * Record a request to the provided endpoint that was processed by the endpoint.
+   *
+   * @param aURL
+   *        The endpoint URL. May not be <code>null</code>.
+   */
+  public void onSuccess (@NonNull final URL aURL)
+  {
+    _getState (aURL).onSuccess ();
+  }
+
+  /**
+   * Record a request to the provided endpoint that failed because the endpoint was not available.
+   *
+   * @param aURL
+   *        The endpoint URL. May not be <code>null</code>.
+   */
+  public void onFailure (@NonNull final URL aURL)
+  {
+    _getState (aURL).onFailure ();
+  }
+
+  /**
+   * Record a request to the provided endpoint without an outcome, e.g. because the thread was
+   * interrupted.
+   *
+   * @param aURL
+   *        The endpoint URL. May not be <code>null</code>.
+   */
+  public void onIgnore (@NonNull final URL aURL)
+  {
+    _getState (aURL).onIgnore ();
+  }
+
+  /**
+   * Get the current state of the provided endpoint. An open circuit is reported as open until the
+   * next request after the open duration.
+   *
+   * @param aURL
+   *        The endpoint URL. May not be <code>null</code>.
+   * @return The state. Never <code>null</code>.
+   */
+  @NonNull
+  public EWSCircuitState getState (@NonNull final URL aURL)
+  {
+    return _getState (aURL).getState ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("FailureRatio", m_dFailureRatio)
+                                       .append ("WindowSize", m_nWindowSize)
+                                       .append ("MinimumCalls", m_nMinimumCalls)
+                                       .append ("OpenDuration", m_aOpenDuration)
+                                       .append ("TrialCalls", m_nTrialCalls)
+                                       .getToString ();
+  }
+}
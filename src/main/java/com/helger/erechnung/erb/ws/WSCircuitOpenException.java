@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.net.URL;
+
+import org.jspecify.annotations.NonNull;
+
+/**
+ * Exception thrown if a request was not sent, because the {@link WSCircuitBreaker} of the endpoint
+ * is open.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+public class WSCircuitOpenException extends Exception
+{
+  private final URL m_aURL;
+
+  public WSCircuitOpenException (@NonNull final URL aURL)
+  {
+    super ("The circuit breaker for '" + aURL.toExternalForm () + "' is open - the request was not sent");
+    m_aURL = aURL;
+  }
+
+  /**
+   * @return The endpoint URL the request should have been sent to. Never <code>null</code>.
+   */
+  @NonNull
+  public final URL getURL ()
+  {
+    return m_aURL;
+  }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+
+import org.jspecify.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * An adaptive limit for the number of concurrent requests to ER&gt;B, using additive increase and
+ * multiplicative decrease (AIMD). Each successful request that completes while at least half of
+ * the limit is in use raises the limit by <code>1 / limit</code>, so the limit grows steadily as
+ * long as the senders actually use it. The limit is multiplied with the backoff ratio if a request
+ * failed because of overload (HTTP 429 or 5xx, connection failures and read timeouts - see
+ * {@link WSRetryPolicy#getEndpointHealth(Throwable)}), or if the short-term average latency exceeds
+ * the long-term average latency by more than the latency tolerance. The long-term average makes
+ * the gradient independent of the typical invoice size. The limit is lowered at most once per
+ * window: overloads of requests that started before the last decrease are ignored, because they
+ * were caused by the old limit. The limit therefore settles just below the concurrency the endpoint
+ * tolerates.<br>
+ * One instance may be shared by any number of senders (see
+ * {@link AbstractWSSender#setConcurrencyLimiter(WSConcurrencyLimiter)}) to limit the total
+ * concurrency of the JVM.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public class WSConcurrencyLimiter
+{
+  public static final int DEFAULT_INITIAL_LIMIT = 4;
+  public static final int DEFAULT_MIN_LIMIT = 1;
+  public static final int DEFAULT_MAX_LIMIT = 64;
+  public static final double DEFAULT_BACKOFF_RATIO = 0.75;
+  public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+  // The weights of a new sample for the short-term and the long-term average latency
+  private static final double SHORT_LATENCY_WEIGHT = 0.2;
+  private static final double LONG_LATENCY_WEIGHT = 0.02;
+  // The number of samples before the latency gradient is used
+  private static final int MIN_LATENCY_SAMPLES = 10;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (WSConcurrencyLimiter.class);
+
+  private final int m_nMinLimit;
+  private final int m_nMaxLimit;
+  private final double m_dBackoffRatio;
+  private final double m_dLatencyTolerance;
+  private final SimpleLock m_aLock = new SimpleLock ();
+  private final Condition m_aSlotReleased = m_aLock.newCondition ();
+  @GuardedBy ("m_aLock")
+  private double m_dLimit;
+  @GuardedBy ("m_aLock")
+  private int m_nInFlight;
+  @GuardedBy ("m_aLock")
+  private boolean m_bDecreased;
+  @GuardedBy ("m_aLock")
+  private long m_nLastDecreaseNanos;
+  @GuardedBy ("m_aLock")
+  private int m_nLatencySamples;
+  @GuardedBy ("m_aLock")
+  private double m_dShortLatencyNanos;
+  @GuardedBy ("m_aLock")
+  private double m_dLongLatencyNanos;
+
+  /**
+   * Constructor with the default settings.
+   */
+  public WSConcurrencyLimiter ()
+  {
+    this (DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_BACKOFF_RATIO);
+  }
+
+  /**
+   * Constructor with the default latency tolerance.
+   *
+   * @param nInitialLimit
+   *        The initial concurrency limit. Must be between the minimum and the maximum limit.
+   * @param nMinLimit
+   *        The minimum concurrency limit. Must be &gt; 0.
+   * @param nMaxLimit
+   *        The maximum concurrency limit. Must be &ge; the minimum limit.
+   * @param dBackoffRatio
+   *        The factor the limit is multiplied with on overload. Must be &gt; 0 and &lt; 1.
+   */
+  public WSConcurrencyLimiter (@Nonnegative final int nInitialLimit,
+                               @Nonnegative final int nMinLimit,
+                               @Nonnegative final int nMaxLimit,
+                               final double dBackoffRatio)
+  {
+    this (nInitialLimit, nMinLimit, nMaxLimit, dBackoffRatio, DEFAULT_LATENCY_TOLERANCE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nInitialLimit
+   *        The initial concurrency limit. Must be between the minimum and the maximum limit.
+   * @param nMinLimit
+   *        The minimum concurrency limit. Must be &gt; 0.
+   * @param nMaxLimit
+   *        The maximum concurrency limit. Must be &ge; the minimum limit.
+   * @param dBackoffRatio
+   *        The factor the limit is multiplied with on overload. Must be &gt; 0 and &lt; 1.
+   * @param dLatencyTolerance
+   *        The factor by which the short-term average latency may exceed the long-term average
+   *        latency before it is considered as overload. Must be &gt; 1. Use
+   *        {@link Double#POSITIVE_INFINITY} to not use the latency.
+   */
+  public WSConcurrencyLimiter (@Nonnegative final int nInitialLimit,
+                               @Nonnegative final int nMinLimit,
+                               @Nonnegative final int nMaxLimit,
+                               final double dBackoffRatio,
+                               final double dLatencyTolerance)
+  {
+    ValueEnforcer.isGT0 (nMinLimit, "MinLimit");
+    ValueEnforcer.isTrue (nMaxLimit >= nMinLimit, "MaxLimit must be >= MinLimit");
+    ValueEnforcer.isBetweenInclusive (nInitialLimit, "InitialLimit", nMinLimit, nMaxLimit);
+    ValueEnforcer.isTrue (dBackoffRatio > 0 && dBackoffRatio < 1, "BackoffRatio must be > 0 and < 1");
+    ValueEnforcer.isTrue (dLatencyTolerance > 1, "LatencyTolerance must be > 1");
+    m_nMinLimit = nMinLimit;
+    m_nMaxLimit = nMaxLimit;
+    m_dBackoffRatio = dBackoffRatio;
+    m_dLatencyTolerance = dLatencyTolerance;
+    m_dLimit = nInitialLimit;
+  }
+
+  /**
+   * @return The minimum concurrency limit.
+   */
+  @Nonnegative
+  public final int getMinLimit ()
+  {
+    return m_nMinLimit;
+  }
+
+  /**
+   * @return The maximum concurrency limit.
+   */
+  @Nonnegative
+  public final int getMaxLimit ()
+  {
+    return m_nMaxLimit;
+  }
+
+  /**
+   * @return The factor the limit is multiplied with on overload.
+   */
+  public final double getBackoffRatio ()
+  {
+    return m_dBackoffRatio;
+  }
+
+  /**
+   * @return The factor by which the short-term average latency may exceed the long-term average
+   *         latency before it is considered as overload.
+   */
+  public final double getLatencyTolerance ()
+  {
+    return m_dLatencyTolerance;
+  }
+
+  /**
+   * @return The current concurrency limit.
+   */
+  @Nonnegative
+  public int getLimit ()
+  {
+    return m_aLock.lockedGet ( () -> Integer.valueOf ((int) m_dLimit)).intValue ();
+  }
+
+  /**
+   * @return The number of requests currently in flight.
+   */
+  @Nonnegative
+  public int getInFlight ()
+  {
+    return m_aLock.lockedGet ( () -> Integer.valueOf (m_nInFlight)).intValue ();
+  }
+
+  /**
+   * Wait until the number of requests in flight is below the current limit and take a slot. Each
+   * successful call must be followed by exactly one call to {@link #onSuccess(long)},
+   * {@link #onOverload(long)} or {@link #onIgnore()}. The caller should remember
+   * {@link System#nanoTime()} after this method returned as the start of the request.
+   *
+   * @throws InterruptedException
+   *         If the thread was interrupted while waiting.
+   */
+  public void acquire () throws InterruptedException
+  {
+    m_aLock.lockInterruptibly ();
+    try
+    {
+      while (m_nInFlight >= (int) m_dLimit)
+        m_aSlotReleased.await ();
+      m_nInFlight++;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Wait at most the provided duration until the number of requests in flight is below the current
+   * limit and take a slot. Each successful call must be followed by exactly one call to
+   * {@link #onSuccess(long)}, {@link #onOverload(long)} or {@link #onIgnore()}. The caller should
+   * remember {@link System#nanoTime()} after this method returned as the start of the request.
+   *
+   * @param aMaxWait
+   *        The maximum duration to wait. May not be <code>null</code>.
+   * @return <code>true</code> if a slot was taken, <code>false</code> if none became available in
+   *         time.
+   * @throws InterruptedException
+   *         If the thread was interrupted while waiting.
+   */
+  public boolean tryAcquire (@NonNull final Duration aMaxWait) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aMaxWait, "MaxWait");
+    long nRemainingNanos = aMaxWait.toNanos ();
+    m_aLock.lockInterruptibly ();
+    try
+    {
+      while (m_nInFlight >= (int) m_dLimit)
+      {
+        if (nRemainingNanos <= 0)
+          return false;
+        nRemainingNanos = m_aSlotReleased.awaitNanos (nRemainingNanos);
+      }
+      m_nInFlight++;
+      return true;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _release ()
+  {
+    m_nInFlight--;
+    m_aSlotReleased.signalAll ();
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _decrease (final long nStartNanos, @NonNull final String sReason)
+  {
+    // Only once per window
+    if (m_bDecreased && nStartNanos - m_nLastDecreaseNanos < 0)
+      return;
+
+    final double dNewLimit = Math.max (m_nMinLimit, m_dLimit * m_dBackoffRatio);
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug (sReason + " - lowering the concurrency limit from " + m_dLimit + " to " + dNewLimit);
+    m_dLimit = dNewLimit;
+    m_bDecreased = true;
+    m_nLastDecreaseNanos = System.nanoTime ();
+  }
+
+  /**
+   * Release the slot of a successful request. The limit is lowered if the latency rose above the
+   * tolerance, otherwise it is raised if at least half of it is in use.
+   *
+   * @param nStartNanos
+   *        The {@link System#nanoTime()} when the request started.
+   */
+  public void onSuccess (final long nStartNanos)
+  {
+    final double dLatencyNanos = Math.max (0, System.nanoTime () - nStartNanos);
+    m_aLock.locked ( () -> {
+      if (m_nLatencySamples == 0)
+      {
+        m_dShortLatencyNanos = dLatencyNanos;
+        m_dLongLatencyNanos = dLatencyNanos;
+      }
+      else
+      {
+        m_dShortLatencyNanos += SHORT_LATENCY_WEIGHT * (dLatencyNanos - m_dShortLatencyNanos);
+        m_dLongLatencyNanos += LONG_LATENCY_WEIGHT * (dLatencyNanos - m_dLongLatencyNanos);
+      }
+      if (m_nLatencySamples < MIN_LATENCY_SAMPLES)
+        m_nLatencySamples++;
+
+      final boolean bLatencyRising = m_nLatencySamples >= MIN_LATENCY_SAMPLES &&
+                                     m_dShortLatencyNanos > m_dLongLatencyNanos * m_dLatencyTolerance;
+      if (bLatencyRising)
+        _decrease (nStartNanos, "Rising latency detected");
+      else
+      {
+        // Only grow if the limit is actually used
+        if (m_nInFlight * 2 >= m_dLimit)
+          m_dLimit = Math.min (m_nMaxLimit, m_dLimit + 1 / m_dLimit);
+      }
+      _release ();
+    });
+  }
+
+  /**
+   * Release the slot of a request that failed because of overload and lower the limit, unless the
+   * request started before the last decrease.
+   *
+   * @param nStartNanos
+   *        The {@link System#nanoTime()} when the request started.
+   */
+  public void onOverload (final long nStartNanos)
+  {
+    m_aLock.locked ( () -> {
+      _decrease (nStartNanos, "Overload detected");
+      _release ();
+    });
+  }
+
+  /**
+   * Release the slot of a request that failed for other reasons, without changing the limit.
+   */
+  public void onIgnore ()
+  {
+    m_aLock.locked (this::_release);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("MinLimit", m_nMinLimit)
+                                       .append ("MaxLimit", m_nMaxLimit)
+                                       .append ("BackoffRatio", m_dBackoffRatio)
+                                       .append ("LatencyTolerance", m_dLatencyTolerance)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * Immutable snapshot of the connection usage of a sender. Connections and handshakes are only
+ * counted for HTTPS endpoints.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@Immutable
+public final class WSConnectionStatistics
+{
+  private final long m_nRequests;
+  private final long m_nConnections;
+  private final long m_nHandshakes;
+
+  public WSConnectionStatistics (@Nonnegative final long nRequests,
+                                 @Nonnegative final long nConnections,
+                                 @Nonnegative final long nHandshakes)
+  {
+    ValueEnforcer.isGE0 (nRequests, "Requests");
+    ValueEnforcer.isGE0 (nConnections, "Connections");
+    ValueEnforcer.isGE0 (nHandshakes, "Handshakes");
+    m_nRequests = nRequests;
+    m_nConnections = nConnections;
+    m_nHandshakes = nHandshakes;
+  }
+
+  /**
+   * @return The number of HTTP requests that were sent.
+   */
+  @Nonnegative
+  public long getRequestCount ()
+  {
+    return m_nRequests;
+  }
+
+  /**
+   * @return The number of new TLS connections that were opened.
+   */
+  @Nonnegative
+  public long getConnectionCount ()
+  {
+    return m_nConnections;
+  }
+
+  /**
+   * @return The number of completed TLS handshakes.
+   */
+  @Nonnegative
+  public long getHandshakeCount ()
+  {
+    return m_nHandshakes;
+  }
+
+  /**
+   * @return The number of requests that re-used an existing connection. Only meaningful for HTTPS
+   *         endpoints.
+   */
+  @Nonnegative
+  public long getReusedConnectionCount ()
+  {
+    return Math.max (0, m_nRequests - m_nConnections);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Requests", m_nRequests)
+                                       .append ("Connections", m_nConnections)
+                                       .append ("Handshakes", m_nHandshakes)
+                                       .append ("ReusedConnections", getReusedConnectionCount ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.time.Duration;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * A point in time until which a delivery must be completed, including all retries and the time
+ * waiting for permits and pooled ports. It is based on {@link System#nanoTime()} and is therefore
+ * not affected by changes of the system clock.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@Immutable
+public final class WSDeadline
+{
+  private final long m_nDeadlineNanos;
+
+  private WSDeadline (final long nDeadlineNanos)
+  {
+    m_nDeadlineNanos = nDeadlineNanos;
+  }
+
+  /**
+   * @return The remaining time until the deadline. Never <code>null</code> and never negative.
+   */
+  @NonNull
+  public Duration getRemaining ()
+  {
+    final long nRemaining = m_nDeadlineNanos - System.nanoTime ();
+    return nRemaining > 0 ? Duration.ofNanos (nRemaining) : Duration.ZERO;
+  }
+
+  /**
+   * @return <code>true</code> if the deadline has passed.
+   */
+  public boolean isExpired ()
+  {
+    return m_nDeadlineNanos - System.nanoTime () <= 0;
+  }
+
+  /**
+   * Ensure that the deadline has not yet passed.
+   *
+   * @param sWhat
+   *        The activity that is about to start, for the exception message. May not be
+   *        <code>null</code>.
+   * @throws WSDeadlineExceededException
+   *         If the deadline has passed
+   */
+  public void checkNotExpired (@NonNull final String sWhat) throws WSDeadlineExceededException
+  {
+    if (isExpired ())
+      throw new WSDeadlineExceededException ("The delivery deadline was exceeded before " + sWhat);
+  }
+
+  /**
+   * Limit the provided timeout to the remaining time.
+   *
+   * @param aTimeout
+   *        The configured timeout. May be <code>null</code> if there is none.
+   * @return The remaining time, if no timeout was provided or if it is longer than the remaining
+   *         time, the provided timeout otherwise. Never <code>null</code>.
+   */
+  @NonNull
+  public Duration limit (@Nullable final Duration aTimeout)
+  {
+    final Duration aRemaining = getRemaining ();
+    return aTimeout == null || aTimeout.compareTo (aRemaining) > 0 ? aRemaining : aTimeout;
+  }
+
+  /**
+   * Create a new deadline.
+   *
+   * @param aTimeout
+   *        The time from now until the deadline. May not be <code>null</code> or negative.
+   * @return The new deadline. Never <code>null</code>.
+   */
+  @NonNull
+  public static WSDeadline after (@NonNull final Duration aTimeout)
+  {
+    ValueEnforcer.notNull (aTimeout, "Timeout");
+    ValueEnforcer.isFalse (aTimeout.isNegative (), "Timeout may not be negative");
+    return new WSDeadline (System.nanoTime () + aTimeout.toNanos ());
+  }
+
+  /**
+   * Get the effective timeout for a single step of a delivery.
+   *
+   * @param aTimeout
+   *        The configured timeout. May be <code>null</code> if there is none.
+   * @param aDeadline
+   *        The deadline of the delivery. May be <code>null</code> if there is none.
+   * @return The shorter of the configured timeout and the remaining time until the deadline.
+   *         <code>null</code> if both are <code>null</code>.
+   */
+  @Nullable
+  public static Duration getEffectiveTimeout (@Nullable final Duration aTimeout, @Nullable final WSDeadline aDeadline)
+  {
+    return aDeadline == null ? aTimeout : aDeadline.limit (aTimeout);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Remaining", getRemaining ()).getToString ();
+  }
+}
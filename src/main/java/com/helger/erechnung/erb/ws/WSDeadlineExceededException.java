@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown if the deadline of a delivery (see
+ * {@link AbstractWSSender#setDeliveryTimeout(java.time.Duration)}) passed, before a request could
+ * be sent or completed.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+public class WSDeadlineExceededException extends IOException
+{
+  public WSDeadlineExceededException (final String sMessage)
+  {
+    super (sMessage);
+  }
+}
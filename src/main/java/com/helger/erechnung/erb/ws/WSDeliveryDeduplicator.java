@@ -0,0 +1,525 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * A bounded and expiring index of recently delivered invoices, to suppress duplicate deliveries.
+ * Each delivery is identified by the supplier invoice number and a fast non-cryptographic hash over
+ * the invoice bytes and all delivery parameters (see
+ * {@link #createKey(byte[], IWSRequestBodyWriter)}). After a successful delivery the success element
+ * returned by ER&gt;B is stored, and a repeated delivery of the same invoice returns the stored
+ * success element without contacting ER&gt;B.<br>
+ * At most {@link #getMaxEntries()} entries are kept. Entries are dropped in the order they were
+ * added, when the index is full or when they are older than {@link #getTimeToLive()}.<br>
+ * A delivery is registered as in flight before it is sent (see
+ * {@link #beginDelivery(String, WSDeadline)}). Further deliveries of the same invoice wait until it
+ * finished, but not longer than their own deadline, and then either return its success element or,
+ * if it failed, take over the delivery. This covers concurrent identical deliveries as well as
+ * retries after the caller stopped waiting for a delivery that is still in flight.
+ *
+ * @author Philip Helger
+ * @param <SUCCESSTYPE>
+ *        The type of the success element of the webservice
+ * @since 5.0.2
+ */
+@ThreadSafe
+public class WSDeliveryDeduplicator <SUCCESSTYPE>
+{
+  public static final int DEFAULT_MAX_ENTRIES = 10_000;
+  public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours (24);
+
+  // The supplier invoice number is expected near the start of the invoice
+  private static final int INVOICE_NUMBER_SCAN_LIMIT = 16 * 1024;
+  private static final int INVOICE_NUMBER_MAX_LENGTH = 256;
+  private static final byte [] INVOICE_NUMBER_TAG = "InvoiceNumber>".getBytes (StandardCharsets.US_ASCII);
+
+  /**
+   * Streaming implementation of the 64 bit xxHash (XXH64) with seed 0.
+   */
+  private static final class XXH64OutputStream extends OutputStream
+  {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle (long [].class,
+                                                                                   ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle (int [].class,
+                                                                                  ByteOrder.LITTLE_ENDIAN);
+
+    private long m_nV1 = PRIME1 + PRIME2;
+    private long m_nV2 = PRIME2;
+    private long m_nV3 = 0;
+    private long m_nV4 = -PRIME1;
+    private final byte [] m_aBuffer = new byte [32];
+    private int m_nBuffered = 0;
+    private long m_nTotalLength = 0;
+
+    private static long _round (final long nAcc, final long nInput)
+    {
+      return Long.rotateLeft (nAcc + nInput * PRIME2, 31) * PRIME1;
+    }
+
+    private static long _mergeRound (final long nAcc, final long nValue)
+    {
+      return (nAcc ^ _round (0, nValue)) * PRIME1 + PRIME4;
+    }
+
+    private void _processStripe (final byte [] aBuf, final int nOfs)
+    {
+      m_nV1 = _round (m_nV1, (long) LONG_LE.get (aBuf, nOfs));
+      m_nV2 = _round (m_nV2, (long) LONG_LE.get (aBuf, nOfs + 8));
+      m_nV3 = _round (m_nV3, (long) LONG_LE.get (aBuf, nOfs + 16));
+      m_nV4 = _round (m_nV4, (long) LONG_LE.get (aBuf, nOfs + 24));
+    }
+
+    @Override
+    public void write (final int b)
+    {
+      m_aBuffer[m_nBuffered++] = (byte) b;
+      m_nTotalLength++;
+      if (m_nBuffered == 32)
+      {
+        _processStripe (m_aBuffer, 0);
+        m_nBuffered = 0;
+      }
+    }
+
+    @Override
+    public void write (final byte [] aBuf, final int nOfs, final int nLen)
+    {
+      int nPos = nOfs;
+      final int nEnd = nOfs + nLen;
+      m_nTotalLength += nLen;
+      if (m_nBuffered > 0)
+      {
+        final int nFill = Math.min (32 - m_nBuffered, nLen);
+        System.arraycopy (aBuf, nPos, m_aBuffer, m_nBuffered, nFill);
+        m_nBuffered += nFill;
+        nPos += nFill;
+        if (m_nBuffered < 32)
+          return;
+        _processStripe (m_aBuffer, 0);
+        m_nBuffered = 0;
+      }
+      while (nEnd - nPos >= 32)
+      {
+        _processStripe (aBuf, nPos);
+        nPos += 32;
+      }
+      System.arraycopy (aBuf, nPos, m_aBuffer, 0, nEnd - nPos);
+      m_nBuffered = nEnd - nPos;
+    }
+
+    long getHash ()
+    {
+      long h;
+      if (m_nTotalLength >= 32)
+      {
+        h = Long.rotateLeft (m_nV1, 1) +
+            Long.rotateLeft (m_nV2, 7) +
+            Long.rotateLeft (m_nV3, 12) +
+            Long.rotateLeft (m_nV4, 18);
+        h = _mergeRound (h, m_nV1);
+        h = _mergeRound (h, m_nV2);
+        h = _mergeRound (h, m_nV3);
+        h = _mergeRound (h, m_nV4);
+      }
+      else
+        h = PRIME5;
+      h += m_nTotalLength;
+
+      int nPos = 0;
+      for (; nPos + 8 <= m_nBuffered; nPos += 8)
+        h = Long.rotateLeft (h ^ _round (0, (long) LONG_LE.get (m_aBuffer, nPos)), 27) * PRIME1 + PRIME4;
+      if (nPos + 4 <= m_nBuffered)
+      {
+        h = Long.rotateLeft (h ^ (((int) INT_LE.get (m_aBuffer, nPos)) & 0xFFFFFFFFL) * PRIME1, 23) * PRIME2 + PRIME3;
+        nPos += 4;
+      }
+      for (; nPos < m_nBuffered; ++nPos)
+        h = Long.rotateLeft (h ^ (m_aBuffer[nPos] & 0xFFL) * PRIME5, 11) * PRIME1;
+
+      h ^= h >>> 33;
+      h *= PRIME2;
+      h ^= h >>> 29;
+      h *= PRIME3;
+      h ^= h >>> 32;
+      return h;
+    }
+  }
+
+  private static final class Entry <T>
+  {
+    private final T m_aSuccess;
+    private final long m_nCreationNanos;
+
+    Entry (@NonNull final T aSuccess, final long nCreationNanos)
+    {
+      m_aSuccess = aSuccess;
+      m_nCreationNanos = nCreationNanos;
+    }
+  }
+
+  private final int m_nMaxEntries;
+  private final Duration m_aTimeToLive;
+  private final long m_nTimeToLiveNanos;
+  private final SimpleLock m_aLock = new SimpleLock ();
+  private final Condition m_aDeliveryFinished = m_aLock.newCondition ();
+  // Oldest entry is first
+  @GuardedBy ("m_aLock")
+  private final Map <String, Entry <SUCCESSTYPE>> m_aEntries = new LinkedHashMap <> ();
+  @GuardedBy ("m_aLock")
+  private final Set <String> m_aInFlight = new HashSet <> ();
+  @GuardedBy ("m_aLock")
+  private long m_nHitCount = 0;
+
+  /**
+   * Constructor with {@link #DEFAULT_MAX_ENTRIES} and {@link #DEFAULT_TIME_TO_LIVE}.
+   */
+  public WSDeliveryDeduplicator ()
+  {
+    this (DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nMaxEntries
+   *        The maximum number of deliveries to remember. Must be &gt; 0.
+   * @param aTimeToLive
+   *        The time after which a delivery is forgotten. Must be &gt; 0.
+   */
+  public WSDeliveryDeduplicator (final int nMaxEntries, @NonNull final Duration aTimeToLive)
+  {
+    ValueEnforcer.isGT0 (nMaxEntries, "MaxEntries");
+    ValueEnforcer.notNull (aTimeToLive, "TimeToLive");
+    ValueEnforcer.isFalse (aTimeToLive.isNegative () || aTimeToLive.isZero (), "TimeToLive must be positive");
+    m_nMaxEntries = nMaxEntries;
+    m_aTimeToLive = aTimeToLive;
+    m_nTimeToLiveNanos = aTimeToLive.toNanos ();
+  }
+
+  /**
+   * @return The maximum number of deliveries to remember. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxEntries ()
+  {
+    return m_nMaxEntries;
+  }
+
+  /**
+   * @return The time after which a delivery is forgotten. Never <code>null</code>.
+   */
+  @NonNull
+  public final Duration getTimeToLive ()
+  {
+    return m_aTimeToLive;
+  }
+
+  private static boolean _isNameChar (final byte b)
+  {
+    return (b >= 'a' && b <= 'z') ||
+           (b >= 'A' && b <= 'Z') ||
+           (b >= '0' && b <= '9') ||
+           b == '_' ||
+           b == '-' ||
+           b == '.';
+  }
+
+  /**
+   * Get the supplier invoice number of an ebInterface invoice, by looking for the first
+   * <code>InvoiceNumber</code> start tag near the beginning of the invoice. No XML parsing is
+   * performed, so this works for all ASCII compatible encodings only.
+   *
+   * @param aInvoiceBytes
+   *        The invoice bytes. May not be <code>null</code>.
+   * @return <code>null</code> if no invoice number was found.
+   */
+  @Nullable
+  static String getInvoiceNumber (@NonNull final byte [] aInvoiceBytes)
+  {
+    final int nMax = Math.min (aInvoiceBytes.length, INVOICE_NUMBER_SCAN_LIMIT);
+    final int nTagLen = INVOICE_NUMBER_TAG.length;
+    for (int i = 1; i + nTagLen <= nMax; ++i)
+    {
+      int j = 0;
+      while (j < nTagLen && aInvoiceBytes[i + j] == INVOICE_NUMBER_TAG[j])
+        j++;
+      if (j < nTagLen)
+        continue;
+
+      // Only "<InvoiceNumber>" or "<prefix:InvoiceNumber>" but not the end tag
+      int nTagStart = i - 1;
+      if (aInvoiceBytes[nTagStart] == ':')
+      {
+        nTagStart--;
+        while (nTagStart > 0 && _isNameChar (aInvoiceBytes[nTagStart]))
+          nTagStart--;
+      }
+      if (aInvoiceBytes[nTagStart] != '<')
+        continue;
+
+      final int nValueStart = i + nTagLen;
+      final int nValueMax = Math.min (aInvoiceBytes.length, nValueStart + INVOICE_NUMBER_MAX_LENGTH);
+      for (int nValueEnd = nValueStart; nValueEnd < nValueMax; ++nValueEnd)
+        if (aInvoiceBytes[nValueEnd] == '<')
+        {
+          final String ret = new String (aInvoiceBytes, nValueStart, nValueEnd - nValueStart, StandardCharsets.UTF_8).trim ();
+          return ret.isEmpty () ? null : ret;
+        }
+      return null;
+    }
+    return null;
+  }
+
+  /**
+   * Create the key of a delivery. It consists of the supplier invoice number (if it can be found
+   * cheaply) and an XXH64 hash over the invoice bytes and the delivery parameters (e.g. endpoint,
+   * attachments and settings) as written by the provided writer. The parameter writer should write
+   * raw content and avoid any XML serialization, as the key is created for every delivery.
+   *
+   * @param aInvoiceBytes
+   *        The invoice bytes. May not be <code>null</code>.
+   * @param aParameterWriter
+   *        The writer for all delivery parameters that distinguish two deliveries of the same
+   *        invoice. May not be <code>null</code>.
+   * @return The key. Never <code>null</code>.
+   * @throws Exception
+   *         If the parameter writer failed
+   */
+  @NonNull
+  public static String createKey (@NonNull final byte [] aInvoiceBytes,
+                                  @NonNull final IWSRequestBodyWriter aParameterWriter) throws Exception
+  {
+    ValueEnforcer.notNull (aInvoiceBytes, "InvoiceBytes");
+    ValueEnforcer.notNull (aParameterWriter, "ParameterWriter");
+
+    final XXH64OutputStream aHash = new XXH64OutputStream ();
+    aHash.write (aInvoiceBytes, 0, aInvoiceBytes.length);
+    aParameterWriter.writeRequestBody (aHash);
+
+    final String sInvoiceNumber = getInvoiceNumber (aInvoiceBytes);
+    // Length to separate the invoice from the parameters
+    return (sInvoiceNumber == null ? "" : sInvoiceNumber) +
+           '/' +
+           aInvoiceBytes.length +
+           '/' +
+           Long.toHexString (aHash.getHash ());
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _removeExpired (final long nNowNanos)
+  {
+    final Iterator <Entry <SUCCESSTYPE>> it = m_aEntries.values ().iterator ();
+    while (it.hasNext ())
+    {
+      if (nNowNanos - it.next ().m_nCreationNanos < m_nTimeToLiveNanos)
+        break;
+      it.remove ();
+    }
+  }
+
+  /**
+   * Get the success element of a previous delivery.
+   *
+   * @param sKey
+   *        The delivery key as created by {@link #createKey(byte[], IWSRequestBodyWriter)}. May not
+   *        be <code>null</code>.
+   * @return <code>null</code> if no such delivery is known. The returned object is shared and must
+   *         not be modified.
+   */
+  @Nullable
+  public SUCCESSTYPE getPreviousSuccess (@NonNull final String sKey)
+  {
+    ValueEnforcer.notNull (sKey, "Key");
+    return m_aLock.lockedGet ( () -> {
+      _removeExpired (System.nanoTime ());
+      final Entry <SUCCESSTYPE> aEntry = m_aEntries.get (sKey);
+      if (aEntry == null)
+        return null;
+      m_nHitCount++;
+      return aEntry.m_aSuccess;
+    });
+  }
+
+  /**
+   * Begin a delivery. If the same delivery succeeded before, its success element is returned. If
+   * the same delivery is currently in flight, this method waits until it finished or the deadline
+   * is exceeded. Otherwise the delivery is registered as in flight and <code>null</code> is
+   * returned - in that case the caller must send the invoice and afterwards call exactly one of
+   * {@link #onSuccess(String, Object)} or {@link #onFailure(String)}.
+   *
+   * @param sKey
+   *        The delivery key as created by {@link #createKey(byte[], IWSRequestBodyWriter)}. May not
+   *        be <code>null</code>.
+   * @param aDeadline
+   *        The deadline of the delivery. May be <code>null</code> to wait without time limit.
+   * @return <code>null</code> if the caller must send the invoice, the success element of the
+   *         previous delivery otherwise. The returned object is shared and must not be modified.
+   * @throws InterruptedException
+   *         If the thread was interrupted while waiting for a delivery in flight.
+   * @throws WSDeadlineExceededException
+   *         If the deadline was exceeded while waiting for a delivery in flight.
+   */
+  @Nullable
+  public SUCCESSTYPE beginDelivery (@NonNull final String sKey, @Nullable final WSDeadline aDeadline) throws InterruptedException,
+                                                                                                        WSDeadlineExceededException
+  {
+    ValueEnforcer.notNull (sKey, "Key");
+    m_aLock.lockInterruptibly ();
+    try
+    {
+      while (true)
+      {
+        _removeExpired (System.nanoTime ());
+        final Entry <SUCCESSTYPE> aEntry = m_aEntries.get (sKey);
+        if (aEntry != null)
+        {
+          m_nHitCount++;
+          return aEntry.m_aSuccess;
+        }
+        if (m_aInFlight.add (sKey))
+          return null;
+        if (aDeadline == null)
+          m_aDeliveryFinished.await ();
+        else
+        {
+          final long nRemainingNanos = aDeadline.getRemaining ().toNanos ();
+          if (nRemainingNanos <= 0)
+            throw new WSDeadlineExceededException ("The delivery deadline was exceeded while waiting for an identical delivery");
+          m_aDeliveryFinished.awaitNanos (nRemainingNanos);
+        }
+      }
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _finishDelivery (@NonNull final String sKey)
+  {
+    if (m_aInFlight.remove (sKey))
+      m_aDeliveryFinished.signalAll ();
+  }
+
+  /**
+   * Remember a successful delivery. If the delivery was begun with
+   * {@link #beginDelivery(String, WSDeadline)}, all deliveries waiting for it return the provided
+   * success element.
+   *
+   * @param sKey
+   *        The delivery key as created by {@link #createKey(byte[], IWSRequestBodyWriter)}. May not
+   *        be <code>null</code>.
+   * @param aSuccess
+   *        The success element returned by ER&gt;B. May not be <code>null</code>. It must not be
+   *        modified afterwards.
+   */
+  public void onSuccess (@NonNull final String sKey, @NonNull final SUCCESSTYPE aSuccess)
+  {
+    ValueEnforcer.notNull (sKey, "Key");
+    ValueEnforcer.notNull (aSuccess, "Success");
+    m_aLock.locked ( () -> {
+      final long nNowNanos = System.nanoTime ();
+      _removeExpired (nNowNanos);
+      // Re-insert to have the entry at the end
+      m_aEntries.remove (sKey);
+      m_aEntries.put (sKey, new Entry <> (aSuccess, nNowNanos));
+      if (m_aEntries.size () > m_nMaxEntries)
+      {
+        final Iterator <String> it = m_aEntries.keySet ().iterator ();
+        it.next ();
+        it.remove ();
+      }
+      _finishDelivery (sKey);
+    });
+  }
+
+  /**
+   * Finish a delivery begun with {@link #beginDelivery(String, WSDeadline)} that did not succeed. One
+   * of the deliveries waiting for it takes over.
+   *
+   * @param sKey
+   *        The delivery key. May not be <code>null</code>.
+   */
+  public void onFailure (@NonNull final String sKey)
+  {
+    ValueEnforcer.notNull (sKey, "Key");
+    m_aLock.locked ( () -> _finishDelivery (sKey));
+  }
+
+  /**
+   * @return The number of remembered deliveries, including expired ones that were not yet removed.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    return m_aLock.lockedGet ( () -> Integer.valueOf (m_aEntries.size ())).intValue ();
+  }
+
+  /**
+   * @return The number of deliveries that were suppressed as duplicates.
+   */
+  @Nonnegative
+  public long getHitCount ()
+  {
+    return m_aLock.lockedGet ( () -> Long.valueOf (m_nHitCount)).longValue ();
+  }
+
+  /**
+   * Forget all successful deliveries. Deliveries in flight are not affected.
+   */
+  public void clear ()
+  {
+    m_aLock.locked (m_aEntries::clear);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("MaxEntries", m_nMaxEntries)
+                                       .append ("TimeToLive", m_aTimeToLive)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jspecify.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.annotation.style.PresentForCodeCoverage;
+
+/**
+ * Helper class for the executors used for asynchronous deliveries.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@Immutable
+public final class WSExecutorHelper
+{
+  /** The maximum number of platform threads used if virtual threads are not available */
+  public static final int PLATFORM_THREAD_COUNT = Math.max (8, 4 * Runtime.getRuntime ().availableProcessors ());
+  /** The maximum number of deliveries waiting for a platform thread */
+  public static final int PLATFORM_QUEUE_SIZE = 10_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (WSExecutorHelper.class);
+
+  private static final class SingletonHolder
+  {
+    static final ExecutorService INSTANCE = _createDefaultAsyncExecutor ();
+  }
+
+  @PresentForCodeCoverage
+  private static final WSExecutorHelper INSTANCE = new WSExecutorHelper ();
+
+  private WSExecutorHelper ()
+  {}
+
+  @NonNull
+  private static ExecutorService _createDefaultAsyncExecutor ()
+  {
+    // Virtual threads are available since Java 21, but this library still
+    // supports Java 17 - so use reflection
+    try
+    {
+      final ExecutorService ret = (ExecutorService) Executors.class.getMethod ("newVirtualThreadPerTaskExecutor")
+                                                                   .invoke (null);
+      LOGGER.info ("Using virtual threads for asynchronous ER>B deliveries");
+      return ret;
+    }
+    catch (final ReflectiveOperationException ex)
+    {
+      // Fall through
+    }
+
+    LOGGER.info ("Using a pool of up to " +
+                 PLATFORM_THREAD_COUNT +
+                 " platform threads for asynchronous ER>B deliveries");
+    final AtomicInteger aThreadIndex = new AtomicInteger (0);
+    final ThreadFactory aThreadFactory = r -> {
+      final Thread t = new Thread (r, "erb-ws-async-" + aThreadIndex.incrementAndGet ());
+      t.setDaemon (true);
+      return t;
+    };
+    // Slow down the callers if the queue is full
+    final ThreadPoolExecutor ret = new ThreadPoolExecutor (PLATFORM_THREAD_COUNT,
+                                                           PLATFORM_THREAD_COUNT,
+                                                           60,
+                                                           TimeUnit.SECONDS,
+                                                           new LinkedBlockingQueue <> (PLATFORM_QUEUE_SIZE),
+                                                           aThreadFactory,
+                                                           new ThreadPoolExecutor.CallerRunsPolicy ());
+    // Don't keep idle threads around
+    ret.allowCoreThreadTimeOut (true);
+    return ret;
+  }
+
+  /**
+   * Get the default executor for asynchronous deliveries. On Java 21 and later this is an executor
+   * that creates a new virtual thread per task. On older Java versions a pool of at most
+   * {@link #PLATFORM_THREAD_COUNT} daemon platform threads is used, where up to
+   * {@link #PLATFORM_QUEUE_SIZE} deliveries wait for a free thread. If the queue is full, the
+   * delivery runs on the submitting thread. The executor is created lazily and shared within the
+   * JVM.
+   *
+   * @return The default executor and never <code>null</code>.
+   */
+  @NonNull
+  public static Executor getDefaultAsyncExecutor ()
+  {
+    return SingletonHolder.INSTANCE;
+  }
+}
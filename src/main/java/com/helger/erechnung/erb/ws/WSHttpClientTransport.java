@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * An {@link IWSTransport} based on the JDK {@link HttpClient}. The client negotiates HTTP/2 where
+ * available, so that many concurrent deliveries share a few multiplexed connections. The request
+ * body is streamed to the client via a bounded in-memory pipe, so the memory consumption does not
+ * depend on the invoice size. The read timeout limits the time until the response headers are
+ * received. The connect timeout passed by the sender is ignored, because it is a property of the
+ * {@link HttpClient} (see {@link HttpClient.Builder#connectTimeout(Duration)}).
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public class WSHttpClientTransport implements IWSTransport
+{
+  private static final int CHUNK_SIZE = 16 * 1024;
+  private static final int MAX_QUEUED_CHUNKS = 16;
+
+  /**
+   * A simple pipe between the thread writing the request body and the HTTP client threads reading
+   * it. In contrast to {@link java.io.PipedInputStream} it does not depend on the lifetime of the
+   * reading thread.
+   */
+  private static final class RequestBodyPipe
+  {
+    private static final byte [] EOF = new byte [0];
+    private static final byte [] ABORT = new byte [0];
+
+    private final BlockingQueue <byte []> m_aQueue = new ArrayBlockingQueue <> (MAX_QUEUED_CHUNKS);
+    private volatile boolean m_bAborted;
+
+    private final OutputStream m_aOS = new OutputStream ()
+    {
+      private final byte [] m_aBuf = new byte [CHUNK_SIZE];
+      private int m_nPos;
+      private boolean m_bClosed;
+
+      private void _put (@NonNull final byte [] aChunk) throws IOException
+      {
+        try
+        {
+          do
+          {
+            if (m_bAborted)
+              throw new IOException ("The HTTP request was aborted");
+          } while (!m_aQueue.offer (aChunk, 100, TimeUnit.MILLISECONDS));
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+          throw new InterruptedIOException ("Interrupted while writing the HTTP request");
+        }
+      }
+
+      private void _flushBuffer () throws IOException
+      {
+        if (m_nPos > 0)
+        {
+          _put (Arrays.copyOf (m_aBuf, m_nPos));
+          m_nPos = 0;
+        }
+      }
+
+      @Override
+      public void write (final int b) throws IOException
+      {
+        m_aBuf[m_nPos++] = (byte) b;
+        if (m_nPos == m_aBuf.length)
+          _flushBuffer ();
+      }
+
+      @Override
+      public void write (final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+      {
+        int nOffset = nOfs;
+        int nRest = nLen;
+        while (nRest > 0)
+        {
+          final int nCount = Math.min (nRest, m_aBuf.length - m_nPos);
+          System.arraycopy (aBuf, nOffset, m_aBuf, m_nPos, nCount);
+          m_nPos += nCount;
+          nOffset += nCount;
+          nRest -= nCount;
+          if (m_nPos == m_aBuf.length)
+            _flushBuffer ();
+        }
+      }
+
+      @Override
+      public void close () throws IOException
+      {
+        if (!m_bClosed)
+        {
+          m_bClosed = true;
+          _flushBuffer ();
+          _put (EOF);
+        }
+      }
+    };
+
+    private final InputStream m_aIS = new InputStream ()
+    {
+      private byte [] m_aCur;
+      private int m_nPos;
+
+      @Override
+      public int read () throws IOException
+      {
+        final byte [] aOne = new byte [1];
+        final int nRead = read (aOne, 0, 1);
+        return nRead < 0 ? -1 : aOne[0] & 0xff;
+      }
+
+      @Override
+      public int read (final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+      {
+        if (nLen == 0)
+          return 0;
+        if (m_aCur == EOF)
+          return -1;
+        if (m_aCur == ABORT)
+          throw new IOException ("Writing the HTTP request failed");
+        if (m_aCur == null || m_nPos == m_aCur.length)
+        {
+          try
+          {
+            m_aCur = m_aQueue.take ();
+          }
+          catch (final InterruptedException ex)
+          {
+            Thread.currentThread ().interrupt ();
+            throw new InterruptedIOException ("Interrupted while reading the HTTP request");
+          }
+          m_nPos = 0;
+          if (m_aCur == EOF)
+            return -1;
+          if (m_aCur == ABORT)
+            throw new IOException ("Writing the HTTP request failed");
+        }
+        final int nCount = Math.min (nLen, m_aCur.length - m_nPos);
+        System.arraycopy (m_aCur, m_nPos, aBuf, nOfs, nCount);
+        m_nPos += nCount;
+        return nCount;
+      }
+    };
+
+    void abort ()
+    {
+      m_bAborted = true;
+      m_aQueue.clear ();
+      // Wake up a waiting reader
+      m_aQueue.offer (ABORT);
+    }
+  }
+
+  private final HttpClient m_aHttpClient;
+
+  /**
+   * Constructor using a new HTTP client created by {@link #createDefaultHttpClientBuilder()}.
+   */
+  public WSHttpClientTransport ()
+  {
+    this (createDefaultHttpClientBuilder ().build ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aHttpClient
+   *        The HTTP client to use. May not be <code>null</code>. It should be shared by all
+   *        senders, so that connections are re-used.
+   */
+  public WSHttpClientTransport (@NonNull final HttpClient aHttpClient)
+  {
+    ValueEnforcer.notNull (aHttpClient, "HttpClient");
+    m_aHttpClient = aHttpClient;
+  }
+
+  /**
+   * @return A new HTTP client builder that prefers HTTP/2 and does not follow redirects. Never
+   *         <code>null</code>.
+   */
+  @NonNull
+  public static HttpClient.Builder createDefaultHttpClientBuilder ()
+  {
+    return HttpClient.newBuilder ().version (HttpClient.Version.HTTP_2).followRedirects (HttpClient.Redirect.NEVER);
+  }
+
+  /**
+   * @return The HTTP client used. Never <code>null</code>.
+   */
+  @NonNull
+  public final HttpClient getHttpClient ()
+  {
+    return m_aHttpClient;
+  }
+
+  public <T> T postSOAPRequest (@NonNull final URL aURL,
+                                @NonNull final String sSOAPAction,
+                                @NonNull final String sContentType,
+                                @NonNull final IWSRequestBodyWriter aRequestWriter,
+                                @NonNull final IWSResponseReader <T> aResponseReader,
+                                @Nullable final Duration aConnectTimeout,
+                                @Nullable final Duration aReadTimeout) throws Exception
+  {
+    final RequestBodyPipe aPipe = new RequestBodyPipe ();
+    final HttpRequest aRequest;
+    try
+    {
+      final HttpRequest.Builder aBuilder = HttpRequest.newBuilder (aURL.toURI ())
+                                                      .header ("Content-Type", sContentType)
+                                                      .header ("SOAPAction", "\"" + sSOAPAction + "\"")
+                                                      .POST (HttpRequest.BodyPublishers.ofInputStream ( () -> aPipe.m_aIS));
+      // The connect timeout is a property of the HttpClient
+      if (aReadTimeout != null)
+        aBuilder.timeout (aReadTimeout);
+      aRequest = aBuilder.build ();
+    }
+    catch (final URISyntaxException ex)
+    {
+      throw new IOException ("Invalid endpoint URL " + aURL, ex);
+    }
+
+    final CompletableFuture <HttpResponse <InputStream>> aFuture = m_aHttpClient.sendAsync (aRequest,
+                                                                                           HttpResponse.BodyHandlers.ofInputStream ());
+    // E.g. the server answered early or the connection failed - stop writing
+    aFuture.whenComplete ( (r, ex) -> aPipe.abort ());
+
+    try
+    {
+      aRequestWriter.writeRequestBody (aPipe.m_aOS);
+      // Only close on success - otherwise a truncated request would be sent
+      aPipe.m_aOS.close ();
+    }
+    catch (final Exception ex)
+    {
+      if (!(ex instanceof IOException) || !aFuture.isDone ())
+      {
+        aPipe.abort ();
+        aFuture.cancel (true);
+        throw ex;
+      }
+      // Writing was aborted because the response is already present
+    }
+
+    final HttpResponse <InputStream> aResponse;
+    try
+    {
+      aResponse = aFuture.get ();
+    }
+    catch (final ExecutionException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof Exception)
+        throw (Exception) aCause;
+      throw ex;
+    }
+    return SOAPStreamHelper.readSOAPResponse (aResponse.statusCode (),
+                                              aResponse.headers ().firstValue ("Content-Type").orElse (null),
+                                              aResponse.body (),
+                                              aResponseReader);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("HttpClient", m_aHttpClient).getToString ();
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.annotation.style.PresentForCodeCoverage;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.exception.InitializationException;
+
+/**
+ * Helper class for the direct HTTP communication that does not use JAX-WS.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class WSHttpHelper
+{
+  private static final class TrustAllManager implements X509TrustManager
+  {
+    public void checkClientTrusted (final X509Certificate [] aChain, final String sAuthType)
+    {}
+
+    public void checkServerTrusted (final X509Certificate [] aChain, final String sAuthType)
+    {}
+
+    public X509Certificate [] getAcceptedIssuers ()
+    {
+      return new X509Certificate [0];
+    }
+  }
+
+  private static final class SingletonHolder
+  {
+    static final SSLSocketFactory TRUST_ALL_SOCKET_FACTORY;
+
+    static
+    {
+      try
+      {
+        final SSLContext aSSLContext = SSLContext.getInstance ("TLS");
+        aSSLContext.init (null, new TrustManager [] { new TrustAllManager () }, null);
+        TRUST_ALL_SOCKET_FACTORY = aSSLContext.getSocketFactory ();
+      }
+      catch (final GeneralSecurityException ex)
+      {
+        throw new InitializationException ("Failed to init trust all SSL context", ex);
+      }
+    }
+  }
+
+  private static final HostnameVerifier TRUST_ALL_HOSTNAME_VERIFIER = (sHostname, aSession) -> true;
+
+  @PresentForCodeCoverage
+  private static final WSHttpHelper INSTANCE = new WSHttpHelper ();
+
+  private WSHttpHelper ()
+  {}
+
+  /**
+   * @return An SSL socket factory that does not check the server certificate. Never
+   *         <code>null</code>.
+   */
+  @NonNull
+  public static SSLSocketFactory getTrustAllSSLSocketFactory ()
+  {
+    return SingletonHolder.TRUST_ALL_SOCKET_FACTORY;
+  }
+
+  /**
+   * Create a new TLS context with an explicitly configured client session cache. Use the same
+   * context for all senders to the same endpoint, so that TLS sessions can be resumed.
+   *
+   * @param aKeyManagers
+   *        The key managers to use. May be <code>null</code> to use the default.
+   * @param aTrustManagers
+   *        The trust managers to use. May be <code>null</code> to use the default.
+   * @param nSessionCacheSize
+   *        The maximum number of cached TLS sessions. 0 means unlimited.
+   * @param aSessionTimeout
+   *        The time after which cached TLS sessions expire. May not be <code>null</code>.
+   * @return The new SSL context. Never <code>null</code>.
+   * @throws GeneralSecurityException
+   *         If the context cannot be initialized
+   * @since 5.0.2
+   */
+  @NonNull
+  public static SSLContext createSSLContext (@Nullable final KeyManager [] aKeyManagers,
+                                             @Nullable final TrustManager [] aTrustManagers,
+                                             @Nonnegative final int nSessionCacheSize,
+                                             @NonNull final Duration aSessionTimeout) throws GeneralSecurityException
+  {
+    ValueEnforcer.isGE0 (nSessionCacheSize, "SessionCacheSize");
+    ValueEnforcer.notNull (aSessionTimeout, "SessionTimeout");
+    ValueEnforcer.isFalse (aSessionTimeout.isNegative (), "SessionTimeout may not be negative");
+
+    final SSLContext ret = SSLContext.getInstance ("TLS");
+    ret.init (aKeyManagers, aTrustManagers, null);
+    final SSLSessionContext aSessionCtx = ret.getClientSessionContext ();
+    aSessionCtx.setSessionCacheSize (nSessionCacheSize);
+    aSessionCtx.setSessionTimeout ((int) Math.min (Integer.MAX_VALUE, aSessionTimeout.toSeconds ()));
+    return ret;
+  }
+
+  /**
+   * Configure the HTTP keep-alive of the JDK {@link java.net.HttpURLConnection} that is used both
+   * by JAX-WS and by the direct code path. The JDK reads these settings only once, so this method
+   * must be called before the first HTTP connection is opened.
+   *
+   * @param nMaxConnectionsPerRoute
+   *        The maximum number of idle connections kept per destination (host and port). Must be
+   *        &gt; 0. The JDK default is 5.
+   * @param aKeepAlive
+   *        The time idle connections are kept, if the server does not send a
+   *        <code>Keep-Alive</code> header. May not be <code>null</code>. This is only supported
+   *        on Java 19 and later and ignored on older versions.
+   * @since 5.0.2
+   */
+  public static void setKeepAlive (@Nonnegative final int nMaxConnectionsPerRoute, @NonNull final Duration aKeepAlive)
+  {
+    ValueEnforcer.isGT0 (nMaxConnectionsPerRoute, "MaxConnectionsPerRoute");
+    ValueEnforcer.notNull (aKeepAlive, "KeepAlive");
+    ValueEnforcer.isFalse (aKeepAlive.isNegative (), "KeepAlive may not be negative");
+
+    System.setProperty ("http.keepAlive", "true");
+    System.setProperty ("http.maxConnections", Integer.toString (nMaxConnectionsPerRoute));
+    System.setProperty ("http.keepAlive.time.server", Long.toString (aKeepAlive.toSeconds ()));
+  }
+
+  /**
+   * @return A hostname verifier that accepts all hostnames. Never <code>null</code>.
+   */
+  @NonNull
+  public static HostnameVerifier getTrustAllHostnameVerifier ()
+  {
+    return TRUST_ALL_HOSTNAME_VERIFIER;
+  }
+}
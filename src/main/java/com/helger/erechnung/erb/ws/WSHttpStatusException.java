@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown if a SOAP request sent without JAX-WS was answered with an HTTP response that
+ * does not contain a SOAP message.
+ *
+ * @author Philip Helger
+ */
+public class WSHttpStatusException extends IOException
+{
+  /** HTTP status code for "Unsupported Media Type" */
+  public static final int SC_UNSUPPORTED_MEDIA_TYPE = 415;
+
+  private final int m_nStatusCode;
+
+  public WSHttpStatusException (final int nStatusCode, final String sMessage)
+  {
+    super ("HTTP status " + nStatusCode + ": " + sMessage);
+    m_nStatusCode = nStatusCode;
+  }
+
+  /**
+   * @return The HTTP status code of the response.
+   */
+  public final int getStatusCode ()
+  {
+    return m_nStatusCode;
+  }
+
+  /**
+   * @return <code>true</code> if the server rejected the content type of the request.
+   */
+  public final boolean isUnsupportedMediaType ()
+  {
+    return m_nStatusCode == SC_UNSUPPORTED_MEDIA_TYPE;
+  }
+}
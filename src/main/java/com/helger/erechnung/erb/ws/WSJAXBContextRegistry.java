@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.jspecify.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.annotation.style.PresentForCodeCoverage;
+import com.helger.annotation.style.ReturnsMutableCopy;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.exception.InitializationException;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+
+/**
+ * Central registry of the JAXB contexts for the generated ER&gt;B types. Each context is created
+ * only once and the marshallers and unmarshallers are pooled, because creating them is expensive
+ * as well. The pools are not bound to threads, so that they also work with virtual threads. Call
+ * {@link #warmUp()} during application startup to avoid the initialization costs on the first
+ * delivery.<br>
+ * Note: the JAX-WS runtime creates its own JAXB contexts and does not use this registry.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public final class WSJAXBContextRegistry
+{
+  /** The ObjectFactory of the Webservice 1.2 types */
+  public static final Class <?> OBJECT_FACTORY_WS120 = at.gv.brz.eproc.erb.ws.documentupload._20121205.ObjectFactory.class;
+  /** The ObjectFactory of the Webservice 2.0 types */
+  public static final Class <?> OBJECT_FACTORY_WS200 = at.gv.brz.eproc.erb.ws.invoicedelivery._201306.ObjectFactory.class;
+  /** The ObjectFactory of the delivery callback 1.0 types */
+  public static final Class <?> OBJECT_FACTORY_CALLBACK100 = at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.ObjectFactory.class;
+
+  /** The maximum number of idle marshallers and unmarshallers kept per context */
+  public static final int MAX_POOL_SIZE = 64;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (WSJAXBContextRegistry.class);
+
+  private static final class Entry
+  {
+    private final JAXBContext m_aContext;
+    private final BlockingQueue <Marshaller> m_aMarshallers = new ArrayBlockingQueue <> (MAX_POOL_SIZE);
+    private final BlockingQueue <Unmarshaller> m_aUnmarshallers = new ArrayBlockingQueue <> (MAX_POOL_SIZE);
+
+    Entry (@NonNull final Class <?> aObjectFactoryClass)
+    {
+      try
+      {
+        m_aContext = JAXBContext.newInstance (aObjectFactoryClass);
+      }
+      catch (final JAXBException ex)
+      {
+        throw new InitializationException ("Failed to create JAXB context for " + aObjectFactoryClass.getName (), ex);
+      }
+    }
+
+    @NonNull
+    Marshaller borrowMarshaller () throws JAXBException
+    {
+      Marshaller ret = m_aMarshallers.poll ();
+      if (ret == null)
+      {
+        ret = m_aContext.createMarshaller ();
+        ret.setProperty (Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+        ret.setProperty (Marshaller.JAXB_ENCODING, StandardCharsets.UTF_8.name ());
+      }
+      return ret;
+    }
+
+    @NonNull
+    Unmarshaller borrowUnmarshaller () throws JAXBException
+    {
+      final Unmarshaller ret = m_aUnmarshallers.poll ();
+      return ret != null ? ret : m_aContext.createUnmarshaller ();
+    }
+  }
+
+  private static final Map <Class <?>, Entry> ENTRIES = new ConcurrentHashMap <> ();
+
+  @PresentForCodeCoverage
+  private static final WSJAXBContextRegistry INSTANCE = new WSJAXBContextRegistry ();
+
+  private WSJAXBContextRegistry ()
+  {}
+
+  @NonNull
+  private static Entry _getEntry (@NonNull final Class <?> aObjectFactoryClass)
+  {
+    ValueEnforcer.notNull (aObjectFactoryClass, "ObjectFactoryClass");
+    return ENTRIES.computeIfAbsent (aObjectFactoryClass, Entry::new);
+  }
+
+  /**
+   * @return The ObjectFactory classes of all generated ER&gt;B types. Never <code>null</code>.
+   */
+  @NonNull
+  @ReturnsMutableCopy
+  public static ICommonsList <Class <?>> getAllKnownObjectFactories ()
+  {
+    return new CommonsArrayList <> (OBJECT_FACTORY_WS120, OBJECT_FACTORY_WS200, OBJECT_FACTORY_CALLBACK100);
+  }
+
+  /**
+   * Get the shared JAXB context for the provided ObjectFactory. It is created on first access.
+   *
+   * @param aObjectFactoryClass
+   *        The ObjectFactory class. May not be <code>null</code>.
+   * @return The JAXB context. Never <code>null</code>.
+   * @throws InitializationException
+   *         If the JAXB context cannot be created
+   */
+  @NonNull
+  public static JAXBContext getContext (@NonNull final Class <?> aObjectFactoryClass)
+  {
+    return _getEntry (aObjectFactoryClass).m_aContext;
+  }
+
+  /**
+   * Marshal the provided element as an XML fragment (without XML declaration) in UTF-8 using a
+   * pooled marshaller.
+   *
+   * @param aObjectFactoryClass
+   *        The ObjectFactory class of the element. May not be <code>null</code>.
+   * @param aElement
+   *        The element to marshal. Usually a <code>JAXBElement</code>. May not be
+   *        <code>null</code>.
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @throws JAXBException
+   *         In case marshalling failed
+   */
+  public static void marshalFragment (@NonNull final Class <?> aObjectFactoryClass,
+                                      @NonNull final Object aElement,
+                                      @NonNull @WillNotClose final OutputStream aOS) throws JAXBException
+  {
+    final Entry aEntry = _getEntry (aObjectFactoryClass);
+    final Marshaller aMarshaller = aEntry.borrowMarshaller ();
+    try
+    {
+      aMarshaller.marshal (aElement, aOS);
+    }
+    finally
+    {
+      // If the pool is full, the marshaller is simply dropped
+      aEntry.m_aMarshallers.offer (aMarshaller);
+    }
+  }
+
+  /**
+   * Unmarshal the element the reader is positioned on using a pooled unmarshaller.
+   *
+   * @param <T>
+   *        The declared type
+   * @param aObjectFactoryClass
+   *        The ObjectFactory class of the element. May not be <code>null</code>.
+   * @param aReader
+   *        The reader positioned on a start element. May not be <code>null</code>.
+   * @param aDeclaredType
+   *        The type to unmarshal to. May not be <code>null</code>.
+   * @return The unmarshalled value. Never <code>null</code>.
+   * @throws JAXBException
+   *         In case unmarshalling failed
+   */
+  @NonNull
+  public static <T> T unmarshal (@NonNull final Class <?> aObjectFactoryClass,
+                                 @NonNull final XMLStreamReader aReader,
+                                 @NonNull final Class <T> aDeclaredType) throws JAXBException
+  {
+    final Entry aEntry = _getEntry (aObjectFactoryClass);
+    final Unmarshaller aUnmarshaller = aEntry.borrowUnmarshaller ();
+    try
+    {
+      return aUnmarshaller.unmarshal (aReader, aDeclaredType).getValue ();
+    }
+    finally
+    {
+      aEntry.m_aUnmarshallers.offer (aUnmarshaller);
+    }
+  }
+
+  /**
+   * Get the number of idle marshallers for the provided ObjectFactory.
+   *
+   * @param aObjectFactoryClass
+   *        The ObjectFactory class. May not be <code>null</code>.
+   * @return The number of pooled marshallers. Always &ge; 0.
+   */
+  @Nonnegative
+  public static int getPooledMarshallerCount (@NonNull final Class <?> aObjectFactoryClass)
+  {
+    return _getEntry (aObjectFactoryClass).m_aMarshallers.size ();
+  }
+
+  /**
+   * Get the number of idle unmarshallers for the provided ObjectFactory.
+   *
+   * @param aObjectFactoryClass
+   *        The ObjectFactory class. May not be <code>null</code>.
+   * @return The number of pooled unmarshallers. Always &ge; 0.
+   */
+  @Nonnegative
+  public static int getPooledUnmarshallerCount (@NonNull final Class <?> aObjectFactoryClass)
+  {
+    return _getEntry (aObjectFactoryClass).m_aUnmarshallers.size ();
+  }
+
+  /**
+   * Create the JAXB contexts of all generated ER&gt;B types and put one marshaller and one
+   * unmarshaller into each pool. This method may be called multiple times.
+   *
+   * @throws InitializationException
+   *         If a JAXB context cannot be created
+   */
+  public static void warmUp ()
+  {
+    final long nStart = System.nanoTime ();
+    for (final Class <?> aObjectFactoryClass : getAllKnownObjectFactories ())
+    {
+      final Entry aEntry = _getEntry (aObjectFactoryClass);
+      try
+      {
+        aEntry.m_aMarshallers.offer (aEntry.borrowMarshaller ());
+        aEntry.m_aUnmarshallers.offer (aEntry.borrowUnmarshaller ());
+      }
+      catch (final JAXBException ex)
+      {
+        throw new InitializationException ("Failed to create JAXB (un)marshaller for " +
+                                           aObjectFactoryClass.getName (),
+                                           ex);
+      }
+    }
+    LOGGER.info ("Warmed up the ER>B JAXB contexts in " + (System.nanoTime () - nStart) / 1_000_000 + " ms");
+  }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.jspecify.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * A durable append-only journal of binary records in a single file. Each record is framed with its
+ * length and a CRC32 checksum, so that a record that was torn by a crash is detected and discarded
+ * when the journal is opened.<br>
+ * {@link #append(byte[])} returns only after the record was forced to disk. To avoid one
+ * <code>fsync</code> per record, concurrent appends are committed as a group: while one thread
+ * writes and forces the pending records, the records of all other threads are collected and
+ * written together by the next committing thread. The number of disk syncs is therefore bounded by
+ * the sync latency and not by the number of records.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public final class WSJournal implements AutoCloseable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (WSJournal.class);
+
+  // "ERBJ" followed by the format version
+  private static final int MAGIC = 0x4552424a;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  // Protection against reading garbage lengths
+  private static final int MAX_RECORD_SIZE = Integer.MAX_VALUE - 16;
+
+  private final Path m_aFile;
+  private final SimpleLock m_aLock = new SimpleLock ();
+  private final Condition m_aCommitted = m_aLock.newCondition ();
+  @GuardedBy ("m_aLock")
+  private FileChannel m_aChannel;
+  @GuardedBy ("m_aLock")
+  private final ByteArrayOutputStream m_aBuffer = new ByteArrayOutputStream ();
+  @GuardedBy ("m_aLock")
+  private long m_nAppendedSeq;
+  @GuardedBy ("m_aLock")
+  private long m_nDurableSeq;
+  @GuardedBy ("m_aLock")
+  private boolean m_bCommitInProgress;
+  @GuardedBy ("m_aLock")
+  private IOException m_aFailure;
+  @GuardedBy ("m_aLock")
+  private long m_nCommitCount;
+
+  /**
+   * Open or create a journal. All records of an existing journal are passed to the provided
+   * consumer in the order they were appended. A torn record at the end of the file is discarded.
+   *
+   * @param aFile
+   *        The journal file. May not be <code>null</code>. The parent directory must exist.
+   * @param aRecordConsumer
+   *        The consumer for the existing records. May not be <code>null</code>.
+   * @throws IOException
+   *         If the file could not be read or created, or if it is not a journal
+   */
+  public WSJournal (@NonNull final Path aFile, @NonNull final Consumer <byte []> aRecordConsumer) throws IOException
+  {
+    ValueEnforcer.notNull (aFile, "File");
+    ValueEnforcer.notNull (aRecordConsumer, "RecordConsumer");
+    m_aFile = aFile;
+    m_aChannel = FileChannel.open (aFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try
+    {
+      if (m_aChannel.size () == 0)
+      {
+        _writeHeader (m_aChannel);
+        m_aChannel.force (true);
+      }
+      else
+      {
+        final long nValidSize = _readRecords (m_aChannel, aRecordConsumer);
+        if (nValidSize < m_aChannel.size ())
+        {
+          LOGGER.warn ("Discarding " + (m_aChannel.size () - nValidSize) + " bytes of a torn record at the end of journal " + aFile);
+          m_aChannel.truncate (nValidSize);
+          m_aChannel.force (true);
+        }
+      }
+      m_aChannel.position (m_aChannel.size ());
+    }
+    catch (final IOException | RuntimeException ex)
+    {
+      m_aChannel.close ();
+      throw ex;
+    }
+  }
+
+  private static void _writeHeader (@NonNull final FileChannel aChannel) throws IOException
+  {
+    final ByteBuffer aHeader = ByteBuffer.allocate (HEADER_SIZE).putInt (MAGIC).putInt (VERSION).flip ();
+    while (aHeader.hasRemaining ())
+      aChannel.write (aHeader);
+  }
+
+  private static long _readRecords (@NonNull final FileChannel aChannel, @NonNull final Consumer <byte []> aRecordConsumer) throws IOException
+  {
+    aChannel.position (0);
+    // Not closed, because that would close the channel
+    final InputStream aIS = new BufferedInputStream (Channels.newInputStream (aChannel), 64 * 1024);
+    final DataInputStream aDIS = new DataInputStream (aIS);
+    if (aDIS.readInt () != MAGIC)
+      throw new IOException ("The file is not an ER>B journal");
+    final int nVersion = aDIS.readInt ();
+    if (nVersion != VERSION)
+      throw new IOException ("Unsupported journal version " + nVersion);
+
+    long nValidSize = HEADER_SIZE;
+    final CRC32 aCRC = new CRC32 ();
+    while (true)
+    {
+      final byte [] aRecord;
+      try
+      {
+        final int nLength = aDIS.readInt ();
+        if (nLength < 0 || nLength > MAX_RECORD_SIZE || nLength > aChannel.size () - nValidSize)
+          break;
+        aRecord = new byte [nLength];
+        aDIS.readFully (aRecord);
+        aCRC.reset ();
+        aCRC.update (aRecord);
+        if (aDIS.readInt () != (int) aCRC.getValue ())
+          break;
+      }
+      catch (final EOFException ex)
+      {
+        break;
+      }
+      aRecordConsumer.accept (aRecord);
+      nValidSize += 4 + aRecord.length + 4;
+    }
+    return nValidSize;
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _frame (@NonNull final byte [] aRecord)
+  {
+    final CRC32 aCRC = new CRC32 ();
+    aCRC.update (aRecord);
+    final ByteBuffer aLength = ByteBuffer.allocate (4).putInt (aRecord.length);
+    final ByteBuffer aChecksum = ByteBuffer.allocate (4).putInt ((int) aCRC.getValue ());
+    m_aBuffer.write (aLength.array (), 0, 4);
+    m_aBuffer.write (aRecord, 0, aRecord.length);
+    m_aBuffer.write (aChecksum.array (), 0, 4);
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _checkUsable () throws IOException
+  {
+    if (m_aFailure != null)
+      throw new IOException ("A previous write to journal " + m_aFile + " failed", m_aFailure);
+    if (m_aChannel == null)
+      throw new IOException ("Journal " + m_aFile + " is closed");
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _awaitNoCommit ()
+  {
+    while (m_bCommitInProgress)
+      m_aCommitted.awaitUninterruptibly ();
+  }
+
+  /**
+   * Append a record and wait until it is durable. This method may be called concurrently from any
+   * number of threads.
+   *
+   * @param aRecord
+   *        The record to append. May not be <code>null</code> but may be empty.
+   * @throws IOException
+   *         If the record could not be written. After a failed write the journal cannot be used
+   *         anymore.
+   */
+  public void append (@NonNull final byte [] aRecord) throws IOException
+  {
+    ValueEnforcer.notNull (aRecord, "Record");
+
+    m_aLock.lock ();
+    try
+    {
+      _checkUsable ();
+      _frame (aRecord);
+      final long nSeq = ++m_nAppendedSeq;
+      while (m_nDurableSeq < nSeq)
+      {
+        _checkUsable ();
+        if (m_bCommitInProgress)
+        {
+          // Another thread is writing - our record is part of the next group
+          m_aCommitted.awaitUninterruptibly ();
+          continue;
+        }
+
+        // Write all pending records
+        m_bCommitInProgress = true;
+        final byte [] aData = m_aBuffer.toByteArray ();
+        m_aBuffer.reset ();
+        final long nCommitSeq = m_nAppendedSeq;
+        final FileChannel aChannel = m_aChannel;
+        IOException aFailure = null;
+        m_aLock.unlock ();
+        try
+        {
+          final ByteBuffer aBB = ByteBuffer.wrap (aData);
+          while (aBB.hasRemaining ())
+            aChannel.write (aBB);
+          aChannel.force (false);
+        }
+        catch (final IOException ex)
+        {
+          aFailure = ex;
+        }
+        finally
+        {
+          m_aLock.lock ();
+        }
+        m_bCommitInProgress = false;
+        if (aFailure != null)
+          m_aFailure = aFailure;
+        else
+        {
+          m_nDurableSeq = nCommitSeq;
+          m_nCommitCount++;
+        }
+        m_aCommitted.signalAll ();
+      }
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Replace the content of the journal with the provided records, e.g. to drop records that are no
+   * longer needed. The new content is written to a temporary file that atomically replaces the
+   * journal. The supplier is invoked while no append can complete, so that the records it returns
+   * are consistent with all appends that happened before. Records appended concurrently that are
+   * not yet durable are dropped and reported as durable, so the supplier must include their effect.
+   *
+   * @param aRecordsSupplier
+   *        The supplier of the new records. May not be <code>null</code>.
+   * @throws IOException
+   *         If the journal could not be rewritten. After a failure the journal cannot be used
+   *         anymore.
+   */
+  public void rewrite (@NonNull final Supplier <? extends Iterable <byte []>> aRecordsSupplier) throws IOException
+  {
+    ValueEnforcer.notNull (aRecordsSupplier, "RecordsSupplier");
+
+    m_aLock.lock ();
+    try
+    {
+      _awaitNoCommit ();
+      _checkUsable ();
+      final Iterable <byte []> aRecords = aRecordsSupplier.get ();
+
+      final Path aTempFile = m_aFile.resolveSibling (m_aFile.getFileName () + ".tmp");
+      try
+      {
+        try (final FileChannel aTemp = FileChannel.open (aTempFile,
+                                                         StandardOpenOption.CREATE,
+                                                         StandardOpenOption.TRUNCATE_EXISTING,
+                                                         StandardOpenOption.WRITE))
+        {
+          _writeHeader (aTemp);
+          m_aBuffer.reset ();
+          for (final byte [] aRecord : aRecords)
+            _frame (aRecord);
+          final ByteBuffer aBB = ByteBuffer.wrap (m_aBuffer.toByteArray ());
+          m_aBuffer.reset ();
+          while (aBB.hasRemaining ())
+            aTemp.write (aBB);
+          aTemp.force (true);
+        }
+        m_aChannel.close ();
+        m_aChannel = null;
+        Files.move (aTempFile, m_aFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        m_aChannel = FileChannel.open (m_aFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        m_aChannel.position (m_aChannel.size ());
+      }
+      catch (final IOException ex)
+      {
+        m_aFailure = ex;
+        throw ex;
+      }
+      m_nDurableSeq = m_nAppendedSeq;
+      m_nCommitCount++;
+      m_aCommitted.signalAll ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The journal file as specified in the constructor. Never <code>null</code>.
+   */
+  @NonNull
+  public Path getFile ()
+  {
+    return m_aFile;
+  }
+
+  /**
+   * @return The number of records appended since the journal was opened.
+   */
+  @Nonnegative
+  public long getAppendCount ()
+  {
+    return m_aLock.lockedGet ( () -> Long.valueOf (m_nAppendedSeq)).longValue ();
+  }
+
+  /**
+   * @return The number of disk syncs since the journal was opened. With concurrent appends this is
+   *         usually much smaller than {@link #getAppendCount()}.
+   */
+  @Nonnegative
+  public long getCommitCount ()
+  {
+    return m_aLock.lockedGet ( () -> Long.valueOf (m_nCommitCount)).longValue ();
+  }
+
+  /**
+   * Close the journal. Appends that are in progress are finished first.
+   *
+   * @throws IOException
+   *         If closing the file failed
+   */
+  public void close () throws IOException
+  {
+    m_aLock.lock ();
+    try
+    {
+      _awaitNoCommit ();
+      if (m_aChannel != null)
+      {
+        m_aChannel.close ();
+        m_aChannel = null;
+      }
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("File", m_aFile).getToString ();
+  }
+}
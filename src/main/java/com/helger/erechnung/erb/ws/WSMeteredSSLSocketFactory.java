@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.jspecify.annotations.NonNull;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * An {@link SSLSocketFactory} that delegates to another factory and counts the created
+ * connections and the completed TLS handshakes.<br>
+ * Note: the JDK keeps idle HTTPS connections per socket factory instance, so the same instance
+ * must be used for all requests to be able to re-use connections.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public final class WSMeteredSSLSocketFactory extends SSLSocketFactory
+{
+  private final SSLSocketFactory m_aDelegate;
+  private final AtomicLong m_aConnectionCount = new AtomicLong ();
+  private final AtomicLong m_aHandshakeCount = new AtomicLong ();
+
+  public WSMeteredSSLSocketFactory (@NonNull final SSLSocketFactory aDelegate)
+  {
+    ValueEnforcer.notNull (aDelegate, "Delegate");
+    m_aDelegate = aDelegate;
+  }
+
+  /**
+   * @return The socket factory that creates the sockets. Never <code>null</code>.
+   */
+  @NonNull
+  public SSLSocketFactory getDelegate ()
+  {
+    return m_aDelegate;
+  }
+
+  /**
+   * @return The number of TLS sockets created so far.
+   */
+  @Nonnegative
+  public long getConnectionCount ()
+  {
+    return m_aConnectionCount.get ();
+  }
+
+  /**
+   * @return The number of completed TLS handshakes so far. This includes abbreviated handshakes of
+   *         resumed sessions.
+   */
+  @Nonnegative
+  public long getHandshakeCount ()
+  {
+    return m_aHandshakeCount.get ();
+  }
+
+  @NonNull
+  private Socket _onCreated (@NonNull final Socket aSocket)
+  {
+    m_aConnectionCount.incrementAndGet ();
+    if (aSocket instanceof SSLSocket)
+      ((SSLSocket) aSocket).addHandshakeCompletedListener (x -> m_aHandshakeCount.incrementAndGet ());
+    return aSocket;
+  }
+
+  @Override
+  public String [] getDefaultCipherSuites ()
+  {
+    return m_aDelegate.getDefaultCipherSuites ();
+  }
+
+  @Override
+  public String [] getSupportedCipherSuites ()
+  {
+    return m_aDelegate.getSupportedCipherSuites ();
+  }
+
+  @Override
+  public Socket createSocket () throws IOException
+  {
+    return _onCreated (m_aDelegate.createSocket ());
+  }
+
+  @Override
+  public Socket createSocket (final Socket aSocket,
+                              final String sHost,
+                              final int nPort,
+                              final boolean bAutoClose) throws IOException
+  {
+    return _onCreated (m_aDelegate.createSocket (aSocket, sHost, nPort, bAutoClose));
+  }
+
+  @Override
+  public Socket createSocket (final String sHost, final int nPort) throws IOException
+  {
+    return _onCreated (m_aDelegate.createSocket (sHost, nPort));
+  }
+
+  @Override
+  public Socket createSocket (final String sHost,
+                              final int nPort,
+                              final InetAddress aLocalHost,
+                              final int nLocalPort) throws IOException
+  {
+    return _onCreated (m_aDelegate.createSocket (sHost, nPort, aLocalHost, nLocalPort));
+  }
+
+  @Override
+  public Socket createSocket (final InetAddress aHost, final int nPort) throws IOException
+  {
+    return _onCreated (m_aDelegate.createSocket (aHost, nPort));
+  }
+
+  @Override
+  public Socket createSocket (final InetAddress aAddress,
+                              final int nPort,
+                              final InetAddress aLocalAddress,
+                              final int nLocalPort) throws IOException
+  {
+    return _onCreated (m_aDelegate.createSocket (aAddress, nPort, aLocalAddress, nLocalPort));
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Delegate", m_aDelegate)
+                                       .append ("ConnectionCount", m_aConnectionCount.get ())
+                                       .append ("HandshakeCount", m_aHandshakeCount.get ())
+                                       .getToString ();
+  }
+}
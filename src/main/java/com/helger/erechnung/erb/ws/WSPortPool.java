@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * A bounded pool of pre-configured JAX-WS ports. Creating a port (and the underlying service) is
+ * expensive, because the WSDL needs to be parsed and the proxy including the handler chain needs to
+ * be built. Ports are not safe for concurrent use, so each port is handed out to exactly one thread
+ * at a time. At most {@link #getMaxSize()} ports exist at the same time. Ports that were not used
+ * for longer than {@link #getMaxIdle()} are discarded when the pool is accessed the next time. All
+ * methods may be invoked concurrently. Once the pool is closed, no more ports can be borrowed.
+ *
+ * @author Philip Helger
+ * @param <PORTTYPE>
+ *        The JAX-WS port type
+ */
+@ThreadSafe
+public class WSPortPool <PORTTYPE>
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (WSPortPool.class);
+
+  private static final class IdlePort <T>
+  {
+    private final T m_aPort;
+    private final long m_nIdleSinceNanos;
+
+    IdlePort (@NonNull final T aPort, final long nIdleSinceNanos)
+    {
+      m_aPort = aPort;
+      m_nIdleSinceNanos = nIdleSinceNanos;
+    }
+  }
+
+  private final Supplier <? extends PORTTYPE> m_aPortFactory;
+  private final int m_nMaxSize;
+  private final Duration m_aMaxIdle;
+  private final Semaphore m_aPermits;
+  private final SimpleLock m_aLock = new SimpleLock ();
+  // Most recently returned port is first
+  @GuardedBy ("m_aLock")
+  private final Deque <IdlePort <PORTTYPE>> m_aIdlePorts = new ArrayDeque <> ();
+  @GuardedBy ("m_aLock")
+  private int m_nCreatedPorts = 0;
+  @GuardedBy ("m_aLock")
+  private boolean m_bClosed = false;
+
+  /**
+   * Constructor
+   *
+   * @param aPortFactory
+   *        The factory to create new, fully configured ports. It is invoked lazily, only if no idle
+   *        port is available. May not be <code>null</code>. The factory must never return
+   *        <code>null</code>.
+   * @param nMaxSize
+   *        The maximum number of ports that may exist at the same time. Must be &gt; 0.
+   * @param aMaxIdle
+   *        The maximum duration a port may be idle in the pool before it is discarded. May not be
+   *        <code>null</code> and must not be negative.
+   */
+  public WSPortPool (@NonNull final Supplier <? extends PORTTYPE> aPortFactory,
+                     @Nonnegative final int nMaxSize,
+                     @NonNull final Duration aMaxIdle)
+  {
+    ValueEnforcer.notNull (aPortFactory, "PortFactory");
+    ValueEnforcer.isGT0 (nMaxSize, "MaxSize");
+    ValueEnforcer.notNull (aMaxIdle, "MaxIdle");
+    ValueEnforcer.isFalse (aMaxIdle.isNegative (), "MaxIdle may not be negative");
+    m_aPortFactory = aPortFactory;
+    m_nMaxSize = nMaxSize;
+    m_aMaxIdle = aMaxIdle;
+    m_aPermits = new Semaphore (nMaxSize, true);
+  }
+
+  /**
+   * @return The maximum number of ports that may be borrowed at the same time. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxSize ()
+  {
+    return m_nMaxSize;
+  }
+
+  /**
+   * @return The maximum idle duration of a port. Never <code>null</code>.
+   */
+  @NonNull
+  public final Duration getMaxIdle ()
+  {
+    return m_aMaxIdle;
+  }
+
+  /**
+   * @return The number of ports currently idling in the pool.
+   */
+  @Nonnegative
+  public int getIdlePortCount ()
+  {
+    return m_aLock.lockedGet (m_aIdlePorts::size);
+  }
+
+  /**
+   * @return The number of ports created by this pool so far. Mainly for statistical purposes.
+   */
+  @Nonnegative
+  public int getCreatedPortCount ()
+  {
+    return m_aLock.lockedGet ( () -> Integer.valueOf (m_nCreatedPorts)).intValue ();
+  }
+
+  /**
+   * @return <code>true</code> if {@link #close()} was called, <code>false</code> otherwise.
+   * @since 5.0.2
+   */
+  public boolean isClosed ()
+  {
+    return m_aLock.lockedGet ( () -> Boolean.valueOf (m_bClosed)).booleanValue ();
+  }
+
+  @GuardedBy ("m_aLock")
+  private int _evictIdlePorts (final long nNowNanos)
+  {
+    int ret = 0;
+    final long nMaxIdleNanos = m_aMaxIdle.toNanos ();
+    // The oldest ports are at the end
+    IdlePort <PORTTYPE> aLast;
+    while ((aLast = m_aIdlePorts.peekLast ()) != null && nNowNanos - aLast.m_nIdleSinceNanos > nMaxIdleNanos)
+    {
+      m_aIdlePorts.removeLast ();
+      ret++;
+    }
+    return ret;
+  }
+
+  /**
+   * Discard all ports that were idle for longer than the configured maximum idle duration. This is
+   * done implicitly when borrowing or returning ports, but may also be called explicitly.
+   *
+   * @return The number of evicted ports. Always &ge; 0.
+   */
+  @Nonnegative
+  public int evictIdlePorts ()
+  {
+    final long nNow = System.nanoTime ();
+    final int ret = m_aLock.lockedGet ( () -> Integer.valueOf (_evictIdlePorts (nNow))).intValue ();
+    if (ret > 0 && LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Evicted " + ret + " idle WS port(s)");
+    return ret;
+  }
+
+  @Nullable
+  private PORTTYPE _getIdlePortOrNull ()
+  {
+    final long nNow = System.nanoTime ();
+    return m_aLock.lockedGet ( () -> {
+      if (m_bClosed)
+        throw new IllegalStateException ("The port pool is closed");
+      _evictIdlePorts (nNow);
+      final IdlePort <PORTTYPE> aIdle = m_aIdlePorts.pollFirst ();
+      return aIdle == null ? null : aIdle.m_aPort;
+    });
+  }
+
+  @NonNull
+  private PORTTYPE _getOrCreatePort ()
+  {
+    try
+    {
+      PORTTYPE ret = _getIdlePortOrNull ();
+      if (ret == null)
+      {
+        ret = m_aPortFactory.get ();
+        if (ret == null)
+          throw new IllegalStateException ("The port factory returned null");
+        m_aLock.locked ( () -> m_nCreatedPorts++);
+      }
+      return ret;
+    }
+    catch (final RuntimeException ex)
+    {
+      // Don't leak the permit
+      m_aPermits.release ();
+      throw ex;
+    }
+  }
+
+  /**
+   * Borrow a port from the pool, waiting until one becomes available. Each borrowed port must be
+   * handed back via {@link #returnPort(Object)} or {@link #discardPort(Object)}.
+   *
+   * @return The borrowed port. Never <code>null</code>.
+   * @throws InterruptedException
+   *         If the thread was interrupted while waiting
+   * @throws IllegalStateException
+   *         If the pool is closed
+   */
+  @NonNull
+  public PORTTYPE borrowPort () throws InterruptedException
+  {
+    if (isClosed ())
+      throw new IllegalStateException ("The port pool is closed");
+    m_aPermits.acquire ();
+    return _getOrCreatePort ();
+  }
+
+  /**
+   * Borrow a port from the pool, waiting at most the provided duration until one becomes
+   * available. Each borrowed port must be handed back via {@link #returnPort(Object)} or
+   * {@link #discardPort(Object)}.
+   *
+   * @param aMaxWait
+   *        The maximum duration to wait. May not be <code>null</code>.
+   * @return The borrowed port or <code>null</code> if no port became available in time.
+   * @throws InterruptedException
+   *         If the thread was interrupted while waiting
+   * @throws IllegalStateException
+   *         If the pool is closed
+   */
+  @Nullable
+  public PORTTYPE borrowPort (@NonNull final Duration aMaxWait) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aMaxWait, "MaxWait");
+    if (isClosed ())
+      throw new IllegalStateException ("The port pool is closed");
+    if (!m_aPermits.tryAcquire (aMaxWait.toNanos (), TimeUnit.NANOSECONDS))
+      return null;
+    return _getOrCreatePort ();
+  }
+
+  /**
+   * Return a port that was borrowed from this pool and that can be re-used.
+   *
+   * @param aPort
+   *        The port to return. May not be <code>null</code>.
+   */
+  public void returnPort (@NonNull final PORTTYPE aPort)
+  {
+    ValueEnforcer.notNull (aPort, "Port");
+    final long nNow = System.nanoTime ();
+    m_aLock.locked ( () -> {
+      if (!m_bClosed)
+      {
+        m_aIdlePorts.addFirst (new IdlePort <> (aPort, nNow));
+        _evictIdlePorts (nNow);
+      }
+    });
+    m_aPermits.release ();
+  }
+
+  /**
+   * Hand back a port that was borrowed from this pool but that should not be re-used, e.g. because
+   * a transport error occurred.
+   *
+   * @param aPort
+   *        The port to discard. May not be <code>null</code>.
+   */
+  public void discardPort (@NonNull final PORTTYPE aPort)
+  {
+    ValueEnforcer.notNull (aPort, "Port");
+    m_aPermits.release ();
+  }
+
+  /**
+   * Close the pool and drop all idle ports. Ports that are currently borrowed may still be handed
+   * back, but they will not be pooled anymore. Afterwards all attempts to borrow a port fail with
+   * an {@link IllegalStateException}, including those that are currently waiting for a port.
+   */
+  public void close ()
+  {
+    m_aLock.locked ( () -> {
+      m_bClosed = true;
+      m_aIdlePorts.clear ();
+    });
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("MaxSize", m_nMaxSize)
+                                       .append ("MaxIdle", m_aMaxIdle)
+                                       .append ("AvailablePermits", m_aPermits.availablePermits ())
+                                       .getToString ();
+  }
+}
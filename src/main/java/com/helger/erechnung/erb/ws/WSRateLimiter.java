@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.jspecify.annotations.NonNull;
+
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * A token bucket rate limiter for the requests sent to ER&gt;B. The bucket is refilled with a
+ * constant rate and holds at most {@link #getBurstSize()} tokens, so that short bursts are possible
+ * after idle periods. Callers that find the bucket empty reserve a future token and wait until it
+ * becomes available, so waiting callers are served in order.<br>
+ * One instance may be shared by any number of senders (see
+ * {@link AbstractWSSender#setRateLimiter(WSRateLimiter)}) to limit the total request rate of the
+ * JVM.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public class WSRateLimiter
+{
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos (1);
+
+  private final double m_dPermitsPerSecond;
+  private final int m_nBurstSize;
+  private final SimpleLock m_aLock = new SimpleLock ();
+  // May be negative if tokens are reserved
+  @GuardedBy ("m_aLock")
+  private double m_dTokens;
+  @GuardedBy ("m_aLock")
+  private long m_nLastRefillNanos;
+
+  /**
+   * Constructor. The bucket is initially full.
+   *
+   * @param dPermitsPerSecond
+   *        The sustained number of requests per second. Must be &gt; 0.
+   * @param nBurstSize
+   *        The maximum number of requests that may be sent without waiting after an idle period.
+   *        Must be &gt; 0.
+   */
+  public WSRateLimiter (final double dPermitsPerSecond, final int nBurstSize)
+  {
+    ValueEnforcer.isTrue (dPermitsPerSecond > 0, "PermitsPerSecond must be > 0");
+    ValueEnforcer.isGT0 (nBurstSize, "BurstSize");
+    m_dPermitsPerSecond = dPermitsPerSecond;
+    m_nBurstSize = nBurstSize;
+    m_dTokens = nBurstSize;
+    m_nLastRefillNanos = System.nanoTime ();
+  }
+
+  /**
+   * @return The sustained number of requests per second. Always &gt; 0.
+   */
+  public final double getPermitsPerSecond ()
+  {
+    return m_dPermitsPerSecond;
+  }
+
+  /**
+   * @return The maximum number of tokens in the bucket. Always &gt; 0.
+   */
+  public final int getBurstSize ()
+  {
+    return m_nBurstSize;
+  }
+
+  @GuardedBy ("m_aLock")
+  private void _refill (final long nNowNanos)
+  {
+    final long nElapsed = nNowNanos - m_nLastRefillNanos;
+    if (nElapsed > 0)
+    {
+      m_dTokens = Math.min (m_nBurstSize, m_dTokens + nElapsed * m_dPermitsPerSecond / NANOS_PER_SECOND);
+      m_nLastRefillNanos = nNowNanos;
+    }
+  }
+
+  /**
+   * @return The number of currently available tokens. Negative if tokens are reserved by waiting
+   *         callers.
+   */
+  public double getAvailableTokens ()
+  {
+    return m_aLock.lockedGet ( () -> {
+      _refill (System.nanoTime ());
+      return Double.valueOf (m_dTokens);
+    }).doubleValue ();
+  }
+
+  /**
+   * Take one token and return the time to wait until it is available.
+   *
+   * @return The nanoseconds to wait. 0 if a token was available.
+   */
+  private long _reserve ()
+  {
+    return m_aLock.lockedGet ( () -> {
+      _refill (System.nanoTime ());
+      m_dTokens -= 1;
+      if (m_dTokens >= 0)
+        return Long.valueOf (0);
+      return Long.valueOf ((long) Math.ceil (-m_dTokens * NANOS_PER_SECOND / m_dPermitsPerSecond));
+    }).longValue ();
+  }
+
+  /**
+   * Take one token without waiting.
+   *
+   * @return <code>true</code> if a token was available, <code>false</code> otherwise.
+   */
+  public boolean tryAcquire ()
+  {
+    return m_aLock.lockedGet ( () -> {
+      _refill (System.nanoTime ());
+      if (m_dTokens < 1)
+        return Boolean.FALSE;
+      m_dTokens -= 1;
+      return Boolean.TRUE;
+    }).booleanValue ();
+  }
+
+  /**
+   * Take one token, if it becomes available within the provided duration, and wait until it is
+   * available.
+   *
+   * @param aMaxWait
+   *        The maximum duration to wait. May not be <code>null</code>.
+   * @return <code>true</code> if a token was taken, <code>false</code> if it would not have been
+   *         available in time. In the latter case no token is taken.
+   * @throws InterruptedException
+   *         If the thread was interrupted while waiting. The reserved token is lost in this case.
+   */
+  public boolean tryAcquire (@NonNull final Duration aMaxWait) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aMaxWait, "MaxWait");
+    final long nMaxWaitNanos = aMaxWait.toNanos ();
+    final long nWaitNanos = m_aLock.lockedGet ( () -> {
+      _refill (System.nanoTime ());
+      final long nNeededNanos = m_dTokens >= 1 ? 0
+                                               : (long) Math.ceil ((1 - m_dTokens) * NANOS_PER_SECOND / m_dPermitsPerSecond);
+      if (nNeededNanos > nMaxWaitNanos)
+        return Long.valueOf (-1);
+      m_dTokens -= 1;
+      return Long.valueOf (nNeededNanos);
+    }).longValue ();
+    if (nWaitNanos < 0)
+      return false;
+    if (nWaitNanos > 0)
+      TimeUnit.NANOSECONDS.sleep (nWaitNanos);
+    return true;
+  }
+
+  /**
+   * Take one token and wait until it is available.
+   *
+   * @throws InterruptedException
+   *         If the thread was interrupted while waiting. The reserved token is lost in this case.
+   */
+  public void acquire () throws InterruptedException
+  {
+    final long nWaitNanos = _reserve ();
+    if (nWaitNanos > 0)
+      TimeUnit.NANOSECONDS.sleep (nWaitNanos);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("PermitsPerSecond", m_dPermitsPerSecond)
+                                       .append ("BurstSize", m_nBurstSize)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+import org.jspecify.annotations.NonNull;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.annotation.style.OverrideOnDemand;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+import jakarta.xml.soap.SOAPFault;
+import jakarta.xml.ws.WebFault;
+import jakarta.xml.ws.soap.SOAPFaultException;
+
+/**
+ * Defines if and how often failed deliveries are retried. Only failures where the request was not
+ * processed by ER&gt;B are retried: connection failures, connect timeouts, HTTP 429 and 5xx
+ * responses without a SOAP message, and SOAP server faults without details. Declared SOAP faults
+ * (e.g. <code>DeliverInvoiceFaultInvoice</code>), SOAP faults with details and read timeouts are
+ * never retried, so that an invoice is not delivered twice. Between two attempts the sender waits
+ * for an exponentially growing backoff with random jitter. No retry is started if it would exceed
+ * the maximum total duration.<br>
+ * Override {@link #isRetryable(Throwable)} for a custom classification. Independent of that,
+ * {@link #getEndpointHealth(Throwable)} determines what a failure tells about the health of the
+ * endpoint, e.g. a read timeout is never retried but still indicates a failing endpoint.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@Immutable
+public class WSRetryPolicy
+{
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+  public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis (500);
+  public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds (10);
+  public static final Duration DEFAULT_MAX_TOTAL_DURATION = Duration.ofMinutes (1);
+
+  /** A policy that never retries */
+  public static final WSRetryPolicy NO_RETRY = new WSRetryPolicy (1, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+
+  /** A policy with the default settings */
+  public static final WSRetryPolicy DEFAULT = new WSRetryPolicy (DEFAULT_MAX_ATTEMPTS,
+                                                                 DEFAULT_INITIAL_BACKOFF,
+                                                                 DEFAULT_MAX_BACKOFF,
+                                                                 DEFAULT_MAX_TOTAL_DURATION);
+
+  // As reported by JAX-WS, e.g. "The server sent HTTP status code 503: Service Unavailable"
+  private static final Pattern JAXWS_RETRYABLE_STATUS = Pattern.compile ("status code (5\\d\\d|429)");
+
+  private final int m_nMaxAttempts;
+  private final Duration m_aInitialBackoff;
+  private final Duration m_aMaxBackoff;
+  private final Duration m_aMaxTotalDuration;
+
+  /**
+   * Constructor
+   *
+   * @param nMaxAttempts
+   *        The maximum number of attempts including the first one. Must be &gt; 0. 1 means no
+   *        retries.
+   * @param aInitialBackoff
+   *        The backoff before the first retry. May not be <code>null</code> or negative.
+   * @param aMaxBackoff
+   *        The maximum backoff between two attempts. May not be <code>null</code> and must be
+   *        &ge; the initial backoff.
+   * @param aMaxTotalDuration
+   *        The maximum total duration of all attempts and backoffs after which no further retry is
+   *        started. May not be <code>null</code> or negative.
+   */
+  public WSRetryPolicy (@Nonnegative final int nMaxAttempts,
+                        @NonNull final Duration aInitialBackoff,
+                        @NonNull final Duration aMaxBackoff,
+                        @NonNull final Duration aMaxTotalDuration)
+  {
+    ValueEnforcer.isGT0 (nMaxAttempts, "MaxAttempts");
+    ValueEnforcer.notNull (aInitialBackoff, "InitialBackoff");
+    ValueEnforcer.isFalse (aInitialBackoff.isNegative (), "InitialBackoff may not be negative");
+    ValueEnforcer.notNull (aMaxBackoff, "MaxBackoff");
+    ValueEnforcer.isTrue (aMaxBackoff.compareTo (aInitialBackoff) >= 0, "MaxBackoff must be >= InitialBackoff");
+    ValueEnforcer.notNull (aMaxTotalDuration, "MaxTotalDuration");
+    ValueEnforcer.isFalse (aMaxTotalDuration.isNegative (), "MaxTotalDuration may not be negative");
+    m_nMaxAttempts = nMaxAttempts;
+    m_aInitialBackoff = aInitialBackoff;
+    m_aMaxBackoff = aMaxBackoff;
+    m_aMaxTotalDuration = aMaxTotalDuration;
+  }
+
+  /**
+   * @return The maximum number of attempts including the first one. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxAttempts ()
+  {
+    return m_nMaxAttempts;
+  }
+
+  /**
+   * @return The backoff before the first retry. Never <code>null</code>.
+   */
+  @NonNull
+  public final Duration getInitialBackoff ()
+  {
+    return m_aInitialBackoff;
+  }
+
+  /**
+   * @return The maximum backoff between two attempts. Never <code>null</code>.
+   */
+  @NonNull
+  public final Duration getMaxBackoff ()
+  {
+    return m_aMaxBackoff;
+  }
+
+  /**
+   * @return The maximum total duration of all attempts. Never <code>null</code>.
+   */
+  @NonNull
+  public final Duration getMaxTotalDuration ()
+  {
+    return m_aMaxTotalDuration;
+  }
+
+  /**
+   * @return <code>true</code> if this policy allows at least one retry.
+   */
+  public final boolean isRetryEnabled ()
+  {
+    return m_nMaxAttempts > 1;
+  }
+
+  /**
+   * Get the backoff before the provided retry. The base backoff doubles with each retry up to the
+   * maximum backoff. The result is randomly chosen between half of the base backoff and the base
+   * backoff, so that concurrent senders do not retry in lockstep.
+   *
+   * @param nRetry
+   *        The 0-based index of the retry.
+   * @return The backoff to wait. Never <code>null</code>.
+   */
+  @NonNull
+  public Duration getBackoff (@Nonnegative final int nRetry)
+  {
+    ValueEnforcer.isGE0 (nRetry, "Retry");
+    final long nInitialMillis = m_aInitialBackoff.toMillis ();
+    final long nMaxMillis = m_aMaxBackoff.toMillis ();
+    // Avoid an overflow of the shift
+    final long nBaseMillis = nRetry >= 30 ? nMaxMillis : Math.min (nMaxMillis, nInitialMillis << nRetry);
+    final long nHalf = nBaseMillis / 2;
+    return Duration.ofMillis (nHalf + ThreadLocalRandom.current ().nextLong (nBaseMillis - nHalf + 1));
+  }
+
+  private static boolean _isRetryableStatusCode (final int nStatusCode)
+  {
+    return nStatusCode == 429 || (nStatusCode >= 500 && nStatusCode < 600);
+  }
+
+  /**
+   * Check if the provided failure of a delivery attempt may be retried. The whole cause chain is
+   * inspected.
+   *
+   * @param ex
+   *        The failure. May not be <code>null</code>.
+   * @return <code>true</code> if the delivery may be retried.
+   */
+  @OverrideOnDemand
+  public boolean isRetryable (@NonNull final Throwable ex)
+  {
+    Throwable aCur = ex;
+    while (aCur != null)
+    {
+      if (aCur instanceof WSCircuitOpenException)
+      {
+        // Retrying immediately is pointless
+        return false;
+      }
+      if (aCur instanceof WSDeadlineExceededException)
+      {
+        // No time left
+        return false;
+      }
+      if (aCur instanceof WSSOAPFaultException)
+      {
+        // Faults with details are e.g. validation errors
+        final WSSOAPFaultException aFault = (WSSOAPFaultException) aCur;
+        return !aFault.isClientFault () && !aFault.hasDetailMessages ();
+      }
+      if (aCur instanceof SOAPFaultException)
+      {
+        // Undeclared SOAP fault from JAX-WS
+        return _isServerFaultWithoutDetail ((SOAPFaultException) aCur);
+      }
+      if (aCur instanceof WSHttpStatusException)
+        return _isRetryableStatusCode (((WSHttpStatusException) aCur).getStatusCode ());
+      if (aCur instanceof ConnectException ||
+          aCur instanceof NoRouteToHostException ||
+          aCur instanceof HttpConnectTimeoutException)
+        return true;
+
+      if (aCur instanceof SocketTimeoutException)
+        return _isConnectTimeout ((SocketTimeoutException) aCur);
+      if (_isDeclaredFault (aCur))
+      {
+        // E.g. DeliverInvoiceFaultInvoice - the invoice was processed
+        return false;
+      }
+
+      final String sMsg = aCur.getMessage ();
+      if (sMsg != null && JAXWS_RETRYABLE_STATUS.matcher (sMsg).find ())
+        return true;
+      aCur = aCur.getCause ();
+    }
+    return false;
+  }
+
+  private static boolean _isConnectTimeout (@NonNull final SocketTimeoutException ex)
+  {
+    // The direct engine reports connect timeouts as HttpConnectTimeoutException. JAX-WS uses
+    // HttpURLConnection, that only distinguishes them by the message: "Connect timed out" (JDK 13+)
+    // or "connect timed out" vs. "Read timed out"
+    final String sMsg = ex.getMessage ();
+    return sMsg != null && sMsg.regionMatches (true, 0, "connect", 0, 7);
+  }
+
+  private static boolean _isDeclaredFault (@NonNull final Throwable ex)
+  {
+    // All SOAP faults declared in the WSDL are generated as annotated checked exceptions
+    return ex.getClass ().isAnnotationPresent (WebFault.class);
+  }
+
+  private static boolean _isTransportFailure (@NonNull final Throwable ex)
+  {
+    // Connection failures, resets and timeouts - not e.g. errors reading the invoice
+    return ex instanceof SocketException ||
+           ex instanceof SocketTimeoutException ||
+           ex instanceof UnknownHostException ||
+           ex instanceof HttpTimeoutException;
+  }
+
+  private static boolean _isServerFaultWithoutDetail (@NonNull final SOAPFaultException ex)
+  {
+    final SOAPFault aFault = ex.getFault ();
+    return aFault != null &&
+           aFault.getFaultCode () != null &&
+           aFault.getFaultCode ().endsWith ("Server") &&
+           aFault.getDetail () == null;
+  }
+
+  /**
+   * Check what the provided failure of a request tells about the health of the endpoint. This is
+   * used for the circuit breaker and the concurrency limiter and differs from
+   * {@link #isRetryable(Throwable)}: read timeouts and other socket failures indicate a failing
+   * endpoint, even if they may not be retried. SOAP faults declared in the WSDL, SOAP faults with
+   * details and client faults prove that the endpoint is available. Other I/O errors, e.g. when
+   * reading the invoice, tell nothing about the endpoint. The whole cause chain is inspected.
+   *
+   * @param ex
+   *        The failure. May not be <code>null</code>.
+   * @return The endpoint health. Never <code>null</code>.
+   */
+  @NonNull
+  @OverrideOnDemand
+  public EWSEndpointHealth getEndpointHealth (@NonNull final Throwable ex)
+  {
+    Throwable aCur = ex;
+    while (aCur != null)
+    {
+      if (aCur instanceof WSCircuitOpenException || aCur instanceof WSDeadlineExceededException)
+      {
+        // The request was not sent
+        return EWSEndpointHealth.UNKNOWN;
+      }
+      if (_isDeclaredFault (aCur))
+        return EWSEndpointHealth.AVAILABLE;
+      if (aCur instanceof WSSOAPFaultException)
+      {
+        final WSSOAPFaultException aFault = (WSSOAPFaultException) aCur;
+        return !aFault.isClientFault () && !aFault.hasDetailMessages () ? EWSEndpointHealth.UNAVAILABLE
+                                                                         : EWSEndpointHealth.AVAILABLE;
+      }
+      if (aCur instanceof SOAPFaultException)
+        return _isServerFaultWithoutDetail ((SOAPFaultException) aCur) ? EWSEndpointHealth.UNAVAILABLE
+                                                                       : EWSEndpointHealth.AVAILABLE;
+      if (aCur instanceof WSHttpStatusException)
+        return _isRetryableStatusCode (((WSHttpStatusException) aCur).getStatusCode ()) ? EWSEndpointHealth.UNAVAILABLE
+                                                                                         : EWSEndpointHealth.UNKNOWN;
+      // Includes read timeouts
+      if (_isTransportFailure (aCur))
+        return EWSEndpointHealth.UNAVAILABLE;
+
+      final String sMsg = aCur.getMessage ();
+      if (sMsg != null && JAXWS_RETRYABLE_STATUS.matcher (sMsg).find ())
+        return EWSEndpointHealth.UNAVAILABLE;
+      aCur = aCur.getCause ();
+    }
+    return EWSEndpointHealth.UNKNOWN;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("MaxAttempts", m_nMaxAttempts)
+                                       .append ("InitialBackoff", m_aInitialBackoff)
+                                       .append ("MaxBackoff", m_aMaxBackoff)
+                                       .append ("MaxTotalDuration", m_aMaxTotalDuration)
+                                       .getToString ();
+  }
+}
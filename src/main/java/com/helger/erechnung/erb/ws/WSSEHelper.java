@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+import javax.xml.XMLConstants;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.annotation.style.PresentForCodeCoverage;
+import com.helger.base.enforce.ValueEnforcer;
+
+/**
+ * Helper class for the WS Security UsernameToken and Timestamp elements.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@Immutable
+public final class WSSEHelper
+{
+  /** The WS Security utility namespace URI */
+  public static final String WSU_NSURI = "http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-utility-1.0.xsd";
+  public static final String WSU_PREFIX = "wsu";
+  /** The encoding type of the nonce */
+  public static final String NONCE_ENCODING_TYPE = "http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-soap-message-security-1.0#Base64Binary";
+
+  // MessageDigest is not thread-safe but expensive to look up
+  private static final ThreadLocal <MessageDigest> SHA1 = ThreadLocal.withInitial ( () -> {
+    try
+    {
+      return MessageDigest.getInstance ("SHA-1");
+    }
+    catch (final NoSuchAlgorithmException ex)
+    {
+      throw new IllegalStateException ("SHA-1 is not supported", ex);
+    }
+  });
+
+  @PresentForCodeCoverage
+  private static final WSSEHelper INSTANCE = new WSSEHelper ();
+
+  private WSSEHelper ()
+  {}
+
+  /**
+   * Format a point in time as needed for <code>wsu:Created</code> and <code>wsu:Expires</code>.
+   *
+   * @param aInstant
+   *        The point in time. May not be <code>null</code>.
+   * @return The UTC date time with millisecond precision. Never <code>null</code>.
+   */
+  @NonNull
+  public static String getFormatted (@NonNull final Instant aInstant)
+  {
+    return DateTimeFormatter.ISO_INSTANT.format (aInstant.truncatedTo (ChronoUnit.MILLIS));
+  }
+
+  /**
+   * Create the password digest as defined by the UsernameToken profile.
+   *
+   * @param aNonce
+   *        The raw nonce bytes. May not be <code>null</code>.
+   * @param sCreated
+   *        The formatted creation time. May not be <code>null</code>.
+   * @param sPassword
+   *        The password. May not be <code>null</code>.
+   * @return Base64 (SHA-1 (nonce + created + password)). Never <code>null</code>.
+   */
+  @NonNull
+  public static String getPasswordDigest (@NonNull final byte [] aNonce,
+                                          @NonNull final String sCreated,
+                                          @NonNull final String sPassword)
+  {
+    final MessageDigest aMD = SHA1.get ();
+    aMD.reset ();
+    aMD.update (aNonce);
+    aMD.update (sCreated.getBytes (StandardCharsets.UTF_8));
+    aMD.update (sPassword.getBytes (StandardCharsets.UTF_8));
+    return Base64.getEncoder ().encodeToString (aMD.digest ());
+  }
+
+  @NonNull
+  private static Element _append (@NonNull final Element aParent,
+                                  @NonNull final String sNSURI,
+                                  @NonNull final String sQualifiedName,
+                                  @Nullable final String sText)
+  {
+    final Document aDoc = aParent.getOwnerDocument ();
+    final Element ret = aDoc.createElementNS (sNSURI, sQualifiedName);
+    if (sText != null)
+      ret.appendChild (aDoc.createTextNode (sText));
+    aParent.appendChild (ret);
+    return ret;
+  }
+
+  /**
+   * Create a new <code>wsse:Security</code> element. It is not appended to the document.
+   *
+   * @param aDoc
+   *        The owning document. May not be <code>null</code>.
+   * @param sUsername
+   *        The username. May neither be <code>null</code> nor empty.
+   * @param sPassword
+   *        The password. May neither be <code>null</code> nor empty.
+   * @param ePasswordType
+   *        The password type to use. May not be <code>null</code>.
+   * @param aTimestampTTL
+   *        The time to live of the <code>wsu:Timestamp</code> element. May be <code>null</code> to
+   *        not create a Timestamp.
+   * @return The new element. Never <code>null</code>.
+   */
+  @NonNull
+  public static Element createSecurityElement (@NonNull final Document aDoc,
+                                               @NonNull @Nonempty final String sUsername,
+                                               @NonNull @Nonempty final String sPassword,
+                                               @NonNull final EWSSEPasswordType ePasswordType,
+                                               @Nullable final Duration aTimestampTTL)
+  {
+    final byte [] aNonce = ePasswordType == EWSSEPasswordType.DIGEST ? WSSENonceProducer.getDefaultInstance ().getNextNonce ()
+                                                                     : null;
+    return createSecurityElement (aDoc, sUsername, sPassword, ePasswordType, aTimestampTTL, Instant.now (), aNonce);
+  }
+
+  /**
+   * Create a new <code>wsse:Security</code> element for the provided creation time and nonce. It is
+   * not appended to the document.
+   *
+   * @param aDoc
+   *        The owning document. May not be <code>null</code>.
+   * @param sUsername
+   *        The username. May neither be <code>null</code> nor empty.
+   * @param sPassword
+   *        The password. May neither be <code>null</code> nor empty.
+   * @param ePasswordType
+   *        The password type to use. May not be <code>null</code>.
+   * @param aTimestampTTL
+   *        The time to live of the <code>wsu:Timestamp</code> element. May be <code>null</code> to
+   *        not create a Timestamp.
+   * @param aNow
+   *        The creation time of the header. May not be <code>null</code>.
+   * @param aNonce
+   *        The raw nonce bytes. Only used for {@link EWSSEPasswordType#DIGEST}, where it may not be
+   *        <code>null</code>.
+   * @return The new element. Never <code>null</code>.
+   */
+  @NonNull
+  public static Element createSecurityElement (@NonNull final Document aDoc,
+                                               @NonNull @Nonempty final String sUsername,
+                                               @NonNull @Nonempty final String sPassword,
+                                               @NonNull final EWSSEPasswordType ePasswordType,
+                                               @Nullable final Duration aTimestampTTL,
+                                               @NonNull final Instant aNow,
+                                               @Nullable final byte [] aNonce)
+  {
+    ValueEnforcer.notNull (aDoc, "Document");
+    ValueEnforcer.notEmpty (sUsername, "Username");
+    ValueEnforcer.notEmpty (sPassword, "Password");
+    ValueEnforcer.notNull (ePasswordType, "PasswordType");
+    ValueEnforcer.notNull (aNow, "Now");
+    if (ePasswordType == EWSSEPasswordType.DIGEST)
+      ValueEnforcer.notNull (aNonce, "Nonce");
+
+    final String sWSSE = SOAPAddWSSEHeaderHandler.WSSE_PREFIX + ':';
+    final String sWSU = WSU_PREFIX + ':';
+    final boolean bDigest = ePasswordType == EWSSEPasswordType.DIGEST;
+
+    final Element aSecurity = aDoc.createElementNS (SOAPAddWSSEHeaderHandler.WSSE_NSURI, sWSSE + "Security");
+    // Declare the namespaces explicitly, as not all serializers perform a namespace fixup
+    aSecurity.setAttributeNS (XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                              "xmlns:" + SOAPAddWSSEHeaderHandler.WSSE_PREFIX,
+                              SOAPAddWSSEHeaderHandler.WSSE_NSURI);
+    if (bDigest || aTimestampTTL != null)
+      aSecurity.setAttributeNS (XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:" + WSU_PREFIX, WSU_NSURI);
+
+    final String sCreated = getFormatted (aNow);
+    if (aTimestampTTL != null)
+    {
+      final Element aTimestamp = _append (aSecurity, WSU_NSURI, sWSU + "Timestamp", null);
+      _append (aTimestamp, WSU_NSURI, sWSU + "Created", sCreated);
+      _append (aTimestamp, WSU_NSURI, sWSU + "Expires", getFormatted (aNow.plus (aTimestampTTL)));
+    }
+
+    final Element aUsernameToken = _append (aSecurity,
+                                            SOAPAddWSSEHeaderHandler.WSSE_NSURI,
+                                            sWSSE + "UsernameToken",
+                                            null);
+    _append (aUsernameToken, SOAPAddWSSEHeaderHandler.WSSE_NSURI, sWSSE + "Username", sUsername);
+    if (bDigest)
+    {
+      _append (aUsernameToken,
+               SOAPAddWSSEHeaderHandler.WSSE_NSURI,
+               sWSSE + "Password",
+               getPasswordDigest (aNonce, sCreated, sPassword)).setAttribute ("Type", ePasswordType.getTypeURI ());
+      _append (aUsernameToken,
+               SOAPAddWSSEHeaderHandler.WSSE_NSURI,
+               sWSSE + "Nonce",
+               Base64.getEncoder ().encodeToString (aNonce)).setAttribute ("EncodingType", NONCE_ENCODING_TYPE);
+      _append (aUsernameToken, WSU_NSURI, sWSU + "Created", sCreated);
+    }
+    else
+      _append (aUsernameToken, SOAPAddWSSEHeaderHandler.WSSE_NSURI, sWSSE + "Password", sPassword);
+    return aSecurity;
+  }
+}
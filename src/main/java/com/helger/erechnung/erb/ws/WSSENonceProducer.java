@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.jspecify.annotations.NonNull;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+
+/**
+ * Provides random nonces for the WS Security UsernameToken. The nonces are created in batches by a
+ * background daemon thread, so that the secure random generation does not happen on the sending
+ * thread. If the producer cannot keep up, the nonce is created on the calling thread.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public final class WSSENonceProducer implements AutoCloseable
+{
+  /** The length of a nonce in bytes */
+  public static final int NONCE_LENGTH = 16;
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  private static final class SingletonHolder
+  {
+    static final WSSENonceProducer INSTANCE = new WSSENonceProducer (DEFAULT_BATCH_SIZE);
+  }
+
+  private final SecureRandom m_aRandom = new SecureRandom ();
+  private final int m_nBatchSize;
+  private final BlockingQueue <byte []> m_aQueue;
+  private final Thread m_aProducerThread;
+
+  /**
+   * Constructor that starts the producer thread.
+   *
+   * @param nBatchSize
+   *        The number of nonces created at once. The queue holds up to two batches. Must be &gt; 0.
+   */
+  public WSSENonceProducer (@Nonnegative final int nBatchSize)
+  {
+    ValueEnforcer.isGT0 (nBatchSize, "BatchSize");
+    m_nBatchSize = nBatchSize;
+    m_aQueue = new ArrayBlockingQueue <> (2 * nBatchSize);
+    m_aProducerThread = new Thread (this::_produce, "wsse-nonce-producer");
+    m_aProducerThread.setDaemon (true);
+    m_aProducerThread.start ();
+  }
+
+  /**
+   * @return The global instance with the default batch size. Never <code>null</code>.
+   */
+  @NonNull
+  public static WSSENonceProducer getDefaultInstance ()
+  {
+    return SingletonHolder.INSTANCE;
+  }
+
+  private void _produce ()
+  {
+    try
+    {
+      while (!Thread.currentThread ().isInterrupted ())
+      {
+        // One call to the secure random generator per batch
+        final byte [] aBatch = new byte [m_nBatchSize * NONCE_LENGTH];
+        m_aRandom.nextBytes (aBatch);
+        for (int i = 0; i < m_nBatchSize; ++i)
+          m_aQueue.put (Arrays.copyOfRange (aBatch, i * NONCE_LENGTH, (i + 1) * NONCE_LENGTH));
+      }
+    }
+    catch (final InterruptedException ex)
+    {
+      // Closed
+      Thread.currentThread ().interrupt ();
+    }
+  }
+
+  /**
+   * @return The configured batch size. Always &gt; 0.
+   */
+  @Nonnegative
+  public int getBatchSize ()
+  {
+    return m_nBatchSize;
+  }
+
+  /**
+   * Get the next nonce. This method never blocks.
+   *
+   * @return A new random nonce of {@link #NONCE_LENGTH} bytes. Never <code>null</code>.
+   */
+  @NonNull
+  public byte [] getNextNonce ()
+  {
+    final byte [] ret = m_aQueue.poll ();
+    if (ret != null)
+      return ret;
+
+    // Producer is behind or closed
+    final byte [] aNonce = new byte [NONCE_LENGTH];
+    m_aRandom.nextBytes (aNonce);
+    return aNonce;
+  }
+
+  /**
+   * Stop the producer thread. Afterwards all nonces are created on the calling thread.
+   */
+  public void close ()
+  {
+    m_aProducerThread.interrupt ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("BatchSize", m_nBatchSize).getToString ();
+  }
+}
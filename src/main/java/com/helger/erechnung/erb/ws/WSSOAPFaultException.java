@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.util.List;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.style.ReturnsMutableCopy;
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
+
+/**
+ * Exception thrown when a SOAP fault was received by the streaming SOAP implementation.
+ *
+ * @author Philip Helger
+ */
+public class WSSOAPFaultException extends Exception
+{
+  private final String m_sFaultCode;
+  private final String m_sFaultString;
+  private final ICommonsList <String> m_aDetailMessages;
+
+  public WSSOAPFaultException (@Nullable final String sFaultCode,
+                               @Nullable final String sFaultString,
+                               @Nullable final List <String> aDetailMessages)
+  {
+    super ("SOAP fault" + (sFaultCode != null ? " [" + sFaultCode + "]" : "") + ": " + sFaultString);
+    m_sFaultCode = sFaultCode;
+    m_sFaultString = sFaultString;
+    m_aDetailMessages = aDetailMessages == null ? new CommonsArrayList <> () : new CommonsArrayList <> (aDetailMessages);
+  }
+
+  /**
+   * @return The content of the <code>faultcode</code> element. May be <code>null</code>.
+   */
+  @Nullable
+  public final String getFaultCode ()
+  {
+    return m_sFaultCode;
+  }
+
+  /**
+   * @return The content of the <code>faultstring</code> element. May be <code>null</code>.
+   */
+  @Nullable
+  public final String getFaultString ()
+  {
+    return m_sFaultString;
+  }
+
+  /**
+   * @return <code>true</code> if the fault code indicates a client error (e.g. a validation error),
+   *         <code>false</code> otherwise.
+   */
+  public final boolean isClientFault ()
+  {
+    return m_sFaultCode != null && m_sFaultCode.endsWith ("Client");
+  }
+
+  /**
+   * @return <code>true</code> if the fault contains a detail element with at least one message.
+   */
+  public final boolean hasDetailMessages ()
+  {
+    return m_aDetailMessages.isNotEmpty ();
+  }
+
+  /**
+   * @return A copy of all the messages contained in the fault detail element. Never
+   *         <code>null</code> but maybe empty.
+   */
+  @NonNull
+  @ReturnsMutableCopy
+  public final ICommonsList <String> getAllDetailMessages ()
+  {
+    return m_aDetailMessages.getClone ();
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.WillClose;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+import com.helger.io.resource.FileSystemResource;
+import com.helger.io.resource.IReadableResource;
+
+/**
+ * An attachment whose content is read from a file, a resource or a stream at the time of sending.
+ * It is used for deliveries that never keep the attachment content completely in memory. If MTOM
+ * is enabled and supported, the content is sent as a binary MIME part, otherwise it is Base64
+ * encoded inline.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class WSStreamingAttachment
+{
+  private final String m_sName;
+  private final String m_sEncoding;
+  private final IReadableResource m_aResource;
+  private final InputStream m_aIS;
+  private final AtomicBoolean m_aStreamConsumed = new AtomicBoolean (false);
+
+  private WSStreamingAttachment (@NonNull @Nonempty final String sName,
+                                 @Nullable final String sEncoding,
+                                 @Nullable final IReadableResource aResource,
+                                 @Nullable final InputStream aIS)
+  {
+    ValueEnforcer.notEmpty (sName, "Name");
+    m_sName = sName;
+    m_sEncoding = sEncoding;
+    m_aResource = aResource;
+    m_aIS = aIS;
+  }
+
+  /**
+   * @return The file name of the attachment as sent to ER&gt;B. Neither <code>null</code> nor
+   *         empty.
+   */
+  @NonNull
+  @Nonempty
+  public String getName ()
+  {
+    return m_sName;
+  }
+
+  /**
+   * @return The original encoding of text attachments. May be <code>null</code>.
+   */
+  @Nullable
+  public String getEncoding ()
+  {
+    return m_sEncoding;
+  }
+
+  /**
+   * @return <code>true</code> if the content can be read more than once, which is the case for
+   *         files and resources but not for streams.
+   */
+  public boolean isReadMultiple ()
+  {
+    return m_aResource != null;
+  }
+
+  /**
+   * Open the content of the attachment. The caller is responsible for closing the returned stream.
+   *
+   * @return The input stream and never <code>null</code>.
+   * @throws IOException
+   *         If the resource cannot be opened or if the underlying stream was already consumed.
+   */
+  @NonNull
+  public InputStream openInputStream () throws IOException
+  {
+    if (m_aResource != null)
+    {
+      final InputStream ret = m_aResource.getInputStream ();
+      if (ret == null)
+        throw new IOException ("Failed to open attachment resource " + m_aResource.getPath ());
+      return ret;
+    }
+    if (!m_aStreamConsumed.compareAndSet (false, true))
+      throw new IOException ("The stream of attachment '" + m_sName + "' was already consumed");
+    return m_aIS;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Name", m_sName)
+                                       .append ("Encoding", m_sEncoding)
+                                       .append ("Resource", m_aResource)
+                                       .append ("StreamConsumed", m_aStreamConsumed.get ())
+                                       .getToString ();
+  }
+
+  /**
+   * Create an attachment that is read from a file.
+   *
+   * @param sName
+   *        The file name of the attachment as sent to ER&gt;B (like 'x.pdf'). May neither be
+   *        <code>null</code> nor empty.
+   * @param sEncoding
+   *        The original encoding for text attachments. May be <code>null</code>.
+   * @param aPath
+   *        The path of the file to read. May not be <code>null</code>.
+   * @return The new attachment. Never <code>null</code>.
+   */
+  @NonNull
+  public static WSStreamingAttachment createFromFile (@NonNull @Nonempty final String sName,
+                                                      @Nullable final String sEncoding,
+                                                      @NonNull final Path aPath)
+  {
+    ValueEnforcer.notNull (aPath, "Path");
+    return new WSStreamingAttachment (sName, sEncoding, new FileSystemResource (aPath.toFile ()), null);
+  }
+
+  /**
+   * Create an attachment that is read from a resource.
+   *
+   * @param sName
+   *        The file name of the attachment as sent to ER&gt;B (like 'x.pdf'). May neither be
+   *        <code>null</code> nor empty.
+   * @param sEncoding
+   *        The original encoding for text attachments. May be <code>null</code>.
+   * @param aResource
+   *        The resource to read. May not be <code>null</code>.
+   * @return The new attachment. Never <code>null</code>.
+   */
+  @NonNull
+  public static WSStreamingAttachment createFromResource (@NonNull @Nonempty final String sName,
+                                                          @Nullable final String sEncoding,
+                                                          @NonNull final IReadableResource aResource)
+  {
+    ValueEnforcer.notNull (aResource, "Resource");
+    return new WSStreamingAttachment (sName, sEncoding, aResource, null);
+  }
+
+  /**
+   * Create an attachment that is read from a stream. The stream can only be read once, so a
+   * delivery using this attachment cannot be repeated automatically (e.g. when falling back from
+   * MTOM to inline content).
+   *
+   * @param sName
+   *        The file name of the attachment as sent to ER&gt;B (like 'x.pdf'). May neither be
+   *        <code>null</code> nor empty.
+   * @param sEncoding
+   *        The original encoding for text attachments. May be <code>null</code>.
+   * @param aIS
+   *        The stream to read. May not be <code>null</code>. It is closed after sending.
+   * @return The new attachment. Never <code>null</code>.
+   */
+  @NonNull
+  public static WSStreamingAttachment createFromStream (@NonNull @Nonempty final String sName,
+                                                        @Nullable final String sEncoding,
+                                                        @NonNull @WillClose final InputStream aIS)
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+    return new WSStreamingAttachment (sName, sEncoding, null, aIS);
+  }
+}
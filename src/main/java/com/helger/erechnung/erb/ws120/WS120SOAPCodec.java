@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws120;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.annotation.style.PresentForCodeCoverage;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.erechnung.erb.ws.IWSRequestBodyWriter;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws.WSJAXBContextRegistry;
+import com.helger.erechnung.erb.ws.WSSOAPFaultException;
+
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.AttachmentType;
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.ObjectFactory;
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.SettingsType;
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.UploadDocumentResponseType;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeUploadStatus;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+
+/**
+ * Streaming encoder and decoder for the SOAP messages of the ER&gt;B Webservice 1.2. The invoice
+ * is read from an {@link InputStream} and Base64 encoded directly into the request. This does not
+ * require a JAX-WS runtime.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class WS120SOAPCodec
+{
+  /** The XML namespace URI of the Webservice 1.2 messages */
+  public static final String NAMESPACE_URI = "http://erb.eproc.brz.gv.at/ws/documentupload/20121205/";
+  /** The SOAP action of the uploadDocument operation */
+  public static final String SOAP_ACTION = "";
+
+  private static final QName QNAME_ATTACHMENT = new QName (NAMESPACE_URI, "Attachment");
+  private static final QName QNAME_SETTINGS = new QName (NAMESPACE_URI, "Settings");
+
+  @PresentForCodeCoverage
+  private static final WS120SOAPCodec INSTANCE = new WS120SOAPCodec ();
+
+  private WS120SOAPCodec ()
+  {}
+
+  private static void _writeRequestStart (@NonNull final OutputStream aOS,
+                                          @NonNull final byte [] aSOAPHeaderContent,
+                                          @NonNull final String sInvoiceEncoding) throws IOException
+  {
+    SOAPStreamHelper.writeEnvelopeStart (aOS, aSOAPHeaderContent);
+    SOAPStreamHelper.writeUTF8 (aOS,
+                                "<erb:uploadDocument xmlns:erb=\"" +
+                                     NAMESPACE_URI +
+                                     "\"><erb:Document encoding=\"" +
+                                     SOAPStreamHelper.getXMLEscaped (sInvoiceEncoding) +
+                                     "\">");
+  }
+
+  /**
+   * Write the attachments and the settings as XML fragments. This is the part of the request body
+   * that follows the invoice.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @param aAttachments
+   *        An optional list of attachments. If the list is non-<code>null</code> it must contain
+   *        only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element. May not be <code>null</code>.
+   * @throws JAXBException
+   *         In case the attachments or the settings could not be serialized
+   */
+  static void writeUploadParameters (@NonNull @WillNotClose final OutputStream aOS,
+                                     @Nullable final List <AttachmentType> aAttachments,
+                                     @NonNull final SettingsType aSettings) throws JAXBException
+  {
+    if (aAttachments != null)
+      for (final AttachmentType aAttachment : aAttachments)
+        WSJAXBContextRegistry.marshalFragment (ObjectFactory.class,
+                                               new JAXBElement <> (QNAME_ATTACHMENT, AttachmentType.class, aAttachment),
+                                               aOS);
+    WSJAXBContextRegistry.marshalFragment (ObjectFactory.class,
+                                           new JAXBElement <> (QNAME_SETTINGS, SettingsType.class, aSettings),
+                                           aOS);
+  }
+
+  private static void _writeRequestEnd (@NonNull final OutputStream aOS,
+                                        @Nullable final List <AttachmentType> aAttachments,
+                                        @NonNull final SettingsType aSettings) throws IOException, JAXBException
+  {
+    SOAPStreamHelper.writeUTF8 (aOS, "</erb:Document>");
+    writeUploadParameters (aOS, aAttachments, aSettings);
+
+    SOAPStreamHelper.writeUTF8 (aOS, "</erb:uploadDocument>");
+    SOAPStreamHelper.writeEnvelopeEnd (aOS);
+  }
+
+  /**
+   * Write a complete uploadDocument SOAP request to the provided output stream.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @param aSOAPHeaderContent
+   *        The serialized SOAP header content (e.g. the WS Security header) in UTF-8. May not be
+   *        <code>null</code>.
+   * @param aInvoiceIS
+   *        The input stream with the invoice to be sent. May not be <code>null</code>. It is read
+   *        until the end but not closed.
+   * @param sInvoiceEncoding
+   *        The encoding of the invoice. May neither be <code>null</code> nor empty.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non-<code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element. May not be <code>null</code>.
+   * @throws IOException
+   *         In case reading the invoice or writing the request failed
+   * @throws JAXBException
+   *         In case the attachments or the settings could not be serialized
+   */
+  public static void writeUploadRequest (@NonNull @WillNotClose final OutputStream aOS,
+                                         @NonNull final byte [] aSOAPHeaderContent,
+                                         @NonNull @WillNotClose final InputStream aInvoiceIS,
+                                         @NonNull @Nonempty final String sInvoiceEncoding,
+                                         @Nullable final List <AttachmentType> aAttachments,
+                                         @NonNull final SettingsType aSettings) throws IOException, JAXBException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    ValueEnforcer.notNull (aSOAPHeaderContent, "SOAPHeaderContent");
+    ValueEnforcer.notNull (aInvoiceIS, "InvoiceInputStream");
+    ValueEnforcer.notEmpty (sInvoiceEncoding, "InvoiceEncoding");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    _writeRequestStart (aOS, aSOAPHeaderContent, sInvoiceEncoding);
+    // The invoice is never fully in memory
+    SOAPStreamHelper.copyBase64Encoded (aInvoiceIS, aOS);
+    _writeRequestEnd (aOS, aAttachments, aSettings);
+  }
+
+  /**
+   * Write a complete uploadDocument SOAP request to the provided output stream, where the invoice
+   * is provided by a writer. Everything the writer emits is Base64 encoded directly into the
+   * request.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @param aSOAPHeaderContent
+   *        The serialized SOAP header content (e.g. the WS Security header) in UTF-8. May not be
+   *        <code>null</code>.
+   * @param aInvoiceWriter
+   *        The writer for the unencoded invoice. May not be <code>null</code>.
+   * @param sInvoiceEncoding
+   *        The encoding of the invoice. May neither be <code>null</code> nor empty.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non-<code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element. May not be <code>null</code>.
+   * @throws Exception
+   *         In case the invoice writer failed, the request could not be written or the
+   *         attachments or the settings could not be serialized
+   */
+  public static void writeUploadRequest (@NonNull @WillNotClose final OutputStream aOS,
+                                         @NonNull final byte [] aSOAPHeaderContent,
+                                         @NonNull final IWSRequestBodyWriter aInvoiceWriter,
+                                         @NonNull @Nonempty final String sInvoiceEncoding,
+                                         @Nullable final List <AttachmentType> aAttachments,
+                                         @NonNull final SettingsType aSettings) throws Exception
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    ValueEnforcer.notNull (aSOAPHeaderContent, "SOAPHeaderContent");
+    ValueEnforcer.notNull (aInvoiceWriter, "InvoiceWriter");
+    ValueEnforcer.notEmpty (sInvoiceEncoding, "InvoiceEncoding");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    _writeRequestStart (aOS, aSOAPHeaderContent, sInvoiceEncoding);
+    SOAPStreamHelper.writeBase64Encoded (aInvoiceWriter, aOS);
+    _writeRequestEnd (aOS, aAttachments, aSettings);
+  }
+
+  /**
+   * Read an uploadDocument SOAP response from the provided input stream.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>. It is not closed.
+   * @return The parsed upload status. Never <code>null</code>.
+   * @throws XMLStreamException
+   *         In case the response is not a valid SOAP message
+   * @throws JAXBException
+   *         In case the response content could not be parsed
+   * @throws WSSOAPFaultException
+   *         In case the response contains a SOAP fault
+   */
+  @NonNull
+  public static TypeUploadStatus readUploadResponse (@NonNull @WillNotClose final InputStream aIS) throws XMLStreamException,
+                                                                                                  JAXBException,
+                                                                                                  WSSOAPFaultException
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+
+    final XMLStreamReader aReader = SOAPStreamHelper.createXMLStreamReader (aIS);
+    try
+    {
+      SOAPStreamHelper.moveToBodyContent (aReader);
+      final UploadDocumentResponseType aResponse = WSJAXBContextRegistry.unmarshal (ObjectFactory.class,
+                                                                                    aReader,
+                                                                                    UploadDocumentResponseType.class);
+      if (aResponse.getReturn () == null)
+        throw new XMLStreamException ("The uploadDocument response contains no upload status");
+      return aResponse.getReturn ();
+    }
+    finally
+    {
+      aReader.close ();
+    }
+  }
+}
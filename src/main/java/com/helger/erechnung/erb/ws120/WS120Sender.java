@@ -16,27 +16,35 @@
  */
 package com.helger.erechnung.erb.ws120;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.xml.namespace.QName;
 
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.w3c.dom.Node;
 
 import com.helger.annotation.Nonempty;
-import com.helger.annotation.concurrent.NotThreadSafe;
-import com.helger.annotation.style.OverrideOnDemand;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.ThreadSafe;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.exception.InitializationException;
+import com.helger.collection.commons.CommonsArrayList;
 import com.helger.erechnung.erb.ws.AbstractWSSender;
-import com.helger.erechnung.erb.ws.SOAPAddWSSEHeaderHandler;
-import com.helger.wsclient.WSClientConfig;
-import com.helger.wsclient.WSHelper;
-import com.helger.xml.serialize.write.XMLWriter;
-import com.helger.xml.serialize.write.XMLWriterSettings;
+import com.helger.erechnung.erb.ws.EWSErrorField;
+import com.helger.erechnung.erb.ws.IWSDeliveryProtocol;
+import com.helger.erechnung.erb.ws.IWSRequestBodyWriter;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws.WSDeadline;
+import com.helger.erechnung.erb.ws.WSDeliveryDeduplicator;
+import com.helger.io.resource.IReadableResource;
 
 import at.gv.brz.eproc.erb.ws.documentupload._20121205.AttachmentType;
 import at.gv.brz.eproc.erb.ws.documentupload._20121205.DocumentType;
@@ -47,18 +55,19 @@ import at.gv.brz.eproc.erb.ws.documentupload._20121205.Wsupload;
 import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeError;
 import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeErrorDetail;
 import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeErrorDetails;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeSuccess;
 import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeUploadStatus;
-import jakarta.xml.ws.BindingProvider;
-import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.Service;
 
 /**
  * A wrapper for invoking the Webservice 1.2 for e-Rechnung.gv.at. The technical details can be
- * found at
+ * found at the link below. The delivery methods may be invoked concurrently once the sender is
+ * configured - see {@link AbstractWSSender} for the details.
  *
  * @see "https://www.erb.gv.at/erb?p=info_channel_ws&tab=ws12"
  * @author Philip Helger
  */
-@NotThreadSafe
+@ThreadSafe
 public class WS120Sender extends AbstractWSSender <WS120Sender>
 {
   public static final URL ENDPOINT_URL_PRODUCTION;
@@ -77,10 +86,26 @@ public class WS120Sender extends AbstractWSSender <WS120Sender>
     }
   }
 
-  // Logger to use
-  private static final Logger LOGGER = LoggerFactory.getLogger (WS120Sender.class);
+  private static final QName SERVICE_QNAME = new QName (WS120SOAPCodec.NAMESPACE_URI, "WSDocumentUploadService");
+  private static final QName PORT_QNAME = new QName (WS120SOAPCodec.NAMESPACE_URI, "WSDocumentUploadPort");
+
+  // The JAX-WS services are thread-safe and expensive to create, so they are
+  // created lazily once and shared by all instances
+  private static final class WSDLServiceHolder
+  {
+    // Parses the WSDL
+    static final WSDocumentUploadService SERVICE = new WSDocumentUploadService ();
+  }
+
+  private static final class WSDLLessServiceHolder
+  {
+    // Uses only the annotations of the port interface
+    static final Service SERVICE = Service.create (SERVICE_QNAME);
+  }
 
   private URL m_aURL = ENDPOINT_URL_PRODUCTION;
+  private WSDeliveryDeduplicator <TypeSuccess> m_aDeduplicator;
+  private final DeliveryProtocol m_aProtocol = new DeliveryProtocol ();
 
   public WS120Sender (@NonNull @Nonempty final String sWebserviceUsername,
                       @NonNull @Nonempty final String sWebservicePassword)
@@ -99,36 +124,202 @@ public class WS120Sender extends AbstractWSSender <WS120Sender>
   {
     ValueEnforcer.notNull (aURL, "URL");
     m_aURL = aURL;
+    closePortPool ();
     return this;
   }
 
-  @NonNull
-  private static TypeUploadStatus _createError (@NonNull final String sField, @NonNull final String sMessage)
+  /**
+   * @return The duplicate detection to use for invoices delivered as byte array. May be
+   *         <code>null</code> if disabled (which is the default).
+   * @since 5.0.2
+   */
+  @Nullable
+  public final WSDeliveryDeduplicator <TypeSuccess> getDeduplicator ()
   {
-    final TypeUploadStatus ret = new TypeUploadStatus ();
-    final TypeError aError = new TypeError ();
-    final TypeErrorDetails aDetails = new TypeErrorDetails ();
-    final TypeErrorDetail aDetail = new TypeErrorDetail ();
-    aDetail.setField (sField);
-    aDetail.setMessage (sMessage);
-    aDetails.addErrorDetail (aDetail);
-    aError.setErrorDetails (aDetails);
-    ret.setError (aError);
-    return ret;
+    return m_aDeduplicator;
   }
 
   /**
-   * Protected method to be overridden.
+   * Set the duplicate detection to use. If set, each invoice delivered with
+   * {@link #deliverInvoice(byte[], List, SettingsType)} or {@link #deliverInvoice(Node, List, SettingsType)}
+   * is hashed together with the endpoint URL, the attachments and the settings. If the same
+   * delivery was successful before, the previous success element is returned without contacting
+   * ER&gt;B. If the same delivery is currently in flight, the result of that delivery is awaited,
+   * but not longer than the delivery timeout. This avoids duplicate invoices, if a delivery is
+   * repeated because its outcome is unknown (e.g. after a timeout). One instance may be shared by
+   * multiple senders. Note: with the direct engine, invoice nodes are serialized to a byte array
+   * first if duplicate detection is enabled. Invoices delivered from an input stream, a path or a
+   * resource are never checked for duplicates, because they are not held in memory before sending.
    *
-   * @param aWSClientConfig
-   *        Client config to be modified. May not be <code>null</code>.
+   * @param aDeduplicator
+   *        The duplicate detection to use. May be <code>null</code> to disable it.
+   * @return this for chaining
+   * @since 5.0.2
    */
-  @OverrideOnDemand
-  protected void modifyWSClientConfig (@NonNull final WSClientConfig aWSClientConfig)
-  {}
+  @NonNull
+  public final WS120Sender setDeduplicator (@Nullable final WSDeliveryDeduplicator <TypeSuccess> aDeduplicator)
+  {
+    m_aDeduplicator = aDeduplicator;
+    return this;
+  }
+
+  /**
+   * The Webservice 1.2 specific part of a delivery.
+   */
+  private final class DeliveryProtocol implements
+                                       IWSDeliveryProtocol <TypeUploadStatus, TypeSuccess, AttachmentType, SettingsType>
+  {
+    @Override
+    public String getDisplayName ()
+    {
+      return "ER>B Webservice 1.2";
+    }
+
+    @Override
+    public URL getURL ()
+    {
+      return m_aURL;
+    }
+
+    @Override
+    public WSDeliveryDeduplicator <TypeSuccess> getDeduplicator ()
+    {
+      return m_aDeduplicator;
+    }
+
+    @Override
+    public TypeUploadStatus invokeJAXWS (@NonNull final byte [] aInvoiceBytes,
+                                         @Nullable final List <AttachmentType> aAttachments,
+                                         @NonNull final SettingsType aSettings,
+                                         @Nullable final WSDeadline aDeadline) throws Exception
+    {
+      // Prepare document
+      final DocumentType aDocument = new DocumentType ();
+      aDocument.setValue (aInvoiceBytes);
+      aDocument.setEncoding (getInvoiceEncoding ().name ());
+
+      return invokePort (m_aURL,
+                         WS120Sender.this::_createPort,
+                         aDeadline,
+                         (final Wsupload aPort) -> aPort.uploadDocument (aDocument, aAttachments, aSettings));
+    }
+
+    @Override
+    public String getSOAPAction ()
+    {
+      return WS120SOAPCodec.SOAP_ACTION;
+    }
+
+    @Override
+    public void writeRequest (@NonNull @WillNotClose final OutputStream aOS,
+                              @NonNull final byte [] aSOAPHeaderContent,
+                              @NonNull final IWSRequestBodyWriter aInvoiceWriter,
+                              @NonNull @Nonempty final String sInvoiceEncoding,
+                              @Nullable final List <AttachmentType> aAttachments,
+                              @NonNull final SettingsType aSettings) throws Exception
+    {
+      WS120SOAPCodec.writeUploadRequest (aOS, aSOAPHeaderContent, aInvoiceWriter, sInvoiceEncoding, aAttachments, aSettings);
+    }
+
+    @Override
+    public TypeUploadStatus readResponse (@NonNull @WillNotClose final InputStream aIS) throws Exception
+    {
+      return WS120SOAPCodec.readUploadResponse (aIS);
+    }
+
+    @Override
+    public void writeParameters (@NonNull @WillNotClose final OutputStream aOS,
+                                 @Nullable final List <AttachmentType> aAttachments,
+                                 @NonNull final SettingsType aSettings) throws IOException
+    {
+      if (aAttachments != null)
+        for (final AttachmentType aAttachment : aAttachments)
+        {
+          final byte [] aContent = aAttachment.getContent ();
+          SOAPStreamHelper.writeUTF8 (aOS,
+                                      aAttachment.getId () +
+                                           ' ' +
+                                           aAttachment.getName () +
+                                           ' ' +
+                                           aAttachment.getMimeType () +
+                                           ' ' +
+                                           (aContent == null ? -1 : aContent.length) +
+                                           ' ');
+          if (aContent != null)
+            aOS.write (aContent);
+        }
+      // The generated hash code is content based and avoids marshalling the settings
+      SOAPStreamHelper.writeUTF8 (aOS, Integer.toString (aSettings.hashCode ()));
+    }
+
+    @Override
+    public List <String> getDeclaredFaultMessages (@NonNull final Throwable t)
+    {
+      if (!(t instanceof UploadException))
+        return null;
+      final UploadException ex = (UploadException) t;
+      return new CommonsArrayList <> (ex.getFaultInfo () != null ? ex.getFaultInfo ().getMessage () : ex.getMessage ());
+    }
+
+    @Override
+    public TypeUploadStatus createError (@NonNull final EWSErrorField eField, @NonNull final List <String> aMessages)
+    {
+      final TypeUploadStatus ret = new TypeUploadStatus ();
+      final TypeError aError = new TypeError ();
+      final TypeErrorDetails aDetails = new TypeErrorDetails ();
+      for (final String sMessage : aMessages)
+      {
+        final TypeErrorDetail aDetail = new TypeErrorDetail ();
+        aDetail.setField (eField.getFieldName ());
+        aDetail.setMessage (sMessage);
+        aDetails.addErrorDetail (aDetail);
+      }
+      aError.setErrorDetails (aDetails);
+      ret.setError (aError);
+      return ret;
+    }
+
+    @Override
+    public TypeUploadStatus createSuccess (@NonNull final TypeSuccess aSuccess)
+    {
+      final TypeUploadStatus ret = new TypeUploadStatus ();
+      ret.setSuccess (aSuccess);
+      return ret;
+    }
+
+    @Override
+    public TypeSuccess getSuccess (@NonNull final TypeUploadStatus aResponse)
+    {
+      return aResponse.getSuccess ();
+    }
+
+    @Override
+    public String getFirstErrorField (@NonNull final TypeUploadStatus aResponse)
+    {
+      final TypeError aError = aResponse.getError ();
+      final TypeErrorDetails aDetails = aError == null ? null : aError.getErrorDetails ();
+      return aDetails == null || aDetails.getErrorDetail ().isEmpty () ? null
+                                                                      : aDetails.getErrorDetail ().get (0).getField ();
+    }
+
+    @Override
+    public String getDocumentID (@NonNull final TypeSuccess aSuccess)
+    {
+      return aSuccess.getDocumentID ();
+    }
+  }
+
+  @NonNull
+  private Wsupload _createPort ()
+  {
+    final Wsupload aPort = isUseWSDL () ? WSDLServiceHolder.SERVICE.getWSDocumentUploadPort ()
+                                        : WSDLLessServiceHolder.SERVICE.getPort (PORT_QNAME, Wsupload.class);
+    return configurePort (aPort, m_aURL);
+  }
 
   /**
    * This is the main sending routine. It can be invoked multiple times with different invoices.
+   * Retryable failures are retried according to {@link #getRetryPolicy()}.
    *
    * @param aOriginalInvoice
    *        The original invoice in an XML representation. May not be <code>null</code>. It may be
@@ -147,27 +338,12 @@ public class WS120Sender extends AbstractWSSender <WS120Sender>
                                           @Nullable final List <AttachmentType> aAttachments,
                                           @NonNull final SettingsType aSettings)
   {
-    ValueEnforcer.notNull (aOriginalInvoice, "OriginalInvoice");
-    ValueEnforcer.notNull (aSettings, "Settings");
-
-    // Convert XML node to a byte array
-    final XMLWriterSettings aXWS = new XMLWriterSettings ().setCharset (getInvoiceEncoding ())
-                                                           .setNamespaceContext (getNamespaceContext ());
-    final byte [] aInvoiceBytes = XMLWriter.getNodeAsBytes (aOriginalInvoice, aXWS);
-    if (aInvoiceBytes == null)
-    {
-      LOGGER.error ("Failed to serialize the specified XML document");
-      return _createError ("document", "Failed to serialize the specified XML document");
-    }
-
-    if (false)
-      LOGGER.info ("Created XML:\n" + new String (aInvoiceBytes, getInvoiceEncoding ()));
-
-    return deliverInvoice (aInvoiceBytes, aAttachments, aSettings);
+    return deliverNode (m_aProtocol, aOriginalInvoice, aAttachments, aSettings);
   }
 
   /**
    * This is the main sending routine. It can be invoked multiple times with different invoices.
+   * Retryable failures are retried according to {@link #getRetryPolicy()}.
    *
    * @param aInvoiceBytes
    *        The byte array representation of the XML invoice to be send. May not be
@@ -187,62 +363,134 @@ public class WS120Sender extends AbstractWSSender <WS120Sender>
                                           @Nullable final List <AttachmentType> aAttachments,
                                           @NonNull final SettingsType aSettings)
   {
-    ValueEnforcer.notNull (aInvoiceBytes, "InvoiceBytes");
-    ValueEnforcer.notNull (aSettings, "Settings");
-
-    // Some debug output
-    WSHelper.enableSoapLogging (isDebugMode ());
-
-    // Prepare document
-    final DocumentType aDocument = new DocumentType ();
-    aDocument.setValue (aInvoiceBytes);
-    aDocument.setEncoding (getInvoiceEncoding ().name ());
-
-    try
-    {
-      final WSClientConfig aWSClientConfig = new WSClientConfig (m_aURL);
-
-      if (isTrustAllCertificates ())
-      {
-        // Maybe required to trust txm.portal.at depending on the installed OS
-        // root certificates.
-        aWSClientConfig.setSSLSocketFactoryTrustAll ();
-      }
+    return deliverBytes (m_aProtocol, aInvoiceBytes, aAttachments, aSettings);
+  }
 
-      if (isTrustAllHostnames ())
-        aWSClientConfig.setHostnameVerifierTrustAll ();
+  /**
+   * Send an invoice that is read from a stream. In contrast to the other delivery methods, the
+   * invoice is Base64 encoded directly into the HTTP request, so the memory consumption does not
+   * grow with the invoice size. This method does not use JAX-WS and therefore neither port pooling
+   * nor {@link #modifyWSClientConfig(com.helger.wsclient.WSClientConfig)} is applied. The delivery
+   * is never retried, because the stream can only be read once, and it is never checked for
+   * duplicates (see {@link #setDeduplicator(WSDeliveryDeduplicator)}).
+   *
+   * @param aInvoiceIS
+   *        The input stream with the XML invoice to be send. May not be <code>null</code>. It is
+   *        read until the end but not closed. It may be in any of the formats supported by ER&gt;B
+   *        (ebInterface 4.x, 5.x or UBL 2.x) and must use the encoding returned by
+   *        {@link #getInvoiceEncoding()}.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 1.2. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> upload status as returned by the ER&gt;B Webservice. In case of
+   *         an internal error, a corresponding error structure is created.
+   */
+  @NonNull
+  public TypeUploadStatus deliverInvoice (@NonNull @WillNotClose final InputStream aInvoiceIS,
+                                          @Nullable final List <AttachmentType> aAttachments,
+                                          @NonNull final SettingsType aSettings)
+  {
+    return deliverStream (m_aProtocol, aInvoiceIS, aAttachments, aSettings);
+  }
 
-      // Ensure the WSSE headers are added using our handler
-      aWSClientConfig.handlers ()
-                     .add (new SOAPAddWSSEHeaderHandler (getWebserviceUsername (), getWebservicePassword ()));
+  /**
+   * Send an invoice that is read from a file. The invoice is streamed and never read into memory
+   * completely. See {@link #deliverInvoice(InputStream, List, SettingsType)} for details.
+   *
+   * @param aInvoicePath
+   *        The path of the XML invoice to be send. May not be <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 1.2. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> upload status as returned by the ER&gt;B Webservice. In case of
+   *         an internal error, a corresponding error structure is created.
+   */
+  @NonNull
+  public TypeUploadStatus deliverInvoice (@NonNull final Path aInvoicePath,
+                                          @Nullable final List <AttachmentType> aAttachments,
+                                          @NonNull final SettingsType aSettings)
+  {
+    return deliverPath (m_aProtocol, aInvoicePath, aAttachments, aSettings);
+  }
 
-      // Customizing callback
-      modifyWSClientConfig (aWSClientConfig);
+  /**
+   * Send an invoice that is read from a resource. The invoice is streamed and never read into
+   * memory completely. See {@link #deliverInvoice(InputStream, List, SettingsType)} for details.
+   *
+   * @param aInvoiceRes
+   *        The resource with the XML invoice to be send. May not be <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 1.2. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> upload status as returned by the ER&gt;B Webservice. In case of
+   *         an internal error, a corresponding error structure is created.
+   */
+  @NonNull
+  public TypeUploadStatus deliverInvoice (@NonNull final IReadableResource aInvoiceRes,
+                                          @Nullable final List <AttachmentType> aAttachments,
+                                          @NonNull final SettingsType aSettings)
+  {
+    return deliverResource (m_aProtocol, aInvoiceRes, aAttachments, aSettings);
+  }
 
-      // Invoke WS
-      final WSDocumentUploadService aService = new WSDocumentUploadService ();
-      final Wsupload aPort = aService.getWSDocumentUploadPort ();
-      aWSClientConfig.applyWSSettingsToBindingProvider ((BindingProvider) aPort);
+  /**
+   * Asynchronous version of {@link #deliverInvoice(Node, List, SettingsType)}. The
+   * delivery is performed on the executor returned by {@link #getAsyncExecutor()}. The passed node
+   * must not be modified until the returned future is completed.
+   *
+   * @param aOriginalInvoice
+   *        The original invoice in an XML representation. May not be <code>null</code>. It may be
+   *        in any of the formats supported by ER&gt;B (ebInterface 4.x, 5.x or UBL 2.x).
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 1.2. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> future that is completed with the upload status as returned by
+   *         the ER&gt;B Webservice. In case of an internal error, the future is completed with a
+   *         corresponding error structure.
+   */
+  @NonNull
+  public CompletableFuture <TypeUploadStatus> deliverInvoiceAsync (@NonNull final Node aOriginalInvoice,
+                                                                   @Nullable final List <AttachmentType> aAttachments,
+                                                                   @NonNull final SettingsType aSettings)
+  {
+    return deliverNodeAsync (m_aProtocol, aOriginalInvoice, aAttachments, aSettings);
+  }
 
-      // Main sending
-      final TypeUploadStatus aResult = aPort.uploadDocument (aDocument, aAttachments, aSettings);
-      return aResult;
-    }
-    catch (final UploadException ex)
-    {
-      LOGGER.error ("Error uploading the document to ER>B Webservice 1.2!", ex);
-      return _createError ("document",
-                           ex.getFaultInfo () != null ? ex.getFaultInfo ().getMessage () : ex.getMessage ());
-    }
-    catch (final WebServiceException ex)
-    {
-      LOGGER.error ("Error transmitting the document to ER>B Webservice 1.2!", ex);
-      return _createError ("webservice", ex.getMessage ());
-    }
-    catch (final Throwable t)
-    {
-      LOGGER.error ("Generic error invoking ER>B Webservice 1.2", t);
-      return _createError ("general", t.getMessage ());
-    }
+  /**
+   * Asynchronous version of {@link #deliverInvoice(byte[], List, SettingsType)}. The
+   * delivery is performed on the executor returned by {@link #getAsyncExecutor()}.
+   *
+   * @param aInvoiceBytes
+   *        The byte array representation of the XML invoice to be send. May not be
+   *        <code>null</code>. It may be in any of the formats supported by ER&gt;B (ebInterface
+   *        4.x, 5.x or UBL 2.x).
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 1.2. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> future that is completed with the upload status as returned by
+   *         the ER&gt;B Webservice. In case of an internal error, the future is completed with a
+   *         corresponding error structure.
+   */
+  @NonNull
+  public CompletableFuture <TypeUploadStatus> deliverInvoiceAsync (@NonNull final byte [] aInvoiceBytes,
+                                                                   @Nullable final List <AttachmentType> aAttachments,
+                                                                   @NonNull final SettingsType aSettings)
+  {
+    return deliverBytesAsync (m_aProtocol, aInvoiceBytes, aAttachments, aSettings);
   }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws200;
+
+import org.jspecify.annotations.NonNull;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+
+/**
+ * Callback interface for the deliveries resumed by {@link WS200Outbox#resumePending(IWS200OutboxResultHandler)}.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@FunctionalInterface
+public interface IWS200OutboxResultHandler
+{
+  /**
+   * Invoked once for each finished delivery.
+   *
+   * @param nEntryID
+   *        The ID of the outbox entry as returned by
+   *        {@link WS200Outbox#enqueue(byte[], java.util.List, at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType)}.
+   * @param aResponse
+   *        The response of the delivery. Never <code>null</code>.
+   */
+  void onDeliveryResult (long nEntryID, @NonNull DeliveryResponseType aResponse);
+}
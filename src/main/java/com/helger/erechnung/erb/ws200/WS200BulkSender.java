@@ -0,0 +1,481 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws200;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.NotThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+import com.helger.erechnung.erb.ws.BulkDeliveryStatistics;
+import com.helger.erechnung.erb.ws.EBulkResultOrder;
+import com.helger.erechnung.erb.ws.EWSErrorField;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryErrorDetailType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryErrorType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+
+/**
+ * Deliver a large number of invoices with a {@link WS200Sender} using bounded parallelism. The next
+ * invoice is only read from the input, if a delivery slot is available, so that the input is not
+ * consumed faster than it can be sent. If results are reported in input order, a slot is only freed
+ * after the result was reported, so that the number of buffered results is bounded as well.<br>
+ * Port pooling should be enabled on the provided sender (see
+ * {@link WS200Sender#setPortPoolingEnabled(boolean)}) with a pool size of at least
+ * {@link #getMaxConcurrency()}.<br>
+ * Only one bulk delivery may be running per instance at a time. {@link #cancel()} and
+ * {@link #getCurrentStatistics()} may be called from any thread. Cancellation is terminal: after
+ * {@link #cancel()} was called, no further invoices are delivered by this instance.
+ *
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public class WS200BulkSender
+{
+  public static final int DEFAULT_MAX_CONCURRENCY = 8;
+  public static final EBulkResultOrder DEFAULT_RESULT_ORDER = EBulkResultOrder.INPUT_ORDER;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (WS200BulkSender.class);
+
+  private final WS200Sender m_aSender;
+  private int m_nMaxConcurrency = DEFAULT_MAX_CONCURRENCY;
+  private EBulkResultOrder m_eResultOrder = DEFAULT_RESULT_ORDER;
+  private Executor m_aExecutor;
+
+  // Never reset, so that a cancellation cannot be lost
+  private final AtomicBoolean m_aCancelled = new AtomicBoolean (false);
+  // Status of the current run
+  private final AtomicLong m_aStarted = new AtomicLong (0);
+  private final AtomicLong m_aSuccess = new AtomicLong (0);
+  private final AtomicLong m_aError = new AtomicLong (0);
+  private volatile long m_nStartNanos = 0;
+  private volatile long m_nEndNanos = 0;
+
+  /**
+   * Internal class that reports the results to the handler and releases the delivery slots.
+   */
+  private final class ResultEmitter
+  {
+    private final IWS200BulkResultHandler m_aHandler;
+    private final EBulkResultOrder m_eOrder;
+    private final Semaphore m_aSlots;
+    private final SimpleLock m_aLock = new SimpleLock ();
+    @GuardedBy ("m_aLock")
+    private final Map <Integer, DeliveryResponseType> m_aPending = new HashMap <> ();
+    @GuardedBy ("m_aLock")
+    private int m_nNextIndex = 0;
+    private final AtomicReference <Error> m_aHandlerError = new AtomicReference <> ();
+
+    ResultEmitter (@NonNull final IWS200BulkResultHandler aHandler,
+                   @NonNull final EBulkResultOrder eOrder,
+                   @NonNull final Semaphore aSlots)
+    {
+      m_aHandler = aHandler;
+      m_eOrder = eOrder;
+      m_aSlots = aSlots;
+    }
+
+    @GuardedBy ("m_aLock")
+    private void _emit (final int nIndex, @NonNull final DeliveryResponseType aResponse)
+    {
+      try
+      {
+        m_aHandler.onDeliveryResult (nIndex, aResponse);
+      }
+      catch (final RuntimeException ex)
+      {
+        LOGGER.error ("Bulk result handler failed for invoice index " + nIndex, ex);
+      }
+      catch (final Error ex)
+      {
+        // Must not escape, otherwise the following results are never emitted. Stop the run and
+        // rethrow it on the calling thread.
+        LOGGER.error ("Bulk result handler failed for invoice index " + nIndex, ex);
+        m_aHandlerError.compareAndSet (null, ex);
+      }
+      finally
+      {
+        m_aSlots.release ();
+      }
+    }
+
+    @Nullable
+    Error getHandlerError ()
+    {
+      return m_aHandlerError.get ();
+    }
+
+    void onFinished (final int nIndex, @NonNull final DeliveryResponseType aResponse)
+    {
+      if (aResponse.getSuccess () != null)
+        m_aSuccess.incrementAndGet ();
+      else
+        m_aError.incrementAndGet ();
+
+      m_aLock.locked ( () -> {
+        if (m_eOrder == EBulkResultOrder.COMPLETION_ORDER)
+          _emit (nIndex, aResponse);
+        else
+        {
+          m_aPending.put (Integer.valueOf (nIndex), aResponse);
+          // Emit all results that are next in line
+          DeliveryResponseType aNext;
+          while ((aNext = m_aPending.remove (Integer.valueOf (m_nNextIndex))) != null)
+          {
+            _emit (m_nNextIndex, aNext);
+            m_nNextIndex++;
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aSender
+   *        The sender to be used for all deliveries. May not be <code>null</code>. The sender must
+   *        not be modified while a bulk delivery is running.
+   */
+  public WS200BulkSender (@NonNull final WS200Sender aSender)
+  {
+    ValueEnforcer.notNull (aSender, "Sender");
+    m_aSender = aSender;
+  }
+
+  /**
+   * @return The sender passed in the constructor. Never <code>null</code>.
+   */
+  @NonNull
+  public final WS200Sender getSender ()
+  {
+    return m_aSender;
+  }
+
+  /**
+   * @return The maximum number of deliveries that are performed at the same time. The default is
+   *         {@link #DEFAULT_MAX_CONCURRENCY}.
+   */
+  @Nonnegative
+  public final int getMaxConcurrency ()
+  {
+    return m_nMaxConcurrency;
+  }
+
+  /**
+   * Set the maximum number of deliveries that are performed at the same time.
+   *
+   * @param nMaxConcurrency
+   *        The maximum concurrency. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @NonNull
+  public final WS200BulkSender setMaxConcurrency (@Nonnegative final int nMaxConcurrency)
+  {
+    ValueEnforcer.isGT0 (nMaxConcurrency, "MaxConcurrency");
+    m_nMaxConcurrency = nMaxConcurrency;
+    return this;
+  }
+
+  /**
+   * @return The order in which results are reported. Never <code>null</code>. The default is
+   *         {@link #DEFAULT_RESULT_ORDER}.
+   */
+  @NonNull
+  public final EBulkResultOrder getResultOrder ()
+  {
+    return m_eResultOrder;
+  }
+
+  /**
+   * Set the order in which results are reported.
+   *
+   * @param eResultOrder
+   *        The result order. May not be <code>null</code>.
+   * @return this for chaining
+   */
+  @NonNull
+  public final WS200BulkSender setResultOrder (@NonNull final EBulkResultOrder eResultOrder)
+  {
+    ValueEnforcer.notNull (eResultOrder, "ResultOrder");
+    m_eResultOrder = eResultOrder;
+    return this;
+  }
+
+  /**
+   * @return The executor to perform the deliveries on. If none was explicitly set, the async
+   *         executor of the sender is used. Never <code>null</code>.
+   */
+  @NonNull
+  public final Executor getExecutor ()
+  {
+    final Executor ret = m_aExecutor;
+    return ret != null ? ret : m_aSender.getAsyncExecutor ();
+  }
+
+  /**
+   * Set the executor to perform the deliveries on.
+   *
+   * @param aExecutor
+   *        The executor to use. May be <code>null</code> to use the async executor of the sender.
+   * @return this for chaining
+   */
+  @NonNull
+  public final WS200BulkSender setExecutor (@Nullable final Executor aExecutor)
+  {
+    m_aExecutor = aExecutor;
+    return this;
+  }
+
+  /**
+   * Cancel the currently running bulk delivery and all later ones. No further invoices are read from
+   * the input. Deliveries that are already in flight are finished and reported. This method may be
+   * called from any thread.
+   */
+  public void cancel ()
+  {
+    m_aCancelled.set (true);
+  }
+
+  /**
+   * @return <code>true</code> if this bulk sender was cancelled.
+   */
+  public boolean isCancelled ()
+  {
+    return m_aCancelled.get ();
+  }
+
+  /**
+   * Get the statistics of the currently running or of the last bulk delivery. This method may be
+   * called from any thread.
+   *
+   * @return The statistics snapshot. Never <code>null</code>.
+   */
+  @NonNull
+  public BulkDeliveryStatistics getCurrentStatistics ()
+  {
+    final long nStart = m_nStartNanos;
+    final long nEnd = m_nEndNanos;
+    final Duration aDuration;
+    if (nStart == 0)
+      aDuration = Duration.ZERO;
+    else
+      aDuration = Duration.ofNanos ((nEnd != 0 ? nEnd : System.nanoTime ()) - nStart);
+    return new BulkDeliveryStatistics (m_aStarted.get (),
+                                       m_aSuccess.get (),
+                                       m_aError.get (),
+                                       aDuration,
+                                       m_aCancelled.get ());
+  }
+
+  @NonNull
+  private static DeliveryResponseType _createError (@NonNull final String sMessage)
+  {
+    final DeliveryErrorDetailType aDetail = new DeliveryErrorDetailType ();
+    aDetail.setField (EWSErrorField.GENERAL.getFieldName ());
+    aDetail.setMessage (sMessage);
+    final DeliveryErrorType aError = new DeliveryErrorType ();
+    aError.addErrorDetail (aDetail);
+    final DeliveryResponseType ret = new DeliveryResponseType ();
+    ret.setError (aError);
+    return ret;
+  }
+
+  /**
+   * Deliver all invoices from the provided stream. The stream is consumed lazily.
+   *
+   * @param aInvoices
+   *        The stream of invoices in their byte array representation. May not be
+   *        <code>null</code>. Must not contain <code>null</code> elements.
+   * @param aSettings
+   *        The settings to be used for all deliveries. May not be <code>null</code>.
+   * @param aResultHandler
+   *        The handler that receives the result of each delivery. May not be <code>null</code>.
+   * @return The final statistics of the bulk delivery. Never <code>null</code>.
+   * @throws InterruptedException
+   *         If the calling thread was interrupted. In that case the bulk delivery is cancelled.
+   * @see #deliverAll(Iterator, DeliverySettingsType, IWS200BulkResultHandler)
+   */
+  @NonNull
+  public BulkDeliveryStatistics deliverAll (@NonNull final Stream <byte []> aInvoices,
+                                            @NonNull final DeliverySettingsType aSettings,
+                                            @NonNull final IWS200BulkResultHandler aResultHandler) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aInvoices, "Invoices");
+    return deliverAll (aInvoices.iterator (), aSettings, aResultHandler);
+  }
+
+  /**
+   * Deliver all invoices from the provided iterator. This method blocks until all deliveries are
+   * finished or the bulk delivery was cancelled and all in-flight deliveries are finished.
+   *
+   * @param aInvoices
+   *        The iterator over the invoices in their byte array representation. May not be
+   *        <code>null</code>. Must not return <code>null</code> elements.
+   * @param aSettings
+   *        The settings to be used for all deliveries. May not be <code>null</code>.
+   * @param aResultHandler
+   *        The handler that receives the result of each delivery. May not be <code>null</code>.
+   * @return The final statistics of the bulk delivery. Never <code>null</code>. If this bulk sender
+   *         was already cancelled, no invoice is delivered.
+   * @throws InterruptedException
+   *         If the calling thread was interrupted. In that case the bulk delivery is cancelled.
+   * @throws Error
+   *         If the result handler threw an {@link Error}. The bulk delivery is stopped in that
+   *         case, after all in-flight deliveries are finished.
+   * @throws RuntimeException
+   *         If the iterator failed to provide the next invoice. It is rethrown after all in-flight
+   *         deliveries are finished and reported.
+   */
+  @NonNull
+  public BulkDeliveryStatistics deliverAll (@NonNull final Iterator <byte []> aInvoices,
+                                            @NonNull final DeliverySettingsType aSettings,
+                                            @NonNull final IWS200BulkResultHandler aResultHandler) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aInvoices, "Invoices");
+    ValueEnforcer.notNull (aSettings, "Settings");
+    ValueEnforcer.notNull (aResultHandler, "ResultHandler");
+
+    final int nMaxConcurrency = m_nMaxConcurrency;
+    final Executor aExecutor = getExecutor ();
+    final Semaphore aSlots = new Semaphore (nMaxConcurrency);
+    final ResultEmitter aEmitter = new ResultEmitter (aResultHandler, m_eResultOrder, aSlots);
+
+    m_aStarted.set (0);
+    m_aSuccess.set (0);
+    m_aError.set (0);
+    m_nEndNanos = 0;
+    m_nStartNanos = System.nanoTime ();
+
+    // The failure of the invoice source, if any
+    Throwable aSourceFailure = null;
+    try
+    {
+      int nIndex = 0;
+      while (!m_aCancelled.get () && aEmitter.getHandlerError () == null)
+      {
+        // Backpressure: wait for a free slot before reading the next input
+        aSlots.acquire ();
+        final byte [] aInvoice;
+        try
+        {
+          if (m_aCancelled.get () || aEmitter.getHandlerError () != null || !aInvoices.hasNext ())
+          {
+            aSlots.release ();
+            break;
+          }
+          aInvoice = aInvoices.next ();
+        }
+        catch (final RuntimeException | Error ex)
+        {
+          // Stop reading, but let the in-flight deliveries finish
+          LOGGER.error ("Failed to read the invoice with index " + nIndex + " - stopping the bulk delivery", ex);
+          aSlots.release ();
+          aSourceFailure = ex;
+          break;
+        }
+
+        final int nThisIndex = nIndex++;
+        m_aStarted.incrementAndGet ();
+        try
+        {
+          CompletableFuture.supplyAsync ( () -> m_aSender.deliverInvoice (aInvoice, null, aSettings), aExecutor)
+                           .whenComplete ( (aResponse, aEx) -> {
+                             if (aEx != null)
+                               LOGGER.error ("Error delivering invoice with index " + nThisIndex, aEx);
+                             aEmitter.onFinished (nThisIndex,
+                                                  aResponse != null ? aResponse
+                                                                    : _createError (aEx != null ? aEx.getMessage ()
+                                                                                                : "No response"));
+                           });
+        }
+        catch (final RuntimeException ex)
+        {
+          // E.g. the executor rejected the task
+          LOGGER.error ("Failed to schedule delivery of invoice with index " + nThisIndex, ex);
+          aEmitter.onFinished (nThisIndex, _createError (ex.getMessage ()));
+        }
+      }
+
+      // Wait until all in-flight deliveries are finished and reported
+      aSlots.acquire (nMaxConcurrency);
+      aSlots.release (nMaxConcurrency);
+    }
+    catch (final InterruptedException ex)
+    {
+      m_aCancelled.set (true);
+      if (aSourceFailure != null)
+        ex.addSuppressed (aSourceFailure);
+      throw ex;
+    }
+    finally
+    {
+      m_nEndNanos = System.nanoTime ();
+    }
+
+    final Error aHandlerError = aEmitter.getHandlerError ();
+    if (aHandlerError != null)
+      throw aHandlerError;
+    if (aSourceFailure instanceof Error)
+      throw (Error) aSourceFailure;
+    if (aSourceFailure != null)
+      throw (RuntimeException) aSourceFailure;
+
+    final BulkDeliveryStatistics ret = getCurrentStatistics ();
+    if (LOGGER.isInfoEnabled ())
+      LOGGER.info ("Finished ER>B bulk delivery: " +
+                   ret.getSuccessCount () +
+                   " success, " +
+                   ret.getErrorCount () +
+                   " error(s) in " +
+                   ret.getDuration ().toMillis () +
+                   " ms (" +
+                   Math.round (ret.getThroughputPerSecond ()) +
+                   " invoices/s)" +
+                   (ret.isCancelled () ? " - cancelled" : ""));
+    return ret;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Sender", m_aSender)
+                                       .append ("MaxConcurrency", m_nMaxConcurrency)
+                                       .append ("ResultOrder", m_eResultOrder)
+                                       .append ("Executor", m_aExecutor)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.GuardedBy;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.concurrent.SimpleLock;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.base.tostring.ToStringGenerator;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws.WSJAXBContextRegistry;
+import com.helger.erechnung.erb.ws.WSJournal;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryEmbeddedAttachmentType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.ObjectFactory;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+
+/**
+ * A durable outbox in front of a {@link WS200Sender}. Each invoice is written to a journal file
+ * together with its attachments and settings before it is sent, each delivery attempt is recorded
+ * and the final response of ER&gt;B is recorded after the delivery. If the process crashes, the
+ * deliveries that were not finished are available again after the outbox was re-opened and can be
+ * resumed with {@link #resumePending(IWS200OutboxResultHandler)}.<br>
+ * The journal is written with group commit (see {@link WSJournal}), so that many threads can
+ * deliver through the same outbox without paying one disk sync per journal record.<br>
+ * Note: the delivery semantics are "at least once". If the process crashes after ER&gt;B accepted
+ * an invoice but before the response was recorded, the invoice is sent again when the delivery is
+ * resumed. Use {@link #getAttemptCount(long)} to identify such deliveries. An entry must not be
+ * delivered by multiple threads at the same time.
+ *
+ * @author Philip Helger
+ * @since 5.0.2
+ */
+@ThreadSafe
+public class WS200Outbox implements AutoCloseable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (WS200Outbox.class);
+
+  // Journal record types
+  private static final byte RECORD_ENQUEUE = 1;
+  private static final byte RECORD_ATTEMPT = 2;
+  private static final byte RECORD_COMPLETE = 3;
+
+  private static final QName QNAME_DELIVERY = new QName (WS200SOAPCodec.NAMESPACE_URI, "deliverInvoiceInvoiceInput");
+  private static final QName QNAME_RESPONSE = new QName (WS200SOAPCodec.NAMESPACE_URI, "deliverInvoiceInvoiceOutput");
+
+  /**
+   * A pending delivery. The payload contains the invoice bytes followed by the attachments and
+   * settings as XML, so that only one copy of the invoice is kept in memory.
+   */
+  private static final class Entry
+  {
+    private final byte [] m_aPayload;
+    private int m_nAttempts;
+
+    Entry (@NonNull final byte [] aPayload, final int nAttempts)
+    {
+      m_aPayload = aPayload;
+      m_nAttempts = nAttempts;
+    }
+  }
+
+  private final WS200Sender m_aSender;
+  private final WSJournal m_aJournal;
+  private final SimpleLock m_aLock = new SimpleLock ();
+  @GuardedBy ("m_aLock")
+  private final Map <Long, Entry> m_aPending = new LinkedHashMap <> ();
+  @GuardedBy ("m_aLock")
+  private final Map <Long, DeliveryResponseType> m_aRecoveredResults = new LinkedHashMap <> ();
+  @GuardedBy ("m_aLock")
+  private long m_nNextID = 1;
+
+  /**
+   * Constructor. If the journal file already exists, all deliveries that were not finished are
+   * pending again and all deliveries that were finished are available via
+   * {@link #getAllRecoveredResults()}.
+   *
+   * @param aSender
+   *        The sender to be used for all deliveries. May not be <code>null</code>.
+   * @param aJournalFile
+   *        The journal file. May not be <code>null</code>. The parent directory must exist.
+   * @throws IOException
+   *         If the journal could not be read or created
+   */
+  public WS200Outbox (@NonNull final WS200Sender aSender, @NonNull final Path aJournalFile) throws IOException
+  {
+    ValueEnforcer.notNull (aSender, "Sender");
+    ValueEnforcer.notNull (aJournalFile, "JournalFile");
+    m_aSender = aSender;
+    try
+    {
+      m_aJournal = new WSJournal (aJournalFile, this::_replay);
+    }
+    catch (final UncheckedIOException ex)
+    {
+      throw ex.getCause ();
+    }
+    if (!m_aPending.isEmpty ())
+      LOGGER.info ("Recovered " + m_aPending.size () + " unfinished deliveries from journal " + aJournalFile);
+  }
+
+  @NonNull
+  private static byte [] _marshal (@NonNull final JAXBElement <?> aElement) throws IOException
+  {
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    try
+    {
+      WSJAXBContextRegistry.marshalFragment (ObjectFactory.class, aElement, aBAOS);
+    }
+    catch (final JAXBException ex)
+    {
+      throw new IOException ("Failed to serialize " + aElement.getName () + " for the outbox journal", ex);
+    }
+    return aBAOS.toByteArray ();
+  }
+
+  @NonNull
+  private static <T> T _unmarshal (@NonNull final InputStream aIS, @NonNull final Class <T> aClass) throws IOException
+  {
+    try
+    {
+      final XMLStreamReader aReader = SOAPStreamHelper.createXMLStreamReader (aIS);
+      try
+      {
+        aReader.nextTag ();
+        return WSJAXBContextRegistry.unmarshal (ObjectFactory.class, aReader, aClass);
+      }
+      finally
+      {
+        aReader.close ();
+      }
+    }
+    catch (final XMLStreamException | JAXBException ex)
+    {
+      throw new IOException ("Failed to read " + aClass.getSimpleName () + " from the outbox journal", ex);
+    }
+  }
+
+  @NonNull
+  private static byte [] _createRecord (final byte nType,
+                                        final long nID,
+                                        final int nAttempts,
+                                        @Nullable final byte [] aData) throws IOException
+  {
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream (16 + (aData == null ? 0 : aData.length));
+    try (final DataOutputStream aDOS = new DataOutputStream (aBAOS))
+    {
+      aDOS.writeByte (nType);
+      aDOS.writeLong (nID);
+      aDOS.writeInt (nAttempts);
+      if (aData != null)
+        aDOS.write (aData);
+    }
+    return aBAOS.toByteArray ();
+  }
+
+  private void _replay (@NonNull final byte [] aRecord)
+  {
+    // Called from the constructor only
+    try (final DataInputStream aDIS = new DataInputStream (new ByteArrayInputStream (aRecord)))
+    {
+      final byte nType = aDIS.readByte ();
+      final long nID = aDIS.readLong ();
+      final int nAttempts = aDIS.readInt ();
+      final Long aID = Long.valueOf (nID);
+      m_nNextID = Math.max (m_nNextID, nID + 1);
+      switch (nType)
+      {
+        case RECORD_ENQUEUE:
+          m_aPending.put (aID, new Entry (aDIS.readAllBytes (), nAttempts));
+          break;
+        case RECORD_ATTEMPT:
+        {
+          final Entry aEntry = m_aPending.get (aID);
+          if (aEntry != null)
+            aEntry.m_nAttempts = Math.max (aEntry.m_nAttempts, nAttempts);
+          break;
+        }
+        case RECORD_COMPLETE:
+          m_aPending.remove (aID);
+          m_aRecoveredResults.put (aID, _unmarshal (aDIS, DeliveryResponseType.class));
+          break;
+        default:
+          throw new IOException ("Unsupported outbox journal record type " + nType);
+      }
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException (ex);
+    }
+  }
+
+  /**
+   * @return The sender used for all deliveries. Never <code>null</code>.
+   */
+  @NonNull
+  public final WS200Sender getSender ()
+  {
+    return m_aSender;
+  }
+
+  /**
+   * @return The underlying journal. Never <code>null</code>.
+   */
+  @NonNull
+  public final WSJournal getJournal ()
+  {
+    return m_aJournal;
+  }
+
+  /**
+   * Durably store an invoice for later delivery.
+   *
+   * @param aInvoiceBytes
+   *        The byte array representation of the XML invoice to be send. May not be
+   *        <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non-<code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element. May not be <code>null</code>.
+   * @return The ID of the new outbox entry. Always &gt; 0.
+   * @throws IOException
+   *         If the entry could not be stored in the journal
+   * @see #deliver(long)
+   */
+  public long enqueue (@NonNull final byte [] aInvoiceBytes,
+                       @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                       @NonNull final DeliverySettingsType aSettings) throws IOException
+  {
+    return _enqueue (_createPayload (aInvoiceBytes, aAttachments, aSettings), 0);
+  }
+
+  @NonNull
+  private static byte [] _createPayload (@NonNull final byte [] aInvoiceBytes,
+                                         @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                         @NonNull final DeliverySettingsType aSettings) throws IOException
+  {
+    ValueEnforcer.notNull (aInvoiceBytes, "InvoiceBytes");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    // The invoice itself is stored as is, and not base64 encoded in the XML
+    final DeliveryType aDelivery = new DeliveryType ();
+    aDelivery.setEmbeddedAttachment (aAttachments);
+    aDelivery.setSettings (aSettings);
+    final byte [] aXML = _marshal (new JAXBElement <> (QNAME_DELIVERY, DeliveryType.class, aDelivery));
+
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream (4 + aInvoiceBytes.length + aXML.length);
+    try (final DataOutputStream aDOS = new DataOutputStream (aBAOS))
+    {
+      aDOS.writeInt (aInvoiceBytes.length);
+      aDOS.write (aInvoiceBytes);
+      aDOS.write (aXML);
+    }
+    return aBAOS.toByteArray ();
+  }
+
+  private long _enqueue (@NonNull final byte [] aPayload, @Nonnegative final int nAttempts) throws IOException
+  {
+    // Update the state before writing, so that a concurrent compaction includes the entry
+    final long nID = m_aLock.lockedGet ( () -> {
+      final long nNewID = m_nNextID++;
+      m_aPending.put (Long.valueOf (nNewID), new Entry (aPayload, nAttempts));
+      return Long.valueOf (nNewID);
+    }).longValue ();
+    try
+    {
+      m_aJournal.append (_createRecord (RECORD_ENQUEUE, nID, nAttempts, aPayload));
+    }
+    catch (final IOException ex)
+    {
+      m_aLock.locked ( () -> m_aPending.remove (Long.valueOf (nID)));
+      throw ex;
+    }
+    return nID;
+  }
+
+  /**
+   * Deliver a pending outbox entry. The attempt is recorded in the journal before the invoice is
+   * sent, and the response is recorded afterwards. The response is final, independent of whether
+   * it indicates success or an error - the retry policy of the sender is applied before.
+   *
+   * @param nEntryID
+   *        The ID of the entry as returned by {@link #enqueue(byte[], List, DeliverySettingsType)}.
+   * @return A non-<code>null</code> response as returned by the ER&gt;B Webservice.
+   * @throws IllegalArgumentException
+   *         If no such entry is pending
+   * @throws IOException
+   *         If the attempt could not be recorded in the journal. In that case the invoice was not
+   *         sent.
+   */
+  @NonNull
+  public DeliveryResponseType deliver (final long nEntryID) throws IOException
+  {
+    final Long aID = Long.valueOf (nEntryID);
+    final Entry aEntry = m_aLock.lockedGet ( () -> m_aPending.get (aID));
+    if (aEntry == null)
+      throw new IllegalArgumentException ("No pending outbox entry with ID " + nEntryID);
+
+    final int nAttempts = m_aLock.lockedGet ( () -> Integer.valueOf (++aEntry.m_nAttempts)).intValue ();
+    m_aJournal.append (_createRecord (RECORD_ATTEMPT, nEntryID, nAttempts, null));
+    return _deliver (nEntryID, aEntry.m_aPayload);
+  }
+
+  @NonNull
+  private DeliveryResponseType _deliver (final long nEntryID, @NonNull final byte [] aPayload) throws IOException
+  {
+    // Decode the payload
+    final byte [] aInvoiceBytes;
+    final DeliveryType aDelivery;
+    try (final DataInputStream aDIS = new DataInputStream (new ByteArrayInputStream (aPayload)))
+    {
+      aInvoiceBytes = new byte [aDIS.readInt ()];
+      aDIS.readFully (aInvoiceBytes);
+      aDelivery = _unmarshal (aDIS, DeliveryType.class);
+    }
+
+    final DeliveryResponseType aResponse = m_aSender.deliverInvoice (aInvoiceBytes,
+                                                                     aDelivery.getEmbeddedAttachment (),
+                                                                     aDelivery.getSettings ());
+
+    m_aLock.locked ( () -> m_aPending.remove (Long.valueOf (nEntryID)));
+    try
+    {
+      m_aJournal.append (_createRecord (RECORD_COMPLETE,
+                                        nEntryID,
+                                        0,
+                                        _marshal (new JAXBElement <> (QNAME_RESPONSE, DeliveryResponseType.class, aResponse))));
+    }
+    catch (final IOException ex)
+    {
+      // The delivery happened - the caller must get the response
+      LOGGER.error ("Failed to record the result of outbox entry " + nEntryID + " - it will be delivered again after a restart", ex);
+    }
+    return aResponse;
+  }
+
+  /**
+   * Durably store an invoice and deliver it immediately. This is the outbox equivalent of
+   * {@link WS200Sender#deliverInvoice(byte[], List, DeliverySettingsType)}.
+   *
+   * @param aInvoiceBytes
+   *        The byte array representation of the XML invoice to be send. May not be
+   *        <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non-<code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element. May not be <code>null</code>.
+   * @return A non-<code>null</code> response as returned by the ER&gt;B Webservice.
+   * @throws IOException
+   *         If the entry could not be stored in the journal. In that case the invoice was not sent.
+   */
+  @NonNull
+  public DeliveryResponseType deliverInvoice (@NonNull final byte [] aInvoiceBytes,
+                                              @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                              @NonNull final DeliverySettingsType aSettings) throws IOException
+  {
+    // Enqueue and first attempt are recorded together
+    final byte [] aPayload = _createPayload (aInvoiceBytes, aAttachments, aSettings);
+    final long nID = _enqueue (aPayload, 1);
+    return _deliver (nID, aPayload);
+  }
+
+  /**
+   * @return The IDs of all entries that were not yet delivered, in the order they were enqueued.
+   *         Never <code>null</code> but maybe empty.
+   */
+  @NonNull
+  public List <Long> getAllPendingIDs ()
+  {
+    return m_aLock.lockedGet ( () -> new ArrayList <> (m_aPending.keySet ()));
+  }
+
+  /**
+   * Get the number of delivery attempts of a pending entry, including attempts before a restart.
+   * A value &gt; 0 for a pending entry means, that ER&gt;B may already have received the invoice.
+   *
+   * @param nEntryID
+   *        The entry ID.
+   * @return The number of attempts or -1 if no such entry is pending.
+   */
+  public int getAttemptCount (final long nEntryID)
+  {
+    return m_aLock.lockedGet ( () -> {
+      final Entry aEntry = m_aPending.get (Long.valueOf (nEntryID));
+      return Integer.valueOf (aEntry == null ? -1 : aEntry.m_nAttempts);
+    }).intValue ();
+  }
+
+  /**
+   * @return A copy of all responses that were read from the journal when the outbox was opened,
+   *         keyed by the entry ID. Never <code>null</code> but maybe empty.
+   * @see #compact()
+   */
+  @NonNull
+  public Map <Long, DeliveryResponseType> getAllRecoveredResults ()
+  {
+    return m_aLock.lockedGet ( () -> new HashMap <> (m_aRecoveredResults));
+  }
+
+  /**
+   * Deliver all pending entries sequentially in the order they were enqueued. This is usually
+   * called once after the outbox was opened.
+   *
+   * @param aHandler
+   *        The handler that is invoked for each finished delivery. May not be <code>null</code>.
+   * @return The number of resumed deliveries. Always &ge; 0.
+   * @throws IOException
+   *         If an attempt could not be recorded in the journal. The remaining entries stay pending.
+   */
+  @Nonnegative
+  public int resumePending (@NonNull final IWS200OutboxResultHandler aHandler) throws IOException
+  {
+    ValueEnforcer.notNull (aHandler, "Handler");
+
+    int nCount = 0;
+    for (final Long aID : getAllPendingIDs ())
+    {
+      final long nID = aID.longValue ();
+      final DeliveryResponseType aResponse = deliver (nID);
+      aHandler.onDeliveryResult (nID, aResponse);
+      nCount++;
+    }
+    return nCount;
+  }
+
+  /**
+   * Rewrite the journal so that it only contains the pending entries. This should be called from
+   * time to time, because the journal grows with every delivery. All recovered results are
+   * discarded.
+   *
+   * @throws IOException
+   *         If the journal could not be rewritten
+   */
+  public void compact () throws IOException
+  {
+    try
+    {
+      m_aJournal.rewrite ( () -> m_aLock.lockedGet ( () -> {
+        m_aRecoveredResults.clear ();
+        final List <byte []> ret = new ArrayList <> (m_aPending.size ());
+        try
+        {
+          for (final Map.Entry <Long, Entry> aEntry : m_aPending.entrySet ())
+            ret.add (_createRecord (RECORD_ENQUEUE,
+                                    aEntry.getKey ().longValue (),
+                                    aEntry.getValue ().m_nAttempts,
+                                    aEntry.getValue ().m_aPayload));
+        }
+        catch (final IOException ex)
+        {
+          throw new UncheckedIOException (ex);
+        }
+        return ret;
+      }));
+    }
+    catch (final UncheckedIOException ex)
+    {
+      throw ex.getCause ();
+    }
+  }
+
+  /**
+   * Close the outbox and the underlying journal. Pending entries remain in the journal.
+   *
+   * @throws IOException
+   *         If closing the journal failed
+   */
+  public void close () throws IOException
+  {
+    m_aJournal.close ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Sender", m_aSender).append ("Journal", m_aJournal).getToString ();
+  }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws200;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import com.helger.annotation.Nonempty;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.Immutable;
+import com.helger.annotation.style.PresentForCodeCoverage;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.erechnung.erb.ws.IWSRequestBodyWriter;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws.WSJAXBContextRegistry;
+import com.helger.erechnung.erb.ws.WSStreamingAttachment;
+import com.helger.erechnung.erb.ws.WSSOAPFaultException;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryEmbeddedAttachmentType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.ObjectFactory;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+
+/**
+ * Streaming encoder and decoder for the SOAP messages of the ER&gt;B Webservice 2.0. The main
+ * invoice is read from an {@link InputStream} and Base64 encoded directly into the request, so
+ * that the memory consumption does not depend on the invoice size. This does not require a JAX-WS
+ * runtime.
+ *
+ * @author Philip Helger
+ */
+@Immutable
+public final class WS200SOAPCodec
+{
+  /** The XML namespace URI of the Webservice 2.0 messages */
+  public static final String NAMESPACE_URI = "http://erb.eproc.brz.gv.at/ws/invoicedelivery/201306/";
+  /** The SOAP action of the deliverInvoice operation */
+  public static final String SOAP_ACTION = "deliverInvoice";
+
+  private static final QName QNAME_EMBEDDED_ATTACHMENT = new QName (NAMESPACE_URI, "EmbeddedAttachment");
+  private static final QName QNAME_SETTINGS = new QName (NAMESPACE_URI, "Settings");
+
+  @PresentForCodeCoverage
+  private static final WS200SOAPCodec INSTANCE = new WS200SOAPCodec ();
+
+  private WS200SOAPCodec ()
+  {}
+
+  @NonNull
+  private static String _getAttachmentContentID (final int nIndex)
+  {
+    return "attachment" + nIndex + "@erb.gv.at";
+  }
+
+  private static void _writeRequestStart (@NonNull final OutputStream aOS,
+                                          @NonNull final byte [] aSOAPHeaderContent,
+                                          @NonNull final String sInvoiceEncoding) throws IOException
+  {
+    SOAPStreamHelper.writeEnvelopeStart (aOS, aSOAPHeaderContent);
+    SOAPStreamHelper.writeUTF8 (aOS,
+                                "<erb:deliverInvoiceInvoiceInput xmlns:erb=\"" +
+                                     NAMESPACE_URI +
+                                     "\"><erb:Invoice encoding=\"" +
+                                     SOAPStreamHelper.getXMLEscaped (sInvoiceEncoding) +
+                                     "\">");
+  }
+
+  private static void _writeRequestStart (@NonNull final OutputStream aOS,
+                                          @NonNull final byte [] aSOAPHeaderContent,
+                                          @NonNull final InputStream aInvoiceIS,
+                                          @NonNull final String sInvoiceEncoding) throws IOException
+  {
+    _writeRequestStart (aOS, aSOAPHeaderContent, sInvoiceEncoding);
+    // The main invoice is never fully in memory
+    SOAPStreamHelper.copyBase64Encoded (aInvoiceIS, aOS);
+    SOAPStreamHelper.writeUTF8 (aOS, "</erb:Invoice>");
+  }
+
+  private static void _writeEmbeddedAttachments (@NonNull final OutputStream aOS,
+                                                 @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments) throws JAXBException
+  {
+    if (aAttachments != null)
+      for (final DeliveryEmbeddedAttachmentType aAttachment : aAttachments)
+        WSJAXBContextRegistry.marshalFragment (ObjectFactory.class,
+                                               new JAXBElement <> (QNAME_EMBEDDED_ATTACHMENT,
+                                                                   DeliveryEmbeddedAttachmentType.class,
+                                                                   aAttachment),
+                                               aOS);
+  }
+
+  /**
+   * Write the embedded attachments and the settings as XML fragments. This is the part of the
+   * request body that follows the invoice.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @param aAttachments
+   *        An optional list of attachments. If the list is non-<code>null</code> it must contain
+   *        only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element. May not be <code>null</code>.
+   * @throws JAXBException
+   *         In case the attachments or the settings could not be serialized
+   */
+  static void writeDeliveryParameters (@NonNull @WillNotClose final OutputStream aOS,
+                                       @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                       @NonNull final DeliverySettingsType aSettings) throws JAXBException
+  {
+    _writeEmbeddedAttachments (aOS, aAttachments);
+    WSJAXBContextRegistry.marshalFragment (ObjectFactory.class,
+                                           new JAXBElement <> (QNAME_SETTINGS, DeliverySettingsType.class, aSettings),
+                                           aOS);
+  }
+
+  private static void _writeRequestEnd (@NonNull final OutputStream aOS) throws IOException
+  {
+    // ER>B does not support external attachments!
+    SOAPStreamHelper.writeUTF8 (aOS, "</erb:deliverInvoiceInvoiceInput>");
+    SOAPStreamHelper.writeEnvelopeEnd (aOS);
+  }
+
+  /**
+   * Write a complete deliverInvoice SOAP request to the provided output stream.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @param aSOAPHeaderContent
+   *        The serialized SOAP header content (e.g. the WS Security header) in UTF-8. May not be
+   *        <code>null</code>.
+   * @param aInvoiceIS
+   *        The input stream with the invoice to be sent. May not be <code>null</code>. It is read
+   *        until the end but not closed.
+   * @param sInvoiceEncoding
+   *        The encoding of the invoice. May neither be <code>null</code> nor empty.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non-<code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element. May not be <code>null</code>.
+   * @throws IOException
+   *         In case reading the invoice or writing the request failed
+   * @throws JAXBException
+   *         In case the attachments or the settings could not be serialized
+   */
+  public static void writeDeliveryRequest (@NonNull @WillNotClose final OutputStream aOS,
+                                           @NonNull final byte [] aSOAPHeaderContent,
+                                           @NonNull @WillNotClose final InputStream aInvoiceIS,
+                                           @NonNull @Nonempty final String sInvoiceEncoding,
+                                           @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                           @NonNull final DeliverySettingsType aSettings) throws IOException,
+                                                                                          JAXBException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    ValueEnforcer.notNull (aSOAPHeaderContent, "SOAPHeaderContent");
+    ValueEnforcer.notNull (aInvoiceIS, "InvoiceInputStream");
+    ValueEnforcer.notEmpty (sInvoiceEncoding, "InvoiceEncoding");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    _writeRequestStart (aOS, aSOAPHeaderContent, aInvoiceIS, sInvoiceEncoding);
+
+    writeDeliveryParameters (aOS, aAttachments, aSettings);
+    _writeRequestEnd (aOS);
+  }
+
+  /**
+   * Write a complete deliverInvoice SOAP request to the provided output stream, where the invoice
+   * is provided by a writer. Everything the writer emits is Base64 encoded directly into the
+   * request, so e.g. a DOM node can be serialized without an intermediate byte array.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @param aSOAPHeaderContent
+   *        The serialized SOAP header content (e.g. the WS Security header) in UTF-8. May not be
+   *        <code>null</code>.
+   * @param aInvoiceWriter
+   *        The writer for the unencoded invoice. May not be <code>null</code>.
+   * @param sInvoiceEncoding
+   *        The encoding of the invoice. May neither be <code>null</code> nor empty.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non-<code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element. May not be <code>null</code>.
+   * @throws Exception
+   *         In case the invoice writer failed, the request could not be written or the
+   *         attachments or the settings could not be serialized
+   */
+  public static void writeDeliveryRequest (@NonNull @WillNotClose final OutputStream aOS,
+                                           @NonNull final byte [] aSOAPHeaderContent,
+                                           @NonNull final IWSRequestBodyWriter aInvoiceWriter,
+                                           @NonNull @Nonempty final String sInvoiceEncoding,
+                                           @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                           @NonNull final DeliverySettingsType aSettings) throws Exception
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    ValueEnforcer.notNull (aSOAPHeaderContent, "SOAPHeaderContent");
+    ValueEnforcer.notNull (aInvoiceWriter, "InvoiceWriter");
+    ValueEnforcer.notEmpty (sInvoiceEncoding, "InvoiceEncoding");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    _writeRequestStart (aOS, aSOAPHeaderContent, sInvoiceEncoding);
+    SOAPStreamHelper.writeBase64Encoded (aInvoiceWriter, aOS);
+    SOAPStreamHelper.writeUTF8 (aOS, "</erb:Invoice>");
+
+    writeDeliveryParameters (aOS, aAttachments, aSettings);
+    _writeRequestEnd (aOS);
+  }
+
+  /**
+   * Write a complete deliverInvoice SOAP request with attachments that are read from streams. If a
+   * MIME boundary is provided, the request is written as an MTOM/XOP multipart message, where each
+   * attachment is a binary MIME part. Otherwise the attachments are Base64 encoded inline.
+   *
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. It is not closed.
+   * @param aSOAPHeaderContent
+   *        The serialized SOAP header content (e.g. the WS Security header) in UTF-8. May not be
+   *        <code>null</code>.
+   * @param aInvoiceIS
+   *        The input stream with the invoice to be sent. May not be <code>null</code>. It is read
+   *        until the end but not closed.
+   * @param sInvoiceEncoding
+   *        The encoding of the invoice. May neither be <code>null</code> nor empty.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non-<code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element. May not be <code>null</code>.
+   * @param sXOPBoundary
+   *        The MIME boundary to be used for MTOM/XOP. May be <code>null</code> to write a plain
+   *        SOAP message.
+   * @throws IOException
+   *         In case reading the content or writing the request failed
+   * @throws JAXBException
+   *         In case the settings could not be serialized
+   */
+  public static void writeStreamingDeliveryRequest (@NonNull @WillNotClose final OutputStream aOS,
+                                                    @NonNull final byte [] aSOAPHeaderContent,
+                                                    @NonNull @WillNotClose final InputStream aInvoiceIS,
+                                                    @NonNull @Nonempty final String sInvoiceEncoding,
+                                                    @Nullable final List <WSStreamingAttachment> aAttachments,
+                                                    @NonNull final DeliverySettingsType aSettings,
+                                                    @Nullable final String sXOPBoundary) throws IOException,
+                                                                                         JAXBException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    ValueEnforcer.notNull (aSOAPHeaderContent, "SOAPHeaderContent");
+    ValueEnforcer.notNull (aInvoiceIS, "InvoiceInputStream");
+    ValueEnforcer.notEmpty (sInvoiceEncoding, "InvoiceEncoding");
+    ValueEnforcer.notNull (aSettings, "Settings");
+
+    final boolean bXOP = sXOPBoundary != null;
+    if (bXOP)
+      SOAPStreamHelper.writeXOPRootPartStart (aOS, sXOPBoundary);
+
+    _writeRequestStart (aOS, aSOAPHeaderContent, aInvoiceIS, sInvoiceEncoding);
+
+    if (aAttachments != null)
+    {
+      int nIndex = 0;
+      for (final WSStreamingAttachment aAttachment : aAttachments)
+      {
+        SOAPStreamHelper.writeUTF8 (aOS,
+                                    "<erb:EmbeddedAttachment name=\"" +
+                                         SOAPStreamHelper.getXMLEscaped (aAttachment.getName ()) +
+                                         "\"" +
+                                         (aAttachment.getEncoding () != null ? " encoding=\"" +
+                                                                               SOAPStreamHelper.getXMLEscaped (aAttachment.getEncoding ()) +
+                                                                               "\""
+                                                                             : "") +
+                                         ">");
+        if (bXOP)
+        {
+          // Content follows as a MIME part
+          SOAPStreamHelper.writeUTF8 (aOS,
+                                      "<xop:Include xmlns:xop=\"" +
+                                           SOAPStreamHelper.XOP_NS_URI +
+                                           "\" href=\"cid:" +
+                                           _getAttachmentContentID (nIndex) +
+                                           "\"/>");
+        }
+        else
+        {
+          try (final InputStream aIS = aAttachment.openInputStream ())
+          {
+            SOAPStreamHelper.copyBase64Encoded (aIS, aOS);
+          }
+        }
+        SOAPStreamHelper.writeUTF8 (aOS, "</erb:EmbeddedAttachment>");
+        nIndex++;
+      }
+    }
+
+    // The attachments were already written
+    writeDeliveryParameters (aOS, null, aSettings);
+    _writeRequestEnd (aOS);
+
+    if (bXOP)
+    {
+      if (aAttachments != null)
+      {
+        int nIndex = 0;
+        for (final WSStreamingAttachment aAttachment : aAttachments)
+        {
+          try (final InputStream aIS = aAttachment.openInputStream ())
+          {
+            SOAPStreamHelper.writeXOPBinaryPart (aOS, sXOPBoundary, _getAttachmentContentID (nIndex), aIS);
+          }
+          nIndex++;
+        }
+      }
+      SOAPStreamHelper.writeXOPEnd (aOS, sXOPBoundary);
+    }
+  }
+
+  /**
+   * Read a deliverInvoice SOAP response from the provided input stream.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>. It is not closed.
+   * @return The parsed response. Never <code>null</code>.
+   * @throws XMLStreamException
+   *         In case the response is not a valid SOAP message
+   * @throws JAXBException
+   *         In case the response content could not be parsed
+   * @throws WSSOAPFaultException
+   *         In case the response contains a SOAP fault
+   */
+  @NonNull
+  public static DeliveryResponseType readDeliveryResponse (@NonNull @WillNotClose final InputStream aIS) throws XMLStreamException,
+                                                                                                         JAXBException,
+                                                                                                         WSSOAPFaultException
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+
+    final XMLStreamReader aReader = SOAPStreamHelper.createXMLStreamReader (aIS);
+    try
+    {
+      SOAPStreamHelper.moveToBodyContent (aReader);
+      return WSJAXBContextRegistry.unmarshal (ObjectFactory.class, aReader, DeliveryResponseType.class);
+    }
+    finally
+    {
+      aReader.close ();
+    }
+  }
+}
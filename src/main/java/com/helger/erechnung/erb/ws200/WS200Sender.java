@@ -16,28 +16,38 @@
  */
 package com.helger.erechnung.erb.ws200;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import javax.xml.namespace.QName;
 
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.w3c.dom.Node;
 
 import com.helger.annotation.Nonempty;
-import com.helger.annotation.concurrent.NotThreadSafe;
-import com.helger.annotation.style.OverrideOnDemand;
+import com.helger.annotation.WillNotClose;
+import com.helger.annotation.concurrent.ThreadSafe;
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.exception.InitializationException;
 import com.helger.collection.commons.CommonsArrayList;
 import com.helger.erechnung.erb.ws.AbstractWSSender;
-import com.helger.erechnung.erb.ws.SOAPAddWSSEHeaderHandler;
-import com.helger.wsclient.WSClientConfig;
-import com.helger.wsclient.WSHelper;
-import com.helger.xml.serialize.write.XMLWriter;
-import com.helger.xml.serialize.write.XMLWriterSettings;
+import com.helger.erechnung.erb.ws.EWSErrorField;
+import com.helger.erechnung.erb.ws.IWSDeliveryProtocol;
+import com.helger.erechnung.erb.ws.IWSRequestBodyWriter;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws.WSDeadline;
+import com.helger.erechnung.erb.ws.WSDeliveryDeduplicator;
+import com.helger.erechnung.erb.ws.WSHttpStatusException;
+import com.helger.erechnung.erb.ws.WSStreamingAttachment;
+import com.helger.io.resource.IReadableResource;
 
 import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverInvoiceFaultInvoice;
 import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryEmbeddedAttachmentType;
@@ -46,20 +56,21 @@ import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryErrorType;
 import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryInvoiceType;
 import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
 import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySuccessType;
 import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryType;
 import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.WSInvoiceDeliveryPort;
 import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.WSInvoiceDeliveryService;
-import jakarta.xml.ws.BindingProvider;
-import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.Service;
 
 /**
  * A wrapper for invoking the Webservice 2.0 for e-Rechnung.gv.at. The technical details can be
- * found at
+ * found at the link below. The delivery methods may be invoked concurrently once the sender is
+ * configured - see {@link AbstractWSSender} for the details.
  *
  * @see "https://www.erb.gv.at/erb?p=info_channel_ws&tab=ws20"
  * @author Philip Helger
  */
-@NotThreadSafe
+@ThreadSafe
 public class WS200Sender extends AbstractWSSender <WS200Sender>
 {
   public static final URL ENDPOINT_URL_PRODUCTION;
@@ -78,11 +89,27 @@ public class WS200Sender extends AbstractWSSender <WS200Sender>
     }
   }
 
-  // Logger to use
-  private static final Logger LOGGER = LoggerFactory.getLogger (WS200Sender.class);
+  private static final QName SERVICE_QNAME = new QName (WS200SOAPCodec.NAMESPACE_URI, "WSInvoiceDeliveryService");
+  private static final QName PORT_QNAME = new QName (WS200SOAPCodec.NAMESPACE_URI, "WSInvoiceDeliveryPort");
+
+  // The JAX-WS services are thread-safe and expensive to create, so they are
+  // created lazily once and shared by all instances
+  private static final class WSDLServiceHolder
+  {
+    // Parses the WSDL
+    static final WSInvoiceDeliveryService SERVICE = new WSInvoiceDeliveryService ();
+  }
+
+  private static final class WSDLLessServiceHolder
+  {
+    // Uses only the annotations of the port interface
+    static final Service SERVICE = Service.create (SERVICE_QNAME);
+  }
 
   // Default endpoint is production
   private URL m_aURL = ENDPOINT_URL_PRODUCTION;
+  private WSDeliveryDeduplicator <DeliverySuccessType> m_aDeduplicator;
+  private final DeliveryProtocol m_aProtocol = new DeliveryProtocol ();
 
   public WS200Sender (@NonNull @Nonempty final String sWebserviceUsername,
                       @NonNull @Nonempty final String sWebservicePassword)
@@ -101,44 +128,214 @@ public class WS200Sender extends AbstractWSSender <WS200Sender>
   {
     ValueEnforcer.notNull (aURL, "URL");
     m_aURL = aURL;
+    closePortPool ();
     return this;
   }
 
-  @NonNull
-  private static DeliveryResponseType _createError (@NonNull final String sField, @NonNull final String sMessage)
+  /**
+   * @return The duplicate detection to use for invoices delivered as byte array. May be
+   *         <code>null</code> if disabled (which is the default).
+   * @since 5.0.2
+   */
+  @Nullable
+  public final WSDeliveryDeduplicator <DeliverySuccessType> getDeduplicator ()
   {
-    return _createError (sField, new CommonsArrayList <> (sMessage));
+    return m_aDeduplicator;
   }
 
+  /**
+   * Set the duplicate detection to use. If set, each invoice delivered with
+   * {@link #deliverInvoice(byte[], List, DeliverySettingsType)} or
+   * {@link #deliverInvoice(Node, List, DeliverySettingsType)} is hashed together with the endpoint
+   * URL, the attachments and the settings. If the same delivery was successful before, the previous
+   * success element is returned without contacting ER&gt;B. If the same delivery is currently in
+   * flight, the result of that delivery is awaited, but not longer than the delivery timeout. This
+   * avoids duplicate invoices, if a delivery is repeated because its outcome is unknown (e.g. after
+   * a timeout). One instance may be shared by multiple senders. Note: with the direct engine,
+   * invoice nodes are serialized to a byte array first if duplicate detection is enabled. Invoices
+   * delivered from an input stream, a path or a resource are never checked for duplicates, because
+   * they are not held in memory before sending.
+   *
+   * @param aDeduplicator
+   *        The duplicate detection to use. May be <code>null</code> to disable it.
+   * @return this for chaining
+   * @since 5.0.2
+   */
   @NonNull
-  private static DeliveryResponseType _createError (@NonNull final String sField,
-                                                    @NonNull final List <String> aMessages)
+  public final WS200Sender setDeduplicator (@Nullable final WSDeliveryDeduplicator <DeliverySuccessType> aDeduplicator)
   {
-    final DeliveryResponseType ret = new DeliveryResponseType ();
-    final DeliveryErrorType aError = new DeliveryErrorType ();
-    for (final String sMessage : aMessages)
-    {
-      final DeliveryErrorDetailType aDetail = new DeliveryErrorDetailType ();
-      aDetail.setField (sField);
-      aDetail.setMessage (sMessage);
-      aError.addErrorDetail (aDetail);
-    }
-    ret.setError (aError);
-    return ret;
+    m_aDeduplicator = aDeduplicator;
+    return this;
   }
 
   /**
-   * Protected method to be overridden.
-   *
-   * @param aWSClientConfig
-   *        Client config to be modified. May not be <code>null</code>.
+   * The Webservice 2.0 specific part of a delivery.
    */
-  @OverrideOnDemand
-  protected void modifyWSClientConfig (@NonNull final WSClientConfig aWSClientConfig)
-  {}
+  private final class DeliveryProtocol implements
+                                       IWSDeliveryProtocol <DeliveryResponseType, DeliverySuccessType, DeliveryEmbeddedAttachmentType, DeliverySettingsType>
+  {
+    @Override
+    public String getDisplayName ()
+    {
+      return "ER>B Webservice 2.0";
+    }
+
+    @Override
+    public URL getURL ()
+    {
+      return m_aURL;
+    }
+
+    @Override
+    public WSDeliveryDeduplicator <DeliverySuccessType> getDeduplicator ()
+    {
+      return m_aDeduplicator;
+    }
+
+    @Override
+    public DeliveryResponseType invokeJAXWS (@NonNull final byte [] aInvoiceBytes,
+                                             @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                             @NonNull final DeliverySettingsType aSettings,
+                                             @Nullable final WSDeadline aDeadline) throws Exception
+    {
+      // Prepare document
+      final DeliveryType aDelivery = new DeliveryType ();
+
+      // Main invoice
+      final DeliveryInvoiceType aInvoice = new DeliveryInvoiceType ();
+      aInvoice.setValue (aInvoiceBytes);
+      aInvoice.setEncoding (getInvoiceEncoding ().name ());
+      aDelivery.setInvoice (aInvoice);
+
+      // Embedded attachments
+      aDelivery.setEmbeddedAttachment (aAttachments);
+
+      // ER>B does not support external attachments!
+
+      // Settings
+      aDelivery.setSettings (aSettings);
+
+      return invokePort (m_aURL,
+                         WS200Sender.this::_createPort,
+                         aDeadline,
+                         (final WSInvoiceDeliveryPort aPort) -> aPort.deliverInvoice (aDelivery));
+    }
+
+    @Override
+    public String getSOAPAction ()
+    {
+      return WS200SOAPCodec.SOAP_ACTION;
+    }
+
+    @Override
+    public void writeRequest (@NonNull @WillNotClose final OutputStream aOS,
+                              @NonNull final byte [] aSOAPHeaderContent,
+                              @NonNull final IWSRequestBodyWriter aInvoiceWriter,
+                              @NonNull @Nonempty final String sInvoiceEncoding,
+                              @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                              @NonNull final DeliverySettingsType aSettings) throws Exception
+    {
+      WS200SOAPCodec.writeDeliveryRequest (aOS,
+                                           aSOAPHeaderContent,
+                                           aInvoiceWriter,
+                                           sInvoiceEncoding,
+                                           aAttachments,
+                                           aSettings);
+    }
+
+    @Override
+    public DeliveryResponseType readResponse (@NonNull @WillNotClose final InputStream aIS) throws Exception
+    {
+      return WS200SOAPCodec.readDeliveryResponse (aIS);
+    }
+
+    @Override
+    public void writeParameters (@NonNull @WillNotClose final OutputStream aOS,
+                                 @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                 @NonNull final DeliverySettingsType aSettings) throws IOException
+    {
+      if (aAttachments != null)
+        for (final DeliveryEmbeddedAttachmentType aAttachment : aAttachments)
+        {
+          final byte [] aContent = aAttachment.getValue ();
+          SOAPStreamHelper.writeUTF8 (aOS,
+                                      aAttachment.getName () +
+                                           ' ' +
+                                           aAttachment.getEncoding () +
+                                           ' ' +
+                                           (aContent == null ? -1 : aContent.length) +
+                                           ' ');
+          if (aContent != null)
+            aOS.write (aContent);
+        }
+      // The generated hash code is content based and avoids marshalling the settings
+      SOAPStreamHelper.writeUTF8 (aOS, Integer.toString (aSettings.hashCode ()));
+    }
+
+    @Override
+    public List <String> getDeclaredFaultMessages (@NonNull final Throwable t)
+    {
+      if (!(t instanceof DeliverInvoiceFaultInvoice))
+        return null;
+      final DeliverInvoiceFaultInvoice ex = (DeliverInvoiceFaultInvoice) t;
+      return ex.getFaultInfo () != null ? ex.getFaultInfo ().getMessage () : new CommonsArrayList <> (ex.getMessage ());
+    }
+
+    @Override
+    public DeliveryResponseType createError (@NonNull final EWSErrorField eField, @NonNull final List <String> aMessages)
+    {
+      final DeliveryResponseType ret = new DeliveryResponseType ();
+      final DeliveryErrorType aError = new DeliveryErrorType ();
+      for (final String sMessage : aMessages)
+      {
+        final DeliveryErrorDetailType aDetail = new DeliveryErrorDetailType ();
+        aDetail.setField (eField.getFieldName ());
+        aDetail.setMessage (sMessage);
+        aError.addErrorDetail (aDetail);
+      }
+      ret.setError (aError);
+      return ret;
+    }
+
+    @Override
+    public DeliveryResponseType createSuccess (@NonNull final DeliverySuccessType aSuccess)
+    {
+      final DeliveryResponseType ret = new DeliveryResponseType ();
+      ret.setSuccess (aSuccess);
+      return ret;
+    }
+
+    @Override
+    public DeliverySuccessType getSuccess (@NonNull final DeliveryResponseType aResponse)
+    {
+      return aResponse.getSuccess ();
+    }
+
+    @Override
+    public String getFirstErrorField (@NonNull final DeliveryResponseType aResponse)
+    {
+      final DeliveryErrorType aError = aResponse.getError ();
+      return aError == null || aError.getErrorDetail ().isEmpty () ? null : aError.getErrorDetail ().get (0).getField ();
+    }
+
+    @Override
+    public String getDocumentID (@NonNull final DeliverySuccessType aSuccess)
+    {
+      return aSuccess.getDocumentID ();
+    }
+  }
+
+  @NonNull
+  private WSInvoiceDeliveryPort _createPort ()
+  {
+    final WSInvoiceDeliveryPort aPort = isUseWSDL () ? WSDLServiceHolder.SERVICE.getWSInvoiceDeliveryPort ()
+                                                     : WSDLLessServiceHolder.SERVICE.getPort (PORT_QNAME, WSInvoiceDeliveryPort.class);
+    return configurePort (aPort, m_aURL);
+  }
 
   /**
    * This is the main sending routine. It can be invoked multiple times with different invoices.
+   * Retryable failures are retried according to {@link #getRetryPolicy()}.
    *
    * @param aOriginalInvoice
    *        The original invoice in an XML representation. May not be <code>null</code>. It may be
@@ -157,27 +354,12 @@ public class WS200Sender extends AbstractWSSender <WS200Sender>
                                               @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
                                               @NonNull final DeliverySettingsType aSettings)
   {
-    ValueEnforcer.notNull (aOriginalInvoice, "OriginalInvoice");
-    ValueEnforcer.notNull (aSettings, "Settings");
-
-    // Convert XML node to a byte array
-    final XMLWriterSettings aXWS = new XMLWriterSettings ().setCharset (getInvoiceEncoding ())
-                                                           .setNamespaceContext (getNamespaceContext ());
-    final byte [] aInvoiceBytes = XMLWriter.getNodeAsBytes (aOriginalInvoice, aXWS);
-    if (aInvoiceBytes == null)
-    {
-      LOGGER.error ("Failed to serialize the specified XML document");
-      return _createError ("document", "Failed to serialize the specified XML document");
-    }
-
-    if (false)
-      LOGGER.info ("Created XML:\n" + new String (aInvoiceBytes, getInvoiceEncoding ()));
-
-    return deliverInvoice (aInvoiceBytes, aAttachments, aSettings);
+    return deliverNode (m_aProtocol, aOriginalInvoice, aAttachments, aSettings);
   }
 
   /**
    * This is the main sending routine. It can be invoked multiple times with different invoices.
+   * Retryable failures are retried according to {@link #getRetryPolicy()}.
    *
    * @param aInvoiceBytes
    *        The byte array representation of the XML invoice to be send. May not be
@@ -197,75 +379,236 @@ public class WS200Sender extends AbstractWSSender <WS200Sender>
                                               @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
                                               @NonNull final DeliverySettingsType aSettings)
   {
-    ValueEnforcer.notNull (aInvoiceBytes, "InvoiceBytes");
-    ValueEnforcer.notNull (aSettings, "Settings");
+    return deliverBytes (m_aProtocol, aInvoiceBytes, aAttachments, aSettings);
+  }
 
-    // Some debug output
-    WSHelper.enableSoapLogging (isDebugMode ());
+  /**
+   * Send an invoice that is read from a stream. In contrast to the other delivery methods, the
+   * invoice is Base64 encoded directly into the HTTP request, so the memory consumption does not
+   * grow with the invoice size. This method does not use JAX-WS and therefore neither port pooling
+   * nor {@link #modifyWSClientConfig(com.helger.wsclient.WSClientConfig)} is applied. The delivery
+   * is never retried, because the stream can only be read once, and it is never checked for
+   * duplicates (see {@link #setDeduplicator(WSDeliveryDeduplicator)}).
+   *
+   * @param aInvoiceIS
+   *        The input stream with the XML invoice to be send. May not be <code>null</code>. It is
+   *        read until the end but not closed. It may be in any of the formats supported by ER&gt;B
+   *        (ebInterface 4.x, 5.x or UBL 2.x) and must use the encoding returned by
+   *        {@link #getInvoiceEncoding()}.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 2.0. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> upload status as returned by the ER&gt;B Webservice. In case of
+   *         an internal error, a corresponding error structure is created.
+   */
+  @NonNull
+  public DeliveryResponseType deliverInvoice (@NonNull @WillNotClose final InputStream aInvoiceIS,
+                                              @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                              @NonNull final DeliverySettingsType aSettings)
+  {
+    return deliverStream (m_aProtocol, aInvoiceIS, aAttachments, aSettings);
+  }
 
-    // Prepare document
-    final DeliveryType aDelivery = new DeliveryType ();
+  /**
+   * Send an invoice that is read from a file. The invoice is streamed and never read into memory
+   * completely. See {@link #deliverInvoice(InputStream, List, DeliverySettingsType)} for details.
+   *
+   * @param aInvoicePath
+   *        The path of the XML invoice to be send. May not be <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 2.0. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> upload status as returned by the ER&gt;B Webservice. In case of
+   *         an internal error, a corresponding error structure is created.
+   */
+  @NonNull
+  public DeliveryResponseType deliverInvoice (@NonNull final Path aInvoicePath,
+                                              @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                              @NonNull final DeliverySettingsType aSettings)
+  {
+    return deliverPath (m_aProtocol, aInvoicePath, aAttachments, aSettings);
+  }
 
-    // Main invoice
-    final DeliveryInvoiceType aInvoice = new DeliveryInvoiceType ();
-    aInvoice.setValue (aInvoiceBytes);
-    aInvoice.setEncoding (getInvoiceEncoding ().name ());
-    aDelivery.setInvoice (aInvoice);
+  /**
+   * Send an invoice that is read from a resource. The invoice is streamed and never read into
+   * memory completely. See {@link #deliverInvoice(InputStream, List, DeliverySettingsType)} for
+   * details.
+   *
+   * @param aInvoiceRes
+   *        The resource with the XML invoice to be send. May not be <code>null</code>.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 2.0. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> upload status as returned by the ER&gt;B Webservice. In case of
+   *         an internal error, a corresponding error structure is created.
+   */
+  @NonNull
+  public DeliveryResponseType deliverInvoice (@NonNull final IReadableResource aInvoiceRes,
+                                              @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                              @NonNull final DeliverySettingsType aSettings)
+  {
+    return deliverResource (m_aProtocol, aInvoiceRes, aAttachments, aSettings);
+  }
 
-    // Embedded attachments
-    aDelivery.setEmbeddedAttachment (aAttachments);
+  @NonNull
+  private DeliveryResponseType _deliverStreaming (@NonNull final IReadableResource aInvoiceRes,
+                                                  @Nullable final List <WSStreamingAttachment> aAttachments,
+                                                  @NonNull final DeliverySettingsType aSettings,
+                                                  final boolean bUseXOP,
+                                                  @Nullable final WSDeadline aDeadline) throws Exception
+  {
+    final byte [] aHeader = getWSSEHeaderBytes ();
+    final String sBoundary = bUseXOP ? "MIMEBoundary_" + UUID.randomUUID ().toString () : null;
+    return postSOAPRequest (m_aURL,
+                            WS200SOAPCodec.SOAP_ACTION,
+                            bUseXOP ? SOAPStreamHelper.getXOPContentType (sBoundary)
+                                    : SOAPStreamHelper.SOAP11_CONTENT_TYPE,
+                            aOS -> {
+                              try (final InputStream aInvoiceIS = aInvoiceRes.getInputStream ())
+                              {
+                                if (aInvoiceIS == null)
+                                  throw new IOException ("Failed to open the invoice resource " + aInvoiceRes.getPath ());
+                                WS200SOAPCodec.writeStreamingDeliveryRequest (aOS,
+                                                                              aHeader,
+                                                                              aInvoiceIS,
+                                                                              getInvoiceEncoding ().name (),
+                                                                              aAttachments,
+                                                                              aSettings,
+                                                                              sBoundary);
+                              }
+                            },
+                            WS200SOAPCodec::readDeliveryResponse,
+                            aDeadline);
+  }
 
-    // ER>B does not support external attachments!
+  /**
+   * Send an invoice with attachments that are read from files or streams. Neither the invoice nor
+   * the attachments are ever completely in memory. If MTOM is enabled (see
+   * {@link #setMTOMEnabled(boolean)}), the attachments are sent as binary MIME parts. If the
+   * endpoint rejects the MTOM request, the delivery is repeated with inline Base64 attachments,
+   * if all attachments can be read multiple times (see {@link WSStreamingAttachment#isReadMultiple()}).
+   * This method does not use JAX-WS and therefore neither port pooling nor
+   * {@link #modifyWSClientConfig(com.helger.wsclient.WSClientConfig)} is applied.
+   *
+   * @param aInvoiceRes
+   *        The resource with the XML invoice to be send. May not be <code>null</code>. It must be
+   *        readable multiple times.
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 2.0. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> upload status as returned by the ER&gt;B Webservice. In case of
+   *         an internal error, a corresponding error structure is created.
+   */
+  @NonNull
+  public DeliveryResponseType deliverInvoiceWithAttachmentStreams (@NonNull final IReadableResource aInvoiceRes,
+                                                                   @Nullable final List <WSStreamingAttachment> aAttachments,
+                                                                   @NonNull final DeliverySettingsType aSettings)
+  {
+    final long nStartNanos = System.nanoTime ();
+    return recordDeliveryOutcome (m_aProtocol,
+                                  nStartNanos,
+                                  aAttachments,
+                                  _deliverWithAttachmentStreams (aInvoiceRes, aAttachments, aSettings));
+  }
 
-    // Settings
-    aDelivery.setSettings (aSettings);
+  @NonNull
+  private DeliveryResponseType _deliverWithAttachmentStreams (@NonNull final IReadableResource aInvoiceRes,
+                                                              @Nullable final List <WSStreamingAttachment> aAttachments,
+                                                              @NonNull final DeliverySettingsType aSettings)
+  {
+    ValueEnforcer.notNull (aInvoiceRes, "InvoiceResource");
+    ValueEnforcer.notNull (aSettings, "Settings");
 
+    final boolean bUseXOP = isMTOMActive (m_aURL) && aAttachments != null && !aAttachments.isEmpty ();
+    // The fallback is part of the same delivery
+    final WSDeadline aDeadline = createDeliveryDeadline ();
     try
     {
-      final WSClientConfig aWSClientConfig = new WSClientConfig (m_aURL);
-
-      if (isTrustAllCertificates ())
+      try
       {
-        // Maybe required to trust txm.portal.at depending on the installed OS
-        // root certificates.
-        aWSClientConfig.setSSLSocketFactoryTrustAll ();
+        return _deliverStreaming (aInvoiceRes, aAttachments, aSettings, bUseXOP, aDeadline);
       }
+      catch (final WSHttpStatusException ex)
+      {
+        if (!bUseXOP || !ex.isUnsupportedMediaType ())
+          throw ex;
 
-      if (isTrustAllHostnames ())
-        aWSClientConfig.setHostnameVerifierTrustAll ();
-
-      // Ensure the WSSE headers are added using our handler
-      aWSClientConfig.handlers ()
-                     .add (new SOAPAddWSSEHeaderHandler (getWebserviceUsername (), getWebservicePassword ()));
-
-      // Customizing callback
-      modifyWSClientConfig (aWSClientConfig);
-
-      // Invoke WS
-      final WSInvoiceDeliveryService aService = new WSInvoiceDeliveryService ();
-      final WSInvoiceDeliveryPort aPort = aService.getWSInvoiceDeliveryPort ();
-      aWSClientConfig.applyWSSettingsToBindingProvider ((BindingProvider) aPort);
+        markMTOMUnsupported (m_aURL);
+        for (final WSStreamingAttachment aAttachment : aAttachments)
+          if (!aAttachment.isReadMultiple ())
+            throw ex;
 
-      // Main sending
-      final DeliveryResponseType aResult = aPort.deliverInvoice (aDelivery);
-      return aResult;
-    }
-    catch (final DeliverInvoiceFaultInvoice ex)
-    {
-      LOGGER.error ("Error uploading the document to ER>B Webservice 2.0!", ex);
-      return _createError ("document",
-                           ex.getFaultInfo () != null ? ex.getFaultInfo ().getMessage () : new CommonsArrayList <> (ex
-                                                                                                                      .getMessage ()));
-    }
-    catch (final WebServiceException ex)
-    {
-      LOGGER.error ("Error transmitting the document to ER>B Webservice 2.0!", ex);
-      return _createError ("webservice", ex.getMessage ());
+        // Try again with inline attachments
+        return _deliverStreaming (aInvoiceRes, aAttachments, aSettings, false, aDeadline);
+      }
     }
-    catch (final Throwable t)
+    catch (final Exception ex)
     {
-      LOGGER.error ("Generic error invoking ER>B Webservice 2.0", t);
-      return _createError ("general", t.getMessage ());
+      return createDeliveryError (m_aProtocol, ex);
     }
   }
+
+  /**
+   * Asynchronous version of {@link #deliverInvoice(Node, List, DeliverySettingsType)}. The
+   * delivery is performed on the executor returned by {@link #getAsyncExecutor()}. The passed node
+   * must not be modified until the returned future is completed.
+   *
+   * @param aOriginalInvoice
+   *        The original invoice in an XML representation. May not be <code>null</code>. It may be
+   *        in any of the formats supported by ER&gt;B (ebInterface 4.x, 5.x or UBL 2.x).
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 2.0. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> future that is completed with the upload status as returned by
+   *         the ER&gt;B Webservice. In case of an internal error, the future is completed with a
+   *         corresponding error structure.
+   */
+  @NonNull
+  public CompletableFuture <DeliveryResponseType> deliverInvoiceAsync (@NonNull final Node aOriginalInvoice,
+                                                                       @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                                                       @NonNull final DeliverySettingsType aSettings)
+  {
+    return deliverNodeAsync (m_aProtocol, aOriginalInvoice, aAttachments, aSettings);
+  }
+
+  /**
+   * Asynchronous version of {@link #deliverInvoice(byte[], List, DeliverySettingsType)}. The
+   * delivery is performed on the executor returned by {@link #getAsyncExecutor()}.
+   *
+   * @param aInvoiceBytes
+   *        The byte array representation of the XML invoice to be send. May not be
+   *        <code>null</code>. It may be in any of the formats supported by ER&gt;B (ebInterface
+   *        4.x, 5.x or UBL 2.x).
+   * @param aAttachments
+   *        An optional list of attachments to this invoice. If the list is non- <code>null</code>
+   *        it must contain only non-<code>null</code> elements.
+   * @param aSettings
+   *        The settings element as specified by the ER&gt;B Webservice 2.0. Within this settings
+   *        element e.g. the test-flag can be set. May not be <code>null</code>.
+   * @return A non-<code>null</code> future that is completed with the upload status as returned by
+   *         the ER&gt;B Webservice. In case of an internal error, the future is completed with a
+   *         corresponding error structure.
+   */
+  @NonNull
+  public CompletableFuture <DeliveryResponseType> deliverInvoiceAsync (@NonNull final byte [] aInvoiceBytes,
+                                                                       @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                                                       @NonNull final DeliverySettingsType aSettings)
+  {
+    return deliverBytesAsync (m_aProtocol, aInvoiceBytes, aAttachments, aSettings);
+  }
 }
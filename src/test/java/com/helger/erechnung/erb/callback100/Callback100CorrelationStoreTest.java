@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.callback100;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySuccessType;
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.CallbackType;
+
+/**
+ * Test class for class {@link Callback100CorrelationStore}.
+ *
+ * @author Philip Helger
+ */
+public final class Callback100CorrelationStoreTest
+{
+  private static final Duration LONG_TIMEOUT = Duration.ofDays (3);
+
+  private static CallbackType _createCallback (final String sDocumentID, final String sSupplierInvoiceNumber)
+  {
+    final CallbackType ret = new CallbackType ();
+    ret.setDocumentID (sDocumentID);
+    ret.setSupplierInvoiceNumber (sSupplierInvoiceNumber);
+    ret.setOverallsuccess (true);
+    ret.setVersion ("100");
+    return ret;
+  }
+
+  @Test
+  public void testMatch () throws Exception
+  {
+    final List <CallbackType> aUnmatched = new ArrayList <> ();
+    try (final Callback100CorrelationStore aStore = new Callback100CorrelationStore (Duration.ofHours (1),
+                                                                                     aUnmatched::add))
+    {
+      final DeliverySuccessType aSuccess = new DeliverySuccessType ();
+      aSuccess.setDocumentID ("doc-1");
+      aSuccess.setSupplierInvoiceNumber ("inv-1");
+      final CompletableFuture <CallbackType> aFuture = aStore.register (aSuccess, LONG_TIMEOUT);
+      assertFalse (aFuture.isDone ());
+      assertEquals (1, aStore.size ());
+
+      // Registering again returns the same future
+      assertSame (aFuture, aStore.register ("doc-1", "inv-1", LONG_TIMEOUT));
+      assertEquals (1, aStore.size ());
+
+      // Same document ID but another invoice number
+      aStore.onCallback (_createCallback ("doc-1", "inv-2"));
+      assertFalse (aFuture.isDone ());
+      assertEquals (1, aUnmatched.size ());
+
+      final CallbackType aCallback = _createCallback ("doc-1", "inv-1");
+      aStore.onCallback (aCallback);
+      assertSame (aCallback, aFuture.get ());
+      assertEquals (0, aStore.size ());
+      assertEquals (1, aStore.getMatchedCount ());
+
+      // Duplicate callback
+      aStore.onCallback (aCallback);
+      assertEquals (2, aUnmatched.size ());
+      assertEquals (2, aStore.getUnmatchedCount ());
+    }
+  }
+
+  @Test
+  public void testExpiry () throws Exception
+  {
+    try (final Callback100CorrelationStore aStore = new Callback100CorrelationStore ())
+    {
+      final CompletableFuture <CallbackType> aShort = aStore.register ("doc-1", "inv-1", Duration.ofMillis (1));
+      final CompletableFuture <CallbackType> aLong = aStore.register ("doc-2", "inv-2", LONG_TIMEOUT);
+      Thread.sleep (20);
+      assertEquals (1, aStore.expireOverdue ());
+      assertEquals (1, aStore.size ());
+      assertEquals (1, aStore.getExpiredCount ());
+      try
+      {
+        aShort.get ();
+        fail ();
+      }
+      catch (final ExecutionException ex)
+      {
+        assertTrue (ex.getCause () instanceof TimeoutException);
+      }
+      assertFalse (aLong.isDone ());
+
+      // Late callback
+      aStore.onCallback (_createCallback ("doc-1", "inv-1"));
+      assertEquals (1, aStore.getUnmatchedCount ());
+      assertEquals (0, aStore.getMatchedCount ());
+    }
+  }
+
+  @Test
+  public void testManyEntries () throws Exception
+  {
+    final int nCount = 100_000;
+    try (final Callback100CorrelationStore aStore = new Callback100CorrelationStore ())
+    {
+      final List <CompletableFuture <CallbackType>> aFutures = new ArrayList <> (nCount);
+      for (int i = 0; i < nCount; ++i)
+        aFutures.add (aStore.register ("doc-" + i, "inv-" + i, i % 2 == 0 ? LONG_TIMEOUT : Duration.ofMillis (1)));
+      assertEquals (nCount, aStore.size ());
+
+      Thread.sleep (20);
+      assertEquals (nCount / 2, aStore.expireOverdue ());
+
+      // All remaining entries must still be found after the removals
+      for (int i = 0; i < nCount; i += 2)
+        aStore.onCallback (_createCallback ("doc-" + i, "inv-" + i));
+      assertEquals (0, aStore.size ());
+      for (int i = 0; i < nCount; ++i)
+        assertEquals (i % 2 == 0, !aFutures.get (i).isCompletedExceptionally ());
+    }
+  }
+
+  @Test
+  public void testClose ()
+  {
+    final Callback100CorrelationStore aStore = new Callback100CorrelationStore ();
+    final CompletableFuture <CallbackType> aFuture = aStore.register ("doc-1", "inv-1", LONG_TIMEOUT);
+    aStore.close ();
+    assertTrue (aFuture.isCancelled ());
+    assertEquals (0, aStore.size ());
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.callback100;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jspecify.annotations.NonNull;
+import org.junit.Test;
+
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.erechnung.erb.simulator.ERBSimulator;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws200.WS200Sender;
+import com.helger.io.resource.ClassPathResource;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryCallbackType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.CallbackType;
+
+/**
+ * Test class for class {@link Callback100Receiver}.
+ *
+ * @author Philip Helger
+ */
+public final class Callback100ReceiverTest
+{
+  private static final String PATH = "/erb-callback";
+
+  @NonNull
+  private static InetSocketAddress _getLoopback ()
+  {
+    return new InetSocketAddress (InetAddress.getLoopbackAddress (), 0);
+  }
+
+  @NonNull
+  private static byte [] _createRequest (final String sDocumentID) throws Exception
+  {
+    final CallbackType aCallback = new CallbackType ();
+    aCallback.setDocumentID (sDocumentID);
+    aCallback.setSupplierInvoiceNumber ("inv-" + sDocumentID);
+    aCallback.setOverallsuccess (true);
+    aCallback.setVersion ("100");
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    Callback100SOAPCodec.writeCallbackRequest (aBAOS, aCallback);
+    return aBAOS.toByteArray ();
+  }
+
+  private static int _send (final URL aURL, final String sMethod, final byte [] aBody) throws IOException
+  {
+    final HttpURLConnection aConn = (HttpURLConnection) aURL.openConnection ();
+    try
+    {
+      aConn.setRequestMethod (sMethod);
+      if (aBody != null)
+      {
+        aConn.setDoOutput (true);
+        aConn.setRequestProperty ("Content-Type", SOAPStreamHelper.SOAP11_CONTENT_TYPE);
+        try (final OutputStream aOS = aConn.getOutputStream ())
+        {
+          aOS.write (aBody);
+        }
+      }
+      return aConn.getResponseCode ();
+    }
+    finally
+    {
+      aConn.disconnect ();
+    }
+  }
+
+  @Test
+  public void testReceive () throws Exception
+  {
+    final BlockingQueue <CallbackType> aReceived = new LinkedBlockingQueue <> ();
+    try (final Callback100Receiver aReceiver = new Callback100Receiver (aReceived::add))
+    {
+      assertNull (aReceiver.getURL ());
+      aReceiver.start (_getLoopback (), PATH);
+      final URL aURL = aReceiver.getURL ();
+      assertNotNull (aURL);
+      assertTrue (aURL.toExternalForm ().endsWith (PATH));
+
+      for (int i = 0; i < 10; ++i)
+        assertEquals (Callback100Receiver.HTTP_ACCEPTED, _send (aURL, "POST", _createRequest ("doc-" + i)));
+
+      for (int i = 0; i < 10; ++i)
+        assertNotNull (aReceived.poll (10, TimeUnit.SECONDS));
+      assertEquals (10, aReceiver.getAcceptedCount ());
+
+      // Malformed
+      assertEquals (Callback100Receiver.HTTP_BAD_REQUEST,
+                    _send (aURL, "POST", "<no-soap/>".getBytes (StandardCharsets.UTF_8)));
+      assertEquals (1, aReceiver.getMalformedCount ());
+
+      // Method not allowed
+      assertEquals (405, _send (aURL, "GET", null));
+      assertEquals (10, aReceiver.getAcceptedCount ());
+    }
+  }
+
+  @Test
+  public void testQueueFull () throws Exception
+  {
+    final CountDownLatch aRelease = new CountDownLatch (1);
+    final ICallback100Listener aBlockingListener = aCallback -> {
+      try
+      {
+        aRelease.await ();
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+    };
+    try (final Callback100Receiver aReceiver = new Callback100Receiver (aBlockingListener, 1, 1))
+    {
+      // One in the listener, one in the queue
+      int nAccepted = 0;
+      int nRejected = 0;
+      for (int i = 0; i < 4; ++i)
+      {
+        final int nStatus = aReceiver.handleRequest (new ByteArrayInputStream (_createRequest ("doc-" + i)));
+        if (nStatus == Callback100Receiver.HTTP_ACCEPTED)
+          nAccepted++;
+        else
+        {
+          assertEquals (Callback100Receiver.HTTP_SERVICE_UNAVAILABLE, nStatus);
+          nRejected++;
+        }
+      }
+      assertEquals (2, nAccepted);
+      assertEquals (2, nRejected);
+      assertEquals (2, aReceiver.getRejectedCount ());
+      aRelease.countDown ();
+    }
+  }
+
+  @Test
+  public void testCallbackFromSimulator () throws Exception
+  {
+    final BlockingQueue <CallbackType> aReceived = new LinkedBlockingQueue <> ();
+    try (final ERBSimulator aSimulator = new ERBSimulator ();
+         final Callback100Receiver aReceiver = new Callback100Receiver (aReceived::add))
+    {
+      aSimulator.setCredentials ("simulator", "secret").setCallbackDelay (Duration.ofMillis (50));
+      aReceiver.start (_getLoopback (), PATH);
+
+      final DeliveryCallbackType aCallbackSettings = new DeliveryCallbackType ();
+      aCallbackSettings.setUrl (aReceiver.getURL ().toExternalForm ());
+      aCallbackSettings.setVersion ("100");
+      final DeliverySettingsType aSettings = new DeliverySettingsType ();
+      aSettings.setTest (Boolean.TRUE);
+      aSettings.setCallback (aCallbackSettings);
+
+      final WS200Sender aSender = new WS200Sender ("simulator", "secret").setURL (aSimulator.getURLV2 ());
+      final DeliveryResponseType aResponse = aSender.deliverInvoice (StreamHelper.getAllBytes (new ClassPathResource ("test-invoices/ebi60.xml")),
+                                                                     null,
+                                                                     aSettings);
+      assertNotNull (aResponse.getSuccess ());
+
+      final CallbackType aCallback = aReceived.poll (10, TimeUnit.SECONDS);
+      assertNotNull (aCallback);
+      assertEquals (aResponse.getSuccess ().getDocumentID (), aCallback.getDocumentID ());
+      assertEquals (aResponse.getSuccess ().getSupplierInvoiceNumber (), aCallback.getSupplierInvoiceNumber ());
+    }
+  }
+}
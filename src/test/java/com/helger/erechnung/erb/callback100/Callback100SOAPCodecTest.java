@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.callback100;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.CallbackHashAlgorithmType;
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.CallbackPrintableInvoiceType;
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.CallbackType;
+
+/**
+ * Test class for class {@link Callback100SOAPCodec}.
+ *
+ * @author Philip Helger
+ */
+public final class Callback100SOAPCodecTest
+{
+  @Rule
+  public final TemporaryFolder m_aTempFolder = new TemporaryFolder ();
+
+  private static byte [] _createRequestWithPrintableInvoice (final byte [] aPDF, final String sHashValue) throws Exception
+  {
+    final CallbackPrintableInvoiceType aPrintableInvoice = new CallbackPrintableInvoiceType ();
+    aPrintableInvoice.setValue (aPDF);
+    aPrintableInvoice.setMimetype ("application/pdf");
+    aPrintableInvoice.setOriginalsize (aPDF.length);
+    aPrintableInvoice.setHashalgo (CallbackHashAlgorithmType.SHA_256);
+    aPrintableInvoice.setHashvalue (sHashValue);
+
+    final CallbackType aCallback = new CallbackType ();
+    aCallback.setDocumentID ("doc/1");
+    aCallback.setSupplierInvoiceNumber ("inv-1");
+    aCallback.setPrintableInvoice (aPrintableInvoice);
+    aCallback.setOverallsuccess (true);
+    aCallback.setVersion ("100");
+
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    Callback100SOAPCodec.writeCallbackRequest (aBAOS, aCallback);
+    return aBAOS.toByteArray ();
+  }
+
+  @Test
+  public void testRoundTrip () throws Exception
+  {
+    final CallbackType aCallback = new CallbackType ();
+    aCallback.setDocumentID ("doc-1");
+    aCallback.setSupplierInvoiceNumber ("inv-<1>");
+    aCallback.setOverallsuccess (true);
+    aCallback.setVersion ("100");
+
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    Callback100SOAPCodec.writeCallbackRequest (aBAOS, aCallback);
+
+    final CallbackType aRead = Callback100SOAPCodec.readCallbackRequest (new ByteArrayInputStream (aBAOS.toByteArray ()));
+    assertEquals ("doc-1", aRead.getDocumentID ());
+    assertEquals ("inv-<1>", aRead.getSupplierInvoiceNumber ());
+    assertTrue (aRead.isOverallsuccess ());
+    assertEquals ("100", aRead.getVersion ());
+  }
+
+  @Test
+  public void testReadUnexpectedElement () throws Exception
+  {
+    final String sRequest = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                            "<S:Envelope xmlns:S=\"" +
+                            SOAPStreamHelper.SOAP11_NS_URI +
+                            "\"><S:Body><foo xmlns=\"urn:other\"/></S:Body></S:Envelope>";
+    try
+    {
+      Callback100SOAPCodec.readCallbackRequest (new ByteArrayInputStream (sRequest.getBytes (StandardCharsets.UTF_8)));
+      fail ();
+    }
+    catch (final XMLStreamException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testStreamPrintableInvoice () throws Exception
+  {
+    // Bigger than the internal chunk size
+    final byte [] aPDF = new byte [1_000_000];
+    new Random (42).nextBytes (aPDF);
+    final String sHashValue = HexFormat.of ().formatHex (MessageDigest.getInstance ("SHA-256").digest (aPDF));
+    final byte [] aRequest = _createRequestWithPrintableInvoice (aPDF, sHashValue);
+
+    final Callback100PrintableInvoiceDirectorySink aSink = new Callback100PrintableInvoiceDirectorySink (m_aTempFolder.getRoot ()
+                                                                                                                       .toPath ());
+    final CallbackType aRead = Callback100SOAPCodec.readCallbackRequest (new ByteArrayInputStream (aRequest), aSink);
+    assertEquals ("doc/1", aRead.getDocumentID ());
+    final CallbackPrintableInvoiceType aPrintableInvoice = aRead.getPrintableInvoice ();
+    assertNotNull (aPrintableInvoice);
+    assertEquals ("application/pdf", aPrintableInvoice.getMimetype ());
+    assertEquals (aPDF.length, aPrintableInvoice.getOriginalsize ());
+    assertEquals (sHashValue, aPrintableInvoice.getHashvalue ());
+    // Only the metadata is kept in memory
+    assertTrue (aPrintableInvoice.getValue () == null || aPrintableInvoice.getValue ().length == 0);
+
+    final Path aFile = aSink.getFile ("doc/1", "application/pdf");
+    assertEquals ("doc_1.pdf", aFile.getFileName ().toString ());
+    assertArrayEquals (aPDF, Files.readAllBytes (aFile));
+    // No temporary files are left
+    try (final Stream <Path> aFiles = Files.list (aSink.getDirectory ()))
+    {
+      assertEquals (1, aFiles.count ());
+    }
+
+    // Without a sink, the printable invoice is contained in the callback
+    assertArrayEquals (aPDF,
+                       Callback100SOAPCodec.readCallbackRequest (new ByteArrayInputStream (aRequest), null)
+                                           .getPrintableInvoice ()
+                                           .getValue ());
+  }
+
+  @Test
+  public void testStreamPrintableInvoiceHashMismatch () throws Exception
+  {
+    final byte [] aPDF = "%PDF-1.4 not really".getBytes (StandardCharsets.ISO_8859_1);
+    final byte [] aRequest = _createRequestWithPrintableInvoice (aPDF, "0123456789abcdef");
+
+    final Callback100PrintableInvoiceDirectorySink aSink = new Callback100PrintableInvoiceDirectorySink (m_aTempFolder.getRoot ()
+                                                                                                                       .toPath ());
+    final Path aFile = aSink.getFile ("doc/1", "application/pdf");
+    try
+    {
+      Callback100SOAPCodec.readCallbackRequest (new ByteArrayInputStream (aRequest), aSink);
+      fail ();
+    }
+    catch (final XMLStreamException ex)
+    {
+      assertTrue (ex.getMessage ().contains ("hash value"));
+    }
+    // The content was discarded
+    assertFalse (Files.exists (aFile));
+
+    // A previously verified file is not touched by a rejected callback
+    final byte [] aValidPDF = "%PDF-1.4 valid".getBytes (StandardCharsets.ISO_8859_1);
+    final String sValidHashValue = HexFormat.of ().formatHex (MessageDigest.getInstance ("SHA-256").digest (aValidPDF));
+    Callback100SOAPCodec.readCallbackRequest (new ByteArrayInputStream (_createRequestWithPrintableInvoice (aValidPDF,
+                                                                                                        sValidHashValue)),
+                                              aSink);
+    try
+    {
+      Callback100SOAPCodec.readCallbackRequest (new ByteArrayInputStream (aRequest), aSink);
+      fail ();
+    }
+    catch (final XMLStreamException ex)
+    {
+      assertTrue (ex.getMessage ().contains ("hash value"));
+    }
+    assertArrayEquals (aValidPDF, Files.readAllBytes (aFile));
+    try (final Stream <Path> aFiles = Files.list (aSink.getDirectory ()))
+    {
+      assertEquals (1, aFiles.count ());
+    }
+  }
+
+  @Test
+  public void testDirectorySinkConcurrentStreams () throws Exception
+  {
+    final Callback100PrintableInvoiceDirectorySink aSink = new Callback100PrintableInvoiceDirectorySink (m_aTempFolder.getRoot ()
+                                                                                                                       .toPath ());
+    final Path aFile = aSink.getFile ("doc1", "application/pdf");
+
+    // Two callbacks for the same document ID write at the same time
+    final OutputStream aOS1 = aSink.openStream ("doc1", "application/pdf");
+    final OutputStream aOS2 = aSink.openStream ("doc1", "application/pdf");
+    aOS1.write (new byte [] { 1, 2, 3 });
+    aOS2.write (new byte [] { 4, 5 });
+    aOS1.close ();
+    aOS2.close ();
+    // Nothing is visible before the commit
+    assertFalse (Files.exists (aFile));
+
+    aSink.commit ("doc1", "application/pdf", aOS2);
+    assertArrayEquals (new byte [] { 4, 5 }, Files.readAllBytes (aFile));
+    aSink.discard ("doc1", "application/pdf", aOS1);
+    assertArrayEquals (new byte [] { 4, 5 }, Files.readAllBytes (aFile));
+    try (final Stream <Path> aFiles = Files.list (aSink.getDirectory ()))
+    {
+      assertEquals (1, aFiles.count ());
+    }
+  }
+}
@@ -0,0 +1,740 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.annotation.Nonnegative;
+import com.helger.annotation.concurrent.ThreadSafe;
+import com.helger.base.enforce.ValueEnforcer;
+import com.helger.erechnung.erb.callback100.Callback100SOAPCodec;
+import com.helger.erechnung.erb.ws.EWSSEPasswordType;
+import com.helger.erechnung.erb.ws.SOAPAddWSSEHeaderHandler;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws.WSJAXBContextRegistry;
+import com.helger.erechnung.erb.ws.WSSEHelper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.UploadDocumentResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryErrorDetailType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryErrorType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySuccessType;
+import at.gv.brz.eproc.erb.ws.invoicedeliverycallback._201305.CallbackType;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeError;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeErrorDetail;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeErrorDetails;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypePrintableInvoice;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeSuccess;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeUploadStatus;
+import jakarta.xml.bind.JAXBException;
+
+/**
+ * An embeddable in-process simulator of the ER&gt;B Webservice 1.2 and 2.0 endpoints for load
+ * tests without txm.portal.at. It checks the WSSE UsernameToken (plain text or digest), accepts invoices and returns
+ * success or error responses, SOAP faults or HTTP errors with configurable rates and latency. If a
+ * Webservice 2.0 delivery requests a callback, the callback is sent after the response.
+ * Senders can be pointed to it via {@link #getURLV1()} and {@link #getURLV2()}. This class is
+ * part of the test artefact.
+ *
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class ERBSimulator implements AutoCloseable
+{
+  public static final String PATH_V1 = "/V1";
+  public static final String PATH_V2 = "/V2";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (ERBSimulator.class);
+
+  private static final String NS_V1 = "http://erb.eproc.brz.gv.at/ws/documentupload/20121205/";
+  private static final String NS_V2 = "http://erb.eproc.brz.gv.at/ws/invoicedelivery/201306/";
+  /**
+   * The relevant data extracted from a request.
+   */
+  private static final class RequestData
+  {
+    private String m_sUsername;
+    private String m_sPassword;
+    private String m_sPasswordType;
+    private String m_sNonce;
+    private String m_sCreated;
+    private boolean m_bInvoiceFound;
+    private long m_nInvoiceChars;
+    private int m_nAttachments;
+    private String m_sCallbackURL;
+  }
+
+  private final HttpServer m_aServer;
+  private final ExecutorService m_aExecutor;
+  private final AtomicLong m_aDocumentIDs = new AtomicLong ();
+  private final AtomicInteger m_aRequestCount = new AtomicInteger ();
+  private final AtomicInteger m_aAuthFailureCount = new AtomicInteger ();
+  private final AtomicInteger m_aPendingHttpErrors = new AtomicInteger ();
+  private final AtomicInteger m_aCallbackCount = new AtomicInteger ();
+
+  private volatile String m_sUsername;
+  private volatile String m_sPassword;
+  private volatile Duration m_aMinLatency = Duration.ZERO;
+  private volatile Duration m_aLatencyJitter = Duration.ZERO;
+  private volatile double m_dHttpErrorRate;
+  private volatile double m_dFaultRate;
+  private volatile double m_dErrorRate;
+  private volatile boolean m_bMTOMSupported = true;
+  private volatile Supplier <DeliveryResponseType> m_aResponseProviderV2;
+  private volatile Supplier <TypeUploadStatus> m_aResponseProviderV1;
+  private volatile Duration m_aCallbackDelay = Duration.ZERO;
+
+  /**
+   * Create and start a new simulator on a random free port of the loopback interface.
+   *
+   * @throws IOException
+   *         If the server cannot be started
+   */
+  public ERBSimulator () throws IOException
+  {
+    this (0);
+  }
+
+  /**
+   * Create and start a new simulator on the provided port of the loopback interface.
+   *
+   * @param nPort
+   *        The port to use. 0 means a random free port.
+   * @throws IOException
+   *         If the server cannot be started
+   */
+  public ERBSimulator (@Nonnegative final int nPort) throws IOException
+  {
+    ValueEnforcer.isGE0 (nPort, "Port");
+    m_aServer = HttpServer.create (new InetSocketAddress (InetAddress.getLoopbackAddress (), nPort), 0);
+    m_aServer.createContext (PATH_V1, x -> _handle (x, false));
+    m_aServer.createContext (PATH_V2, x -> _handle (x, true));
+    final AtomicInteger aThreadIndex = new AtomicInteger ();
+    m_aExecutor = Executors.newCachedThreadPool (r -> {
+      final Thread t = new Thread (r, "erb-simulator-" + aThreadIndex.incrementAndGet ());
+      t.setDaemon (true);
+      return t;
+    });
+    m_aServer.setExecutor (m_aExecutor);
+    m_aServer.start ();
+  }
+
+  @NonNull
+  private URL _getURL (@NonNull final String sPath)
+  {
+    try
+    {
+      return new URL ("http://localhost:" + m_aServer.getAddress ().getPort () + sPath);
+    }
+    catch (final MalformedURLException ex)
+    {
+      throw new IllegalStateException (ex);
+    }
+  }
+
+  /**
+   * @return The URL of the simulated Webservice 1.2 endpoint. Never <code>null</code>.
+   */
+  @NonNull
+  public URL getURLV1 ()
+  {
+    return _getURL (PATH_V1);
+  }
+
+  /**
+   * @return The URL of the simulated Webservice 2.0 endpoint. Never <code>null</code>.
+   */
+  @NonNull
+  public URL getURLV2 ()
+  {
+    return _getURL (PATH_V2);
+  }
+
+  /**
+   * Set the expected credentials of the WSSE UsernameToken. Requests with other credentials are
+   * rejected with a SOAP fault.
+   *
+   * @param sUsername
+   *        The expected username. May be <code>null</code> to accept all credentials.
+   * @param sPassword
+   *        The expected password. May be <code>null</code> to accept all credentials.
+   * @return this for chaining
+   */
+  @NonNull
+  public ERBSimulator setCredentials (@Nullable final String sUsername, @Nullable final String sPassword)
+  {
+    m_sUsername = sUsername;
+    m_sPassword = sPassword;
+    return this;
+  }
+
+  /**
+   * Set the simulated processing time per request.
+   *
+   * @param aMinLatency
+   *        The minimum latency. May not be <code>null</code>.
+   * @param aJitter
+   *        The maximum random latency added to the minimum latency. May not be <code>null</code>.
+   * @return this for chaining
+   */
+  @NonNull
+  public ERBSimulator setLatency (@NonNull final Duration aMinLatency, @NonNull final Duration aJitter)
+  {
+    ValueEnforcer.notNull (aMinLatency, "MinLatency");
+    ValueEnforcer.notNull (aJitter, "Jitter");
+    m_aMinLatency = aMinLatency;
+    m_aLatencyJitter = aJitter;
+    return this;
+  }
+
+  /**
+   * @param dHttpErrorRate
+   *        The rate of requests answered with HTTP 503 and no SOAP message. Between 0 and 1.
+   * @return this for chaining
+   */
+  @NonNull
+  public ERBSimulator setHttpErrorRate (final double dHttpErrorRate)
+  {
+    ValueEnforcer.isBetweenInclusive (dHttpErrorRate, "HttpErrorRate", 0, 1);
+    m_dHttpErrorRate = dHttpErrorRate;
+    return this;
+  }
+
+  /**
+   * Answer the next requests with HTTP 503 and no SOAP message, independent of the HTTP error
+   * rate. This allows deterministic tests of retries.
+   *
+   * @param nCount
+   *        The number of requests to fail. Must be &ge; 0.
+   * @return this for chaining
+   */
+  @NonNull
+  public ERBSimulator failNextRequests (@Nonnegative final int nCount)
+  {
+    ValueEnforcer.isGE0 (nCount, "Count");
+    m_aPendingHttpErrors.set (nCount);
+    return this;
+  }
+
+  /**
+   * @param dFaultRate
+   *        The rate of requests answered with a SOAP fault as declared in the WSDL. Between 0 and
+   *        1.
+   * @return this for chaining
+   */
+  @NonNull
+  public ERBSimulator setFaultRate (final double dFaultRate)
+  {
+    ValueEnforcer.isBetweenInclusive (dFaultRate, "FaultRate", 0, 1);
+    m_dFaultRate = dFaultRate;
+    return this;
+  }
+
+  /**
+   * @param dErrorRate
+   *        The rate of requests answered with a regular error response (e.g. a validation error).
+   *        Between 0 and 1.
+   * @return this for chaining
+   */
+  @NonNull
+  public ERBSimulator setErrorRate (final double dErrorRate)
+  {
+    ValueEnforcer.isBetweenInclusive (dErrorRate, "ErrorRate", 0, 1);
+    m_dErrorRate = dErrorRate;
+    return this;
+  }
+
+  /**
+   * @param bMTOMSupported
+   *        <code>false</code> to reject MTOM requests with HTTP 415. The default is
+   *        <code>true</code>.
+   * @return this for chaining
+   */
+  @NonNull
+  public ERBSimulator setMTOMSupported (final boolean bMTOMSupported)
+  {
+    m_bMTOMSupported = bMTOMSupported;
+    return this;
+  }
+
+  /**
+   * Set a custom provider for the Webservice 2.0 responses. It is used for all requests that are
+   * not answered with a simulated HTTP error or fault.
+   *
+   * @param aResponseProvider
+   *        The provider to use. May be <code>null</code> to use the configured error rate.
+   * @return this for chaining
+   */
+  @NonNull
+  public ERBSimulator setResponseProviderV2 (@Nullable final Supplier <DeliveryResponseType> aResponseProvider)
+  {
+    m_aResponseProviderV2 = aResponseProvider;
+    return this;
+  }
+
+  /**
+   * Set a custom provider for the Webservice 1.2 responses. It is used for all requests that are
+   * not answered with a simulated HTTP error or fault.
+   *
+   * @param aResponseProvider
+   *        The provider to use. May be <code>null</code> to use the configured error rate.
+   * @return this for chaining
+   */
+  @NonNull
+  public ERBSimulator setResponseProviderV1 (@Nullable final Supplier <TypeUploadStatus> aResponseProvider)
+  {
+    m_aResponseProviderV1 = aResponseProvider;
+    return this;
+  }
+
+  /**
+   * Set the delay after which the callback of a successful Webservice 2.0 delivery is sent. A
+   * callback is only sent if the delivery settings contain a callback URL.
+   *
+   * @param aCallbackDelay
+   *        The delay after the response was sent. May not be <code>null</code>.
+   * @return this for chaining
+   */
+  @NonNull
+  public ERBSimulator setCallbackDelay (@NonNull final Duration aCallbackDelay)
+  {
+    ValueEnforcer.notNull (aCallbackDelay, "CallbackDelay");
+    m_aCallbackDelay = aCallbackDelay;
+    return this;
+  }
+
+  /**
+   * @return The number of requests received so far.
+   */
+  @Nonnegative
+  public int getRequestCount ()
+  {
+    return m_aRequestCount.get ();
+  }
+
+  /**
+   * @return The number of requests rejected because of invalid credentials.
+   */
+  @Nonnegative
+  public int getAuthenticationFailureCount ()
+  {
+    return m_aAuthFailureCount.get ();
+  }
+
+  /**
+   * @return The number of callbacks that were successfully sent so far.
+   */
+  @Nonnegative
+  public int getCallbackCount ()
+  {
+    return m_aCallbackCount.get ();
+  }
+
+  @NonNull
+  private static RequestData _parseRequest (@NonNull final InputStream aIS, final boolean bV2) throws XMLStreamException
+  {
+    final RequestData ret = new RequestData ();
+    final String sNS = bV2 ? NS_V2 : NS_V1;
+    final String sInvoiceElement = bV2 ? "Invoice" : "Document";
+    final String sAttachmentElement = bV2 ? "EmbeddedAttachment" : "Attachment";
+    final XMLStreamReader aReader = SOAPStreamHelper.createXMLStreamReader (aIS);
+    try
+    {
+      while (aReader.hasNext ())
+      {
+        if (aReader.next () != XMLStreamConstants.START_ELEMENT)
+          continue;
+        final String sElementNS = aReader.getNamespaceURI ();
+        final String sLocalName = aReader.getLocalName ();
+        if (SOAPAddWSSEHeaderHandler.WSSE_NSURI.equals (sElementNS))
+        {
+          if ("Username".equals (sLocalName))
+            ret.m_sUsername = aReader.getElementText ();
+          else
+            if ("Password".equals (sLocalName))
+            {
+              ret.m_sPasswordType = aReader.getAttributeValue (null, "Type");
+              ret.m_sPassword = aReader.getElementText ();
+            }
+            else
+              if ("Nonce".equals (sLocalName))
+                ret.m_sNonce = aReader.getElementText ();
+        }
+        else
+          if (WSSEHelper.WSU_NSURI.equals (sElementNS) && "Created".equals (sLocalName))
+            ret.m_sCreated = aReader.getElementText ();
+          else
+            if (sNS.equals (sElementNS))
+            {
+              if (sInvoiceElement.equals (sLocalName))
+              {
+                ret.m_bInvoiceFound = true;
+                // Don't keep the content in memory
+                while (aReader.next () != XMLStreamConstants.END_ELEMENT)
+                  if (aReader.isCharacters ())
+                    ret.m_nInvoiceChars += aReader.getTextLength ();
+              }
+              else
+                if (sAttachmentElement.equals (sLocalName))
+                  ret.m_nAttachments++;
+                else
+                  if (bV2 && "Callback".equals (sLocalName))
+                    ret.m_sCallbackURL = aReader.getAttributeValue (null, "url");
+            }
+      }
+    }
+    finally
+    {
+      aReader.close ();
+    }
+    return ret;
+  }
+
+  private static boolean _isPasswordMatching (@NonNull final RequestData aData, @NonNull final String sExpectedPassword)
+  {
+    if (aData.m_sPassword == null)
+      return false;
+    if (!EWSSEPasswordType.DIGEST.getTypeURI ().equals (aData.m_sPasswordType))
+      return sExpectedPassword.equals (aData.m_sPassword);
+    if (aData.m_sNonce == null || aData.m_sCreated == null)
+      return false;
+    final String sExpectedDigest = WSSEHelper.getPasswordDigest (Base64.getDecoder ().decode (aData.m_sNonce),
+                                                                 aData.m_sCreated,
+                                                                 sExpectedPassword);
+    return sExpectedDigest.equals (aData.m_sPassword);
+  }
+
+  @NonNull
+  private static String _createFault (@NonNull final String sFaultCode,
+                                      @NonNull final String sFaultString,
+                                      @Nullable final String sDetail)
+  {
+    return "<S:Fault><faultcode>" +
+           sFaultCode +
+           "</faultcode><faultstring>" +
+           SOAPStreamHelper.getXMLEscaped (sFaultString) +
+           "</faultstring>" +
+           (sDetail != null ? "<detail>" + sDetail + "</detail>" : "") +
+           "</S:Fault>";
+  }
+
+  @NonNull
+  private DeliveryResponseType _createResponseV2 (@NonNull final ThreadLocalRandom aRandom)
+  {
+    final Supplier <DeliveryResponseType> aProvider = m_aResponseProviderV2;
+    if (aProvider != null)
+      return aProvider.get ();
+
+    final DeliveryResponseType ret = new DeliveryResponseType ();
+    if (aRandom.nextDouble () < m_dErrorRate)
+    {
+      final DeliveryErrorDetailType aDetail = new DeliveryErrorDetailType ();
+      aDetail.setField ("Invoice");
+      aDetail.setMessage ("Simulated validation error");
+      final DeliveryErrorType aError = new DeliveryErrorType ();
+      aError.addErrorDetail (aDetail);
+      ret.setError (aError);
+    }
+    else
+    {
+      final DeliverySuccessType aSuccess = new DeliverySuccessType ();
+      final long nDocumentID = m_aDocumentIDs.incrementAndGet ();
+      aSuccess.setDocumentID ("SIM-" + nDocumentID);
+      aSuccess.setSupplierInvoiceNumber ("SIM-INV-" + nDocumentID);
+      ret.setSuccess (aSuccess);
+    }
+    return ret;
+  }
+
+  @NonNull
+  private TypeUploadStatus _createResponseV1 (@NonNull final ThreadLocalRandom aRandom)
+  {
+    final Supplier <TypeUploadStatus> aProvider = m_aResponseProviderV1;
+    if (aProvider != null)
+      return aProvider.get ();
+
+    final TypeUploadStatus ret = new TypeUploadStatus ();
+    if (aRandom.nextDouble () < m_dErrorRate)
+    {
+      final TypeErrorDetail aDetail = new TypeErrorDetail ();
+      aDetail.setField ("Document");
+      aDetail.setMessage ("Simulated validation error");
+      final TypeErrorDetails aDetails = new TypeErrorDetails ();
+      aDetails.addErrorDetail (aDetail);
+      final TypeError aError = new TypeError ();
+      aError.setErrorDetails (aDetails);
+      ret.setError (aError);
+    }
+    else
+    {
+      final TypeSuccess aSuccess = new TypeSuccess ();
+      aSuccess.setDocumentID ("SIM-" + m_aDocumentIDs.incrementAndGet ());
+      aSuccess.setSupplierID ("0000000000");
+      aSuccess.setSupplierEmail ("simulator@example.org");
+      aSuccess.setSupplierInvoiceNumber ("unknown");
+      final TypePrintableInvoice aPrintable = new TypePrintableInvoice ();
+      aPrintable.setValue (new byte [0]);
+      aPrintable.setType ("application/pdf");
+      aSuccess.setPrintableInvoice (aPrintable);
+      ret.setSuccess (aSuccess);
+    }
+    return ret;
+  }
+
+  @NonNull
+  private static String _marshal (@NonNull final Class <?> aObjectFactoryClass, @NonNull final Object aElement) throws JAXBException
+  {
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    WSJAXBContextRegistry.marshalFragment (aObjectFactoryClass, aElement, aBAOS);
+    return aBAOS.toString (StandardCharsets.UTF_8);
+  }
+
+  private static void _send (@NonNull final HttpExchange aExchange,
+                             final int nStatus,
+                             @NonNull final String sContentType,
+                             @NonNull final String sBody) throws IOException
+  {
+    final byte [] aBytes = sBody.getBytes (StandardCharsets.UTF_8);
+    aExchange.getResponseHeaders ().set ("Content-Type", sContentType);
+    aExchange.sendResponseHeaders (nStatus, aBytes.length);
+    try (final OutputStream aOS = aExchange.getResponseBody ())
+    {
+      aOS.write (aBytes);
+    }
+  }
+
+  private static void _sendSOAP (@NonNull final HttpExchange aExchange, final int nStatus, @NonNull final String sBodyContent) throws IOException
+  {
+    _send (aExchange,
+           nStatus,
+           SOAPStreamHelper.SOAP11_CONTENT_TYPE,
+           "<?xml version=\"1.0\" encoding=\"UTF-8\"?><S:Envelope xmlns:S=\"" +
+                                                 SOAPStreamHelper.SOAP11_NS_URI +
+                                                 "\"><S:Body>" +
+                                                 sBodyContent +
+                                                 "</S:Body></S:Envelope>");
+  }
+
+  private void _sleepLatency (@NonNull final ThreadLocalRandom aRandom)
+  {
+    long nMillis = m_aMinLatency.toMillis ();
+    final long nJitter = m_aLatencyJitter.toMillis ();
+    if (nJitter > 0)
+      nMillis += aRandom.nextLong (nJitter + 1);
+    if (nMillis > 0)
+      try
+      {
+        Thread.sleep (nMillis);
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+  }
+
+  private void _sendCallback (@NonNull final String sCallbackURL, @NonNull final DeliverySuccessType aSuccess)
+  {
+    try
+    {
+      Thread.sleep (m_aCallbackDelay.toMillis ());
+
+      final CallbackType aCallback = new CallbackType ();
+      aCallback.setDocumentID (aSuccess.getDocumentID ());
+      aCallback.setSupplierInvoiceNumber (aSuccess.getSupplierInvoiceNumber ());
+      aCallback.setOverallsuccess (true);
+      aCallback.setVersion ("100");
+
+      final HttpURLConnection aConn = (HttpURLConnection) new URL (sCallbackURL).openConnection ();
+      aConn.setRequestMethod ("POST");
+      aConn.setDoOutput (true);
+      aConn.setRequestProperty ("Content-Type", SOAPStreamHelper.SOAP11_CONTENT_TYPE);
+      aConn.setRequestProperty ("SOAPAction", "\"" + Callback100SOAPCodec.SOAP_ACTION + "\"");
+      try (final OutputStream aOS = aConn.getOutputStream ())
+      {
+        Callback100SOAPCodec.writeCallbackRequest (aOS, aCallback);
+      }
+      final int nStatus = aConn.getResponseCode ();
+      aConn.disconnect ();
+      if (nStatus >= 200 && nStatus < 300)
+        m_aCallbackCount.incrementAndGet ();
+      else
+        LOGGER.warn ("Callback to '" + sCallbackURL + "' returned HTTP " + nStatus);
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+    catch (final IOException | JAXBException ex)
+    {
+      LOGGER.warn ("Failed to send the callback to '" + sCallbackURL + "'", ex);
+    }
+  }
+
+  private void _handle (@NonNull final HttpExchange aExchange, final boolean bV2) throws IOException
+  {
+    try
+    {
+      m_aRequestCount.incrementAndGet ();
+      if (!"POST".equals (aExchange.getRequestMethod ()))
+      {
+        _send (aExchange, 405, "text/plain", "Only POST is supported");
+        return;
+      }
+
+      final String sContentType = aExchange.getRequestHeaders ().getFirst ("Content-Type");
+      final boolean bMultipart = SOAPStreamHelper.isMultipartContentType (sContentType);
+      if (bMultipart && !m_bMTOMSupported)
+      {
+        _send (aExchange, 415, "text/plain", "MTOM is not supported");
+        return;
+      }
+
+      final RequestData aData;
+      try (final InputStream aIS = aExchange.getRequestBody ())
+      {
+        if (bMultipart)
+          SOAPStreamHelper.skipToFirstMultipartBody (aIS);
+        aData = _parseRequest (aIS, bV2);
+        // Consume the remaining MIME parts
+        aIS.transferTo (OutputStream.nullOutputStream ());
+      }
+      catch (final XMLStreamException ex)
+      {
+        _sendSOAP (aExchange, 500, _createFault ("S:Client", "Invalid request: " + ex.getMessage (), null));
+        return;
+      }
+
+      final ThreadLocalRandom aRandom = ThreadLocalRandom.current ();
+      _sleepLatency (aRandom);
+
+      final String sExpectedUsername = m_sUsername;
+      final String sExpectedPassword = m_sPassword;
+      if (sExpectedUsername != null &&
+          sExpectedPassword != null &&
+          (!sExpectedUsername.equals (aData.m_sUsername) || !_isPasswordMatching (aData, sExpectedPassword)))
+      {
+        m_aAuthFailureCount.incrementAndGet ();
+        _sendSOAP (aExchange,
+                   500,
+                   _createFault ("S:Client", "The security token could not be authenticated or authorized", null));
+        return;
+      }
+
+      if (m_aPendingHttpErrors.getAndUpdate (x -> Math.max (x - 1, 0)) > 0 || aRandom.nextDouble () < m_dHttpErrorRate)
+      {
+        _send (aExchange, 503, "text/html", "<html><body>Simulated service unavailable</body></html>");
+        return;
+      }
+
+      final String sFaultDetailPrefix = bV2 ? "<erb:deliverInvoiceInvoiceFault xmlns:erb=\"" +
+                                              NS_V2 +
+                                              "\"><erb:Message>"
+                                            : "<erb:UploadException xmlns:erb=\"" + NS_V1 + "\"><erb:message>";
+      final String sFaultDetailSuffix = bV2 ? "</erb:Message></erb:deliverInvoiceInvoiceFault>"
+                                            : "</erb:message></erb:UploadException>";
+      if (!aData.m_bInvoiceFound)
+      {
+        _sendSOAP (aExchange,
+                   500,
+                   _createFault ("S:Client",
+                                 "No invoice",
+                                 sFaultDetailPrefix + "The request contains no invoice" + sFaultDetailSuffix));
+        return;
+      }
+
+      if (aRandom.nextDouble () < m_dFaultRate)
+      {
+        _sendSOAP (aExchange,
+                   500,
+                   _createFault ("S:Server", "Simulated fault", sFaultDetailPrefix + "Simulated fault" + sFaultDetailSuffix));
+        return;
+      }
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Accepted invoice with " + aData.m_nInvoiceChars + " Base64 chars and " + aData.m_nAttachments + " attachments");
+
+      final String sResponse;
+      DeliverySuccessType aCallbackSuccess = null;
+      if (bV2)
+      {
+        final DeliveryResponseType aResponse = _createResponseV2 (aRandom);
+        sResponse = _marshal (WSJAXBContextRegistry.OBJECT_FACTORY_WS200,
+                              new at.gv.brz.eproc.erb.ws.invoicedelivery._201306.ObjectFactory ().createDeliverInvoiceInvoiceOutput (aResponse));
+        if (aData.m_sCallbackURL != null)
+          aCallbackSuccess = aResponse.getSuccess ();
+      }
+      else
+      {
+        final UploadDocumentResponseType aResponse = new UploadDocumentResponseType ();
+        aResponse.setReturn (_createResponseV1 (aRandom));
+        sResponse = _marshal (WSJAXBContextRegistry.OBJECT_FACTORY_WS120,
+                              new at.gv.brz.eproc.erb.ws.documentupload._20121205.ObjectFactory ().createUploadDocumentResponse (aResponse));
+      }
+      _sendSOAP (aExchange, 200, sResponse);
+
+      if (aCallbackSuccess != null)
+      {
+        final String sCallbackURL = aData.m_sCallbackURL;
+        final DeliverySuccessType aSuccess = aCallbackSuccess;
+        m_aExecutor.execute ( () -> _sendCallback (sCallbackURL, aSuccess));
+      }
+    }
+    catch (final JAXBException | RuntimeException ex)
+    {
+      LOGGER.error ("Internal simulator error", ex);
+      _sendSOAP (aExchange, 500, _createFault ("S:Server", "Internal simulator error", null));
+    }
+    finally
+    {
+      aExchange.close ();
+    }
+  }
+
+  public void close ()
+  {
+    m_aServer.stop (0);
+    m_aExecutor.shutdownNow ();
+  }
+}
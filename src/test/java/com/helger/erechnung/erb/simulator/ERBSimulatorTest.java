@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.erechnung.erb.ws120.WS120Sender;
+import com.helger.erechnung.erb.ws200.WS200Sender;
+import com.helger.io.resource.ClassPathResource;
+
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.SettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeUploadStatus;
+
+/**
+ * Test class for class {@link ERBSimulator}.
+ *
+ * @author Philip Helger
+ */
+public final class ERBSimulatorTest
+{
+  private static final String USERNAME = "simulator";
+  private static final String PASSWORD = "secret";
+
+  private static byte [] _getInvoice ()
+  {
+    return StreamHelper.getAllBytes (new ClassPathResource ("test-invoices/ebi60.xml"));
+  }
+
+  @Test
+  public void testDeliverV2 () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (USERNAME, PASSWORD);
+      final WS200Sender aSender = new WS200Sender (USERNAME, PASSWORD).setURL (aSimulator.getURLV2 ());
+      final DeliverySettingsType aSettings = new DeliverySettingsType ();
+      aSettings.setTest (Boolean.TRUE);
+
+      // Via JAX-WS
+      DeliveryResponseType aResponse = aSender.deliverInvoice (_getInvoice (), null, aSettings);
+      assertNotNull (aResponse.getSuccess ());
+      assertTrue (aResponse.getSuccess ().getDocumentID ().startsWith ("SIM-"));
+
+      // Via the streaming path
+      aResponse = aSender.deliverInvoice (new ClassPathResource ("test-invoices/ebi60.xml"), null, aSettings);
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (2, aSimulator.getRequestCount ());
+      assertEquals (2, aSender.getConnectionStatistics ().getRequestCount ());
+    }
+  }
+
+  @Test
+  public void testUploadV1 () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (USERNAME, PASSWORD);
+      final WS120Sender aSender = new WS120Sender (USERNAME, PASSWORD).setURL (aSimulator.getURLV1 ());
+      final SettingsType aSettings = new SettingsType ();
+      aSettings.setTest (Boolean.TRUE);
+
+      // Via JAX-WS
+      TypeUploadStatus aResponse = aSender.deliverInvoice (_getInvoice (), null, aSettings);
+      assertNotNull (aResponse.getSuccess ());
+
+      // Via the streaming path
+      aResponse = aSender.deliverInvoice (new ClassPathResource ("test-invoices/ebi60.xml"), null, aSettings);
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (2, aSimulator.getRequestCount ());
+    }
+  }
+
+  @Test
+  public void testWrongCredentials () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (USERNAME, PASSWORD);
+      final WS200Sender aSender = new WS200Sender (USERNAME, "wrong").setURL (aSimulator.getURLV2 ());
+
+      final DeliveryResponseType aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getError ());
+      assertEquals (1, aSimulator.getAuthenticationFailureCount ());
+    }
+  }
+
+  @Test
+  public void testErrorAndFaultRates () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      final WS200Sender aSender = new WS200Sender (USERNAME, PASSWORD).setURL (aSimulator.getURLV2 ());
+
+      aSimulator.setErrorRate (1);
+      DeliveryResponseType aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getError ());
+      assertEquals ("Invoice", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+
+      aSimulator.setErrorRate (0).setFaultRate (1);
+      aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getError ());
+      assertEquals ("document", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+    }
+  }
+}
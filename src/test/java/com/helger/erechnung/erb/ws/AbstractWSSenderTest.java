@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.io.resource.IReadableResource;
+import com.helger.io.resource.inmemory.ReadableResourceInputStream;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link AbstractWSSender}.
+ *
+ * @author Philip Helger
+ */
+public final class AbstractWSSenderTest
+{
+  /**
+   * A minimal response with either a success document ID or an error.
+   */
+  private static final class MockResponse
+  {
+    private final String m_sDocumentID;
+    private final String m_sErrorField;
+    private final List <String> m_aErrorMessages;
+
+    MockResponse (final String sDocumentID, final String sErrorField, final List <String> aErrorMessages)
+    {
+      m_sDocumentID = sDocumentID;
+      m_sErrorField = sErrorField;
+      m_aErrorMessages = aErrorMessages;
+    }
+  }
+
+  /**
+   * A SOAP fault declared in the WSDL.
+   */
+  private static final class MockFaultException extends Exception
+  {
+    MockFaultException (final String sMessage)
+    {
+      super (sMessage);
+    }
+  }
+
+  /**
+   * Records the request body and answers with the request body as document ID, unless a failure is
+   * set.
+   */
+  private static final class MockTransport implements IWSTransport
+  {
+    private final AtomicInteger m_aRequestCount = new AtomicInteger ();
+    private volatile Exception m_aFailure;
+    private volatile String m_sLastRequest;
+
+    @Override
+    public <T> T postSOAPRequest (final URL aURL,
+                                  final String sSOAPAction,
+                                  final String sContentType,
+                                  final IWSRequestBodyWriter aRequestWriter,
+                                  final IWSResponseReader <T> aResponseReader,
+                                  final Duration aConnectTimeout,
+                                  final Duration aReadTimeout) throws Exception
+    {
+      m_aRequestCount.incrementAndGet ();
+      final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+      aRequestWriter.writeRequestBody (aBAOS);
+      m_sLastRequest = aBAOS.toString (StandardCharsets.UTF_8);
+      final Exception aFailure = m_aFailure;
+      if (aFailure != null)
+        throw aFailure;
+      return aResponseReader.readResponse (new ByteArrayInputStream (aBAOS.toByteArray ()));
+    }
+  }
+
+  /**
+   * Counts the recorded outcomes.
+   */
+  private static final class MockMetrics implements IWSSenderMetrics
+  {
+    private final AtomicLong m_aSuccess = new AtomicLong ();
+    private final Map <String, AtomicLong> m_aErrors = new ConcurrentHashMap <> ();
+    private final Map <EWSDeliveryPhase, AtomicLong> m_aDurations = new ConcurrentHashMap <> ();
+
+    @Override
+    public void recordDuration (final EWSDeliveryPhase ePhase, final Duration aDuration)
+    {
+      m_aDurations.computeIfAbsent (ePhase, k -> new AtomicLong ()).incrementAndGet ();
+    }
+
+    @Override
+    public void recordSuccess ()
+    {
+      m_aSuccess.incrementAndGet ();
+    }
+
+    @Override
+    public void recordError (final String sErrorType)
+    {
+      m_aErrors.computeIfAbsent (sErrorType, k -> new AtomicLong ()).incrementAndGet ();
+    }
+
+    long getErrorCount (final String sErrorType)
+    {
+      final AtomicLong aCount = m_aErrors.get (sErrorType);
+      return aCount == null ? 0 : aCount.get ();
+    }
+
+    long getDurationCount (final EWSDeliveryPhase ePhase)
+    {
+      final AtomicLong aCount = m_aDurations.get (ePhase);
+      return aCount == null ? 0 : aCount.get ();
+    }
+  }
+
+  /**
+   * A sender that uses the direct engine with a mock protocol.
+   */
+  private static final class MockSender extends AbstractWSSender <MockSender>
+  {
+    private final WSDeliveryDeduplicator <String> m_aDeduplicator;
+    private final IWSDeliveryProtocol <MockResponse, String, String, String> m_aProtocol = new IWSDeliveryProtocol <> ()
+    {
+      @Override
+      public String getDisplayName ()
+      {
+        return "Mock";
+      }
+
+      @Override
+      public URL getURL ()
+      {
+        return URL_MOCK;
+      }
+
+      @Override
+      public WSDeliveryDeduplicator <String> getDeduplicator ()
+      {
+        return m_aDeduplicator;
+      }
+
+      @Override
+      public MockResponse invokeJAXWS (final byte [] aInvoiceBytes,
+                                       final List <String> aAttachments,
+                                       final String aSettings,
+                                       final WSDeadline aDeadline)
+      {
+        throw new UnsupportedOperationException ();
+      }
+
+      @Override
+      public String getSOAPAction ()
+      {
+        return "mock";
+      }
+
+      @Override
+      public void writeRequest (final OutputStream aOS,
+                                final byte [] aSOAPHeaderContent,
+                                final IWSRequestBodyWriter aInvoiceWriter,
+                                final String sInvoiceEncoding,
+                                final List <String> aAttachments,
+                                final String aSettings) throws Exception
+      {
+        aInvoiceWriter.writeRequestBody (aOS);
+      }
+
+      @Override
+      public MockResponse readResponse (final InputStream aIS) throws Exception
+      {
+        return new MockResponse (new String (aIS.readAllBytes (), StandardCharsets.UTF_8), null, null);
+      }
+
+      @Override
+      public void writeParameters (final OutputStream aOS,
+                                   final List <String> aAttachments,
+                                   final String aSettings) throws Exception
+      {
+        SOAPStreamHelper.writeUTF8 (aOS, aSettings);
+      }
+
+      @Override
+      public List <String> getDeclaredFaultMessages (final Throwable t)
+      {
+        return t instanceof MockFaultException ? List.of (t.getMessage ()) : null;
+      }
+
+      @Override
+      public MockResponse createError (final EWSErrorField eField, final List <String> aMessages)
+      {
+        return new MockResponse (null, eField.getFieldName (), aMessages);
+      }
+
+      @Override
+      public MockResponse createSuccess (final String aSuccess)
+      {
+        return new MockResponse (aSuccess, null, null);
+      }
+
+      @Override
+      public String getSuccess (final MockResponse aResponse)
+      {
+        return aResponse.m_sDocumentID;
+      }
+
+      @Override
+      public String getFirstErrorField (final MockResponse aResponse)
+      {
+        return aResponse.m_sErrorField;
+      }
+
+      @Override
+      public String getDocumentID (final String aSuccess)
+      {
+        return aSuccess;
+      }
+    };
+
+    MockSender (final WSDeliveryDeduplicator <String> aDeduplicator)
+    {
+      super ("user", "pw");
+      m_aDeduplicator = aDeduplicator;
+      setEngine (EWSSenderEngine.DIRECT);
+    }
+
+    MockResponse deliver (final byte [] aInvoiceBytes)
+    {
+      return deliverBytes (m_aProtocol, aInvoiceBytes, null, "settings");
+    }
+
+    MockResponse deliver (final InputStream aInvoiceIS)
+    {
+      return deliverStream (m_aProtocol, aInvoiceIS, null, "settings");
+    }
+
+    MockResponse deliver (final IReadableResource aInvoiceRes)
+    {
+      return deliverResource (m_aProtocol, aInvoiceRes, null, "settings");
+    }
+
+    MockResponse deliver (final Document aInvoice)
+    {
+      return deliverNode (m_aProtocol, aInvoice, null, "settings");
+    }
+  }
+
+  private static final URL URL_MOCK;
+  static
+  {
+    try
+    {
+      URL_MOCK = new URL ("http://localhost/mock");
+    }
+    catch (final MalformedURLException ex)
+    {
+      throw new IllegalStateException (ex);
+    }
+  }
+
+  private static final byte [] INVOICE = "<Invoice/>".getBytes (StandardCharsets.UTF_8);
+
+  @Test
+  public void testSuccess ()
+  {
+    final MockTransport aTransport = new MockTransport ();
+    final MockMetrics aMetrics = new MockMetrics ();
+    final MockSender aSender = new MockSender (null).setTransport (aTransport).setMetrics (aMetrics);
+
+    MockResponse aResponse = aSender.deliver (INVOICE);
+    assertEquals ("<Invoice/>", aResponse.m_sDocumentID);
+
+    aResponse = aSender.deliver (new ByteArrayInputStream (INVOICE));
+    assertEquals ("<Invoice/>", aResponse.m_sDocumentID);
+
+    // Serialized directly into the request
+    final Document aDoc = DOMReader.readXMLDOM ("<Invoice/>");
+    assertNotNull (aDoc);
+    aResponse = aSender.deliver (aDoc);
+    assertNotNull (aResponse.m_sDocumentID);
+    assertTrue (aResponse.m_sDocumentID.contains ("<Invoice"));
+    assertEquals (1, aMetrics.getDurationCount (EWSDeliveryPhase.SERIALIZATION));
+
+    assertEquals (3, aTransport.m_aRequestCount.get ());
+    assertEquals (3, aMetrics.m_aSuccess.get ());
+    assertEquals (3, aMetrics.getDurationCount (EWSDeliveryPhase.TOTAL));
+  }
+
+  @Test
+  public void testErrorMapping ()
+  {
+    final MockTransport aTransport = new MockTransport ();
+    final MockMetrics aMetrics = new MockMetrics ();
+    final MockSender aSender = new MockSender (null).setTransport (aTransport).setMetrics (aMetrics);
+
+    // Declared SOAP fault
+    aTransport.m_aFailure = new MockFaultException ("Invalid invoice");
+    MockResponse aResponse = aSender.deliver (INVOICE);
+    assertNull (aResponse.m_sDocumentID);
+    assertEquals (EWSErrorField.DOCUMENT.getFieldName (), aResponse.m_sErrorField);
+    assertEquals (List.of ("Invalid invoice"), aResponse.m_aErrorMessages);
+
+    // Generic SOAP fault with details
+    aTransport.m_aFailure = new WSSOAPFaultException ("S:Server", "Invalid", List.of ("Schema error"));
+    aResponse = aSender.deliver (INVOICE);
+    assertEquals (EWSErrorField.DOCUMENT.getFieldName (), aResponse.m_sErrorField);
+    assertEquals (List.of ("Schema error"), aResponse.m_aErrorMessages);
+
+    // Generic SOAP fault without details
+    aTransport.m_aFailure = new WSSOAPFaultException ("S:Server", "Internal error", null);
+    aResponse = aSender.deliver (INVOICE);
+    assertEquals (EWSErrorField.WEBSERVICE.getFieldName (), aResponse.m_sErrorField);
+
+    // Transport error
+    aTransport.m_aFailure = new ConnectException ("Connection refused");
+    aResponse = aSender.deliver (INVOICE);
+    assertEquals (EWSErrorField.WEBSERVICE.getFieldName (), aResponse.m_sErrorField);
+
+    // Anything else
+    aTransport.m_aFailure = new IllegalStateException ("Oops");
+    aResponse = aSender.deliver (INVOICE);
+    assertEquals (EWSErrorField.GENERAL.getFieldName (), aResponse.m_sErrorField);
+
+    assertEquals (2, aMetrics.getErrorCount (EWSErrorField.DOCUMENT.getFieldName ()));
+    assertEquals (2, aMetrics.getErrorCount (EWSErrorField.WEBSERVICE.getFieldName ()));
+    assertEquals (1, aMetrics.getErrorCount (EWSErrorField.GENERAL.getFieldName ()));
+  }
+
+  @Test
+  public void testRetry ()
+  {
+    final MockTransport aTransport = new MockTransport ();
+    aTransport.m_aFailure = new ConnectException ("Connection refused");
+    final MockSender aSender = new MockSender (null).setTransport (aTransport)
+                                                    .setRetryPolicy (new WSRetryPolicy (3,
+                                                                                        Duration.ofMillis (1),
+                                                                                        Duration.ofMillis (1),
+                                                                                        Duration.ofMinutes (1)));
+
+    // Byte arrays are retried
+    MockResponse aResponse = aSender.deliver (INVOICE);
+    assertEquals (EWSErrorField.WEBSERVICE.getFieldName (), aResponse.m_sErrorField);
+    assertEquals (3, aTransport.m_aRequestCount.get ());
+
+    // Streams can only be read once
+    aResponse = aSender.deliver (new ByteArrayInputStream (INVOICE));
+    assertEquals (EWSErrorField.WEBSERVICE.getFieldName (), aResponse.m_sErrorField);
+    assertEquals (4, aTransport.m_aRequestCount.get ());
+  }
+
+  @Test
+  public void testDeduplication ()
+  {
+    final MockTransport aTransport = new MockTransport ();
+    final MockSender aSender = new MockSender (new WSDeliveryDeduplicator <> ()).setTransport (aTransport);
+
+    // Failed deliveries may be repeated
+    aTransport.m_aFailure = new ConnectException ("Connection refused");
+    assertEquals (EWSErrorField.WEBSERVICE.getFieldName (), aSender.deliver (INVOICE).m_sErrorField);
+    aTransport.m_aFailure = null;
+    assertEquals ("<Invoice/>", aSender.deliver (INVOICE).m_sDocumentID);
+    assertEquals (2, aTransport.m_aRequestCount.get ());
+
+    // Successful deliveries are not repeated
+    assertEquals ("<Invoice/>", aSender.deliver (INVOICE).m_sDocumentID);
+    assertEquals (2, aTransport.m_aRequestCount.get ());
+
+    // Another invoice
+    assertEquals ("<Invoice2/>", aSender.deliver ("<Invoice2/>".getBytes (StandardCharsets.UTF_8)).m_sDocumentID);
+    assertEquals (3, aTransport.m_aRequestCount.get ());
+  }
+
+  @Test
+  public void testStreamCloseFailure ()
+  {
+    final MockTransport aTransport = new MockTransport ();
+    final MockSender aSender = new MockSender (null).setTransport (aTransport);
+    final AtomicInteger aCloseCount = new AtomicInteger ();
+    final InputStream aIS = new ByteArrayInputStream (INVOICE)
+    {
+      @Override
+      public void close () throws IOException
+      {
+        aCloseCount.incrementAndGet ();
+        throw new IOException ("Close failed");
+      }
+    };
+
+    // The outcome of the delivery is kept
+    final MockResponse aResponse = aSender.deliver (new ReadableResourceInputStream ("invoice", aIS));
+    assertEquals ("<Invoice/>", aResponse.m_sDocumentID);
+    assertEquals (1, aCloseCount.get ());
+    assertEquals (1, aTransport.m_aRequestCount.get ());
+  }
+
+  @Test
+  public void testStreamReadFailure ()
+  {
+    final MockTransport aTransport = new MockTransport ();
+    final MockSender aSender = new MockSender (null).setTransport (aTransport);
+    final InputStream aIS = new InputStream ()
+    {
+      @Override
+      public int read () throws IOException
+      {
+        throw new IOException ("Disk error");
+      }
+    };
+
+    // Reading the invoice is not a transmission error
+    final MockResponse aResponse = aSender.deliver (aIS);
+    assertEquals (EWSErrorField.DOCUMENT.getFieldName (), aResponse.m_sErrorField);
+    assertTrue (aResponse.m_aErrorMessages.get (0).contains ("Disk error"));
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.jspecify.annotations.NonNull;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.soap.MessageFactory;
+import jakarta.xml.soap.SOAPHeader;
+import jakarta.xml.soap.SOAPMessage;
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+
+/**
+ * Test class for class {@link SOAPAddWSSEHeaderHandler}.
+ *
+ * @author Philip Helger
+ */
+public final class SOAPAddWSSEHeaderHandlerTest
+{
+  /**
+   * A minimal outbound message context.
+   */
+  private static final class MockSOAPMessageContext extends HashMap <String, Object> implements SOAPMessageContext
+  {
+    private SOAPMessage m_aMessage;
+
+    MockSOAPMessageContext (@NonNull final SOAPMessage aMessage)
+    {
+      m_aMessage = aMessage;
+      put (MessageContext.MESSAGE_OUTBOUND_PROPERTY, Boolean.TRUE);
+    }
+
+    public SOAPMessage getMessage ()
+    {
+      return m_aMessage;
+    }
+
+    public void setMessage (final SOAPMessage aMessage)
+    {
+      m_aMessage = aMessage;
+    }
+
+    public Object [] getHeaders (final QName aHeader, final JAXBContext aContext, final boolean bAllRoles)
+    {
+      return new Object [0];
+    }
+
+    public Set <String> getRoles ()
+    {
+      return Set.of ();
+    }
+
+    public void setScope (final String sName, final Scope eScope)
+    {}
+
+    public Scope getScope (final String sName)
+    {
+      return Scope.HANDLER;
+    }
+  }
+
+  @NonNull
+  private static Element _getSecurity (@NonNull final SOAPAddWSSEHeaderHandler aHandler) throws Exception
+  {
+    final SOAPMessage aMsg = MessageFactory.newInstance ().createMessage ();
+    assertTrue (aHandler.handleMessage (new MockSOAPMessageContext (aMsg)));
+
+    final SOAPHeader aHeader = aMsg.getSOAPHeader ();
+    assertNotNull (aHeader);
+    final NodeList aNL = aHeader.getElementsByTagNameNS (SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Security");
+    assertEquals (1, aNL.getLength ());
+    return (Element) aNL.item (0);
+  }
+
+  @Test
+  public void testText () throws Exception
+  {
+    for (final boolean bPrebuilt : new boolean [] { true, false })
+    {
+      final SOAPAddWSSEHeaderHandler aHandler = new SOAPAddWSSEHeaderHandler ("user", "secret", bPrebuilt);
+      assertEquals (bPrebuilt, aHandler.isPrebuiltHeader ());
+
+      // The prebuilt and the element by element header are identical
+      final Element aSecurity = _getSecurity (aHandler);
+      assertEquals ("user", WSSEHelperTest.getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Username"));
+      assertEquals ("secret", WSSEHelperTest.getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Password"));
+      assertNull (WSSEHelperTest.getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Nonce"));
+      assertNull (WSSEHelperTest.getChildText (aSecurity, WSSEHelper.WSU_NSURI, "Timestamp"));
+    }
+
+    // The prebuilt header can be imported multiple times
+    final SOAPAddWSSEHeaderHandler aHandler = new SOAPAddWSSEHeaderHandler ("user", "secret");
+    assertTrue (aHandler.isPrebuiltHeader ());
+    _getSecurity (aHandler);
+    final Element aSecurity = _getSecurity (aHandler);
+    assertEquals ("user", WSSEHelperTest.getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Username"));
+  }
+
+  @Test
+  public void testDigest () throws Exception
+  {
+    final SOAPAddWSSEHeaderHandler aHandler = new SOAPAddWSSEHeaderHandler ("user",
+                                                                            "secret",
+                                                                            EWSSEPasswordType.DIGEST,
+                                                                            Duration.ofMinutes (5))
+    {
+      @Override
+      protected Instant getCurrentInstant ()
+      {
+        return WSSEHelperTest.NOW;
+      }
+
+      @Override
+      protected byte [] getNextNonce ()
+      {
+        return WSSEHelperTest.NONCE.clone ();
+      }
+    };
+    // Nonce and creation time differ per message
+    assertFalse (aHandler.isPrebuiltHeader ());
+
+    final Element aSecurity = _getSecurity (aHandler);
+    assertEquals ("user", WSSEHelperTest.getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Username"));
+    final Element aPassword = (Element) aSecurity.getElementsByTagNameNS (SOAPAddWSSEHeaderHandler.WSSE_NSURI,
+                                                                         "Password")
+                                                 .item (0);
+    assertEquals (EWSSEPasswordType.DIGEST.getTypeURI (), aPassword.getAttribute ("Type"));
+    assertEquals ("JpsI2G8i9wR5JBEn8r6weLL0Zvc=", aPassword.getTextContent ());
+    assertEquals ("AAECAwQFBgcICQoLDA0ODw==",
+                  WSSEHelperTest.getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Nonce"));
+    assertEquals ("2026-01-02T03:04:05.678Z", WSSEHelperTest.getChildText (aSecurity, WSSEHelper.WSU_NSURI, "Created"));
+    assertEquals ("2026-01-02T03:09:05.678Z", WSSEHelperTest.getChildText (aSecurity, WSSEHelper.WSU_NSURI, "Expires"));
+  }
+
+  @Test
+  public void testInboundIgnored () throws Exception
+  {
+    final SOAPMessage aMsg = MessageFactory.newInstance ().createMessage ();
+    final MockSOAPMessageContext aCtx = new MockSOAPMessageContext (aMsg);
+    aCtx.put (MessageContext.MESSAGE_OUTBOUND_PROPERTY, Boolean.FALSE);
+    assertTrue (new SOAPAddWSSEHeaderHandler ("user", "secret").handleMessage (aCtx));
+
+    final SOAPHeader aHeader = aMsg.getSOAPHeader ();
+    if (aHeader != null)
+      assertEquals (0, aHeader.getElementsByTagNameNS (SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Security").getLength ());
+  }
+}
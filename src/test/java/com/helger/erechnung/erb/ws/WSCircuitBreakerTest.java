@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.time.Duration;
+
+import org.junit.Test;
+
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.erechnung.erb.simulator.ERBSimulator;
+import com.helger.erechnung.erb.ws200.WS200Sender;
+import com.helger.io.resource.ClassPathResource;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+
+/**
+ * Test class for class {@link WSCircuitBreaker}.
+ *
+ * @author Philip Helger
+ */
+public final class WSCircuitBreakerTest
+{
+  // Credentials for the local simulator
+  private static final String SIM_USERNAME = "simulator";
+  private static final String SIM_PASSWORD = "secret";
+
+  private static byte [] _getInvoice ()
+  {
+    return StreamHelper.getAllBytes (new ClassPathResource ("test-invoices/ebi60.xml"));
+  }
+
+  @Test
+  public void testStateTransitions () throws Exception
+  {
+    final URL aURL = new URL ("http://localhost/a");
+    final URL aOtherURL = new URL ("http://localhost/b");
+    final WSCircuitBreaker aCB = new WSCircuitBreaker (0.5, 10, 4, Duration.ofMillis (100), 2);
+    assertEquals (EWSCircuitState.CLOSED, aCB.getState (aURL));
+
+    // Below the minimum number of calls
+    for (int i = 0; i < 3; ++i)
+    {
+      assertTrue (aCB.tryAcquirePermission (aURL));
+      aCB.onFailure (aURL);
+    }
+    assertEquals (EWSCircuitState.CLOSED, aCB.getState (aURL));
+
+    // 3 of 4 failed
+    assertTrue (aCB.tryAcquirePermission (aURL));
+    aCB.onSuccess (aURL);
+    assertEquals (EWSCircuitState.OPEN, aCB.getState (aURL));
+    assertFalse (aCB.tryAcquirePermission (aURL));
+
+    // Other endpoints are not affected
+    assertTrue (aCB.tryAcquirePermission (aOtherURL));
+    aCB.onSuccess (aOtherURL);
+    assertEquals (EWSCircuitState.CLOSED, aCB.getState (aOtherURL));
+
+    // Half-open with 2 trial calls, failing one re-opens
+    Thread.sleep (150);
+    assertTrue (aCB.tryAcquirePermission (aURL));
+    assertEquals (EWSCircuitState.HALF_OPEN, aCB.getState (aURL));
+    assertTrue (aCB.tryAcquirePermission (aURL));
+    assertFalse (aCB.tryAcquirePermission (aURL));
+    aCB.onSuccess (aURL);
+    aCB.onFailure (aURL);
+    assertEquals (EWSCircuitState.OPEN, aCB.getState (aURL));
+
+    // Half-open again, ignored trials are given back
+    Thread.sleep (150);
+    assertTrue (aCB.tryAcquirePermission (aURL));
+    assertTrue (aCB.tryAcquirePermission (aURL));
+    aCB.onIgnore (aURL);
+    assertTrue (aCB.tryAcquirePermission (aURL));
+    aCB.onSuccess (aURL);
+    aCB.onSuccess (aURL);
+    assertEquals (EWSCircuitState.CLOSED, aCB.getState (aURL));
+    assertTrue (aCB.tryAcquirePermission (aURL));
+    aCB.onSuccess (aURL);
+  }
+
+  @Test
+  public void testSender () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final WSCircuitBreaker aCircuitBreaker = new WSCircuitBreaker (0.5, 4, 2, Duration.ofMillis (200), 1);
+      final WS200Sender aSender = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                              .setCircuitBreaker (aCircuitBreaker);
+
+      // Two failures open the circuit
+      aSimulator.failNextRequests (2);
+      DeliveryResponseType aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertEquals ("webservice", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+      aResponse = aSender.setEngine (EWSSenderEngine.DIRECT)
+                         .deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertEquals ("webservice", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+      assertEquals (EWSCircuitState.OPEN, aCircuitBreaker.getState (aSimulator.getURLV2 ()));
+
+      // Fail fast without a request
+      aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertEquals ("circuitbreaker", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+      aResponse = aSender.setEngine (EWSSenderEngine.JAXWS)
+                         .deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertEquals ("circuitbreaker", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+      assertEquals (2, aSimulator.getRequestCount ());
+
+      // The trial request closes the circuit again
+      Thread.sleep (300);
+      aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (EWSCircuitState.CLOSED, aCircuitBreaker.getState (aSimulator.getURLV2 ()));
+      assertEquals (3, aSimulator.getRequestCount ());
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.erechnung.erb.simulator.ERBSimulator;
+import com.helger.erechnung.erb.ws200.WS200Sender;
+import com.helger.io.resource.ClassPathResource;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+
+/**
+ * Test class for class {@link WSConcurrencyLimiter}.
+ *
+ * @author Philip Helger
+ */
+public final class WSConcurrencyLimiterTest
+{
+  // Credentials for the local simulator
+  private static final String SIM_USERNAME = "simulator";
+  private static final String SIM_PASSWORD = "secret";
+
+  private static byte [] _getInvoice ()
+  {
+    return StreamHelper.getAllBytes (new ClassPathResource ("test-invoices/ebi60.xml"));
+  }
+
+  @Test
+  public void testAIMD () throws InterruptedException
+  {
+    final WSConcurrencyLimiter aLimiter = new WSConcurrencyLimiter (4, 1, 6, 0.5);
+    assertEquals (4, aLimiter.getLimit ());
+
+    // Not using the limit does not raise it
+    for (int i = 0; i < 10; ++i)
+    {
+      aLimiter.acquire ();
+      aLimiter.onSuccess (System.nanoTime ());
+    }
+    assertEquals (4, aLimiter.getLimit ());
+
+    // Additive increase while the limit is used, up to the maximum
+    for (int nRound = 0; nRound < 20; ++nRound)
+    {
+      final int nLimit = aLimiter.getLimit ();
+      for (int i = 0; i < nLimit; ++i)
+        aLimiter.acquire ();
+      assertEquals (nLimit, aLimiter.getInFlight ());
+      for (int i = 0; i < nLimit; ++i)
+        aLimiter.onSuccess (System.nanoTime ());
+      assertTrue (aLimiter.getLimit () >= nLimit);
+    }
+    assertEquals (6, aLimiter.getLimit ());
+    assertEquals (0, aLimiter.getInFlight ());
+
+    // Multiplicative decrease
+    aLimiter.acquire ();
+    aLimiter.onOverload (System.nanoTime ());
+    assertEquals (3, aLimiter.getLimit ());
+    aLimiter.acquire ();
+    aLimiter.onOverload (System.nanoTime ());
+    aLimiter.acquire ();
+    aLimiter.onOverload (System.nanoTime ());
+    assertEquals (1, aLimiter.getLimit ());
+
+    // Other failures do not change the limit
+    aLimiter.acquire ();
+    aLimiter.onIgnore ();
+    assertEquals (1, aLimiter.getLimit ());
+    assertEquals (0, aLimiter.getInFlight ());
+  }
+
+  @Test
+  public void testDecreaseOncePerWindow () throws InterruptedException
+  {
+    final WSConcurrencyLimiter aLimiter = new WSConcurrencyLimiter (8, 1, 8, 0.5);
+    final long [] aStartNanos = new long [4];
+    for (int i = 0; i < aStartNanos.length; ++i)
+    {
+      aLimiter.acquire ();
+      aStartNanos[i] = System.nanoTime ();
+    }
+
+    // All requests of the window fail, but the limit is only lowered once
+    for (final long nStartNanos : aStartNanos)
+      aLimiter.onOverload (nStartNanos);
+    assertEquals (4, aLimiter.getLimit ());
+    assertEquals (0, aLimiter.getInFlight ());
+
+    // A request started after the decrease lowers it again
+    aLimiter.acquire ();
+    aLimiter.onOverload (System.nanoTime ());
+    assertEquals (2, aLimiter.getLimit ());
+  }
+
+  @Test
+  public void testLatencyGradient () throws InterruptedException
+  {
+    final WSConcurrencyLimiter aLimiter = new WSConcurrencyLimiter (4, 1, 8, 0.5, 2.0);
+    final long nLatencyNanos = Duration.ofMillis (10).toNanos ();
+
+    // Constant latency does not lower the limit
+    for (int i = 0; i < 20; ++i)
+    {
+      aLimiter.acquire ();
+      aLimiter.onSuccess (System.nanoTime () - nLatencyNanos);
+    }
+    assertEquals (4, aLimiter.getLimit ());
+
+    // A strongly rising latency lowers the limit like an overload
+    for (int i = 0; i < 10; ++i)
+    {
+      aLimiter.acquire ();
+      aLimiter.onSuccess (System.nanoTime () - 10 * nLatencyNanos);
+    }
+    assertTrue (aLimiter.getLimit () < 4);
+    assertEquals (0, aLimiter.getInFlight ());
+
+    // The latency may be ignored
+    final WSConcurrencyLimiter aLimiter2 = new WSConcurrencyLimiter (4, 1, 8, 0.5, Double.POSITIVE_INFINITY);
+    for (int i = 0; i < 20; ++i)
+    {
+      aLimiter2.acquire ();
+      aLimiter2.onSuccess (System.nanoTime () - (i < 10 ? 1 : 10) * nLatencyNanos);
+    }
+    assertEquals (4, aLimiter2.getLimit ());
+  }
+
+  @Test
+  public void testTryAcquire () throws InterruptedException
+  {
+    final WSConcurrencyLimiter aLimiter = new WSConcurrencyLimiter (1, 1, 1, 0.5);
+    assertTrue (aLimiter.tryAcquire (Duration.ZERO));
+    assertFalse (aLimiter.tryAcquire (Duration.ofMillis (50)));
+    assertEquals (1, aLimiter.getInFlight ());
+    aLimiter.onSuccess (System.nanoTime ());
+    assertTrue (aLimiter.tryAcquire (Duration.ZERO));
+    aLimiter.onIgnore ();
+    assertEquals (0, aLimiter.getInFlight ());
+  }
+
+  @Test
+  public void testSharedBySenders () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final WSRateLimiter aRateLimiter = new WSRateLimiter (100, 10);
+      final WSConcurrencyLimiter aConcurrencyLimiter = new WSConcurrencyLimiter (4, 1, 8, 0.5);
+
+      final WS200Sender aSenderJAXWS = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                                   .setRateLimiter (aRateLimiter)
+                                                                                   .setConcurrencyLimiter (aConcurrencyLimiter);
+      final WS200Sender aSenderDirect = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                                    .setEngine (EWSSenderEngine.DIRECT)
+                                                                                    .setRateLimiter (aRateLimiter)
+                                                                                    .setConcurrencyLimiter (aConcurrencyLimiter);
+      assertNotNull (aSenderJAXWS.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ()).getSuccess ());
+      assertNotNull (aSenderDirect.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ()).getSuccess ());
+      assertEquals (4, aConcurrencyLimiter.getLimit ());
+
+      // Overload lowers the shared limit
+      aSimulator.failNextRequests (2);
+      assertNotNull (aSenderJAXWS.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ()).getError ());
+      assertNotNull (aSenderDirect.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ()).getError ());
+      assertEquals (1, aConcurrencyLimiter.getLimit ());
+      assertEquals (0, aConcurrencyLimiter.getInFlight ());
+      assertEquals (4, aSimulator.getRequestCount ());
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.erechnung.erb.simulator.ERBSimulator;
+import com.helger.erechnung.erb.ws200.WS200Sender;
+import com.helger.io.resource.ClassPathResource;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+
+/**
+ * Test class for class {@link WSDeadline}.
+ *
+ * @author Philip Helger
+ */
+public final class WSDeadlineTest
+{
+  // Credentials for the local simulator
+  private static final String SIM_USERNAME = "simulator";
+  private static final String SIM_PASSWORD = "secret";
+
+  private static byte [] _getInvoice ()
+  {
+    return StreamHelper.getAllBytes (new ClassPathResource ("test-invoices/ebi60.xml"));
+  }
+
+  @Test
+  public void testBasic () throws Exception
+  {
+    final WSDeadline aDeadline = WSDeadline.after (Duration.ofMinutes (1));
+    assertFalse (aDeadline.isExpired ());
+    assertTrue (aDeadline.getRemaining ().compareTo (Duration.ofSeconds (50)) > 0);
+    aDeadline.checkNotExpired ("testing");
+
+    // Shorter timeouts are kept
+    final Duration aTimeout = Duration.ofSeconds (5);
+    assertSame (aTimeout, aDeadline.limit (aTimeout));
+    assertTrue (aDeadline.limit (Duration.ofMinutes (5)).compareTo (Duration.ofMinutes (1)) <= 0);
+    assertTrue (aDeadline.limit (null).compareTo (Duration.ofMinutes (1)) <= 0);
+
+    assertNull (WSDeadline.getEffectiveTimeout (null, null));
+    assertSame (aTimeout, WSDeadline.getEffectiveTimeout (aTimeout, null));
+    assertSame (aTimeout, WSDeadline.getEffectiveTimeout (aTimeout, aDeadline));
+  }
+
+  @Test
+  public void testExpired ()
+  {
+    final WSDeadline aDeadline = WSDeadline.after (Duration.ZERO);
+    assertTrue (aDeadline.isExpired ());
+    assertEquals (Duration.ZERO, aDeadline.getRemaining ());
+    assertEquals (Duration.ZERO, aDeadline.limit (Duration.ofSeconds (1)));
+    try
+    {
+      aDeadline.checkNotExpired ("testing");
+      fail ();
+    }
+    catch (final WSDeadlineExceededException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSenderTimeouts () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD).setLatency (Duration.ofMillis (500), Duration.ZERO);
+
+      // Read timeout via JAX-WS
+      final WSCircuitBreaker aCircuitBreaker = new WSCircuitBreaker (0.5, 4, 2, Duration.ofSeconds (30), 1);
+      final WSConcurrencyLimiter aConcurrencyLimiter = new WSConcurrencyLimiter (4, 1, 8, 0.5);
+      final WS200Sender aSender = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                              .setReadTimeout (Duration.ofMillis (100))
+                                                                              .setCircuitBreaker (aCircuitBreaker)
+                                                                              .setConcurrencyLimiter (aConcurrencyLimiter);
+      DeliveryResponseType aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertEquals ("webservice", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+
+      // Read timeout via the direct engine
+      aSender.setEngine (EWSSenderEngine.DIRECT);
+      aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertEquals ("webservice", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+
+      // Read timeouts are not retried but count as failures of the endpoint
+      assertEquals (EWSCircuitState.OPEN, aCircuitBreaker.getState (aSimulator.getURLV2 ()));
+      assertEquals (1, aConcurrencyLimiter.getLimit ());
+      assertEquals (0, aConcurrencyLimiter.getInFlight ());
+      aSender.setCircuitBreaker (null).setConcurrencyLimiter (null);
+
+      // The delivery deadline limits the read timeout
+      aSender.setReadTimeout (null).setDeliveryTimeout (Duration.ofMillis (100));
+      aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertEquals ("webservice", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+      aResponse = aSender.setEngine (EWSSenderEngine.JAXWS)
+                         .deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertEquals ("webservice", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+      final int nRequestCount = aSimulator.getRequestCount ();
+
+      // The deadline expires while waiting for the rate limiter
+      final WSRateLimiter aRateLimiter = new WSRateLimiter (0.1, 1);
+      assertTrue (aRateLimiter.tryAcquire ());
+      aSender.setRateLimiter (aRateLimiter);
+      aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertEquals ("webservice", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+      assertEquals (nRequestCount, aSimulator.getRequestCount ());
+
+      // Enough time
+      aSimulator.setLatency (Duration.ZERO, Duration.ZERO);
+      aSender.setRateLimiter (null).setDeliveryTimeout (Duration.ofSeconds (30));
+      assertNotNull (aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ()).getSuccess ());
+    }
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.base.io.stream.StreamHelper;
+import com.helger.erechnung.erb.simulator.ERBSimulator;
+import com.helger.erechnung.erb.ws120.WS120Sender;
+import com.helger.erechnung.erb.ws200.WS200Sender;
+import com.helger.io.resource.ClassPathResource;
+import com.helger.xml.serialize.read.DOMReader;
+
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.SettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySuccessType;
+
+/**
+ * Test class for class {@link WSDeliveryDeduplicator}.
+ *
+ * @author Philip Helger
+ */
+public final class WSDeliveryDeduplicatorTest
+{
+  // Credentials for the local simulator
+  private static final String SIM_USERNAME = "simulator";
+  private static final String SIM_PASSWORD = "secret";
+
+  private static byte [] _getInvoice ()
+  {
+    return StreamHelper.getAllBytes (new ClassPathResource ("test-invoices/ebi60.xml"));
+  }
+
+  private static String _key (final String sInvoice, final String sParams) throws Exception
+  {
+    return WSDeliveryDeduplicator.createKey (sInvoice.getBytes (StandardCharsets.UTF_8),
+                                             aOS -> aOS.write (sParams.getBytes (StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testCreateKey () throws Exception
+  {
+    final String sKey = _key ("invoice", "params");
+    assertEquals (sKey, _key ("invoice", "params"));
+    assertNotEquals (sKey, _key ("invoice", "params2"));
+    assertNotEquals (sKey, _key ("invoice2", "params"));
+    // The invoice and the parameters are separated
+    assertNotEquals (_key ("ab", "c"), _key ("a", "bc"));
+
+    // XXH64 reference values
+    assertEquals ("/0/ef46db3751d8e999", _key ("", ""));
+    assertEquals ("/3/44bc2cf5ad770999", _key ("abc", ""));
+    // One stream over the invoice and the parameters
+    assertEquals ("/1/44bc2cf5ad770999", _key ("a", "bc"));
+    assertEquals ("/39/fbcea83c8a378bf1", _key ("Nobody inspects the spammish repetition", ""));
+
+    // The supplier invoice number is part of the key
+    assertTrue (_key ("<eb:Invoice><eb:InvoiceNumber>RNR 4712</eb:InvoiceNumber></eb:Invoice>", "").startsWith ("RNR 4712/"));
+  }
+
+  @Test
+  public void testGetInvoiceNumber ()
+  {
+    assertEquals ("RNR 4712",
+                  WSDeliveryDeduplicator.getInvoiceNumber ("<?xml version=\"1.0\"?><eb:Invoice><eb:InvoiceNumber> RNR 4712 </eb:InvoiceNumber>".getBytes (StandardCharsets.UTF_8)));
+    assertEquals ("A1",
+                  WSDeliveryDeduplicator.getInvoiceNumber ("<Invoice><InvoiceNumber>A1</InvoiceNumber></Invoice>".getBytes (StandardCharsets.UTF_8)));
+    // End tags and text are ignored
+    assertEquals ("A2",
+                  WSDeliveryDeduplicator.getInvoiceNumber ("<x></eb:InvoiceNumber>InvoiceNumber><eb:InvoiceNumber>A2<".getBytes (StandardCharsets.UTF_8)));
+    assertNull (WSDeliveryDeduplicator.getInvoiceNumber ("<Invoice><cbc:ID>A1</cbc:ID></Invoice>".getBytes (StandardCharsets.UTF_8)));
+    assertNull (WSDeliveryDeduplicator.getInvoiceNumber ("<InvoiceNumber></InvoiceNumber>".getBytes (StandardCharsets.UTF_8)));
+    assertNull (WSDeliveryDeduplicator.getInvoiceNumber (new byte [0]));
+  }
+
+  @Test
+  public void testMaxEntries ()
+  {
+    final WSDeliveryDeduplicator <String> aDedup = new WSDeliveryDeduplicator <> (3, Duration.ofHours (1));
+    for (int i = 0; i < 5; ++i)
+      aDedup.onSuccess ("k" + i, "doc" + i);
+    assertEquals (3, aDedup.size ());
+    assertNull (aDedup.getPreviousSuccess ("k0"));
+    assertNull (aDedup.getPreviousSuccess ("k1"));
+    assertEquals ("doc2", aDedup.getPreviousSuccess ("k2"));
+    assertEquals ("doc4", aDedup.getPreviousSuccess ("k4"));
+    assertEquals (2, aDedup.getHitCount ());
+
+    // Re-adding moves an entry to the end
+    aDedup.onSuccess ("k2", "doc2b");
+    aDedup.onSuccess ("k5", "doc5");
+    assertNull (aDedup.getPreviousSuccess ("k3"));
+    assertEquals ("doc2b", aDedup.getPreviousSuccess ("k2"));
+
+    aDedup.clear ();
+    assertEquals (0, aDedup.size ());
+  }
+
+  @Test
+  public void testExpiry () throws Exception
+  {
+    final WSDeliveryDeduplicator <String> aDedup = new WSDeliveryDeduplicator <> (10, Duration.ofMillis (50));
+    aDedup.onSuccess ("k", "doc");
+    assertEquals ("doc", aDedup.getPreviousSuccess ("k"));
+    Thread.sleep (100);
+    assertNull (aDedup.getPreviousSuccess ("k"));
+    assertEquals (0, aDedup.size ());
+  }
+
+  @Test
+  public void testInFlight () throws Exception
+  {
+    final WSDeliveryDeduplicator <String> aDedup = new WSDeliveryDeduplicator <> ();
+    assertNull (aDedup.beginDelivery ("k", null));
+
+    // A concurrent identical delivery waits for the one in flight
+    final CompletableFuture <String> aFollower = CompletableFuture.supplyAsync ( () -> {
+      try
+      {
+        return aDedup.beginDelivery ("k", null);
+      }
+      catch (final InterruptedException | WSDeadlineExceededException ex)
+      {
+        throw new IllegalStateException (ex);
+      }
+    });
+    Thread.sleep (50);
+    assertFalse (aFollower.isDone ());
+    aDedup.onSuccess ("k", "doc");
+    assertEquals ("doc", aFollower.get (5, TimeUnit.SECONDS));
+    assertEquals (1, aDedup.getHitCount ());
+
+    // After a failure the next delivery takes over
+    assertNull (aDedup.beginDelivery ("k2", null));
+    final CompletableFuture <String> aFollower2 = CompletableFuture.supplyAsync ( () -> {
+      try
+      {
+        return aDedup.beginDelivery ("k2", null);
+      }
+      catch (final InterruptedException | WSDeadlineExceededException ex)
+      {
+        throw new IllegalStateException (ex);
+      }
+    });
+    Thread.sleep (50);
+    assertFalse (aFollower2.isDone ());
+    aDedup.onFailure ("k2");
+    assertNull (aFollower2.get (5, TimeUnit.SECONDS));
+    aDedup.onSuccess ("k2", "doc2");
+    assertEquals ("doc2", aDedup.beginDelivery ("k2", null));
+    assertEquals (2, aDedup.getHitCount ());
+  }
+
+  @Test
+  public void testInFlightDeadline () throws Exception
+  {
+    final WSDeliveryDeduplicator <String> aDedup = new WSDeliveryDeduplicator <> ();
+    assertNull (aDedup.beginDelivery ("k", null));
+
+    // The identical delivery is not awaited longer than the deadline
+    final long nStart = System.nanoTime ();
+    try
+    {
+      aDedup.beginDelivery ("k", WSDeadline.after (Duration.ofMillis (100)));
+      fail ();
+    }
+    catch (final WSDeadlineExceededException ex)
+    {
+      // expected
+    }
+    assertTrue (System.nanoTime () - nStart >= TimeUnit.MILLISECONDS.toNanos (100));
+
+    aDedup.onSuccess ("k", "doc");
+    assertEquals ("doc", aDedup.beginDelivery ("k", WSDeadline.after (Duration.ofMillis (100))));
+  }
+
+  @Test
+  public void testSender () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final WSDeliveryDeduplicator <DeliverySuccessType> aDeduplicator = new WSDeliveryDeduplicator <> ();
+      final WS200Sender aSender = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                              .setDeduplicator (aDeduplicator);
+      final byte [] aInvoice = _getInvoice ();
+      final DeliverySettingsType aSettings = new DeliverySettingsType ();
+      aSettings.setTest (Boolean.TRUE);
+
+      final DeliveryResponseType aResponse1 = aSender.deliverInvoice (aInvoice, null, aSettings);
+      assertNotNull (aResponse1.getSuccess ());
+      assertEquals (1, aSimulator.getRequestCount ());
+
+      // Same invoice and settings - not sent again
+      final DeliveryResponseType aResponse2 = aSender.deliverInvoice (aInvoice.clone (), null, aSettings);
+      assertEquals (aResponse1.getSuccess ().getDocumentID (), aResponse2.getSuccess ().getDocumentID ());
+      assertEquals (1, aSimulator.getRequestCount ());
+      assertEquals (1, aDeduplicator.getHitCount ());
+
+      // Different settings
+      final DeliverySettingsType aProdSettings = new DeliverySettingsType ();
+      aProdSettings.setTest (Boolean.FALSE);
+      assertNotNull (aSender.deliverInvoice (aInvoice, null, aProdSettings).getSuccess ());
+      assertEquals (2, aSimulator.getRequestCount ());
+
+      // Errors are not remembered
+      aSimulator.setFaultRate (1);
+      final byte [] aOtherInvoice = Arrays.copyOf (aInvoice, aInvoice.length + 1);
+      aOtherInvoice[aInvoice.length] = '\n';
+      assertNotNull (aSender.deliverInvoice (aOtherInvoice, null, aSettings).getError ());
+      aSimulator.setFaultRate (0);
+      assertNotNull (aSender.deliverInvoice (aOtherInvoice, null, aSettings).getSuccess ());
+      assertEquals (4, aSimulator.getRequestCount ());
+      assertEquals (3, aDeduplicator.size ());
+
+      // Works for the direct engine and for V1 as well
+      aSender.setEngine (EWSSenderEngine.DIRECT);
+      assertNotNull (aSender.deliverInvoice (aInvoice, null, aSettings).getSuccess ());
+      assertEquals (4, aSimulator.getRequestCount ());
+
+      final WS120Sender aSenderV1 = new WS120Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV1 ())
+                                                                                .setDeduplicator (new WSDeliveryDeduplicator <> ());
+      assertNotNull (aSenderV1.deliverInvoice (aInvoice, null, new SettingsType ()).getSuccess ());
+      assertNotNull (aSenderV1.deliverInvoice (aInvoice, null, new SettingsType ()).getSuccess ());
+      assertEquals (5, aSimulator.getRequestCount ());
+
+      // Invoice nodes are serialized once and checked as well
+      final Document aDoc = DOMReader.readXMLDOM (aInvoice);
+      assertNotNull (aSender.deliverInvoice (aDoc, null, aSettings).getSuccess ());
+      assertNotNull (aSender.setEngine (EWSSenderEngine.JAXWS).deliverInvoice (aDoc, null, aSettings).getSuccess ());
+      assertNotNull (aSenderV1.deliverInvoice (aDoc, null, new SettingsType ()).getSuccess ());
+      assertNotNull (aSenderV1.deliverInvoice (aDoc, null, new SettingsType ()).getSuccess ());
+      assertEquals (7, aSimulator.getRequestCount ());
+
+      // Concurrent identical deliveries are sent only once
+      aSimulator.setLatency (Duration.ofMillis (200), Duration.ZERO);
+      final byte [] aThirdInvoice = Arrays.copyOf (aOtherInvoice, aOtherInvoice.length + 1);
+      aThirdInvoice[aOtherInvoice.length] = '\n';
+      final Supplier <DeliveryResponseType> aDelivery = () -> aSender.deliverInvoice (aThirdInvoice, null, aSettings);
+      final CompletableFuture <DeliveryResponseType> aFuture1 = CompletableFuture.supplyAsync (aDelivery);
+      final CompletableFuture <DeliveryResponseType> aFuture2 = CompletableFuture.supplyAsync (aDelivery);
+      assertEquals (aFuture1.get (10, TimeUnit.SECONDS).getSuccess ().getDocumentID (),
+                    aFuture2.get (10, TimeUnit.SECONDS).getSuccess ().getDocumentID ());
+      assertEquals (8, aSimulator.getRequestCount ());
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.helger.erechnung.erb.ws200.WS200Sender;
+
+/**
+ * Test class for class {@link WSExecutorHelper}.
+ *
+ * @author Philip Helger
+ */
+public final class WSExecutorHelperTest
+{
+  @Test
+  public void testDefaultAsyncExecutor () throws Exception
+  {
+    final Executor aExecutor = WSExecutorHelper.getDefaultAsyncExecutor ();
+    assertNotNull (aExecutor);
+    // Shared within the JVM
+    assertSame (aExecutor, WSExecutorHelper.getDefaultAsyncExecutor ());
+
+    // Runs the tasks on another thread
+    final Thread aCaller = Thread.currentThread ();
+    final Thread aWorker = CompletableFuture.supplyAsync (Thread::currentThread, aExecutor).get (10, TimeUnit.SECONDS);
+    assertNotNull (aWorker);
+    assertEquals (Boolean.FALSE, Boolean.valueOf (aWorker == aCaller));
+
+    if (aExecutor instanceof ThreadPoolExecutor)
+    {
+      // No virtual threads - the number of platform threads is bounded
+      final ThreadPoolExecutor aTPE = (ThreadPoolExecutor) aExecutor;
+      assertEquals (WSExecutorHelper.PLATFORM_THREAD_COUNT, aTPE.getMaximumPoolSize ());
+      assertEquals (WSExecutorHelper.PLATFORM_QUEUE_SIZE,
+                    aTPE.getQueue ().size () + aTPE.getQueue ().remainingCapacity ());
+    }
+  }
+
+  @Test
+  public void testSenderSelection ()
+  {
+    final WS200Sender aSender = new WS200Sender ("user", "pw");
+    // Default executor if none is set
+    assertSame (WSExecutorHelper.getDefaultAsyncExecutor (), aSender.getAsyncExecutor ());
+
+    final Executor aCustom = Runnable::run;
+    aSender.setAsyncExecutor (aCustom);
+    assertSame (aCustom, aSender.getAsyncExecutor ());
+
+    aSender.setAsyncExecutor (null);
+    assertSame (WSExecutorHelper.getDefaultAsyncExecutor (), aSender.getAsyncExecutor ());
+  }
+}
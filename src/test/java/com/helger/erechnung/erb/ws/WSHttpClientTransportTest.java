@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import com.helger.erechnung.erb.simulator.ERBSimulator;
+import com.helger.erechnung.erb.ws120.WS120Sender;
+import com.helger.erechnung.erb.ws200.WS200Sender;
+import com.helger.io.resource.ClassPathResource;
+
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.SettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeUploadStatus;
+
+/**
+ * Test class for class {@link WSHttpClientTransport}.
+ *
+ * @author Philip Helger
+ */
+public final class WSHttpClientTransportTest
+{
+  // Credentials for the local simulator
+  private static final String SIM_USERNAME = "simulator";
+  private static final String SIM_PASSWORD = "secret";
+
+  @Test
+  public void testDeliver () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final WSHttpClientTransport aTransport = new WSHttpClientTransport ();
+
+      final WS200Sender aSenderV2 = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                                .setTransport (aTransport);
+      for (int i = 0; i < 3; ++i)
+      {
+        final DeliveryResponseType aResponse = aSenderV2.deliverInvoice (new ClassPathResource ("test-invoices/ebi60.xml"),
+                                                                         null,
+                                                                         new DeliverySettingsType ());
+        assertNotNull (aResponse.getSuccess ());
+      }
+      assertEquals (3, aSenderV2.getConnectionStatistics ().getRequestCount ());
+
+      // Both senders may share the same transport
+      final WS120Sender aSenderV1 = new WS120Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV1 ())
+                                                                                .setTransport (aTransport);
+      final TypeUploadStatus aResponse = aSenderV1.deliverInvoice (new ClassPathResource ("test-invoices/ebi60.xml"),
+                                                                   null,
+                                                                   new SettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (4, aSimulator.getRequestCount ());
+
+      // SOAP faults are reported as usual
+      aSimulator.setFaultRate (1);
+      final DeliveryResponseType aFaultResponse = aSenderV2.deliverInvoice (new ClassPathResource ("test-invoices/ebi60.xml"),
+                                                                            null,
+                                                                            new DeliverySettingsType ());
+      assertNotNull (aFaultResponse.getError ());
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import jakarta.xml.bind.JAXBElement;
+
+/**
+ * Test class for class {@link WSJAXBContextRegistry}.
+ *
+ * @author Philip Helger
+ */
+public final class WSJAXBContextRegistryTest
+{
+  @Test
+  public void testWarmUp ()
+  {
+    WSJAXBContextRegistry.warmUp ();
+    for (final Class <?> aObjectFactoryClass : WSJAXBContextRegistry.getAllKnownObjectFactories ())
+    {
+      assertNotNull (WSJAXBContextRegistry.getContext (aObjectFactoryClass));
+      assertSame (WSJAXBContextRegistry.getContext (aObjectFactoryClass),
+                  WSJAXBContextRegistry.getContext (aObjectFactoryClass));
+      assertTrue (WSJAXBContextRegistry.getPooledMarshallerCount (aObjectFactoryClass) >= 1);
+      assertTrue (WSJAXBContextRegistry.getPooledUnmarshallerCount (aObjectFactoryClass) >= 1);
+    }
+  }
+
+  @Test
+  public void testRoundTrip () throws Exception
+  {
+    final Class <?> aOF = WSJAXBContextRegistry.OBJECT_FACTORY_WS200;
+    final DeliverySettingsType aSettings = new DeliverySettingsType ();
+    aSettings.setTest (Boolean.TRUE);
+
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    WSJAXBContextRegistry.marshalFragment (aOF,
+                                           new JAXBElement <> (new QName ("urn:test", "Settings"),
+                                                               DeliverySettingsType.class,
+                                                               aSettings),
+                                           aBAOS);
+    // Fragment - no XML declaration
+    assertFalse (aBAOS.toString (StandardCharsets.UTF_8).startsWith ("<?xml"));
+    // The marshaller was returned to the pool
+    assertTrue (WSJAXBContextRegistry.getPooledMarshallerCount (aOF) >= 1);
+
+    final XMLStreamReader aReader = SOAPStreamHelper.createXMLStreamReader (new ByteArrayInputStream (aBAOS.toByteArray ()));
+    assertEquals (XMLStreamConstants.START_ELEMENT, aReader.nextTag ());
+    final DeliverySettingsType aRead = WSJAXBContextRegistry.unmarshal (aOF, aReader, DeliverySettingsType.class);
+    assertEquals (aSettings, aRead);
+  }
+}
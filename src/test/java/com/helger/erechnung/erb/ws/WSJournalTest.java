@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for class {@link WSJournal}.
+ *
+ * @author Philip Helger
+ */
+public final class WSJournalTest
+{
+  @Rule
+  public final TemporaryFolder m_aTempFolder = new TemporaryFolder ();
+
+  private static byte [] _record (final int n)
+  {
+    return ("record-" + n).getBytes (StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testReplay () throws IOException
+  {
+    final Path aFile = m_aTempFolder.getRoot ().toPath ().resolve ("journal.bin");
+    try (final WSJournal aJournal = new WSJournal (aFile, x -> fail ("New journal has no records")))
+    {
+      for (int i = 0; i < 10; ++i)
+        aJournal.append (_record (i));
+      aJournal.append (new byte [0]);
+      assertEquals (11, aJournal.getAppendCount ());
+    }
+
+    final List <byte []> aRecords = new ArrayList <> ();
+    try (final WSJournal aJournal = new WSJournal (aFile, aRecords::add))
+    {
+      assertEquals (11, aRecords.size ());
+      for (int i = 0; i < 10; ++i)
+        assertArrayEquals (_record (i), aRecords.get (i));
+      assertEquals (0, aRecords.get (10).length);
+
+      // Appending after reopening
+      aJournal.append (_record (10));
+    }
+
+    aRecords.clear ();
+    try (final WSJournal aJournal = new WSJournal (aFile, aRecords::add))
+    {
+      assertEquals (12, aRecords.size ());
+      assertArrayEquals (_record (10), aRecords.get (11));
+    }
+  }
+
+  @Test
+  public void testTornRecord () throws IOException
+  {
+    final Path aFile = m_aTempFolder.getRoot ().toPath ().resolve ("journal.bin");
+    try (final WSJournal aJournal = new WSJournal (aFile, x -> {}))
+    {
+      aJournal.append (_record (0));
+      aJournal.append (_record (1));
+    }
+
+    // Simulate a crash while writing the second record
+    final long nSize = Files.size (aFile);
+    try (final FileChannel aChannel = FileChannel.open (aFile, StandardOpenOption.WRITE))
+    {
+      aChannel.truncate (nSize - 3);
+    }
+
+    final List <byte []> aRecords = new ArrayList <> ();
+    try (final WSJournal aJournal = new WSJournal (aFile, aRecords::add))
+    {
+      assertEquals (1, aRecords.size ());
+      assertArrayEquals (_record (0), aRecords.get (0));
+      aJournal.append (_record (2));
+    }
+
+    aRecords.clear ();
+    try (final WSJournal aJournal = new WSJournal (aFile, aRecords::add))
+    {
+      assertEquals (2, aRecords.size ());
+      assertArrayEquals (_record (2), aRecords.get (1));
+    }
+  }
+
+  @Test
+  public void testInvalidFile () throws IOException
+  {
+    final Path aFile = m_aTempFolder.getRoot ().toPath ().resolve ("other.bin");
+    Files.write (aFile, "no journal".getBytes (StandardCharsets.UTF_8));
+    try (final WSJournal aJournal = new WSJournal (aFile, x -> {}))
+    {
+      fail ();
+    }
+    catch (final IOException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testGroupCommit () throws Exception
+  {
+    final Path aFile = m_aTempFolder.getRoot ().toPath ().resolve ("journal.bin");
+    final int nThreads = 16;
+    final int nRecordsPerThread = 50;
+    try (final WSJournal aJournal = new WSJournal (aFile, x -> {}))
+    {
+      final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+      try
+      {
+        final List <Future <?>> aFutures = new ArrayList <> ();
+        for (int t = 0; t < nThreads; ++t)
+        {
+          final int nThread = t;
+          aFutures.add (aES.submit ( () -> {
+            for (int i = 0; i < nRecordsPerThread; ++i)
+              aJournal.append (_record (nThread * nRecordsPerThread + i));
+            return null;
+          }));
+        }
+        for (final Future <?> aFuture : aFutures)
+          aFuture.get ();
+      }
+      finally
+      {
+        aES.shutdown ();
+      }
+      assertEquals (nThreads * nRecordsPerThread, aJournal.getAppendCount ());
+      // Records of concurrent threads share disk syncs
+      assertTrue (aJournal.getCommitCount () < aJournal.getAppendCount ());
+    }
+
+    final List <byte []> aRecords = new ArrayList <> ();
+    try (final WSJournal aJournal = new WSJournal (aFile, aRecords::add))
+    {
+      assertEquals (nThreads * nRecordsPerThread, aRecords.size ());
+    }
+  }
+
+  @Test
+  public void testRewrite () throws IOException
+  {
+    final Path aFile = m_aTempFolder.getRoot ().toPath ().resolve ("journal.bin");
+    try (final WSJournal aJournal = new WSJournal (aFile, x -> {}))
+    {
+      for (int i = 0; i < 10; ++i)
+        aJournal.append (_record (i));
+      aJournal.rewrite ( () -> List.of (_record (7), _record (8)));
+      aJournal.append (_record (10));
+    }
+
+    final List <byte []> aRecords = new ArrayList <> ();
+    try (final WSJournal aJournal = new WSJournal (aFile, aRecords::add))
+    {
+      assertEquals (3, aRecords.size ());
+      assertArrayEquals (_record (7), aRecords.get (0));
+      assertArrayEquals (_record (8), aRecords.get (1));
+      assertArrayEquals (_record (10), aRecords.get (2));
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link WSPortPool}.
+ *
+ * @author Philip Helger
+ */
+public final class WSPortPoolTest
+{
+  @Test
+  public void testReuse () throws InterruptedException
+  {
+    final AtomicInteger aCounter = new AtomicInteger ();
+    final WSPortPool <String> aPool = new WSPortPool <> ( () -> "port" + aCounter.incrementAndGet (),
+                                                         2,
+                                                         Duration.ofMinutes (1));
+    final String sPort1 = aPool.borrowPort ();
+    assertEquals ("port1", sPort1);
+    aPool.returnPort (sPort1);
+    assertEquals (1, aPool.getIdlePortCount ());
+
+    // Same port is re-used
+    assertSame (sPort1, aPool.borrowPort ());
+    final String sPort2 = aPool.borrowPort ();
+    assertEquals ("port2", sPort2);
+    assertEquals (2, aPool.getCreatedPortCount ());
+
+    // Pool is exhausted
+    assertNull (aPool.borrowPort (Duration.ofMillis (10)));
+
+    // Discarded ports are not re-used
+    aPool.discardPort (sPort2);
+    assertEquals (0, aPool.getIdlePortCount ());
+    assertEquals ("port3", aPool.borrowPort (Duration.ofMillis (10)));
+  }
+
+  @Test
+  public void testIdleEviction () throws InterruptedException
+  {
+    final WSPortPool <Object> aPool = new WSPortPool <> (Object::new, 4, Duration.ZERO);
+    final Object aPort = aPool.borrowPort ();
+    assertNotNull (aPort);
+    aPool.returnPort (aPort);
+    Thread.sleep (5);
+    assertEquals (1, aPool.evictIdlePorts ());
+    assertEquals (0, aPool.getIdlePortCount ());
+  }
+
+  @Test
+  public void testConcurrentCloseAndBorrow () throws Exception
+  {
+    final AtomicInteger aCounter = new AtomicInteger ();
+    final WSPortPool <String> aPool = new WSPortPool <> ( () -> "port" + aCounter.incrementAndGet (),
+                                                         4,
+                                                         Duration.ofMinutes (1));
+    final ExecutorService aExecutor = Executors.newFixedThreadPool (4);
+    try
+    {
+      final List <Future <?>> aFutures = new ArrayList <> ();
+      for (int i = 0; i < 4; ++i)
+        aFutures.add (aExecutor.submit ( () -> {
+          try
+          {
+            for (int j = 0; j < 1000; ++j)
+            {
+              final String sPort = aPool.borrowPort ();
+              assertNotNull (sPort);
+              aPool.returnPort (sPort);
+            }
+          }
+          catch (final IllegalStateException ex)
+          {
+            // The pool was closed
+          }
+          return null;
+        }));
+      Thread.sleep (1);
+      assertFalse (aPool.isClosed ());
+      aPool.close ();
+      assertTrue (aPool.isClosed ());
+      // Fails if any borrower got another exception
+      for (final Future <?> aFuture : aFutures)
+        aFuture.get ();
+    }
+    finally
+    {
+      aExecutor.shutdownNow ();
+    }
+
+    // A closed pool fails fast
+    assertEquals (0, aPool.getIdlePortCount ());
+    final int nCreated = aPool.getCreatedPortCount ();
+    try
+    {
+      aPool.borrowPort ();
+      fail ();
+    }
+    catch (final IllegalStateException ex)
+    {
+      // expected
+    }
+    try
+    {
+      aPool.borrowPort (Duration.ofMillis (10));
+      fail ();
+    }
+    catch (final IllegalStateException ex)
+    {
+      // expected
+    }
+    assertEquals (nCreated, aPool.getCreatedPortCount ());
+  }
+
+  @Test
+  public void testReturnAfterClose () throws InterruptedException
+  {
+    final WSPortPool <Object> aPool = new WSPortPool <> (Object::new, 1, Duration.ofMinutes (1));
+    final Object aPort = aPool.borrowPort ();
+    aPool.close ();
+
+    // Borrowed ports may still be handed back but are not pooled
+    aPool.returnPort (aPort);
+    assertEquals (0, aPool.getIdlePortCount ());
+  }
+}
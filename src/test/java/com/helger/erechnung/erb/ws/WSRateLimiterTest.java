@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link WSRateLimiter}.
+ *
+ * @author Philip Helger
+ */
+public final class WSRateLimiterTest
+{
+  @Test
+  public void testBurstAndRate () throws InterruptedException
+  {
+    final WSRateLimiter aLimiter = new WSRateLimiter (20, 3);
+    assertEquals (3, aLimiter.getBurstSize ());
+
+    // The burst is available immediately
+    assertTrue (aLimiter.tryAcquire ());
+    assertTrue (aLimiter.tryAcquire ());
+    assertTrue (aLimiter.tryAcquire ());
+    assertFalse (aLimiter.tryAcquire ());
+
+    // 5 more tokens need at least 200 ms
+    final long nStart = System.nanoTime ();
+    for (int i = 0; i < 5; ++i)
+      aLimiter.acquire ();
+    final long nMillis = (System.nanoTime () - nStart) / 1_000_000;
+    assertTrue ("Took " + nMillis + " ms", nMillis >= 190);
+  }
+
+  @Test
+  public void testTryAcquireWithMaxWait () throws InterruptedException
+  {
+    final WSRateLimiter aLimiter = new WSRateLimiter (10, 1);
+    assertTrue (aLimiter.tryAcquire (Duration.ZERO));
+
+    // The next token is available in 100 ms
+    assertFalse (aLimiter.tryAcquire (Duration.ofMillis (10)));
+    assertTrue (aLimiter.getAvailableTokens () > -0.5);
+    assertTrue (aLimiter.tryAcquire (Duration.ofSeconds (1)));
+    assertFalse (aLimiter.tryAcquire ());
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.Test;
+
+import jakarta.xml.ws.WebFault;
+import jakarta.xml.ws.WebServiceException;
+
+/**
+ * Test class for class {@link WSRetryPolicy}.
+ *
+ * @author Philip Helger
+ */
+public final class WSRetryPolicyTest
+{
+  @WebFault (name = "MockFault")
+  private static final class MockDeclaredFaultException extends Exception
+  {
+    MockDeclaredFaultException (final String sMsg)
+    {
+      super (sMsg);
+    }
+  }
+
+  @Test
+  public void testBackoff ()
+  {
+    final WSRetryPolicy aPolicy = new WSRetryPolicy (10, Duration.ofMillis (100), Duration.ofSeconds (1), Duration.ofMinutes (1));
+    for (int i = 0; i < 100; ++i)
+    {
+      final long nFirst = aPolicy.getBackoff (0).toMillis ();
+      assertTrue (nFirst >= 50 && nFirst <= 100);
+      final long nThird = aPolicy.getBackoff (2).toMillis ();
+      assertTrue (nThird >= 200 && nThird <= 400);
+      // Capped
+      final long nLast = aPolicy.getBackoff (50).toMillis ();
+      assertTrue (nLast >= 500 && nLast <= 1000);
+    }
+    assertFalse (WSRetryPolicy.NO_RETRY.isRetryEnabled ());
+    assertTrue (WSRetryPolicy.DEFAULT.isRetryEnabled ());
+  }
+
+  @Test
+  public void testIsRetryable ()
+  {
+    final WSRetryPolicy aPolicy = WSRetryPolicy.DEFAULT;
+    assertTrue (aPolicy.isRetryable (new ConnectException ("Connection refused")));
+    assertTrue (aPolicy.isRetryable (new WebServiceException (new ConnectException ("Connection refused"))));
+    // Message of the JDK 17 NioSocketImpl
+    assertTrue (aPolicy.isRetryable (new SocketTimeoutException ("Connect timed out")));
+    assertTrue (aPolicy.isRetryable (new SocketTimeoutException ("connect timed out")));
+    assertTrue (aPolicy.isRetryable (new HttpConnectTimeoutException ("HTTP connect timed out")));
+    assertFalse (aPolicy.isRetryable (new SocketTimeoutException ("Read timed out")));
+    assertTrue (aPolicy.isRetryable (new WSHttpStatusException (503, "Service Unavailable")));
+    assertTrue (aPolicy.isRetryable (new WSHttpStatusException (429, "Too Many Requests")));
+    assertFalse (aPolicy.isRetryable (new WSHttpStatusException (404, "Not Found")));
+    assertTrue (aPolicy.isRetryable (new WebServiceException ("The server sent HTTP status code 503: Service Unavailable")));
+    assertFalse (aPolicy.isRetryable (new WebServiceException ("The server sent HTTP status code 401: Unauthorized")));
+    assertTrue (aPolicy.isRetryable (new WSSOAPFaultException ("S:Server", "Internal error", null)));
+    assertFalse (aPolicy.isRetryable (new WSSOAPFaultException ("S:Server", "Invalid", List.of ("Schema error"))));
+    assertFalse (aPolicy.isRetryable (new WSSOAPFaultException ("S:Client", "Not authorized", null)));
+    assertFalse (aPolicy.isRetryable (new IOException ("Stream closed")));
+    assertFalse (aPolicy.isRetryable (new MockDeclaredFaultException ("Invalid invoice")));
+  }
+
+  @Test
+  public void testGetEndpointHealth ()
+  {
+    final WSRetryPolicy aPolicy = WSRetryPolicy.DEFAULT;
+    assertEquals (EWSEndpointHealth.UNAVAILABLE, aPolicy.getEndpointHealth (new ConnectException ("Connection refused")));
+    assertEquals (EWSEndpointHealth.UNAVAILABLE, aPolicy.getEndpointHealth (new SocketTimeoutException ("Read timed out")));
+    assertEquals (EWSEndpointHealth.UNAVAILABLE,
+                  aPolicy.getEndpointHealth (new WebServiceException (new SocketTimeoutException ("Read timed out"))));
+    assertEquals (EWSEndpointHealth.UNAVAILABLE, aPolicy.getEndpointHealth (new SocketException ("Connection reset")));
+    assertEquals (EWSEndpointHealth.UNAVAILABLE, aPolicy.getEndpointHealth (new UnknownHostException ("erb.example.org")));
+    assertEquals (EWSEndpointHealth.UNAVAILABLE, aPolicy.getEndpointHealth (new HttpTimeoutException ("request timed out")));
+    // Local I/O errors tell nothing about the endpoint
+    assertEquals (EWSEndpointHealth.UNKNOWN, aPolicy.getEndpointHealth (new IOException ("Stream closed")));
+    assertEquals (EWSEndpointHealth.UNKNOWN, aPolicy.getEndpointHealth (new FileNotFoundException ("invoice.xml")));
+    // A declared fault proves that the endpoint processed the request
+    assertEquals (EWSEndpointHealth.AVAILABLE, aPolicy.getEndpointHealth (new MockDeclaredFaultException ("Invalid invoice")));
+    assertEquals (EWSEndpointHealth.UNAVAILABLE, aPolicy.getEndpointHealth (new WSHttpStatusException (503, "Service Unavailable")));
+    assertEquals (EWSEndpointHealth.UNKNOWN, aPolicy.getEndpointHealth (new WSHttpStatusException (404, "Not Found")));
+    assertEquals (EWSEndpointHealth.UNAVAILABLE,
+                  aPolicy.getEndpointHealth (new WebServiceException ("The server sent HTTP status code 503: Service Unavailable")));
+    assertEquals (EWSEndpointHealth.UNAVAILABLE,
+                  aPolicy.getEndpointHealth (new WSSOAPFaultException ("S:Server", "Internal error", null)));
+    assertEquals (EWSEndpointHealth.AVAILABLE,
+                  aPolicy.getEndpointHealth (new WSSOAPFaultException ("S:Server", "Invalid", List.of ("Schema error"))));
+    assertEquals (EWSEndpointHealth.AVAILABLE,
+                  aPolicy.getEndpointHealth (new WSSOAPFaultException ("S:Client", "Not authorized", null)));
+    assertEquals (EWSEndpointHealth.UNKNOWN, aPolicy.getEndpointHealth (new WSDeadlineExceededException ("Too late")));
+    assertEquals (EWSEndpointHealth.UNKNOWN, aPolicy.getEndpointHealth (new IllegalStateException ("Local failure")));
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.helger.xml.XMLFactory;
+
+/**
+ * Test class for class {@link WSSEHelper}.
+ *
+ * @author Philip Helger
+ */
+public final class WSSEHelperTest
+{
+  static final Instant NOW = Instant.parse ("2026-01-02T03:04:05.678912Z");
+  static final byte [] NONCE = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15 };
+
+  @Nullable
+  static String getChildText (@NonNull final Element aParent,
+                              @NonNull final String sNSURI,
+                              @NonNull final String sLocalName)
+  {
+    final NodeList aNL = aParent.getElementsByTagNameNS (sNSURI, sLocalName);
+    return aNL.getLength () == 0 ? null : aNL.item (0).getTextContent ();
+  }
+
+  @Test
+  public void testGetFormatted ()
+  {
+    assertEquals ("2026-01-02T03:04:05.678Z", WSSEHelper.getFormatted (NOW));
+    assertEquals ("2026-01-02T03:04:05Z", WSSEHelper.getFormatted (Instant.parse ("2026-01-02T03:04:05Z")));
+  }
+
+  @Test
+  public void testGetPasswordDigest ()
+  {
+    // Base64 (SHA-1 (nonce + created + password))
+    assertEquals ("JpsI2G8i9wR5JBEn8r6weLL0Zvc=",
+                  WSSEHelper.getPasswordDigest (NONCE, "2026-01-02T03:04:05.678Z", "secret"));
+  }
+
+  @Test
+  public void testCreateSecurityElementText ()
+  {
+    final Element aSecurity = WSSEHelper.createSecurityElement (XMLFactory.newDocument (),
+                                                                "user",
+                                                                "secret",
+                                                                EWSSEPasswordType.TEXT,
+                                                                null,
+                                                                NOW,
+                                                                null);
+    assertEquals (SOAPAddWSSEHeaderHandler.WSSE_NSURI, aSecurity.getNamespaceURI ());
+    assertEquals ("Security", aSecurity.getLocalName ());
+    assertEquals ("user", getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Username"));
+    assertEquals ("secret", getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Password"));
+    assertNull (getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Nonce"));
+    assertNull (getChildText (aSecurity, WSSEHelper.WSU_NSURI, "Created"));
+  }
+
+  @Test
+  public void testCreateSecurityElementDigest ()
+  {
+    final Element aSecurity = WSSEHelper.createSecurityElement (XMLFactory.newDocument (),
+                                                                "user",
+                                                                "secret",
+                                                                EWSSEPasswordType.DIGEST,
+                                                                Duration.ofMinutes (5),
+                                                                NOW,
+                                                                NONCE);
+    assertEquals ("user", getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Username"));
+    final Element aPassword = (Element) aSecurity.getElementsByTagNameNS (SOAPAddWSSEHeaderHandler.WSSE_NSURI,
+                                                                         "Password")
+                                                 .item (0);
+    assertNotNull (aPassword);
+    assertEquals (EWSSEPasswordType.DIGEST.getTypeURI (), aPassword.getAttribute ("Type"));
+    assertEquals ("JpsI2G8i9wR5JBEn8r6weLL0Zvc=", aPassword.getTextContent ());
+    assertEquals ("AAECAwQFBgcICQoLDA0ODw==", getChildText (aSecurity, SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Nonce"));
+    // The Timestamp and the UsernameToken use the same creation time
+    final NodeList aCreated = aSecurity.getElementsByTagNameNS (WSSEHelper.WSU_NSURI, "Created");
+    assertEquals (2, aCreated.getLength ());
+    assertEquals ("2026-01-02T03:04:05.678Z", aCreated.item (0).getTextContent ());
+    assertEquals ("2026-01-02T03:04:05.678Z", aCreated.item (1).getTextContent ());
+    assertEquals ("2026-01-02T03:09:05.678Z", getChildText (aSecurity, WSSEHelper.WSU_NSURI, "Expires"));
+  }
+}
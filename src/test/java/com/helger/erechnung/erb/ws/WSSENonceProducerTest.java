@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link WSSENonceProducer}.
+ *
+ * @author Philip Helger
+ */
+public final class WSSENonceProducerTest
+{
+  @Test
+  public void testNonces ()
+  {
+    assertSame (WSSENonceProducer.getDefaultInstance (), WSSENonceProducer.getDefaultInstance ());
+    assertEquals (WSSENonceProducer.DEFAULT_BATCH_SIZE, WSSENonceProducer.getDefaultInstance ().getBatchSize ());
+
+    try (final WSSENonceProducer aProducer = new WSSENonceProducer (4))
+    {
+      final Set <ByteBuffer> aNonces = new HashSet <> ();
+      for (int i = 0; i < 100; ++i)
+      {
+        final byte [] aNonce = aProducer.getNextNonce ();
+        assertEquals (WSSENonceProducer.NONCE_LENGTH, aNonce.length);
+        assertTrue (aNonces.add (ByteBuffer.wrap (aNonce)));
+      }
+    }
+  }
+
+  @Test
+  public void testFallbackAfterClose () throws Exception
+  {
+    final WSSENonceProducer aProducer = new WSSENonceProducer (1);
+    aProducer.close ();
+    // Give the producer thread a chance to stop
+    Thread.sleep (50);
+
+    // Nonces are created on the calling thread once the queue is drained
+    final Set <ByteBuffer> aNonces = new HashSet <> ();
+    for (int i = 0; i < 10; ++i)
+    {
+      final byte [] aNonce = aProducer.getNextNonce ();
+      assertEquals (WSSENonceProducer.NONCE_LENGTH, aNonce.length);
+      assertTrue (aNonces.add (ByteBuffer.wrap (aNonce)));
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws120;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws.WSSOAPFaultException;
+import com.helger.xml.serialize.read.DOMReader;
+
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.AttachmentType;
+import at.gv.brz.eproc.erb.ws.documentupload._20121205.SettingsType;
+import at.gv.brz.schema.eproc.invoice_uploadstatus_1_0.TypeUploadStatus;
+
+/**
+ * Test class for class {@link WS120SOAPCodec}.
+ *
+ * @author Philip Helger
+ */
+public final class WS120SOAPCodecTest
+{
+  private static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                                               "<S:Envelope xmlns:S=\"" +
+                                               SOAPStreamHelper.SOAP11_NS_URI +
+                                               "\"><S:Body>";
+  private static final String ENVELOPE_END = "</S:Body></S:Envelope>";
+
+  @Test
+  public void testWriteRequest () throws Exception
+  {
+    final byte [] aInvoice = "<Invoice>äöü</Invoice>".getBytes (StandardCharsets.UTF_8);
+
+    final AttachmentType aAttachment = new AttachmentType ();
+    aAttachment.setName ("test.pdf");
+    aAttachment.setContent (new byte [] { 1, 2, 3 });
+
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    WS120SOAPCodec.writeUploadRequest (aBAOS,
+                                       SOAPStreamHelper.getWSSEUsernameTokenHeader ("user", "pw"),
+                                       new ByteArrayInputStream (aInvoice),
+                                       "UTF-8",
+                                       new CommonsArrayList <> (aAttachment),
+                                       new SettingsType ());
+
+    final Document aDoc = DOMReader.readXMLDOM (aBAOS.toByteArray ());
+    assertNotNull (aDoc);
+    final Element eDocument = (Element) aDoc.getElementsByTagNameNS (WS120SOAPCodec.NAMESPACE_URI, "Document")
+                                            .item (0);
+    assertEquals ("UTF-8", eDocument.getAttribute ("encoding"));
+    assertArrayEquals (aInvoice, Base64.getDecoder ().decode (eDocument.getTextContent ()));
+    assertEquals (1, aDoc.getElementsByTagNameNS (WS120SOAPCodec.NAMESPACE_URI, "Attachment").getLength ());
+    assertEquals (1, aDoc.getElementsByTagNameNS (WS120SOAPCodec.NAMESPACE_URI, "Settings").getLength ());
+  }
+
+  @Test
+  public void testReadResponse () throws Exception
+  {
+    final String sResponse = ENVELOPE_START +
+                             "<erb:uploadDocumentResponse xmlns:erb=\"" +
+                             WS120SOAPCodec.NAMESPACE_URI +
+                             "\"><erb:return xmlns:s=\"http://www.brz.gv.at/schema/eproc/invoice-uploadstatus-1.0.0/\">" +
+                             "<s:Success><s:DocumentID>doc1</s:DocumentID></s:Success></erb:return>" +
+                             "</erb:uploadDocumentResponse>" +
+                             ENVELOPE_END;
+    final TypeUploadStatus aStatus = WS120SOAPCodec.readUploadResponse (new ByteArrayInputStream (sResponse.getBytes (StandardCharsets.UTF_8)));
+    assertNotNull (aStatus.getSuccess ());
+    assertEquals ("doc1", aStatus.getSuccess ().getDocumentID ());
+  }
+
+  @Test
+  public void testReadFault () throws Exception
+  {
+    final String sResponse = ENVELOPE_START +
+                             "<S:Fault><faultcode>S:Server</faultcode><faultstring>Failed</faultstring><detail>" +
+                             "<erb:UploadException xmlns:erb=\"" +
+                             WS120SOAPCodec.NAMESPACE_URI +
+                             "\"><erb:message>msg1</erb:message></erb:UploadException>" +
+                             "</detail></S:Fault>" +
+                             ENVELOPE_END;
+    try
+    {
+      WS120SOAPCodec.readUploadResponse (new ByteArrayInputStream (sResponse.getBytes (StandardCharsets.UTF_8)));
+      fail ();
+    }
+    catch (final WSSOAPFaultException ex)
+    {
+      assertEquals ("Failed", ex.getFaultString ());
+      assertEquals (new CommonsArrayList <> ("msg1"), ex.getAllDetailMessages ());
+    }
+  }
+}
@@ -16,16 +16,25 @@
  */
 package com.helger.erechnung.erb.ws120;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Ignore;
 import org.junit.Test;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import com.helger.base.io.stream.StreamHelper;
 import com.helger.config.ConfigFactory;
+import com.helger.erechnung.erb.simulator.ERBSimulator;
+import com.helger.erechnung.erb.ws.EWSSenderEngine;
+import com.helger.erechnung.erb.ws.WSRetryPolicy;
 import com.helger.io.resource.ClassPathResource;
 import com.helger.xml.namespace.MapBasedNamespaceContext;
 import com.helger.xml.serialize.read.DOMReader;
@@ -45,6 +54,15 @@ public final class WS120SenderTest
   private static final String USP_WS_USERNAME = ConfigFactory.getDefaultConfig ().getAsString ("ws.username");
   private static final String USP_WS_PASSWORD = ConfigFactory.getDefaultConfig ().getAsString ("ws.password");
 
+  // Credentials for the local simulator
+  private static final String SIM_USERNAME = "simulator";
+  private static final String SIM_PASSWORD = "secret";
+
+  private static byte [] _getInvoice ()
+  {
+    return StreamHelper.getAllBytes (new ClassPathResource ("test-invoices/ebi60.xml"));
+  }
+
   /**
    * Basic test case. It is ignored by default, since no test username and
    * password are present. After setting the properties in the
@@ -111,4 +129,81 @@ public final class WS120SenderTest
     final TypeUploadStatus aResult = aSender.deliverInvoice (aXMLBytes, aAttachments, aSettings);
     assertNotNull (aResult.toString (), aResult.getSuccess ());
   }
+
+  @Test
+  public void testDirectEngine () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final Document aInvoiceDoc = DOMReader.readXMLDOM (new ClassPathResource ("test-invoices/ebi60.xml"));
+      assertNotNull (aInvoiceDoc);
+
+      final WS120Sender aSender = new WS120Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV1 ())
+                                                                              .setEngine (EWSSenderEngine.DIRECT);
+      TypeUploadStatus aStatus = aSender.deliverInvoice (_getInvoice (), null, new SettingsType ());
+      assertNotNull (aStatus.getSuccess ());
+      aStatus = aSender.deliverInvoice (aInvoiceDoc, null, new SettingsType ());
+      assertNotNull (aStatus.getSuccess ());
+      assertEquals (2, aSimulator.getRequestCount ());
+
+      // Errors are mapped like with JAX-WS
+      aSimulator.setFaultRate (1);
+      aStatus = aSender.deliverInvoice (aInvoiceDoc, null, new SettingsType ());
+      assertNotNull (aStatus.getError ());
+    }
+  }
+
+  @Test
+  public void testWithoutWSDL () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final WS120Sender aSender = new WS120Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV1 ())
+                                                                              .setUseWSDL (false);
+      final TypeUploadStatus aStatus = aSender.deliverInvoice (_getInvoice (), null, new SettingsType ());
+      assertNotNull (aStatus.getSuccess ());
+    }
+  }
+
+  @Test
+  public void testDeliverAsync () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final WS120Sender aSender = new WS120Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV1 ());
+      final TypeUploadStatus aStatus = aSender.deliverInvoiceAsync (_getInvoice (), null, new SettingsType ())
+                                              .get (30, TimeUnit.SECONDS);
+      assertNotNull (aStatus.getSuccess ());
+
+      // A failed delivery completes normally with the error response
+      final WS120Sender aWrongSender = new WS120Sender (SIM_USERNAME, "wrong").setURL (aSimulator.getURLV1 ());
+      final CompletableFuture <TypeUploadStatus> aFuture = aWrongSender.deliverInvoiceAsync (_getInvoice (),
+                                                                                             null,
+                                                                                             new SettingsType ());
+      final TypeUploadStatus aErrorStatus = aFuture.get (30, TimeUnit.SECONDS);
+      assertFalse (aFuture.isCompletedExceptionally ());
+      assertNotNull (aErrorStatus.getError ());
+    }
+  }
+
+  @Test
+  public void testRetry () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD).failNextRequests (1);
+      final WSRetryPolicy aPolicy = new WSRetryPolicy (3,
+                                                       Duration.ofMillis (10),
+                                                       Duration.ofMillis (50),
+                                                       Duration.ofMinutes (1));
+      final WS120Sender aSender = new WS120Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV1 ())
+                                                                              .setRetryPolicy (aPolicy);
+      final TypeUploadStatus aStatus = aSender.deliverInvoice (_getInvoice (), null, new SettingsType ());
+      assertNotNull (aStatus.getSuccess ());
+      assertEquals (2, aSimulator.getRequestCount ());
+    }
+  }
 }
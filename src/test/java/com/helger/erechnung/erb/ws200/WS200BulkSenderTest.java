@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws200;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.junit.Test;
+
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
+import com.helger.erechnung.erb.ws.BulkDeliveryStatistics;
+import com.helger.erechnung.erb.ws.EBulkResultOrder;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryEmbeddedAttachmentType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySuccessType;
+
+/**
+ * Test class for class {@link WS200BulkSender}.
+ *
+ * @author Philip Helger
+ */
+public final class WS200BulkSenderTest
+{
+  /**
+   * Fake sender that does not contact any server but echoes the invoice content as document ID.
+   */
+  private static final class MockSender extends WS200Sender
+  {
+    private final AtomicInteger m_aCurrent = new AtomicInteger ();
+    private final AtomicInteger m_aMaxObserved = new AtomicInteger ();
+
+    MockSender ()
+    {
+      super ("user", "pw");
+    }
+
+    @Override
+    @NonNull
+    public DeliveryResponseType deliverInvoice (@NonNull final byte [] aInvoiceBytes,
+                                                @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                                @NonNull final DeliverySettingsType aSettings)
+    {
+      final int nCurrent = m_aCurrent.incrementAndGet ();
+      m_aMaxObserved.accumulateAndGet (nCurrent, Math::max);
+      try
+      {
+        Thread.sleep (ThreadLocalRandom.current ().nextInt (1, 10));
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+      finally
+      {
+        m_aCurrent.decrementAndGet ();
+      }
+      final DeliverySuccessType aSuccess = new DeliverySuccessType ();
+      aSuccess.setDocumentID (new String (aInvoiceBytes, StandardCharsets.UTF_8));
+      final DeliveryResponseType ret = new DeliveryResponseType ();
+      ret.setSuccess (aSuccess);
+      return ret;
+    }
+  }
+
+  @Test
+  public void testInputOrder () throws InterruptedException
+  {
+    final ExecutorService aES = Executors.newFixedThreadPool (8);
+    try
+    {
+      final MockSender aSender = new MockSender ();
+      final WS200BulkSender aBulk = new WS200BulkSender (aSender).setMaxConcurrency (4)
+                                                                 .setResultOrder (EBulkResultOrder.INPUT_ORDER)
+                                                                 .setExecutor (aES);
+      // Asserts within the handler would be swallowed, so collect the results
+      final ICommonsList <String> aResults = new CommonsArrayList <> ();
+      final BulkDeliveryStatistics aStats = aBulk.deliverAll (IntStream.range (0, 100)
+                                                                       .mapToObj (i -> Integer.toString (i)
+                                                                                              .getBytes (StandardCharsets.UTF_8)),
+                                                              new DeliverySettingsType (),
+                                                              (nIndex, aResponse) -> aResults.add (nIndex +
+                                                                                                   "=" +
+                                                                                                   aResponse.getSuccess ()
+                                                                                                            .getDocumentID ()));
+      assertEquals (100, aStats.getStartedCount ());
+      assertEquals (100, aStats.getSuccessCount ());
+      assertEquals (0, aStats.getErrorCount ());
+      assertFalse (aStats.isCancelled ());
+      assertEquals (100, aResults.size ());
+      for (int i = 0; i < 100; ++i)
+        assertEquals (i + "=" + i, aResults.get (i));
+      assertTrue (aSender.m_aMaxObserved.get () <= 4);
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+
+  @Test
+  public void testCancel () throws InterruptedException
+  {
+    final ExecutorService aES = Executors.newFixedThreadPool (2);
+    try
+    {
+      final WS200BulkSender aBulk = new WS200BulkSender (new MockSender ()).setMaxConcurrency (2)
+                                                                           .setResultOrder (EBulkResultOrder.COMPLETION_ORDER)
+                                                                           .setExecutor (aES);
+      final AtomicInteger aCount = new AtomicInteger ();
+      final BulkDeliveryStatistics aStats = aBulk.deliverAll (IntStream.range (0, 1000)
+                                                                       .mapToObj (i -> Integer.toString (i)
+                                                                                              .getBytes (StandardCharsets.UTF_8)),
+                                                              new DeliverySettingsType (),
+                                                              (nIndex, aResponse) -> {
+                                                                if (aCount.incrementAndGet () == 10)
+                                                                  aBulk.cancel ();
+                                                              });
+      assertTrue (aStats.isCancelled ());
+      assertTrue (aStats.getStartedCount () < 1000);
+      assertEquals (aStats.getStartedCount (), aStats.getFinishedCount ());
+      assertEquals (aStats.getStartedCount (), aCount.get ());
+
+      // Cancellation is terminal
+      final BulkDeliveryStatistics aStats2 = aBulk.deliverAll (IntStream.range (0, 10)
+                                                                        .mapToObj (i -> Integer.toString (i)
+                                                                                               .getBytes (StandardCharsets.UTF_8)),
+                                                               new DeliverySettingsType (),
+                                                               (nIndex, aResponse) -> aCount.incrementAndGet ());
+      assertTrue (aStats2.isCancelled ());
+      assertEquals (0, aStats2.getStartedCount ());
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+
+  @Test
+  public void testHandlerError () throws InterruptedException
+  {
+    final ExecutorService aES = Executors.newFixedThreadPool (4);
+    try
+    {
+      final WS200BulkSender aBulk = new WS200BulkSender (new MockSender ()).setMaxConcurrency (4)
+                                                                           .setResultOrder (EBulkResultOrder.INPUT_ORDER)
+                                                                           .setExecutor (aES);
+      final AtomicInteger aCount = new AtomicInteger ();
+      try
+      {
+        aBulk.deliverAll (IntStream.range (0, 1000).mapToObj (i -> Integer.toString (i).getBytes (StandardCharsets.UTF_8)),
+                          new DeliverySettingsType (),
+                          (nIndex, aResponse) -> {
+                            aCount.incrementAndGet ();
+                            if (nIndex == 5)
+                              throw new AssertionError ("Handler failure");
+                          });
+        fail ();
+      }
+      catch (final AssertionError ex)
+      {
+        // The run did not hang and the error reached the calling thread
+        assertEquals ("Handler failure", ex.getMessage ());
+      }
+      assertTrue (aCount.get () < 1000);
+      assertEquals (aBulk.getCurrentStatistics ().getStartedCount (), aCount.get ());
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+
+  @Test
+  public void testSourceError () throws InterruptedException
+  {
+    final ExecutorService aES = Executors.newFixedThreadPool (4);
+    try
+    {
+      final WS200BulkSender aBulk = new WS200BulkSender (new MockSender ()).setMaxConcurrency (4)
+                                                                           .setResultOrder (EBulkResultOrder.COMPLETION_ORDER)
+                                                                           .setExecutor (aES);
+      final AtomicInteger aCount = new AtomicInteger ();
+      try
+      {
+        aBulk.deliverAll (IntStream.range (0, 1000).mapToObj (i -> {
+          if (i == 20)
+            throw new IllegalStateException ("Source failure");
+          return Integer.toString (i).getBytes (StandardCharsets.UTF_8);
+        }), new DeliverySettingsType (), (nIndex, aResponse) -> aCount.incrementAndGet ());
+        fail ();
+      }
+      catch (final IllegalStateException ex)
+      {
+        assertEquals ("Source failure", ex.getMessage ());
+      }
+      // All deliveries started before the failure were awaited and reported
+      final BulkDeliveryStatistics aStats = aBulk.getCurrentStatistics ();
+      assertEquals (20, aStats.getStartedCount ());
+      assertEquals (20, aStats.getFinishedCount ());
+      assertEquals (20, aCount.get ());
+      assertFalse (aStats.isCancelled ());
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws200;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryEmbeddedAttachmentType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySuccessType;
+
+/**
+ * Test class for class {@link WS200Outbox}.
+ *
+ * @author Philip Helger
+ */
+public final class WS200OutboxTest
+{
+  /**
+   * Fake sender that does not contact any server but echoes the invoice content as document ID.
+   */
+  private static final class MockSender extends WS200Sender
+  {
+    private final Map <String, DeliverySettingsType> m_aReceived = new ConcurrentHashMap <> ();
+
+    MockSender ()
+    {
+      super ("user", "pw");
+    }
+
+    @Override
+    @NonNull
+    public DeliveryResponseType deliverInvoice (@NonNull final byte [] aInvoiceBytes,
+                                                @Nullable final List <DeliveryEmbeddedAttachmentType> aAttachments,
+                                                @NonNull final DeliverySettingsType aSettings)
+    {
+      final String sInvoice = new String (aInvoiceBytes, StandardCharsets.UTF_8);
+      m_aReceived.put (sInvoice, aSettings);
+      final DeliverySuccessType aSuccess = new DeliverySuccessType ();
+      aSuccess.setDocumentID (sInvoice);
+      final DeliveryResponseType ret = new DeliveryResponseType ();
+      ret.setSuccess (aSuccess);
+      return ret;
+    }
+  }
+
+  @Rule
+  public final TemporaryFolder m_aTempFolder = new TemporaryFolder ();
+
+  @NonNull
+  private static byte [] _invoice (@NonNull final String s)
+  {
+    return s.getBytes (StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testRecovery () throws Exception
+  {
+    final Path aFile = m_aTempFolder.getRoot ().toPath ().resolve ("outbox.journal");
+    final DeliverySettingsType aSettings = new DeliverySettingsType ();
+    aSettings.setTest (Boolean.TRUE);
+
+    final MockSender aSender = new MockSender ();
+    final long nID1;
+    final long nID2;
+    final long nID3;
+    try (final WS200Outbox aOutbox = new WS200Outbox (aSender, aFile))
+    {
+      assertTrue (aOutbox.getAllPendingIDs ().isEmpty ());
+      final DeliveryResponseType aResponse = aOutbox.deliverInvoice (_invoice ("inv0"), null, aSettings);
+      assertEquals ("inv0", aResponse.getSuccess ().getDocumentID ());
+
+      nID1 = aOutbox.enqueue (_invoice ("inv1"), null, aSettings);
+      nID2 = aOutbox.enqueue (_invoice ("inv2"), null, aSettings);
+      nID3 = aOutbox.enqueue (_invoice ("inv3"), null, aSettings);
+      assertEquals (List.of (Long.valueOf (nID1), Long.valueOf (nID2), Long.valueOf (nID3)), aOutbox.getAllPendingIDs ());
+      assertEquals (0, aOutbox.getAttemptCount (nID1));
+
+      aOutbox.deliver (nID2);
+      assertEquals (-1, aOutbox.getAttemptCount (nID2));
+      assertEquals (List.of (Long.valueOf (nID1), Long.valueOf (nID3)), aOutbox.getAllPendingIDs ());
+    }
+    assertEquals (2, aSender.m_aReceived.size ());
+    assertEquals (aSettings, aSender.m_aReceived.get ("inv2"));
+
+    // Re-open
+    try (final WS200Outbox aOutbox = new WS200Outbox (aSender, aFile))
+    {
+      assertEquals (List.of (Long.valueOf (nID1), Long.valueOf (nID3)), aOutbox.getAllPendingIDs ());
+      final Map <Long, DeliveryResponseType> aRecovered = aOutbox.getAllRecoveredResults ();
+      assertEquals (2, aRecovered.size ());
+      assertEquals ("inv2", aRecovered.get (Long.valueOf (nID2)).getSuccess ().getDocumentID ());
+
+      // New IDs don't collide with recovered ones
+      final long nID4 = aOutbox.enqueue (_invoice ("inv4"), null, aSettings);
+      assertTrue (nID4 > nID3);
+
+      final Map <Long, DeliveryResponseType> aResumed = new ConcurrentHashMap <> ();
+      assertEquals (3, aOutbox.resumePending ( (nID, aResponse) -> aResumed.put (Long.valueOf (nID), aResponse)));
+      assertEquals ("inv1", aResumed.get (Long.valueOf (nID1)).getSuccess ().getDocumentID ());
+      assertEquals ("inv3", aResumed.get (Long.valueOf (nID3)).getSuccess ().getDocumentID ());
+      assertEquals ("inv4", aResumed.get (Long.valueOf (nID4)).getSuccess ().getDocumentID ());
+      assertTrue (aOutbox.getAllPendingIDs ().isEmpty ());
+    }
+    assertEquals (aSettings, aSender.m_aReceived.get ("inv3"));
+  }
+
+  @Test
+  public void testCompact () throws Exception
+  {
+    final Path aFile = m_aTempFolder.getRoot ().toPath ().resolve ("outbox.journal");
+    final DeliverySettingsType aSettings = new DeliverySettingsType ();
+
+    final MockSender aSender = new MockSender ();
+    final long nPendingID;
+    try (final WS200Outbox aOutbox = new WS200Outbox (aSender, aFile))
+    {
+      for (int i = 0; i < 10; ++i)
+        aOutbox.deliverInvoice (_invoice ("inv" + i), null, aSettings);
+      nPendingID = aOutbox.enqueue (_invoice ("pending"), null, aSettings);
+      aOutbox.compact ();
+    }
+
+    try (final WS200Outbox aOutbox = new WS200Outbox (aSender, aFile))
+    {
+      assertTrue (aOutbox.getAllRecoveredResults ().isEmpty ());
+      assertEquals (List.of (Long.valueOf (nPendingID)), aOutbox.getAllPendingIDs ());
+      final DeliveryResponseType aResponse = aOutbox.deliver (nPendingID);
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals ("pending", aResponse.getSuccess ().getDocumentID ());
+    }
+  }
+}
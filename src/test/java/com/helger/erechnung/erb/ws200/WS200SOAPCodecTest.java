@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014-2026 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.erechnung.erb.ws200;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.erechnung.erb.ws.SOAPAddWSSEHeaderHandler;
+import com.helger.erechnung.erb.ws.SOAPStreamHelper;
+import com.helger.erechnung.erb.ws.WSStreamingAttachment;
+import com.helger.erechnung.erb.ws.WSSOAPFaultException;
+import com.helger.xml.serialize.read.DOMReader;
+
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryEmbeddedAttachmentType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliveryResponseType;
+import at.gv.brz.eproc.erb.ws.invoicedelivery._201306.DeliverySettingsType;
+
+/**
+ * Test class for class {@link WS200SOAPCodec}.
+ *
+ * @author Philip Helger
+ */
+public final class WS200SOAPCodecTest
+{
+  private static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                                               "<S:Envelope xmlns:S=\"" +
+                                               SOAPStreamHelper.SOAP11_NS_URI +
+                                               "\"><S:Body>";
+  private static final String ENVELOPE_END = "</S:Body></S:Envelope>";
+
+  @Test
+  public void testWriteRequest () throws Exception
+  {
+    // Bigger than the internal buffer
+    final byte [] aInvoice = new byte [100_000];
+    for (int i = 0; i < aInvoice.length; ++i)
+      aInvoice[i] = (byte) ('a' + i % 26);
+
+    final DeliveryEmbeddedAttachmentType aAttachment = new DeliveryEmbeddedAttachmentType ();
+    aAttachment.setName ("test.pdf");
+    aAttachment.setValue (new byte [] { 1, 2, 3 });
+
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    WS200SOAPCodec.writeDeliveryRequest (aBAOS,
+                                         SOAPStreamHelper.getWSSEUsernameTokenHeader ("user", "p<w&"),
+                                         new ByteArrayInputStream (aInvoice),
+                                         "UTF-8",
+                                         new CommonsArrayList <> (aAttachment),
+                                         new DeliverySettingsType ());
+
+    final Document aDoc = DOMReader.readXMLDOM (aBAOS.toByteArray ());
+    assertNotNull (aDoc);
+    assertEquals ("p<w&",
+                  aDoc.getElementsByTagNameNS (SOAPAddWSSEHeaderHandler.WSSE_NSURI, "Password")
+                      .item (0)
+                      .getTextContent ());
+    final Element eInvoice = (Element) aDoc.getElementsByTagNameNS (WS200SOAPCodec.NAMESPACE_URI, "Invoice")
+                                           .item (0);
+    assertEquals ("UTF-8", eInvoice.getAttribute ("encoding"));
+    assertArrayEquals (aInvoice, Base64.getDecoder ().decode (eInvoice.getTextContent ()));
+    assertEquals (1, aDoc.getElementsByTagNameNS (WS200SOAPCodec.NAMESPACE_URI, "EmbeddedAttachment").getLength ());
+    assertEquals (1, aDoc.getElementsByTagNameNS (WS200SOAPCodec.NAMESPACE_URI, "Settings").getLength ());
+  }
+
+  @Test
+  public void testWriteXOPRequest () throws Exception
+  {
+    final byte [] aPDF = { 0, 1, 2, (byte) 0xff };
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    WS200SOAPCodec.writeStreamingDeliveryRequest (aBAOS,
+                                                  SOAPStreamHelper.getWSSEUsernameTokenHeader ("user", "pw"),
+                                                  new ByteArrayInputStream ("<Invoice/>".getBytes (StandardCharsets.UTF_8)),
+                                                  "UTF-8",
+                                                  new CommonsArrayList <> (WSStreamingAttachment.createFromStream ("a.pdf",
+                                                                                                                   null,
+                                                                                                                   new ByteArrayInputStream (aPDF))),
+                                                  new DeliverySettingsType (),
+                                                  "boundary1");
+    final byte [] aBytes = aBAOS.toByteArray ();
+    final String sMsg = new String (aBytes, StandardCharsets.ISO_8859_1);
+    assertTrue (sMsg.startsWith ("--boundary1\r\n"));
+    assertTrue (sMsg.endsWith ("\r\n--boundary1--\r\n"));
+    assertTrue (sMsg.contains ("href=\"cid:attachment0@erb.gv.at\""));
+    assertTrue (sMsg.contains ("Content-ID: <attachment0@erb.gv.at>\r\n\r\n" +
+                               new String (aPDF, StandardCharsets.ISO_8859_1) +
+                               "\r\n--boundary1--"));
+
+    // The root part must be a valid SOAP message
+    final ByteArrayInputStream aIS = new ByteArrayInputStream (aBytes);
+    SOAPStreamHelper.skipToFirstMultipartBody (aIS);
+    final String sRoot = new String (aIS.readAllBytes (), StandardCharsets.UTF_8);
+    final Document aDoc = DOMReader.readXMLDOM (sRoot.substring (0, sRoot.indexOf ("\r\n--boundary1")));
+    assertNotNull (aDoc);
+    assertEquals (1, aDoc.getElementsByTagNameNS (SOAPStreamHelper.XOP_NS_URI, "Include").getLength ());
+  }
+
+  @Test
+  public void testReadResponse () throws Exception
+  {
+    final String sResponse = ENVELOPE_START +
+                             "<erb:deliverInvoiceInvoiceOutput xmlns:erb=\"" +
+                             WS200SOAPCodec.NAMESPACE_URI +
+                             "\"><erb:Success><erb:DocumentID>doc1</erb:DocumentID></erb:Success></erb:deliverInvoiceInvoiceOutput>" +
+                             ENVELOPE_END;
+    final DeliveryResponseType aResponse = WS200SOAPCodec.readDeliveryResponse (new ByteArrayInputStream (sResponse.getBytes (StandardCharsets.UTF_8)));
+    assertNotNull (aResponse.getSuccess ());
+    assertEquals ("doc1", aResponse.getSuccess ().getDocumentID ());
+  }
+
+  @Test
+  public void testReadFault () throws Exception
+  {
+    final String sResponse = ENVELOPE_START +
+                             "<S:Fault><faultcode>S:Client</faultcode><faultstring>Invalid</faultstring><detail>" +
+                             "<erb:deliverInvoiceInvoiceFault xmlns:erb=\"" +
+                             WS200SOAPCodec.NAMESPACE_URI +
+                             "\"><erb:Message>msg1</erb:Message><erb:Message>msg2</erb:Message></erb:deliverInvoiceInvoiceFault>" +
+                             "</detail></S:Fault>" +
+                             ENVELOPE_END;
+    try
+    {
+      WS200SOAPCodec.readDeliveryResponse (new ByteArrayInputStream (sResponse.getBytes (StandardCharsets.UTF_8)));
+      fail ();
+    }
+    catch (final WSSOAPFaultException ex)
+    {
+      assertTrue (ex.isClientFault ());
+      assertEquals ("Invalid", ex.getFaultString ());
+      assertEquals (new CommonsArrayList <> ("msg1", "msg2"), ex.getAllDetailMessages ());
+    }
+  }
+}
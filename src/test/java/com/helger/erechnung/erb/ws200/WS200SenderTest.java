@@ -16,17 +16,40 @@
  */
 package com.helger.erechnung.erb.ws200;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.time.Duration;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Ignore;
 import org.junit.Test;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import com.helger.base.io.stream.StreamHelper;
+import com.helger.collection.commons.CommonsArrayList;
 import com.helger.config.ConfigFactory;
+import com.helger.erechnung.erb.simulator.ERBSimulator;
+import com.helger.erechnung.erb.ws.EWSDeliveryPhase;
+import com.helger.erechnung.erb.ws.EWSSEPasswordType;
+import com.helger.erechnung.erb.ws.EWSSenderEngine;
+import com.helger.erechnung.erb.ws.IWSSenderMetrics;
+import com.helger.erechnung.erb.ws.WSExecutorHelper;
+import com.helger.erechnung.erb.ws.WSRetryPolicy;
+import com.helger.erechnung.erb.ws.WSStreamingAttachment;
 import com.helger.io.resource.ClassPathResource;
+import com.helger.io.resource.IReadableResource;
 import com.helger.xml.namespace.MapBasedNamespaceContext;
 import com.helger.xml.serialize.read.DOMReader;
 
@@ -45,6 +68,68 @@ public final class WS200SenderTest
   private static final String USP_WS_USERNAME = ConfigFactory.getDefaultConfig ().getAsString ("ws.username");
   private static final String USP_WS_PASSWORD = ConfigFactory.getDefaultConfig ().getAsString ("ws.password");
 
+  // Credentials for the local simulator
+  private static final String SIM_USERNAME = "simulator";
+  private static final String SIM_PASSWORD = "secret";
+
+  /**
+   * Counts all recorded values.
+   */
+  private static final class CountingMetrics implements IWSSenderMetrics
+  {
+    private final Map <EWSDeliveryPhase, AtomicLong> m_aDurations = new EnumMap <> (EWSDeliveryPhase.class);
+    private final AtomicLong m_aSuccess = new AtomicLong ();
+    private final Map <String, AtomicLong> m_aErrors = new ConcurrentHashMap <> ();
+    private final AtomicLong m_aBytes = new AtomicLong ();
+    private final AtomicLong m_aAttachments = new AtomicLong ();
+
+    CountingMetrics ()
+    {
+      for (final EWSDeliveryPhase e : EWSDeliveryPhase.values ())
+        m_aDurations.put (e, new AtomicLong ());
+    }
+
+    @Override
+    public void recordDuration (final EWSDeliveryPhase ePhase, final Duration aDuration)
+    {
+      m_aDurations.get (ePhase).incrementAndGet ();
+    }
+
+    @Override
+    public void recordSuccess ()
+    {
+      m_aSuccess.incrementAndGet ();
+    }
+
+    @Override
+    public void recordError (final String sErrorType)
+    {
+      m_aErrors.computeIfAbsent (sErrorType, k -> new AtomicLong ()).incrementAndGet ();
+    }
+
+    @Override
+    public void recordBytesSent (final long nBytes)
+    {
+      m_aBytes.addAndGet (nBytes);
+    }
+
+    @Override
+    public void recordAttachmentCount (final int nAttachments)
+    {
+      m_aAttachments.addAndGet (nAttachments);
+    }
+
+    long getCount (final EWSDeliveryPhase ePhase)
+    {
+      return m_aDurations.get (ePhase).get ();
+    }
+  }
+
+  private static byte [] _getInvoice ()
+  {
+    return StreamHelper.getAllBytes (new ClassPathResource ("test-invoices/ebi60.xml"));
+  }
+
   /**
    * Basic test case. It is ignored by default, since no test username and password are present.
    * After setting the properties in the "application.properties" file, this test can be
@@ -111,4 +196,231 @@ public final class WS200SenderTest
     final DeliveryResponseType aResult = aSender.deliverInvoice (aXMLBytes, aAttachments, aSettings);
     assertNotNull (aResult.toString (), aResult.getSuccess ());
   }
+
+  @Test
+  public void testDirectEngine () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final Document aInvoiceDoc = DOMReader.readXMLDOM (new ClassPathResource ("test-invoices/ebi60.xml"));
+      assertNotNull (aInvoiceDoc);
+
+      final WS200Sender aSender = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                              .setEngine (EWSSenderEngine.DIRECT);
+      DeliveryResponseType aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+      aResponse = aSender.deliverInvoice (aInvoiceDoc, null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (2, aSimulator.getRequestCount ());
+
+      // Errors are mapped like with JAX-WS
+      aSimulator.setFaultRate (1);
+      aResponse = aSender.deliverInvoice (aInvoiceDoc, null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getError ());
+      assertEquals ("document", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+    }
+  }
+
+  @Test
+  public void testWithoutWSDL () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final WS200Sender aSender = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                              .setUseWSDL (false);
+      final DeliveryResponseType aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+
+      // SOAP faults must still be mapped to the declared exceptions
+      aSimulator.setFaultRate (1);
+      final DeliveryResponseType aFaultResponse = aSender.deliverInvoice (_getInvoice (),
+                                                                          null,
+                                                                          new DeliverySettingsType ());
+      assertNotNull (aFaultResponse.getError ());
+      assertEquals ("document", aFaultResponse.getError ().getErrorDetailAtIndex (0).getField ());
+    }
+  }
+
+  @Test
+  public void testPasswordDigest () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final WS200Sender aSender = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                              .setWSSEPasswordType (EWSSEPasswordType.DIGEST)
+                                                                              .setWSSETimestampTTL (Duration.ofMinutes (5));
+
+      // Via JAX-WS
+      DeliveryResponseType aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+
+      // Via the streaming path
+      aResponse = aSender.deliverInvoice (new ClassPathResource ("test-invoices/ebi60.xml"),
+                                          null,
+                                          new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (0, aSimulator.getAuthenticationFailureCount ());
+    }
+  }
+
+  @Test
+  public void testDeliverAsync () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final AtomicInteger aExecuted = new AtomicInteger ();
+      final Executor aExecutor = r -> {
+        aExecuted.incrementAndGet ();
+        WSExecutorHelper.getDefaultAsyncExecutor ().execute (r);
+      };
+
+      final WS200Sender aSender = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                              .setAsyncExecutor (aExecutor);
+      final DeliveryResponseType aResponse = aSender.deliverInvoiceAsync (_getInvoice (), null, new DeliverySettingsType ())
+                                                    .get (30, TimeUnit.SECONDS);
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (1, aExecuted.get ());
+
+      // A failed delivery completes normally with the error response
+      final WS200Sender aWrongSender = new WS200Sender (SIM_USERNAME, "wrong").setURL (aSimulator.getURLV2 ());
+      final CompletableFuture <DeliveryResponseType> aFuture = aWrongSender.deliverInvoiceAsync (_getInvoice (),
+                                                                                                 null,
+                                                                                                 new DeliverySettingsType ());
+      final DeliveryResponseType aErrorResponse = aFuture.get (30, TimeUnit.SECONDS);
+      assertFalse (aFuture.isCompletedExceptionally ());
+      assertNotNull (aErrorResponse.getError ());
+    }
+  }
+
+  @Test
+  public void testRetry () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final WSRetryPolicy aPolicy = new WSRetryPolicy (3,
+                                                       Duration.ofMillis (10),
+                                                       Duration.ofMillis (50),
+                                                       Duration.ofMinutes (1));
+
+      // Without retries
+      final WS200Sender aSender = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ());
+      aSimulator.failNextRequests (1);
+      DeliveryResponseType aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getError ());
+      assertEquals (1, aSimulator.getRequestCount ());
+
+      // JAX-WS
+      aSender.setRetryPolicy (aPolicy);
+      aSimulator.failNextRequests (2);
+      aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (4, aSimulator.getRequestCount ());
+
+      // Direct
+      aSender.setEngine (EWSSenderEngine.DIRECT);
+      aSimulator.failNextRequests (2);
+      aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (7, aSimulator.getRequestCount ());
+
+      // Max attempts exceeded
+      aSimulator.failNextRequests (3);
+      aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getError ());
+      assertEquals ("webservice", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+      assertEquals (10, aSimulator.getRequestCount ());
+
+      // SOAP faults with details are never retried
+      aSimulator.setFaultRate (1);
+      aResponse = aSender.deliverInvoice (_getInvoice (), null, new DeliverySettingsType ());
+      assertNotNull (aResponse.getError ());
+      assertEquals ("document", aResponse.getError ().getErrorDetailAtIndex (0).getField ());
+      assertEquals (11, aSimulator.getRequestCount ());
+    }
+  }
+
+  @Test
+  public void testMTOMFallback () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD).setMTOMSupported (false);
+      final WS200Sender aSender = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                              .setMTOMEnabled (true);
+      final IReadableResource aInvoiceRes = new ClassPathResource ("test-invoices/ebi60.xml");
+      final WSStreamingAttachment aAttachment = WSStreamingAttachment.createFromResource ("ebi60.xml",
+                                                                                          "UTF-8",
+                                                                                          aInvoiceRes);
+      final List <WSStreamingAttachment> aAttachments = new CommonsArrayList <> (aAttachment);
+
+      // The MTOM request is rejected with HTTP 415 and repeated inline
+      DeliveryResponseType aResponse = aSender.deliverInvoiceWithAttachmentStreams (aInvoiceRes,
+                                                                                    aAttachments,
+                                                                                    new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (2, aSimulator.getRequestCount ());
+
+      // MTOM is skipped for the next delivery to the same endpoint
+      aResponse = aSender.deliverInvoiceWithAttachmentStreams (aInvoiceRes, aAttachments, new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (3, aSimulator.getRequestCount ());
+
+      // Enabling MTOM again forgets the rejection
+      aSender.setMTOMEnabled (true);
+      aResponse = aSender.deliverInvoiceWithAttachmentStreams (aInvoiceRes, aAttachments, new DeliverySettingsType ());
+      assertNotNull (aResponse.getSuccess ());
+      assertEquals (5, aSimulator.getRequestCount ());
+    }
+  }
+
+  @Test
+  public void testMetrics () throws Exception
+  {
+    try (final ERBSimulator aSimulator = new ERBSimulator ())
+    {
+      aSimulator.setCredentials (SIM_USERNAME, SIM_PASSWORD);
+      final CountingMetrics aMetrics = new CountingMetrics ();
+      final WS200Sender aSender = new WS200Sender (SIM_USERNAME, SIM_PASSWORD).setURL (aSimulator.getURLV2 ())
+                                                                              .setMetrics (aMetrics);
+      final byte [] aInvoice = _getInvoice ();
+      final Document aInvoiceDoc = DOMReader.readXMLDOM (aInvoice);
+
+      // JAX-WS
+      assertNotNull (aSender.deliverInvoice (aInvoiceDoc, null, new DeliverySettingsType ()).getSuccess ());
+      assertEquals (1, aMetrics.getCount (EWSDeliveryPhase.SERIALIZATION));
+      assertEquals (1, aMetrics.getCount (EWSDeliveryPhase.PORT_ACQUISITION));
+      assertEquals (1, aMetrics.getCount (EWSDeliveryPhase.HANDLER));
+      assertEquals (1, aMetrics.getCount (EWSDeliveryPhase.ROUND_TRIP));
+      assertEquals (1, aMetrics.getCount (EWSDeliveryPhase.UNMARSHALLING));
+      assertEquals (1, aMetrics.getCount (EWSDeliveryPhase.TOTAL));
+      assertEquals (1, aMetrics.m_aSuccess.get ());
+      // The whole SOAP message is counted, not only the invoice
+      assertTrue (aMetrics.m_aBytes.get () > aInvoice.length);
+
+      // Direct engine - the request body contains the Base64 encoded invoice
+      aMetrics.m_aBytes.set (0);
+      aSender.setEngine (EWSSenderEngine.DIRECT);
+      assertNotNull (aSender.deliverInvoice (aInvoice, null, new DeliverySettingsType ()).getSuccess ());
+      assertEquals (2, aMetrics.getCount (EWSDeliveryPhase.ROUND_TRIP));
+      assertEquals (2, aMetrics.getCount (EWSDeliveryPhase.UNMARSHALLING));
+      assertEquals (2, aMetrics.getCount (EWSDeliveryPhase.TOTAL));
+      assertEquals (2, aMetrics.m_aSuccess.get ());
+      assertTrue (aMetrics.m_aBytes.get () > aInvoice.length);
+
+      // Errors by type
+      aSimulator.setFaultRate (1);
+      assertNotNull (aSender.deliverInvoice (aInvoice, null, new DeliverySettingsType ()).getError ());
+      aSimulator.setFaultRate (0).failNextRequests (1);
+      assertNotNull (aSender.deliverInvoice (aInvoice, null, new DeliverySettingsType ()).getError ());
+      assertEquals (1, aMetrics.m_aErrors.get ("document").get ());
+      assertEquals (1, aMetrics.m_aErrors.get ("webservice").get ());
+      assertEquals (4, aMetrics.getCount (EWSDeliveryPhase.TOTAL));
+      assertEquals (0, aMetrics.m_aAttachments.get ());
+    }
+  }
 }